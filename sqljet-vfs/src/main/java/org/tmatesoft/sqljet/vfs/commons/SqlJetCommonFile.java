@@ -24,6 +24,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
 import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
 import org.tmatesoft.sqljet.core.internal.SqlJetSyncFlags;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetLockWaitQueue;
 
 /**
  * 
@@ -49,6 +50,13 @@ public class SqlJetCommonFile implements ISqlJetFile {
     public void write(ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetIOException {
     }
 
+    public void write(ISqlJetMemoryPointer[] buffers, int[] amounts, int count, long offset) throws SqlJetIOException {
+        for (int i = 0; i < count; i++) {
+            write(buffers[i], amounts[i], offset);
+            offset += amounts[i];
+        }
+    }
+
     public void truncate(long size) throws SqlJetIOException {
     }
 
@@ -87,4 +95,8 @@ public class SqlJetCommonFile implements ISqlJetFile {
         return false;
     }
 
+    public SqlJetLockWaitQueue getLockWaitQueue() {
+        return null;
+    }
+
 }
@@ -634,6 +634,21 @@ public interface ISqlJetBtree {
      */
     ISqlJetBtreeCursor getCursor(int table, boolean wrFlag, ISqlJetKeyInfo keyInfo) throws SqlJetException;
 
+    /**
+     * Create a builder which fills empty b-tree with root page iTable from
+     * entries appended in ascending order of keys. Pages are filled completely
+     * and built bottom-up, without of descent from root and balancing for
+     * every entry as inserts through cursor do.
+     * 
+     * There must be an active write transaction and b-tree must be empty.
+     * 
+     * @param table
+     *            Index of root page
+     * @return
+     * @throws SqlJetException
+     */
+    ISqlJetBtreeBuilder getBuilder(int table) throws SqlJetException;
+
     /**
      * Enter a mutex on the given BTree object.
      *
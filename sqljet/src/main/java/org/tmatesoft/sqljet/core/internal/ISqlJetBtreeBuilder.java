@@ -0,0 +1,81 @@
+/**
+ * ISqlJetBtreeBuilder.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * Builds content of empty b-tree bottom-up from entries which are appended in
+ * ascending order of keys. Leaf pages are filled completely one after another
+ * and cells which point to them are collected in interior pages of upper
+ * levels, root page gets the top level when building is finished.
+ *
+ * Builder is obtained by {@link ISqlJetBtree#getBuilder(int)}. B-tree is not
+ * valid until {@link #finish()} is called, so it should not be read or
+ * modified by cursors while it is built.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public interface ISqlJetBtreeBuilder {
+
+    /**
+     * Append entry to b-tree. For a table b-tree (INTKEY) nKey is the rowid
+     * and pData/nData is the record, keys must be strictly ascending. For an
+     * index b-tree pKey/nKey is the key and pData is ignored, caller is
+     * responsible for order of keys.
+     *
+     * @param pKey
+     *            The key of the new record
+     * @param nKey
+     *            The key of the new record
+     * @param pData
+     *            The data of the new record
+     * @param nData
+     *            The data of the new record
+     * @param nZero
+     *            Number of extra 0 bytes to append to data
+     * @throws SqlJetException
+     */
+    void append(ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData, int nData, int nZero)
+            throws SqlJetException;
+
+    /**
+     * @return count of entries which have been appended.
+     */
+    long getCount();
+
+    /**
+     * Writes pages which are not written yet and puts top level of b-tree
+     * into root page.
+     *
+     * @throws SqlJetException
+     */
+    void finish() throws SqlJetException;
+
+    /**
+     * Releases resources held by builder. If builder was not finished then
+     * b-tree stays empty but pages which were already written aren't
+     * referenced by anything, so transaction should be rolled back.
+     *
+     * @throws SqlJetException
+     */
+    void close() throws SqlJetException;
+
+}
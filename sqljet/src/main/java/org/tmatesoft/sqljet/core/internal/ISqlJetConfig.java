@@ -33,4 +33,10 @@ public interface ISqlJetConfig {
      * @return
      */
     boolean isSynchronizedThreading();
+
+    /**
+     * @return true if read transactions of one connection could run in
+     *         parallel, it's never true if shared cache is enabled.
+     */
+    boolean isConcurrentReaders();
 }
@@ -21,6 +21,7 @@ import java.util.Set;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.SqlJetIOException;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetLockWaitQueue;
 
 /**
  * OS Interface Open File Handle.
@@ -119,6 +120,23 @@ public interface ISqlJetFile {
      */
     void write(final ISqlJetMemoryPointer buffer, final int amount, final long offset) throws SqlJetIOException;
 
+    /**
+     * Write data from several buffers into consecutive region of a file, as
+     * single gathering write where file supports it.
+     * 
+     * @param buffers
+     *            buffers to write one after another.
+     * @param amounts
+     *            number of bytes to write from each buffer.
+     * @param count
+     *            number of buffers to write.
+     * @param offset
+     *            position in file of the first byte.
+     * @throws SqlJetIOException
+     */
+    void write(final ISqlJetMemoryPointer[] buffers, final int[] amounts, final int count, final long offset)
+            throws SqlJetIOException;
+
     /**
      * Truncate an open file to a specified size
      * 
@@ -215,6 +233,22 @@ public interface ISqlJetFile {
      */
     SqlJetLockType getLockType();
 
+    /**
+     * Lock region of file which isn't used by {@link #lock(SqlJetLockType)}.
+     * The lock is held for this JVM until the file is closed, other files of
+     * this JVM and other processes can't take conflicting lock of the region.
+     * 
+     * @param position
+     *            first byte of region.
+     * @param size
+     *            number of bytes in region.
+     * @param shared
+     *            true for shared lock, false for exclusive one.
+     * @return false if the region is locked already.
+     * @throws SqlJetIOException
+     */
+    boolean lockRegion(final long position, final long size, final boolean shared) throws SqlJetIOException;
+
     /**
      * Return the sector size in bytes of the underlying block device for
      * the specified file. This is almost always 512 bytes, but may be
@@ -241,5 +275,13 @@ public interface ISqlJetFile {
     * an in-memory journal 
     */
     boolean isMemJournal();
-    
+
+    /**
+     * Returns queue of threads in this JVM which wait for locks of the file,
+     * they are woken up when some lock of file is released.
+     *
+     * @return queue or null if file doesn't support locks.
+     */
+    SqlJetLockWaitQueue getLockWaitQueue();
+
 }
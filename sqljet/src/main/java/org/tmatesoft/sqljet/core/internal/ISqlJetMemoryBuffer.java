@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
@@ -241,6 +242,16 @@ public interface ISqlJetMemoryBuffer {
      */
     byte[] asArray();
 
+    /**
+     * Wraps memory chunk into {@link ByteBuffer} which shares content with
+     * this buffer, for channel operations on several buffers at once.
+     * 
+     * @param pointer
+     * @param count
+     * @return byte buffer which has count bytes remaining.
+     */
+    ByteBuffer asByteBuffer(int pointer, int count);
+
     /**
      * @param pointer
      * @param buffer
@@ -185,5 +185,13 @@ public interface ISqlJetPage {
      * @return
      */
     ISqlJetPage getDirty();
+
+    /**
+     * Hint page cache to keep this page longer than others, e.g. because it
+     * is an interior page of b-tree which is used by every lookup.
+     * 
+     * @param priority
+     */
+    void setPriority(boolean priority);
     
 }
@@ -41,6 +41,8 @@ public interface ISqlJetPager {
 
     String JOURNAL = "-journal";
 
+    String WAL = "-wal";
+
     /**
      * Journal files begin with the following magic string. The data was
      * obtained from /dev/random. It is used only as a sanity check.
@@ -83,6 +85,26 @@ public interface ISqlJetPager {
      */
     String MEMORY_DB = ":memory:";
 
+    /**
+     * Number of last bytes of every page which keep checksum of the page.
+     */
+    int CHECKSUM_SIZE = 4;
+
+    /**
+     * Number of bytes reserved at the end of every page by databases whose
+     * pages keep checksums: {@link #CHECKSUM_MARKER} followed by checksum.
+     */
+    int CHECKSUM_RESERVE = 8;
+
+    /**
+     * Value ("SJCS") kept in reserved bytes of the first page just before its
+     * checksum, which marks databases whose pages keep checksums, so reserved
+     * bytes of other databases are never overwritten. Header fields (such as
+     * application id) are left to the user. SQLite does not maintain
+     * checksums, so pages modified by SQLite later fail verification.
+     */
+    int CHECKSUM_MARKER = 0x534A4353;
+
     /**
      * Open a new page cache.
      * 
@@ -267,6 +289,22 @@ public interface ISqlJetPager {
      */
     int setPageSize(final int pageSize) throws SqlJetException;
 
+    /**
+     * Tell pager whether pages keep checksums in their last
+     * {@link #CHECKSUM_SIZE} bytes, that is database reserves
+     * {@link #CHECKSUM_RESERVE} bytes and first page has
+     * {@link #CHECKSUM_MARKER}.
+     * 
+     * @param checksums
+     */
+    void setChecksums(final boolean checksums);
+
+    /**
+     * @return true if pager verifies checksums of pages which are read, so
+     *         new databases should reserve space for checksums.
+     */
+    boolean isChecksumsEnabled();
+
     /**
      * Get the page size.
      * 
@@ -480,6 +518,17 @@ public interface ISqlJetPager {
      */
     void commitPhaseTwo() throws SqlJetException;
 
+    /**
+     * Wait until the transaction committed by this pager is synced to disk.
+     * In WAL mode with group commit enabled a commit doesn't sync the log, so
+     * that concurrent commits could share one sync. This method should be
+     * called after the commit, when the caller doesn't hold any locks.
+     * Otherwise it does nothing.
+     * 
+     * @throws SqlJetException
+     */
+    void syncCommit() throws SqlJetException;
+
     /**
      * Rollback all changes. The database falls back to PAGER_SHARED mode. All
      * in-memory cache pages revert to their original data contents. The journal
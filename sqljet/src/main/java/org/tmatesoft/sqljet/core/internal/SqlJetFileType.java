@@ -29,5 +29,6 @@ public enum SqlJetFileType {
     MAIN_JOURNAL,
     TEMP_JOURNAL,
     SUBJOURNAL,
-    MASTER_JOURNAL
+    MASTER_JOURNAL,
+    WAL
 }
@@ -1,8 +1,11 @@
 package org.tmatesoft.sqljet.core.internal;
 
 /**
- * Types of buffers implementation.
+ * Types of buffers implementation. {@link #UNSAFE} is byte array which is
+ * accessed through sun.misc.Unsafe, it falls back to {@link #ARRAY} where
+ * Unsafe is not available or sqljet is built without it (build property
+ * "unsafe").
  */
 public enum SqlJetMemoryBufferType {
-    ARRAY, BUFFER, DIRECT
+    ARRAY, BUFFER, DIRECT, UNSAFE
 }
\ No newline at end of file
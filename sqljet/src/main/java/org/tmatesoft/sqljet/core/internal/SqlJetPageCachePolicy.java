@@ -0,0 +1,45 @@
+/**
+ * SqlJetPageCachePolicy.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+/**
+ * Policies which page cache uses to choose pages to recycle.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public enum SqlJetPageCachePolicy {
+
+    /** Recycle page which was used least recently */
+    LRU,
+
+    /**
+     * Second chance: pages which were used again since they got into cache
+     * and interior b-tree pages survive a sweep of the clock hand.
+     */
+    CLOCK,
+
+    /**
+     * Pages used only once, e.g. by a scan, stay in a short FIFO queue and
+     * don't push out pages which are used repeatedly and interior b-tree
+     * pages.
+     */
+    TWO_Q
+
+}
@@ -149,6 +149,16 @@ public final class SqlJetUtility {
         }
     }
 
+    public static long getLongSysProp(final String propName, final long defValue) throws SqlJetError {
+        if (null == propName)
+            throw new SqlJetError("Undefined property name");
+        try {
+            return Long.valueOf(System.getProperty(propName, Long.toString(defValue)));
+        } catch (Throwable t) {
+            throw new SqlJetError("Error while get long value for property " + propName, t);
+        }
+    }
+
     /**
      * @param string
      * @param b
@@ -653,6 +663,49 @@ public final class SqlJetUtility {
         }
     }
 
+    /**
+     * Read a 64-bit variable-length integer from memory starting at p[offset].
+     * Unlike {@link #getVarint(ISqlJetMemoryPointer, int, long[])} it returns
+     * value itself, number of bytes is returned by
+     * {@link #getVarintLength(ISqlJetMemoryPointer, int)}.
+     */
+    public static long getVarintValue(ISqlJetMemoryPointer p, int offset) {
+        long l = 0;
+        for (int i = 0; i < 8; i++) {
+            final int b = p.getByteUnsigned(offset + i);
+            l = (l << 7) | (b & 0x7f);
+            if ((b & 0x80) == 0) {
+                return l;
+            }
+        }
+        return (l << 8) | p.getByteUnsigned(offset + 8);
+    }
+
+    /**
+     * Read a 32-bit variable-length integer from memory starting at p[offset],
+     * see {@link #getVarintValue(ISqlJetMemoryPointer, int)}.
+     */
+    public static int getVarint32Value(ISqlJetMemoryPointer p, int offset) {
+        final int x = p.getByteUnsigned(offset);
+        if (x < 0x80) {
+            return x;
+        }
+        return (int) getVarintValue(p, offset);
+    }
+
+    /**
+     * Return the number of bytes of variable-length integer which starts at
+     * p[offset].
+     */
+    public static int getVarintLength(ISqlJetMemoryPointer p, int offset) {
+        for (int i = 0; i < 8; i++) {
+            if ((p.getByteUnsigned(offset + i) & 0x80) == 0) {
+                return i + 1;
+            }
+        }
+        return 9;
+    }
+
     /**
      * Return the number of bytes that will be needed to store the given 64-bit
      * integer.
@@ -30,6 +30,7 @@ import org.tmatesoft.sqljet.core.SqlJetLogDefinitions;
 import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBackend;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
 import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
 import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
@@ -46,11 +47,13 @@ import org.tmatesoft.sqljet.core.internal.SqlJetBtreeTableCreateFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetDbFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
 import org.tmatesoft.sqljet.core.internal.SqlJetSavepointOperation;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtreeCursor.CursorState;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetLockWaitQueue;
 import org.tmatesoft.sqljet.core.internal.mutex.SqlJetMutex;
 import org.tmatesoft.sqljet.core.internal.pager.SqlJetPager;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetSchema;
@@ -324,6 +327,10 @@ public class SqlJetBtree implements ISqlJetBtree {
                 pBt.pPager = new SqlJetPager();
                 pBt.pPager.open(pVfs, filename, SqlJetBtreeFlags.toPagerFlags(flags), type, permissions);
                 pBt.pPager.readFileHeader(zDbHeader.remaining(), zDbHeader);
+                if (SqlJetUtility.getUnsignedByte(zDbHeader, 18) == 2) {
+                    /* Database was left in WAL mode */
+                    pBt.pPager.setJournalMode(SqlJetPagerJournalMode.WAL);
+                }
                 pBt.pPager.setBusyhandler(new ISqlJetBusyHandler() {
                     public boolean call(int number) {
                         return invokeBusyHandler(number);
@@ -358,12 +365,20 @@ public class SqlJetBtree implements ISqlJetBtree {
                         pBt.autoVacuum = SQLJET_DEFAULT_AUTOVACUUM != SqlJetAutoVacuumMode.NONE;
                         pBt.incrVacuum = SQLJET_DEFAULT_AUTOVACUUM == SqlJetAutoVacuumMode.FULL;
                     }
-                    nReserve = 0;
+                    nReserve = pBt.pPager.isChecksumsEnabled() ? ISqlJetPager.CHECKSUM_RESERVE : 0;
+                    pBt.pPager.setChecksums(nReserve == ISqlJetPager.CHECKSUM_RESERVE);
                 } else {
                     nReserve = SqlJetUtility.getUnsignedByte(zDbHeader, 20);
                     pBt.pageSizeFixed = true;
                     pBt.autoVacuum = (SqlJetUtility.get4byte(zDbHeader, 36 + 4 * 4) != 0);
                     pBt.incrVacuum = (SqlJetUtility.get4byte(zDbHeader, 36 + 7 * 4) != 0);
+                    if (nReserve == ISqlJetPager.CHECKSUM_RESERVE) {
+                        final ISqlJetMemoryPointer page1 = SqlJetUtility.allocatePtr(pBt.pageSize);
+                        pBt.pPager.readFileHeader(pBt.pageSize, page1);
+                        pBt.pPager.setChecksums(hasChecksums(page1, pBt.pageSize));
+                    } else {
+                        pBt.pPager.setChecksums(false);
+                    }
                 }
                 pBt.usableSize = pBt.pageSize - nReserve;
                 assert ((pBt.pageSize & 7) == 0); /*
@@ -633,6 +648,7 @@ public class SqlJetBtree implements ISqlJetBtree {
                 pBt.pageSize = pBt.pPager.setPageSize(pBt.pageSize);
             }
             pBt.usableSize = pBt.pageSize - reserve;
+            pBt.pPager.setChecksums(reserve == ISqlJetPager.CHECKSUM_RESERVE && pBt.pPager.isChecksumsEnabled());
         } finally {
             leave();
         }
@@ -748,10 +764,10 @@ public class SqlJetBtree implements ISqlJetBtree {
                 if (SqlJetUtility.memcmp(page1, zMagicHeader, 16) != 0) {
                     throw new SqlJetException(rc);
                 }
-                if (SqlJetUtility.getUnsignedByte(page1, 18) > 1) {
+                if (SqlJetUtility.getUnsignedByte(page1, 18) > 2) {
                     pBt.readOnly = true;
                 }
-                if (SqlJetUtility.getUnsignedByte(page1, 19) > 1) {
+                if (SqlJetUtility.getUnsignedByte(page1, 19) > 2) {
                     throw new SqlJetException(rc);
                 }
 
@@ -794,6 +810,7 @@ public class SqlJetBtree implements ISqlJetBtree {
                 }
                 pBt.pageSize = pageSize;
                 pBt.usableSize = usableSize;
+                pBt.pPager.setChecksums(hasChecksums(page1, pageSize));
                 pBt.autoVacuum = (SqlJetUtility.get4byte(page1, 36 + 4 * 4) > 0);
                 pBt.incrVacuum = (SqlJetUtility.get4byte(page1, 36 + 7 * 4) > 0);
             }
@@ -824,6 +841,22 @@ public class SqlJetBtree implements ISqlJetBtree {
         }
     }
 
+    /**
+     * Whether pages of database keep checksums: they have space reserved for
+     * them and reserved bytes of first page start with
+     * {@link ISqlJetPager#CHECKSUM_MARKER}.
+     * 
+     * @param page1
+     *            content of first page.
+     * @param pageSize
+     *            size of page.
+     */
+    private static boolean hasChecksums(ISqlJetMemoryPointer page1, int pageSize) {
+        return SqlJetUtility.getUnsignedByte(page1, 20) == ISqlJetPager.CHECKSUM_RESERVE
+                && page1.remaining() >= pageSize
+                && SqlJetUtility.get4byte(page1, pageSize - ISqlJetPager.CHECKSUM_RESERVE) == ISqlJetPager.CHECKSUM_MARKER;
+    }
+
     /**
      * @param bt
      */
@@ -831,6 +864,23 @@ public class SqlJetBtree implements ISqlJetBtree {
         bt.pTmpSpace = null;
     }
 
+    /**
+     * Keep file format numbers of the database header in agreement with the
+     * journal mode: version 2 marks the database which is in WAL mode, version
+     * 1 is used for the legacy rollback journal.
+     */
+    private void updateFileFormat() throws SqlJetException {
+        final SqlJetMemPage pP1 = pBt.pPage1;
+        assert (pP1 != null);
+        final int version = pBt.pPager.getJournalMode() == SqlJetPagerJournalMode.WAL ? 2 : 1;
+        final ISqlJetMemoryPointer data = pP1.aData;
+        if (SqlJetUtility.getUnsignedByte(data, 18) != version || SqlJetUtility.getUnsignedByte(data, 19) != version) {
+            pP1.pDbPage.write();
+            SqlJetUtility.putUnsignedByte(data, 18, (byte) version);
+            SqlJetUtility.putUnsignedByte(data, 19, (byte) version);
+        }
+    }
+
     /**
      * Create a new database by initializing the first page of the file.
      */
@@ -860,6 +910,9 @@ public class SqlJetBtree implements ISqlJetBtree {
         pBt.pageSizeFixed = true;
         SqlJetUtility.put4byte(data, 36 + 4 * 4, pBt.autoVacuum ? 1 : 0);
         SqlJetUtility.put4byte(data, 36 + 7 * 4, pBt.incrVacuum ? 1 : 0);
+        if (pBt.pageSize - pBt.usableSize == ISqlJetPager.CHECKSUM_RESERVE && pBt.pPager.isChecksumsEnabled()) {
+            SqlJetUtility.put4byte(data, pBt.usableSize, ISqlJetPager.CHECKSUM_MARKER);
+        }
     }
 
     /*
@@ -912,37 +965,60 @@ public class SqlJetBtree implements ISqlJetBtree {
                 }
             }
 
+            /*
+             * While busy handler waits this thread is in queue of waiters for
+             * locks of the file, so it's woken up when other connection of
+             * this JVM releases its lock.
+             */
+            final ISqlJetFile file = pBt.pPager.getFile();
+            final SqlJetLockWaitQueue queue = file != null && db.getBusyHandler() != null ? file
+                    .getLockWaitQueue() : null;
+            SqlJetLockWaitQueue.Waiter waiter = null;
+
             int nBusy = 0;
-            do {
-                rc = null;
+            try {
+                do {
+                    if (waiter != null && !queue.mayTry(waiter) && !waiter.isIntervalElapsed()) {
+                        continue;
+                    }
+                    rc = null;
                 
-                try {
+                    try {
 
-                    if (pBt.pPage1 == null) {
-                        do {
-                            lockBtree();
-                        } while (pBt.pPage1 == null);
-                    }
+                        if (pBt.pPage1 == null) {
+                            do {
+                                lockBtree();
+                            } while (pBt.pPage1 == null);
+                        }
 
-                    if (mode != SqlJetTransactionMode.READ_ONLY) {
-                        if (pBt.readOnly) {
-                            throw new SqlJetException(SqlJetErrorCode.READONLY);
-                        } else {
-                            pBt.pPager.begin(mode == SqlJetTransactionMode.EXCLUSIVE);
-                            newDatabase();
+                        if (mode != SqlJetTransactionMode.READ_ONLY) {
+                            if (pBt.readOnly) {
+                                throw new SqlJetException(SqlJetErrorCode.READONLY);
+                            } else {
+                                pBt.pPager.begin(mode == SqlJetTransactionMode.EXCLUSIVE);
+                                newDatabase();
+                                updateFileFormat();
+                            }
                         }
-                    }
 
-                    if (mode != SqlJetTransactionMode.READ_ONLY)
-                        pBt.inStmt = false;
+                        if (mode != SqlJetTransactionMode.READ_ONLY)
+                            pBt.inStmt = false;
 
-                } catch (SqlJetException e) {
-                    rc = e;
-                    pBt.unlockBtreeIfUnused();
-                }
+                    } catch (SqlJetException e) {
+                        rc = e;
+                        pBt.unlockBtreeIfUnused();
+                        if (queue != null && waiter == null && rc.getErrorCode() == SqlJetErrorCode.BUSY) {
+                            waiter = queue.enter(file.getLockType() != SqlJetLockType.NONE);
+                        }
+                    }
 
-            } while (rc != null && rc.getErrorCode() == SqlJetErrorCode.BUSY && pBt.inTransaction == TransMode.NONE
-                    && invokeBusyHandler(nBusy) && (nBusy++) > -1);
+                } while (rc != null && rc.getErrorCode() == SqlJetErrorCode.BUSY && pBt.inTransaction == TransMode.NONE
+                        && invokeBusyHandler(nBusy) && (nBusy++) > -1);
+            } finally {
+                if (waiter != null) {
+                    queue.leave(waiter, rc == null);
+                }
+            }
 
             if (rc == null) {
                 if (inTrans == TransMode.NONE) {
@@ -2295,6 +2371,24 @@ public class SqlJetBtree implements ISqlJetBtree {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtree#getBuilder(int)
+     */
+    public ISqlJetBtreeBuilder getBuilder(int table) throws SqlJetException {
+        enter();
+        try {
+            pBt.db = db;
+            if (inTrans != TransMode.WRITE) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE, "Builder requires write transaction");
+            }
+            return new SqlJetBtreeBuilder(this, table);
+        } finally {
+            leave();
+        }
+    }
+
     /**
      * This routine works like lockBtree() except that it also invokes the busy
      * callback if there is lock contention.
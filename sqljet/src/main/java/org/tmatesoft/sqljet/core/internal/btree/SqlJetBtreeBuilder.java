@@ -0,0 +1,353 @@
+/**
+ * SqlJetBtreeBuilder.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.btree;
+
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.get4byte;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.memcpy;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.put4byte;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.putVarint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Implementation of {@link ISqlJetBtreeBuilder}.
+ *
+ * Every level of tree has a node which is filled now and optionally previous
+ * node which is full already. Previous node isn't written until current node
+ * gets its first cell, so when building is finished and last node is empty it
+ * takes last cell from previous node and no page without cells appears in
+ * tree. When node is written its page number goes to upper level as right
+ * child and separator between it and next node goes there as a cell.
+ *
+ * For a table b-tree separator is the largest rowid of left node, for an
+ * index b-tree separator is the entry which follows left node.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetBtreeBuilder implements ISqlJetBtreeBuilder {
+
+    private class Node {
+
+        final ISqlJetMemoryPointer data = SqlJetUtility.allocatePtr(pBt.usableSize);
+        final ISqlJetMemoryPointer[] cells = new ISqlJetMemoryPointer[pBt.MX_CELL()];
+        final int[] sizes = new int[pBt.MX_CELL()];
+        int nCell;
+        int used;
+        int rightChild;
+
+        boolean fits(boolean leaf, int size) {
+            return (leaf ? 8 : 12) + 2 * (nCell + 1) + used + size <= pBt.usableSize;
+        }
+
+        void add(ISqlJetMemoryPointer cell, int size) {
+            final ISqlJetMemoryPointer p = data.getMoved(used);
+            memcpy(p, cell, size);
+            cells[nCell] = p;
+            sizes[nCell++] = size;
+            used += size;
+        }
+
+        void removeLast() {
+            used -= sizes[--nCell];
+            cells[nCell] = null;
+        }
+
+        void reset() {
+            for (int i = 0; i < nCell; i++) {
+                cells[i] = null;
+            }
+            nCell = 0;
+            used = 0;
+            rightChild = 0;
+        }
+    }
+
+    private class Level {
+
+        final boolean leaf;
+        final ISqlJetMemoryPointer cell = SqlJetUtility.allocatePtr(pBt.MX_CELL_SIZE() + 4);
+        final ISqlJetMemoryPointer separator = SqlJetUtility.allocatePtr(pBt.MX_CELL_SIZE());
+        int separatorSize;
+        Node current = new Node();
+        Node previous = new Node();
+        boolean hasPrevious;
+
+        Level(boolean leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    private final SqlJetBtree btree;
+    private final SqlJetBtreeShared pBt;
+    private final int pgnoRoot;
+    private final boolean intKey;
+    private final List<Level> levels = new ArrayList<Level>();
+    private final ISqlJetMemoryPointer pCell;
+    private final ISqlJetMemoryPointer pLastKey = SqlJetUtility.allocatePtr(9);
+
+    private SqlJetMemPage pRoot;
+    private long lastKey;
+    private long count;
+    private int lastPgno;
+    private boolean finished;
+
+    SqlJetBtreeBuilder(SqlJetBtree btree, int pgnoRoot) throws SqlJetException {
+        this.btree = btree;
+        this.pBt = btree.pBt;
+        this.pgnoRoot = pgnoRoot;
+        assert (pBt.mutex.held());
+        pRoot = pBt.getAndInitPage(pgnoRoot);
+        if (pRoot.nCell != 0 || !pRoot.leaf) {
+            SqlJetMemPage.releasePage(pRoot);
+            pRoot = null;
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Builder requires empty b-tree");
+        }
+        intKey = pRoot.intKey;
+        pCell = SqlJetUtility.allocatePtr(pBt.MX_CELL_SIZE());
+        lastPgno = pgnoRoot;
+        levels.add(new Level(true));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder#append(org.tmatesoft
+     * .sqljet.core.internal.ISqlJetMemoryPointer, long,
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer, int, int)
+     */
+    public void append(ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData, int nData, int nZero)
+            throws SqlJetException {
+        btree.enter();
+        try {
+            if (pRoot == null || finished) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE, "Builder is closed");
+            }
+            if (intKey && count > 0 && nKey <= lastKey) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE, "Keys are not appended in ascending order");
+            }
+
+            /* Leaf pages have the same layout as root, so it creates cells. */
+            final int size = pRoot.fillInCell(pCell, pKey, nKey, pData, nData, nZero);
+            final Level leaves = levels.get(0);
+            if (!leaves.current.fits(true, size)) {
+                if (intKey) {
+                    split(0, pLastKey, putVarint(pLastKey, lastKey));
+                } else {
+                    split(0, pCell, size);
+                    lastKey = nKey;
+                    count++;
+                    return;
+                }
+            }
+            addCell(0, pCell, size);
+            lastKey = nKey;
+            count++;
+        } finally {
+            btree.leave();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder#getCount()
+     */
+    public long getCount() {
+        return count;
+    }
+
+    private Level getLevel(int level) {
+        if (levels.size() == level) {
+            levels.add(new Level(false));
+        }
+        return levels.get(level);
+    }
+
+    /**
+     * Current node of level becomes previous one and separator is kept until
+     * previous node is written.
+     */
+    private void split(int level, ISqlJetMemoryPointer separator, int size) {
+        final Level l = levels.get(level);
+        assert (!l.hasPrevious);
+        final Node n = l.previous;
+        l.previous = l.current;
+        l.current = n;
+        l.current.reset();
+        l.hasPrevious = true;
+        memcpy(l.separator, separator, size);
+        l.separatorSize = size;
+    }
+
+    private void addCell(int level, ISqlJetMemoryPointer cell, int size) throws SqlJetException {
+        final Level l = levels.get(level);
+        if (l.hasPrevious) {
+            writePrevious(level);
+        }
+        l.current.add(cell, size);
+    }
+
+    private void addChild(int level, int pgno) {
+        final Level l = getLevel(level);
+        assert (l.current.rightChild == 0);
+        l.current.rightChild = pgno;
+    }
+
+    private void addSeparator(int level, ISqlJetMemoryPointer separator, int size) throws SqlJetException {
+        final Level l = levels.get(level);
+        assert (l.current.rightChild != 0);
+        if (l.current.fits(false, size + 4)) {
+            put4byte(l.cell, l.current.rightChild);
+            memcpy(l.cell.getMoved(4), separator, size);
+            addCell(level, l.cell, size + 4);
+            l.current.rightChild = 0;
+        } else {
+            split(level, separator, size);
+        }
+    }
+
+    private void writePrevious(int level) throws SqlJetException {
+        final Level l = levels.get(level);
+        assert (l.hasPrevious);
+        final int pgno = writePage(l.leaf, l.previous);
+        l.previous.reset();
+        l.hasPrevious = false;
+        addChild(level + 1, pgno);
+        addSeparator(level + 1, l.separator, l.separatorSize);
+    }
+
+    private int getFlags(boolean leaf) {
+        final int flags = intKey ? SqlJetMemPage.PTF_INTKEY | SqlJetMemPage.PTF_LEAFDATA : SqlJetMemPage.PTF_ZERODATA;
+        return leaf ? flags | SqlJetMemPage.PTF_LEAF : flags;
+    }
+
+    private void fillPage(SqlJetMemPage page, boolean leaf, Node node) throws SqlJetException {
+        page.zeroPage(getFlags(leaf));
+        page.assemblePage(node.nCell, node.cells, 0, node.sizes, 0);
+        if (!leaf) {
+            put4byte(page.aData, page.hdrOffset + 8, node.rightChild);
+        }
+        if (pBt.autoVacuum) {
+            page.setChildPtrmaps();
+        }
+    }
+
+    private int writePage(boolean leaf, Node node) throws SqlJetException {
+        assert (node.nCell > 0);
+        final int[] pgno = { 0 };
+        final SqlJetMemPage page = pBt.allocatePage(pgno, lastPgno, false);
+        try {
+            assert (page.pDbPage.isWriteable());
+            fillPage(page, leaf, node);
+        } finally {
+            SqlJetMemPage.releasePage(page);
+        }
+        lastPgno = pgno[0];
+        return pgno[0];
+    }
+
+    /**
+     * Last node of level is empty, it takes last cell of previous node.
+     */
+    private void rebalance(int level) {
+        final Level l = levels.get(level);
+        final Node previous = l.previous;
+        final Node current = l.current;
+        assert (l.hasPrevious && current.nCell == 0 && previous.nCell > 1);
+        final int last = previous.nCell - 1;
+        final ISqlJetMemoryPointer lastCell = previous.cells[last];
+        final int lastSize = previous.sizes[last];
+        if (l.leaf) {
+            assert (!intKey);
+            current.add(l.separator, l.separatorSize);
+            memcpy(l.separator, lastCell, lastSize);
+            l.separatorSize = lastSize;
+        } else {
+            put4byte(l.cell, previous.rightChild);
+            memcpy(l.cell.getMoved(4), l.separator, l.separatorSize);
+            current.add(l.cell, l.separatorSize + 4);
+            previous.rightChild = get4byte(lastCell);
+            memcpy(l.separator, lastCell.getMoved(4), lastSize - 4);
+            l.separatorSize = lastSize - 4;
+        }
+        previous.removeLast();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder#finish()
+     */
+    public void finish() throws SqlJetException {
+        btree.enter();
+        try {
+            if (pRoot == null || finished) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE, "Builder is closed");
+            }
+            for (int level = 0;; level++) {
+                final Level l = levels.get(level);
+                if (!l.hasPrevious && level == levels.size() - 1) {
+                    pBt.saveAllCursors(pgnoRoot, null);
+                    pRoot.pDbPage.write();
+                    fillPage(pRoot, l.leaf, l.current);
+                    break;
+                }
+                if (l.current.nCell == 0) {
+                    rebalance(level);
+                }
+                if (l.hasPrevious) {
+                    writePrevious(level);
+                }
+                addChild(level + 1, writePage(l.leaf, l.current));
+                l.current.reset();
+            }
+            finished = true;
+        } finally {
+            btree.leave();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder#close()
+     */
+    public void close() throws SqlJetException {
+        btree.enter();
+        try {
+            if (pRoot != null) {
+                SqlJetMemPage.releasePage(pRoot);
+                pRoot = null;
+            }
+            levels.clear();
+        } finally {
+            btree.leave();
+        }
+    }
+
+}
@@ -128,6 +128,9 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
     /** Current index in apPage[i] */
     int[] aiIdx = new int[BTCURSOR_MAX_DEPTH];
 
+    /** Number of available bytes of payload, reused by moveTo() */
+    private final int[] nAvailable = new int[1];
+
     /**
      * Potential values for BtCursor.eState.
      *
@@ -242,11 +245,13 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
             this.pBtree = btree;
             this.pBt = pBt;
             this.wrFlag = wrFlag;
-            this.pNext = pBt.pCursor;
-            if (this.pNext != null) {
-                this.pNext.pPrev = this;
+            synchronized (pBt) {
+                this.pNext = pBt.pCursor;
+                if (this.pNext != null) {
+                    this.pNext.pPrev = this;
+                }
+                pBt.pCursor = this;
             }
-            pBt.pCursor = this;
             this.eState = CursorState.INVALID;
 
         } catch (SqlJetException e) {
@@ -295,13 +300,15 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
             try {
                 pBt.db = pBtree.db;
                 clearCursor();
-                if (pPrev != null) {
-                    pPrev.pNext = pNext;
-                } else {
-                    pBt.pCursor = pNext;
-                }
-                if (pNext != null) {
-                    pNext.pPrev = pPrev;
+                synchronized (pBt) {
+                    if (pPrev != null) {
+                        pPrev.pNext = pNext;
+                    } else {
+                        pBt.pCursor = pNext;
+                    }
+                    if (pNext != null) {
+                        pNext.pPrev = pPrev;
+                    }
                 }
                 for (i = 0; i <= iPage; i++) {
                     SqlJetMemPage.releasePage(apPage[i]);
@@ -394,6 +401,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
         this.info.nSize = 0;
         this.atLast = false;
         this.validNKey = false;
+        invalidateOverflowCache();
 
         if (pRoot.nCell == 0 && !pRoot.leaf) {
             int subpage;
@@ -444,7 +452,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
      */
     private void getCellInfo() {
         if (this.info.nSize == 0) {
-            this.info = this.apPage[iPage].parseCell(this.aiIdx[iPage]);
+            this.apPage[iPage].parseCell(this.aiIdx[iPage], this.info);
             this.validNKey = true;
         }
     }
@@ -555,44 +563,42 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
             }
             for (;;) {
                 ISqlJetMemoryPointer pCellKey;
-                long[] nCellKey = new long[1];
+                long nCellKey;
                 int idx = this.aiIdx[this.iPage];
                 this.info.nSize = 0;
                 this.validNKey = true;
                 if (pPage.intKey) {
-                    ISqlJetMemoryPointer pCell;
-                    pCell = SqlJetUtility.pointer(pPage.findCell(idx), pPage.childPtrSize);
+                    /* read the key in place, without pointers to the cell */
+                    int pCell = pPage.findCellOffset(idx) + pPage.childPtrSize;
                     if (pPage.hasData) {
-                        int[] dummy = new int[1];
-                        SqlJetUtility.movePtr(pCell, SqlJetUtility.getVarint32(pCell, dummy));
+                        pCell += SqlJetUtility.getVarintLength(pPage.aData, pCell);
                     }
-                    SqlJetUtility.getVarint(pCell, nCellKey);
-                    if (nCellKey[0] == intKey) {
+                    nCellKey = SqlJetUtility.getVarintValue(pPage.aData, pCell);
+                    if (nCellKey == intKey) {
                         c = 0;
-                    } else if (nCellKey[0] < intKey) {
+                    } else if (nCellKey < intKey) {
                         c = -1;
                     } else {
-                        assert (nCellKey[0] > intKey);
+                        assert (nCellKey > intKey);
                         c = +1;
                     }
                 } else {
-                    int[] available = new int[1];
-                    pCellKey = this.fetchPayload(available, false);
-                    nCellKey[0] = this.info.nKey;
-                    if (available[0] >= nCellKey[0]) {
-                        c = pIdxKey.recordCompare((int) nCellKey[0], pCellKey);
+                    pCellKey = this.fetchPayload(this.nAvailable, false);
+                    nCellKey = this.info.nKey;
+                    if (this.nAvailable[0] >= nCellKey) {
+                        c = pIdxKey.recordCompare((int) nCellKey, pCellKey);
                     } else {
-                        pCellKey = SqlJetUtility.allocatePtr((int) nCellKey[0]);
+                        pCellKey = SqlJetUtility.allocatePtr((int) nCellKey);
                         try {
-                            this.key(0, (int) nCellKey[0], pCellKey);
+                            this.key(0, (int) nCellKey, pCellKey);
                         } finally {
-                            c = pIdxKey.recordCompare((int) nCellKey[0], pCellKey);
+                            c = pIdxKey.recordCompare((int) nCellKey, pCellKey);
                             // sqlite3_free(pCellKey);
                         }
                     }
                 }
                 if (c == 0) {
-                    this.info.nKey = nCellKey[0];
+                    this.info.nKey = nCellKey;
                     if (pPage.intKey && !pPage.leaf) {
                         lwr = idx;
                         upr = lwr - 1;
@@ -607,7 +613,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
                     upr = idx - 1;
                 }
                 if (lwr > upr) {
-                    this.info.nKey = nCellKey[0];
+                    this.info.nKey = nCellKey;
                     break;
                 }
                 this.aiIdx[this.iPage] = (int) ((lwr + upr) / 2);
@@ -619,7 +625,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
             } else if (lwr >= pPage.nCell) {
                 chldPg = SqlJetUtility.get4byte(pPage.aData, pPage.hdrOffset + 8);
             } else {
-                chldPg = SqlJetUtility.get4byte(pPage.findCell(lwr));
+                chldPg = SqlJetUtility.get4byte(pPage.aData, pPage.findCellOffset(lwr));
             }
             if (chldPg == 0) {
                 assert (this.aiIdx[this.iPage] < this.apPage[this.iPage].nCell);
@@ -733,6 +739,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
     	  ** entry and finally remove the cell itself from within the page.
     	  */
     	  pBt.saveAllCursors(pCur.pgnoRoot, pCur);
+    	  pCur.invalidateOverflowCache();
     	  pPage.pDbPage.write();
     	  pPage.clearCell(pCell);
     	  pPage.dropCell(iCellIdx, pPage.cellSizePtr(pCell));
@@ -1785,6 +1792,7 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
          * optimizations, it is important not to clear the cursor here.
          */
         pBt.saveAllCursors(pCur.pgnoRoot, pCur);
+        pCur.invalidateOverflowCache();
         loc = pCur.moveTo(pKey, nKey, bias);
         assert (pCur.eState == CursorState.VALID || (pCur.eState == CursorState.INVALID && loc != 0));
 
@@ -2177,11 +2185,13 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
      * reads or writes bytes from the payload area. Data might appear on the
      * main page or be scattered out on multiple overflow pages.
      *
-     * If the BtCursor.isIncrblobHandle flag is set, and the current cursor
-     * entry uses one or more overflow pages, this function allocates space for
-     * and lazily popluates the overflow page-list cache array
-     * (BtCursor.aOverflow). Subsequent calls use this cache to make seeking to
-     * the supplied offset more efficient.
+     * If the current cursor entry uses one or more overflow pages, this
+     * function allocates space for and lazily popluates the overflow page-list
+     * cache array (BtCursor.aOverflow). Subsequent calls use this cache to make
+     * seeking to the supplied offset more efficient, so reading of some field
+     * of a large record reads only the overflow pages which hold that field.
+     * The cache belongs to the entry whose first overflow page is stored in
+     * aOverflow[0], it is dropped when the cursor moves to other entry.
      *
      * Once an overflow page-list cache has been allocated, it may be
      * invalidated if some other cursor writes to the same table, or if the
@@ -2261,27 +2271,29 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
             nextPage = get4byte(aPayload, pCur.info.nLocal);
 
             /*
-             * If the isIncrblobHandle flag is set and the BtCursor.aOverflow[]*
-             * has not been allocated, allocate it now. The array is sized at*
-             * one entry for each overflow page in the overflow chain. The* page
-             * number of the first overflow page is stored in aOverflow[0],*
-             * etc. A value of 0 in the aOverflow[] array means "not yet known"*
-             * (the cache is lazily populated).
+             * If the BtCursor.aOverflow[] has not been allocated for this entry,
+             * allocate it now. The array is sized at one entry for each
+             * overflow page in the overflow chain. The page number of the first
+             * overflow page is stored in aOverflow[0], etc. A value of 0 in the
+             * aOverflow[] array means "not yet known" (the cache is lazily
+             * populated).
              */
-            if (pCur.isIncrblobHandle && pCur.aOverflow == null) {
-                int nOvfl = (pCur.info.nPayload - pCur.info.nLocal + ovflSize - 1) / ovflSize;
+            int nOvfl = (pCur.info.nPayload - pCur.info.nLocal + ovflSize - 1) / ovflSize;
+            if (pCur.aOverflow == null || pCur.aOverflow.length != nOvfl || pCur.aOverflow[0] != nextPage) {
                 pCur.aOverflow = new int[nOvfl];
             }
 
             /*
-             * If the overflow page-list cache has been allocated and the* entry
-             * for the first required overflow page is valid, skip* directly to
-             * it.
+             * Skip directly to the nearest overflow page before the first
+             * required one which is known from the overflow page-list cache.
              */
-            if (pCur.aOverflow != null && pCur.aOverflow[offset / ovflSize] != 0) {
-                iIdx = (offset / ovflSize);
-                nextPage = pCur.aOverflow[iIdx];
-                offset = (offset % ovflSize);
+            for (int i = offset / ovflSize; i > 0; i--) {
+                if (pCur.aOverflow[i] != 0) {
+                    iIdx = i;
+                    nextPage = pCur.aOverflow[iIdx];
+                    offset -= i * ovflSize;
+                    break;
+                }
             }
 
             for (; amt > 0 && nextPage != 0; iIdx++) {
@@ -2492,7 +2504,6 @@ public class SqlJetBtreeCursor extends SqlJetCloneable implements ISqlJetBtreeCu
         assert (cursorHoldsMutex(this));
         assert (mutex_held(pBtree.db.getMutex()));
         assert (!isIncrblobHandle);
-        assert (aOverflow == null);
         isIncrblobHandle = true;
     }
 
@@ -305,15 +305,18 @@ public class SqlJetBtreeShared {
      * layer.
      */
     private SqlJetMemPage pageFromDbPage(ISqlJetPage pDbPage, int pgno) {
-        if (null == pDbPage.getExtra())
-            pDbPage.setExtra(new SqlJetMemPage());
-        SqlJetMemPage pPage = (SqlJetMemPage) pDbPage.getExtra();
-        pPage.aData = pDbPage.getData();
-        pPage.pDbPage = pDbPage;
-        pPage.pBt = this;
-        pPage.pgno = pgno;
-        pPage.hdrOffset = (byte) (pPage.pgno == 1 ? 100 : 0);
-        return pPage;
+        /* concurrent readers could get the same page */
+        synchronized (pDbPage) {
+            if (null == pDbPage.getExtra())
+                pDbPage.setExtra(new SqlJetMemPage());
+            SqlJetMemPage pPage = (SqlJetMemPage) pDbPage.getExtra();
+            pPage.aData = pDbPage.getData();
+            pPage.pDbPage = pDbPage;
+            pPage.pBt = this;
+            pPage.pgno = pgno;
+            pPage.hdrOffset = (byte) (pPage.pgno == 1 ? 100 : 0);
+            return pPage;
+        }
     }
 
     /**
@@ -981,8 +984,14 @@ public class SqlJetBtreeShared {
                 }
                 pPage = getPage(pgno, false);
             }
-            if (!pPage.isInit) {
-                pPage.initPage();
+            /*
+             * Concurrent readers could get the same page, so it is initialized
+             * under lock of that page.
+             */
+            synchronized (pPage.pDbPage) {
+                if (!pPage.isInit) {
+                    pPage.initPage();
+                }
             }
         } catch (SqlJetException e) {
             SqlJetMemPage.releasePage(pPage);
@@ -19,8 +19,9 @@ package org.tmatesoft.sqljet.core.internal.btree;
 
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.get2byte;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.get4byte;
-import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarint;
-import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarint32;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarint32Value;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarintLength;
+import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.getVarintValue;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.memcpy;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.memset;
 import static org.tmatesoft.sqljet.core.internal.SqlJetUtility.movePtr;
@@ -169,6 +170,7 @@ public class SqlJetMemPage extends SqlJetCloneable {
         assert (hdrOffset == (pgno == 1 ? 100 : 0));
         assert (pBt.mutex.held());
         leaf = (flagByte >> 3) > 0;
+        pDbPage.setPriority(!leaf);
         flagByte &= ~PTF_LEAF;
         childPtrSize = (byte) (4 - 4 * (leaf ? 1 : 0));
         if (flagByte == (PTF_LEAFDATA | PTF_INTKEY)) {
@@ -381,7 +383,15 @@ public class SqlJetMemPage extends SqlJetCloneable {
      * This routine works only for pages that do not contain overflow cells.
      */
     public ISqlJetMemoryPointer findCell(int i) {
-        return pointer(aData, maskPage & get2byte(aData, cellOffset + 2 * i));
+        return pointer(aData, findCellOffset(i));
+    }
+
+    /**
+     * Offset of the i-th cell content from start of {@link #aData}, see
+     * {@link #findCell(int)}.
+     */
+    int findCellOffset(int i) {
+        return maskPage & get2byte(aData, cellOffset + 2 * i);
     }
 
     /**
@@ -411,41 +421,56 @@ public class SqlJetMemPage extends SqlJetCloneable {
      * @return
      */
     SqlJetBtreeCellInfo parseCellPtr(ISqlJetMemoryPointer pCell) {
+        final SqlJetBtreeCellInfo pInfo = new SqlJetBtreeCellInfo();
+        parseCellPtr(pCell, pInfo);
+        return pInfo;
+    }
+
+    /**
+     * Parse a cell content block into given CellInfo structure, which allows
+     * to parse cells without allocations.
+     *
+     * @param pCell
+     *            Pointer to the cell text.
+     * @param pInfo
+     *            Fill this structure.
+     */
+    void parseCellPtr(ISqlJetMemoryPointer pCell, SqlJetBtreeCellInfo pInfo) {
 
         int n; /* Number bytes in cell content header */
-        int[] nPayload = new int[1]; /* Number of bytes of cell payload */
+        int nPayload; /* Number of bytes of cell payload */
 
         assert (pBt.mutex.held());
 
-        SqlJetBtreeCellInfo pInfo = new SqlJetBtreeCellInfo();
         pInfo.pCell = pCell;
         n = childPtrSize;
         assert (n == 4 - 4 * (leaf ? 1 : 0));
         if (intKey) {
             if (hasData) {
-                n += getVarint32(pCell, n, nPayload);
+                nPayload = getVarint32Value(pCell, n);
+                n += getVarintLength(pCell, n);
             } else {
-                nPayload[0] = 0;
+                nPayload = 0;
             }
-            long[] pInfo_nKey = new long[1];
-            n += getVarint(pCell, n, pInfo_nKey);
-            pInfo.nKey = pInfo_nKey[0];
-            pInfo.nData = nPayload[0];
+            pInfo.nKey = getVarintValue(pCell, n);
+            n += getVarintLength(pCell, n);
+            pInfo.nData = nPayload;
         } else {
             pInfo.nData = 0;
-            n += getVarint32(pCell, n, nPayload);
-            pInfo.nKey = nPayload[0];
+            nPayload = getVarint32Value(pCell, n);
+            n += getVarintLength(pCell, n);
+            pInfo.nKey = nPayload;
         }
-        pInfo.nPayload = nPayload[0];
+        pInfo.nPayload = nPayload;
         pInfo.nHeader = n;
-        if (nPayload[0] <= this.maxLocal) {
+        if (nPayload <= this.maxLocal) {
             /*
              * This is the (easy) common case where the entire payload fits on
              * the local page. No overflow is required.
              */
             int nSize; /* Total size of cell content in bytes */
-            nSize = nPayload[0] + n;
-            pInfo.nLocal = nPayload[0];
+            nSize = nPayload + n;
+            pInfo.nLocal = nPayload;
             pInfo.iOverflow = 0;
             if ((nSize & ~3) == 0) {
                 nSize = 4; /* Minimum cell size is 4 */
@@ -468,7 +493,7 @@ public class SqlJetMemPage extends SqlJetCloneable {
 
             minLocal = this.minLocal;
             maxLocal = this.maxLocal;
-            surplus = minLocal + (nPayload[0] - minLocal) % (pBt.usableSize - 4);
+            surplus = minLocal + (nPayload - minLocal) % (pBt.usableSize - 4);
             if (surplus <= maxLocal) {
                 pInfo.nLocal = surplus;
             } else {
@@ -478,8 +503,6 @@ public class SqlJetMemPage extends SqlJetCloneable {
             pInfo.nSize = pInfo.iOverflow + 4;
         }
 
-        return pInfo;
-
     }
 
     /**
@@ -491,6 +514,26 @@ public class SqlJetMemPage extends SqlJetCloneable {
         return parseCellPtr(findCell(iCell));
     }
 
+    /**
+     * Parse the cell into given CellInfo structure. Pointer to the cell which
+     * is kept in the structure is moved to the cell, so cursor which reuses
+     * the structure doesn't allocate anything to parse cells of its page.
+     *
+     * @param iCell
+     *            The cell index. First cell is 0
+     * @param pInfo
+     *            Fill this structure.
+     */
+    void parseCell(int iCell, SqlJetBtreeCellInfo pInfo) {
+        final int pc = findCellOffset(iCell);
+        if (pInfo.pCell != null && pInfo.pCell.getBuffer() == aData.getBuffer()) {
+            pInfo.pCell.setPointer(aData.getAbsolute(pc));
+            parseCellPtr(pInfo.pCell, pInfo);
+        } else {
+            parseCellPtr(pointer(aData, pc), pInfo);
+        }
+    }
+
     /**
      * Set up a raw page so that it looks like a database page holding no
      * entries.
@@ -664,51 +707,45 @@ public class SqlJetMemPage extends SqlJetCloneable {
 
 		final SqlJetMemPage pPage = this;
 
-		final ISqlJetMemoryPointer pIter = pCell.getMoved(pPage.childPtrSize);
-		int[] nSize = { 0 };
+		int n = pPage.childPtrSize;
+		int nSize;
 
 		if (pPage.intKey) {
 			if (pPage.hasData) {
-				pIter.movePointer(SqlJetUtility.getVarint32(pIter, nSize));
+				nSize = getVarint32Value(pCell, n);
+				n += getVarintLength(pCell, n);
 			} else {
-				nSize[0] = 0;
+				nSize = 0;
 			}
 
 			/*
-			 * pIter now points at the 64-bit integer key value, a variable
-			 * length* integer. The following block moves pIter to point at the
-			 * first byte* past the end of the key value.
+			 * n now points at the 64-bit integer key value, a variable length
+			 * integer. Move n to point at the first byte past the end of the
+			 * key value.
 			 */
-			int pEnd = pIter.getPointer() + 9;
-			// while( (*pIter++)&0x80 && pIter<pEnd );
-			while (pIter.getPointer() < pEnd) {
-				int b = pIter.getByteUnsigned();
-				pIter.movePointer(1);
-				if ((b & 0x80) == 0) {
-					break;
-				}
-			}
+			n += getVarintLength(pCell, n);
 		} else {
-			pIter.movePointer(SqlJetUtility.getVarint32(pIter, nSize));
+			nSize = getVarint32Value(pCell, n);
+			n += getVarintLength(pCell, n);
 		}
 
-		if (nSize[0] > pPage.maxLocal) {
+		if (nSize > pPage.maxLocal) {
 			int minLocal = pPage.minLocal;
-			nSize[0] = minLocal + (nSize[0] - minLocal)
+			nSize = minLocal + (nSize - minLocal)
 					% (pPage.pBt.usableSize - 4);
-			if (nSize[0] > pPage.maxLocal) {
-				nSize[0] = minLocal;
+			if (nSize > pPage.maxLocal) {
+				nSize = minLocal;
 			}
-			nSize[0] += 4;
+			nSize += 4;
 		}
-		nSize[0] += (pIter.getPointer() - pCell.getPointer());
+		nSize += n;
 
 		/* The minimum size of any cell is 4 bytes. */
-		if (nSize[0] < 4) {
-			nSize[0] = 4;
+		if (nSize < 4) {
+			nSize = 4;
 		}
 
-		return nSize[0];
+		return nSize;
 	}
 
 
@@ -1348,12 +1385,12 @@ public class SqlJetMemPage extends SqlJetCloneable {
                     n = nSrc;
                 assert (pSrc != null);
                 memcpy(pPayload, pSrc, n);
+                pSrc = pointer(pSrc, n);
             } else {
                 memset(pPayload, (byte) 0, n);
             }
             nPayload -= n;
             movePtr(pPayload, n);
-            pSrc = pointer(pSrc, n);
             nSrc -= n;
             spaceLeft -= n;
             if (nSrc == 0) {
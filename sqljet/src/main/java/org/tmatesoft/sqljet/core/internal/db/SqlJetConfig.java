@@ -30,6 +30,9 @@ public class SqlJetConfig implements ISqlJetConfig {
     private static final String SQLJET_SYNCHRONIZED_THREADING = "SQLJET_SYNCHRONIZED_THREADING";
     private boolean synchronizedThreading = SqlJetUtility.getBoolSysProp(SQLJET_SYNCHRONIZED_THREADING, true);
 
+    private static final String SQLJET_CONCURRENT_READERS = "SQLJET_CONCURRENT_READERS";
+    private boolean concurrentReaders = SqlJetUtility.getBoolSysProp(SQLJET_CONCURRENT_READERS, true);
+
     private static final String SQLJET_SHARED_CACHE = "SQLJET_SHARED_CACHE";
     private boolean sharedCacheEnabled = SqlJetUtility.getBoolSysProp(SQLJET_SHARED_CACHE, false);
 
@@ -49,4 +52,14 @@ public class SqlJetConfig implements ISqlJetConfig {
         return synchronizedThreading;
     }
 
+    /**
+     * Concurrent readers are disabled in shared cache mode: btrees which share
+     * cache count their locks of shared structure without synchronization.
+     *
+     * @return the concurrentReaders
+     */
+    public boolean isConcurrentReaders() {
+        return concurrentReaders && !sharedCacheEnabled;
+    }
+
 }
@@ -31,6 +31,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
 import org.tmatesoft.sqljet.core.internal.mutex.SqlJetEmptyMutex;
 import org.tmatesoft.sqljet.core.internal.mutex.SqlJetMutex;
+import org.tmatesoft.sqljet.core.internal.mutex.SqlJetReadWriteMutex;
 import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
 import org.tmatesoft.sqljet.core.table.ISqlJetOptions;
 
@@ -51,7 +52,7 @@ public class SqlJetDbHandle implements ISqlJetDbHandle {
 
     public SqlJetDbHandle() {
         if (config.isSynchronizedThreading()) {
-            mutex = new SqlJetMutex();
+            mutex = config.isConcurrentReaders() ? new SqlJetReadWriteMutex() : new SqlJetMutex();
         }
     }
 
@@ -0,0 +1,798 @@
+/**
+ * SqlJetCompressedFile.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.fs;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetIOErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetIOException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetDeviceCharacteristics;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
+import org.tmatesoft.sqljet.core.internal.SqlJetSyncFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Database file which is stored compressed in file of underlying file system.
+ *
+ * Logical content of file is split into blocks of fixed size, every block is
+ * compressed with Deflate and stored in its own extent of 512-byte sectors.
+ * Blocks which don't shrink are stored as is, blocks of zeros aren't stored
+ * at all. Block map lives in its own extent, it is referenced from header
+ * which is written alternately to one of two slots at start of file:
+ *
+ * <pre>
+ * sector 0, 1      headers: magic, version, block size, generation,
+ *                  logical size, map sector, map length, map CRC, header CRC
+ * sector 2...      extents of blocks and of the map
+ * </pre>
+ *
+ * Changed blocks are always written to newly allocated extents. Extents which
+ * were released are reused only after header which doesn't reference them is
+ * synced, so after crash file always has the state of last successful
+ * {@link #sync(Set)}, which is what rollback journal and WAL rely on.
+ *
+ * State of file is shared by all instances which are opened on the same path
+ * in this JVM. Changing of compressed file by other processes is not
+ * supported.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetCompressedFile implements ISqlJetFile {
+
+    /**
+     * Deflate level which is used to compress blocks, from 1 (fastest) to 9
+     * (best compression).
+     */
+    public static final String SQLJET_COMPRESSION_LEVEL = "SQLJET.COMPRESSION_LEVEL";
+
+    public static final int COMPRESSION_LEVEL_DEFAULT = Deflater.BEST_SPEED;
+
+    /** Size of uncompressed block in new files */
+    static final int BLOCK_SIZE = 8192;
+
+    /** Unit of space allocation in underlying file */
+    static final int SECTOR_SIZE = 512;
+
+    private static final int HEADER_SECTORS = 2;
+    private static final int HEADER_SIZE = 48;
+    private static final int VERSION = 1;
+    private static final byte[] MAGIC = { 'S', 'Q', 'L', 'J', 'E', 'T', 'Z', '1' };
+
+    /** Number of uncompressed blocks which are cached by every file */
+    private static final int CACHE_BLOCKS = 16;
+
+    private static final Set<SqlJetDeviceCharacteristics> noDeviceCharacteristics = SqlJetUtility
+            .noneOf(SqlJetDeviceCharacteristics.class);
+
+    private static final Map<String, Volume> volumes = new HashMap<String, Volume>();
+
+    private final ISqlJetFile file;
+    private final String path;
+    private Volume volume;
+
+    /**
+     * @param file
+     *            underlying file which stores compressed content.
+     * @param path
+     *            full path of file, which identifies shared state.
+     * @throws SqlJetException
+     *             if file isn't compressed database file.
+     */
+    SqlJetCompressedFile(final ISqlJetFile file, final String path) throws SqlJetException {
+        this.file = file;
+        this.path = path;
+        synchronized (volumes) {
+            Volume v = volumes.get(path);
+            if (null == v) {
+                v = new Volume(SqlJetUtility.getIntSysProp(SQLJET_COMPRESSION_LEVEL, COMPRESSION_LEVEL_DEFAULT));
+                v.load(file);
+                volumes.put(path, v);
+            }
+            v.refs++;
+            volume = v;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#getFileType()
+     */
+    public SqlJetFileType getFileType() {
+        return file.getFileType();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#getPermissions()
+     */
+    public Set<SqlJetFileOpenPermission> getPermissions() {
+        return file.getPermissions();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#close()
+     */
+    public void close() throws SqlJetException {
+        if (null == volume) {
+            return;
+        }
+        try {
+            volume.close(file);
+        } finally {
+            synchronized (volumes) {
+                if (--volume.refs == 0) {
+                    volumes.remove(path);
+                }
+            }
+            volume = null;
+            file.close();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFile#read(org.tmatesoft.sqljet
+     * .core.internal.ISqlJetMemoryPointer, int, long)
+     */
+    public int read(final ISqlJetMemoryPointer buffer, final int amount, final long offset) throws SqlJetIOException {
+        assert (null != volume);
+        return volume.read(file, buffer, amount, offset);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFile#write(org.tmatesoft.sqljet
+     * .core.internal.ISqlJetMemoryPointer, int, long)
+     */
+    public void write(final ISqlJetMemoryPointer buffer, final int amount, final long offset) throws SqlJetIOException {
+        assert (null != volume);
+        volume.write(file, buffer, amount, offset);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFile#write(org.tmatesoft.sqljet
+     * .core.internal.ISqlJetMemoryPointer[], int[], int, long)
+     */
+    public void write(final ISqlJetMemoryPointer[] buffers, final int[] amounts, final int count, final long offset)
+            throws SqlJetIOException {
+        assert (null != volume);
+        long position = offset;
+        for (int i = 0; i < count; i++) {
+            volume.write(file, buffers[i], amounts[i], position);
+            position += amounts[i];
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#truncate(long)
+     */
+    public void truncate(final long size) throws SqlJetIOException {
+        assert (null != volume);
+        volume.truncate(file, size);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#sync(java.util.Set)
+     */
+    public void sync(final Set<SqlJetSyncFlags> syncFlags) throws SqlJetIOException {
+        assert (null != volume);
+        volume.sync(file, syncFlags);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#fileSize()
+     */
+    public long fileSize() throws SqlJetException {
+        assert (null != volume);
+        return volume.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFile#lock(org.tmatesoft.sqljet
+     * .core.internal.SqlJetLockType)
+     */
+    public boolean lock(final SqlJetLockType lockType) throws SqlJetIOException {
+        return file.lock(lockType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFile#unlock(org.tmatesoft.sqljet
+     * .core.internal.SqlJetLockType)
+     */
+    public boolean unlock(final SqlJetLockType lockType) throws SqlJetIOException {
+        return file.unlock(lockType);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#lockRegion(long,
+     * long, boolean)
+     */
+    public boolean lockRegion(final long position, final long size, final boolean shared) throws SqlJetIOException {
+        return file.lockRegion(position, size, shared);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#checkReservedLock()
+     */
+    public boolean checkReservedLock() {
+        return file.checkReservedLock();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#getLockType()
+     */
+    public SqlJetLockType getLockType() {
+        return file.getLockType();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#sectorSize()
+     */
+    public int sectorSize() {
+        return file.sectorSize();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#deviceCharacteristics()
+     */
+    public Set<SqlJetDeviceCharacteristics> deviceCharacteristics() {
+        return noDeviceCharacteristics;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#isMemJournal()
+     */
+    public boolean isMemJournal() {
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#getLockWaitQueue()
+     */
+    public SqlJetLockWaitQueue getLockWaitQueue() {
+        return file.getLockWaitQueue();
+    }
+
+    /**
+     * Uncompressed block.
+     */
+    private static final class Block {
+        final byte[] data;
+        boolean dirty;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+    }
+
+    /**
+     * State of compressed file shared by all its open instances. Underlying
+     * file to do input-output is passed to every method by caller.
+     */
+    private static final class Volume {
+
+        int refs;
+
+        private final Deflater deflater;
+        private final Inflater inflater = new Inflater();
+        private final CRC32 crc = new CRC32();
+
+        private int blockSize = BLOCK_SIZE;
+        private long size;
+        private long generation;
+
+        /** Extents of blocks, zero length means block of zeros */
+        private int[] sectors = new int[0];
+        private int[] lengths = new int[0];
+        private int blocks;
+
+        private int mapSector;
+        private int mapLength;
+
+        /** First sector after all used extents */
+        private int endSector = HEADER_SECTORS;
+
+        /** Free extents: first sector to number of sectors */
+        private final TreeMap<Integer, Integer> free = new TreeMap<Integer, Integer>();
+
+        /** Released extents which are still referenced by synced header */
+        private final List<int[]> pending = new ArrayList<int[]>();
+
+        /** Extents allocated after last sync, could be reused at once */
+        private final Set<Integer> fresh = new HashSet<Integer>();
+
+        private final LinkedHashMap<Integer, Block> cache = new LinkedHashMap<Integer, Block>(CACHE_BLOCKS * 2,
+                0.75f, true);
+
+        /** Whether content was changed after last sync */
+        private boolean changed;
+
+        /** File which has written dirty blocks */
+        private ISqlJetFile writer;
+
+        private byte[] packed = new byte[BLOCK_SIZE];
+        private ISqlJetMemoryPointer io;
+
+        Volume(int level) {
+            deflater = new Deflater(level);
+        }
+
+        synchronized long size() {
+            return size;
+        }
+
+        private static int sectors(int length) {
+            return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+        }
+
+        private ISqlJetMemoryPointer io(int length) {
+            if (null == io || io.remaining() < length) {
+                io = SqlJetUtility.allocatePtr(Math.max(length, blockSize));
+            }
+            return io;
+        }
+
+        private void readFully(ISqlJetFile file, byte[] bytes, int length, long offset) throws SqlJetIOException {
+            final ISqlJetMemoryPointer p = io(length);
+            if (file.read(p, length, offset) != length) {
+                throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_SHORT_READ);
+            }
+            p.getBytes(0, bytes, 0, length);
+        }
+
+        private void write(ISqlJetFile file, byte[] bytes, int length, long offset) throws SqlJetIOException {
+            final ISqlJetMemoryPointer p = io(length);
+            p.putBytes(0, bytes, 0, length);
+            file.write(p, length, offset);
+        }
+
+        private long checksum(byte[] bytes, int length) {
+            crc.reset();
+            crc.update(bytes, 0, length);
+            return crc.getValue();
+        }
+
+        /**
+         * Reads newest valid header and block map.
+         */
+        void load(ISqlJetFile file) throws SqlJetException {
+            if (file.fileSize() == 0) {
+                return;
+            }
+            final byte[] header = new byte[HEADER_SIZE];
+            ByteBuffer best = null;
+            for (int slot = 0; slot < HEADER_SECTORS; slot++) {
+                if (file.fileSize() < (long) slot * SECTOR_SIZE + HEADER_SIZE) {
+                    break;
+                }
+                readFully(file, header, HEADER_SIZE, (long) slot * SECTOR_SIZE);
+                final ByteBuffer h = ByteBuffer.wrap(header.clone());
+                final byte[] magic = new byte[MAGIC.length];
+                h.get(magic);
+                if (!Arrays.equals(MAGIC, magic) || h.getInt(HEADER_SIZE - 4) != (int) checksum(header, HEADER_SIZE - 4)
+                        || h.getInt(8) != VERSION) {
+                    continue;
+                }
+                if (null == best || h.getLong(16) > best.getLong(16)) {
+                    best = h;
+                }
+            }
+            if (null == best) {
+                throw new SqlJetException(SqlJetErrorCode.NOTADB);
+            }
+
+            blockSize = best.getInt(12);
+            generation = best.getLong(16);
+            size = best.getLong(24);
+            mapSector = best.getInt(32);
+            mapLength = best.getInt(36);
+            if (blockSize < SECTOR_SIZE || Integer.bitCount(blockSize) != 1 || size < 0 || mapLength < 0
+                    || mapLength % 8 != 0) {
+                throw new SqlJetException(SqlJetErrorCode.CORRUPT);
+            }
+
+            final byte[] map = new byte[mapLength];
+            if (mapLength > 0) {
+                readFully(file, map, mapLength, (long) mapSector * SECTOR_SIZE);
+                if (best.getInt(40) != (int) checksum(map, mapLength)) {
+                    throw new SqlJetException(SqlJetErrorCode.CORRUPT);
+                }
+            }
+            blocks = mapLength / 8;
+            sectors = new int[blocks];
+            lengths = new int[blocks];
+            final ByteBuffer m = ByteBuffer.wrap(map);
+            final TreeMap<Integer, Integer> used = new TreeMap<Integer, Integer>();
+            if (mapLength > 0) {
+                used.put(mapSector, sectors(mapLength));
+            }
+            for (int i = 0; i < blocks; i++) {
+                sectors[i] = m.getInt();
+                lengths[i] = m.getInt();
+                if (lengths[i] < 0 || lengths[i] > blockSize) {
+                    throw new SqlJetException(SqlJetErrorCode.CORRUPT);
+                }
+                if (lengths[i] > 0 && null != used.put(sectors[i], sectors(lengths[i]))) {
+                    throw new SqlJetException(SqlJetErrorCode.CORRUPT);
+                }
+            }
+
+            /* everything between used extents is free */
+            int next = HEADER_SECTORS;
+            for (final Map.Entry<Integer, Integer> extent : used.entrySet()) {
+                final int start = extent.getKey();
+                if (start < next) {
+                    throw new SqlJetException(SqlJetErrorCode.CORRUPT);
+                }
+                if (start > next) {
+                    free.put(next, start - next);
+                }
+                next = start + extent.getValue();
+            }
+            endSector = next;
+            packed = new byte[blockSize];
+        }
+
+        private int allocate(int count) {
+            for (final Map.Entry<Integer, Integer> extent : free.entrySet()) {
+                final int start = extent.getKey();
+                final int length = extent.getValue();
+                if (length >= count) {
+                    free.remove(start);
+                    if (length > count) {
+                        free.put(start + count, length - count);
+                    }
+                    fresh.add(start);
+                    return start;
+                }
+            }
+            final int start = endSector;
+            endSector += count;
+            fresh.add(start);
+            return start;
+        }
+
+        private void release(int start, int count) {
+            if (fresh.remove(start)) {
+                addFree(start, count);
+            } else {
+                pending.add(new int[] { start, count });
+            }
+        }
+
+        private void addFree(int start, int count) {
+            final SortedMap<Integer, Integer> before = free.headMap(start);
+            if (!before.isEmpty()) {
+                final int prev = before.lastKey();
+                final int prevCount = free.get(prev);
+                if (prev + prevCount == start) {
+                    free.remove(prev);
+                    start = prev;
+                    count += prevCount;
+                }
+            }
+            final Integer nextCount = free.remove(start + count);
+            if (null != nextCount) {
+                count += nextCount;
+            }
+            free.put(start, count);
+        }
+
+        private void ensureBlocks(int count) {
+            if (sectors.length < count) {
+                final int capacity = Math.max(count, sectors.length * 2);
+                final int[] s = new int[capacity];
+                final int[] l = new int[capacity];
+                System.arraycopy(sectors, 0, s, 0, blocks);
+                System.arraycopy(lengths, 0, l, 0, blocks);
+                sectors = s;
+                lengths = l;
+            }
+            if (blocks < count) {
+                blocks = count;
+            }
+        }
+
+        /**
+         * @return cached block, loading it unless whole block will be
+         *         overwritten.
+         */
+        private Block block(ISqlJetFile file, int index, boolean overwrite) throws SqlJetIOException {
+            Block block = cache.get(index);
+            if (null != block) {
+                return block;
+            }
+            block = new Block(blockSize);
+            if (!overwrite && index < blocks && lengths[index] > 0) {
+                final int length = lengths[index];
+                final long offset = (long) sectors[index] * SECTOR_SIZE;
+                if (length == blockSize) {
+                    readFully(file, block.data, length, offset);
+                } else {
+                    readFully(file, packed, length, offset);
+                    inflater.reset();
+                    inflater.setInput(packed, 0, length);
+                    try {
+                        if (inflater.inflate(block.data) != blockSize) {
+                            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_READ, "Corrupted compressed block");
+                        }
+                    } catch (DataFormatException e) {
+                        throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_READ, e);
+                    }
+                }
+            }
+            cache.put(index, block);
+            if (cache.size() > CACHE_BLOCKS) {
+                final Iterator<Map.Entry<Integer, Block>> i = cache.entrySet().iterator();
+                final Map.Entry<Integer, Block> eldest = i.next();
+                if (eldest.getValue().dirty) {
+                    flush(writer, eldest.getKey(), eldest.getValue());
+                }
+                i.remove();
+            }
+            return block;
+        }
+
+        private static boolean isZero(byte[] data) {
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Compresses block and writes it to new extent.
+         */
+        private void flush(ISqlJetFile file, int index, Block block) throws SqlJetIOException {
+            ensureBlocks(index + 1);
+            if (lengths[index] > 0) {
+                release(sectors[index], sectors(lengths[index]));
+            }
+            int length = 0;
+            byte[] bytes = block.data;
+            if (!isZero(block.data)) {
+                deflater.reset();
+                deflater.setInput(block.data);
+                deflater.finish();
+                final int n = deflater.deflate(packed);
+                if (deflater.finished() && sectors(n) < sectors(blockSize)) {
+                    length = n;
+                    bytes = packed;
+                } else {
+                    length = blockSize;
+                }
+            }
+            if (length > 0) {
+                sectors[index] = allocate(sectors(length));
+                write(file, bytes, length, (long) sectors[index] * SECTOR_SIZE);
+            } else {
+                sectors[index] = 0;
+            }
+            lengths[index] = length;
+            block.dirty = false;
+            changed = true;
+        }
+
+        synchronized int read(ISqlJetFile file, ISqlJetMemoryPointer buffer, int amount, long offset)
+                throws SqlJetIOException {
+            final int n = offset < size ? (int) Math.min(amount, size - offset) : 0;
+            int done = 0;
+            while (done < n) {
+                final long position = offset + done;
+                final int index = (int) (position / blockSize);
+                final int from = (int) (position % blockSize);
+                final int count = Math.min(n - done, blockSize - from);
+                buffer.putBytes(done, block(file, index, false).data, from, count);
+                done += count;
+            }
+            if (n < amount) {
+                buffer.getMoved(n).fill(amount - n, (byte) 0);
+            }
+            return n;
+        }
+
+        synchronized void write(ISqlJetFile file, ISqlJetMemoryPointer buffer, int amount, long offset)
+                throws SqlJetIOException {
+            writer = file;
+            int done = 0;
+            while (done < amount) {
+                final long position = offset + done;
+                final int index = (int) (position / blockSize);
+                final int from = (int) (position % blockSize);
+                final int count = Math.min(amount - done, blockSize - from);
+                final Block block = block(file, index, count == blockSize);
+                buffer.getBytes(done, block.data, from, count);
+                block.dirty = true;
+                done += count;
+            }
+            if (offset + amount > size) {
+                size = offset + amount;
+            }
+            changed = true;
+        }
+
+        synchronized void truncate(ISqlJetFile file, long newSize) throws SqlJetIOException {
+            writer = file;
+            final int keep = (int) ((newSize + blockSize - 1) / blockSize);
+            final int tail = (int) (newSize % blockSize);
+            if (newSize < size && tail != 0) {
+                final Block block = block(file, keep - 1, false);
+                Arrays.fill(block.data, tail, blockSize, (byte) 0);
+                block.dirty = true;
+            }
+            for (final Iterator<Integer> i = cache.keySet().iterator(); i.hasNext();) {
+                if (i.next() >= keep) {
+                    i.remove();
+                }
+            }
+            for (int index = keep; index < blocks; index++) {
+                if (lengths[index] > 0) {
+                    release(sectors[index], sectors(lengths[index]));
+                }
+            }
+            if (blocks > keep) {
+                blocks = keep;
+            }
+            size = newSize;
+            changed = true;
+        }
+
+        /**
+         * Writes dirty blocks, new map and new header, so that file gets new
+         * state atomically.
+         */
+        synchronized void sync(ISqlJetFile file, Set<SqlJetSyncFlags> syncFlags) throws SqlJetIOException {
+            if (!changed) {
+                file.sync(syncFlags);
+                return;
+            }
+            for (final Map.Entry<Integer, Block> entry : cache.entrySet()) {
+                if (entry.getValue().dirty) {
+                    flush(file, entry.getKey(), entry.getValue());
+                }
+            }
+
+            if (mapLength > 0) {
+                release(mapSector, sectors(mapLength));
+            }
+            mapLength = blocks * 8;
+            final byte[] map = new byte[mapLength];
+            final ByteBuffer m = ByteBuffer.wrap(map);
+            for (int i = 0; i < blocks; i++) {
+                m.putInt(sectors[i]);
+                m.putInt(lengths[i]);
+            }
+            if (mapLength > 0) {
+                mapSector = allocate(sectors(mapLength));
+                write(file, map, mapLength, (long) mapSector * SECTOR_SIZE);
+            } else {
+                mapSector = 0;
+            }
+            file.sync(syncFlags);
+
+            generation++;
+            final byte[] header = new byte[HEADER_SIZE];
+            final ByteBuffer h = ByteBuffer.wrap(header);
+            h.put(MAGIC);
+            h.putInt(VERSION);
+            h.putInt(blockSize);
+            h.putLong(generation);
+            h.putLong(size);
+            h.putInt(mapSector);
+            h.putInt(mapLength);
+            h.putInt((int) checksum(map, mapLength));
+            h.putInt((int) checksum(header, HEADER_SIZE - 4));
+            write(file, header, HEADER_SIZE, (generation % HEADER_SECTORS) * SECTOR_SIZE);
+            file.sync(syncFlags);
+
+            /* previous state isn't needed anymore */
+            for (final int[] extent : pending) {
+                addFree(extent[0], extent[1]);
+            }
+            pending.clear();
+            fresh.clear();
+            changed = false;
+
+            if (!free.isEmpty()) {
+                final int last = free.lastKey();
+                if (last + free.get(last) == endSector) {
+                    free.remove(last);
+                    endSector = last;
+                    file.truncate((long) endSector * SECTOR_SIZE);
+                }
+            }
+        }
+
+        synchronized void close(ISqlJetFile file) throws SqlJetIOException {
+            if (writer != file) {
+                return;
+            }
+            try {
+                if (changed) {
+                    sync(file, SqlJetUtility.of(SqlJetSyncFlags.NORMAL));
+                }
+            } finally {
+                writer = null;
+            }
+        }
+
+    }
+
+}
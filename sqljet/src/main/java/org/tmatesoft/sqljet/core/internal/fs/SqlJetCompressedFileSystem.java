@@ -0,0 +1,171 @@
+/**
+ * SqlJetCompressedFileSystem.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+
+/**
+ * File system which keeps main database files compressed.
+ *
+ * Database files are opened as {@link SqlJetCompressedFile} on top of files
+ * of underlying file system, all other files (journals, WAL, temporary files)
+ * are passed to underlying file system as is. It isn't registered by
+ * default: after it is registered in {@link SqlJetFileSystemsManager} (as
+ * non-default file system) database could be opened on compressed file by
+ * name {@link #FS_NAME}.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetCompressedFileSystem implements ISqlJetFileSystem {
+
+    public static final String FS_NAME = SqlJetCompressedFileSystem.class.getCanonicalName();
+
+    private final ISqlJetFileSystem fileSystem;
+
+    /**
+     * Compressed file system on top of default file system.
+     */
+    public SqlJetCompressedFileSystem() {
+        this(new SqlJetFileSystem());
+    }
+
+    /**
+     * @param fileSystem
+     *            underlying file system which stores compressed files.
+     */
+    public SqlJetCompressedFileSystem(final ISqlJetFileSystem fileSystem) {
+        assert (null != fileSystem);
+        this.fileSystem = fileSystem;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#getName()
+     */
+    public String getName() {
+        return FS_NAME;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#open(java.io.File,
+     * org.tmatesoft.sqljet.core.internal.SqlJetFileType, java.util.Set)
+     */
+    public ISqlJetFile open(final File path, final SqlJetFileType type, final Set<SqlJetFileOpenPermission> permissions)
+            throws SqlJetException {
+        final ISqlJetFile file = fileSystem.open(path, type, permissions);
+        if (SqlJetFileType.MAIN_DB != type || null == path) {
+            return file;
+        }
+        try {
+            return new SqlJetCompressedFile(file, fileSystem.getFullPath(path));
+        } catch (SqlJetException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#memJournalOpen()
+     */
+    public ISqlJetFile memJournalOpen() {
+        return fileSystem.memJournalOpen();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#delete(java.io.File,
+     * boolean)
+     */
+    public boolean delete(final File path, final boolean sync) throws SqlJetException {
+        return fileSystem.delete(path, sync);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#access(java.io.File,
+     * org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission)
+     */
+    public boolean access(final File path, final SqlJetFileAccesPermission permission) throws SqlJetException {
+        return fileSystem.access(path, permission);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#randomness(int)
+     */
+    public byte[] randomness(final int numBytes) {
+        return fileSystem.randomness(numBytes);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#sleep(long)
+     */
+    public long sleep(final long microseconds) {
+        return fileSystem.sleep(microseconds);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#currentTime()
+     */
+    public long currentTime() {
+        return fileSystem.currentTime();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#getTempFile()
+     */
+    public File getTempFile() throws IOException {
+        return fileSystem.getTempFile();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem#getFullPath(java.io.File)
+     */
+    public String getFullPath(final File filename) throws SqlJetException {
+        return fileSystem.getFullPath(filename);
+    }
+
+}
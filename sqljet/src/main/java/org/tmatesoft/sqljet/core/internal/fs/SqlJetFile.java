@@ -20,6 +20,8 @@ package org.tmatesoft.sqljet.core.internal.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
@@ -46,6 +48,8 @@ import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
 import org.tmatesoft.sqljet.core.internal.SqlJetSyncFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetDirectByteBuffer;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryPointer;
 
 /**
  * @author TMate Software Ltd.
@@ -54,6 +58,15 @@ import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
  */
 public class SqlJetFile implements ISqlJetFile {
 
+    /**
+     * System property name for size limit of memory-mapped region of
+     * database files, in bytes. Zero disables memory-mapped reads. Files are
+     * never mapped on Windows: mapped file can't be truncated there until the
+     * mapping is garbage collected.
+     */
+    public static final String SQLJET_MMAP_SIZE = "SQLJET.MMAP_SIZE";
+    public static final long MMAP_SIZE_DEFAULT = 0;
+
     private static final boolean SQLJET_LOG_FILES = SqlJetUtility.getBoolSysProp(SqlJetLogDefinitions.SQLJET_LOG_FILES,
             false);
 
@@ -133,12 +146,18 @@ public class SqlJetFile implements ISqlJetFile {
      * close is attempted against an inode that is holding locks, the close is
      * deferred until all locks clear by adding the file descriptor to be closed
      * to the pending list.
+     *
+     * Locking and unlocking synchronize on this structure, so files with
+     * different paths don't wait for each other; {@link #openFiles} is only
+     * locked when files are opened and closed.
      */
     private static class OpenFile {
         /** Number of pointers to this structure */
         private int numRef = 1;
         /** Number of outstanding locks */
         private int numLock = 0;
+        /** Number of region locks, they are held until their file is closed */
+        private int numRegionLock = 0;
         private Map<Thread, LockInfo> lockInfoMap = new ConcurrentHashMap<Thread, LockInfo>();
         /** Malloced space holding fd's awaiting a close() */
         private List<RandomAccessFile> pending = new ArrayList<RandomAccessFile>();
@@ -148,19 +167,30 @@ public class SqlJetFile implements ISqlJetFile {
 
     private SqlJetFileType fileType;
     private Set<SqlJetFileOpenPermission> permissions;
-    private RandomAccessFile file;
+    private volatile RandomAccessFile file;
     private File filePath;
     private String filePathResolved;
     private boolean noLock;
 
     private SqlJetLockType lockType = SqlJetLockType.NONE;
     private Map<SqlJetLockType, FileLock> locks = new ConcurrentHashMap<SqlJetLockType, FileLock>();
+    private List<FileLock> regionLocks = new ArrayList<FileLock>();
 
     private OpenFile openCount = null;
     private LockInfo lockInfo = null;
 
     private SqlJetFileLockManager fileLockManager;
 
+    /**
+     * Memory-mapped beginning of database file, null if it isn't mapped.
+     * Readers take it without lock, it is replaced under monitor of the file.
+     */
+    private volatile ISqlJetMemoryPointer mapped;
+    /** Limit of mapped region size */
+    private final long mmapSize;
+    /** True if file may be mapped */
+    private volatile boolean mappable;
+
     /**
      * @param fileSystem
      * @param file
@@ -181,6 +211,8 @@ public class SqlJetFile implements ISqlJetFile {
 
         this.channel = file.getChannel();
 		this.fileLockManager = new SqlJetFileLockManager(this.filePathResolved, channel);
+        this.mmapSize = Math.min(SqlJetUtility.getLongSysProp(SQLJET_MMAP_SIZE, MMAP_SIZE_DEFAULT), Integer.MAX_VALUE);
+        this.mappable = mmapSize > 0 && fileType == SqlJetFileType.MAIN_DB && !SqlJetFileUtil.OS.isWindows();
 
         findLockInfo();
 
@@ -222,6 +254,22 @@ public class SqlJetFile implements ISqlJetFile {
         synchronized (openFiles) {
 
             unlock(SqlJetLockType.NONE);
+            releaseRegionLocks();
+            fileLockManager.close();
+
+            /*
+             * Closing of any descriptor of file drops all locks which this
+             * process holds on the file, so region locks of other files of
+             * this JVM defer the close as well.
+             */
+            if (!noLock && null != openCount) {
+                synchronized (openCount) {
+                    if (openCount.numRegionLock > 0) {
+                        openCount.pending.add(file);
+                        return;
+                    }
+                }
+            }
 
             /*
              * If there are outstanding locks, do not actually close the file
@@ -230,10 +278,12 @@ public class SqlJetFile implements ISqlJetFile {
              * closed when the last lock is cleared.
              */
             if (!noLock && null != openCount && null != openCount.lockInfoMap && openCount.lockInfoMap.size() > 0) {
-                for (LockInfo l : openCount.lockInfoMap.values()) {
-                    if (l.sharedLockCount > 0) {
-                        openCount.pending.add(file);
-                        return;
+                synchronized (openCount) {
+                    for (LockInfo l : openCount.lockInfoMap.values()) {
+                        if (l.sharedLockCount > 0) {
+                            openCount.pending.add(file);
+                            return;
+                        }
                     }
                 }
             }
@@ -244,6 +294,7 @@ public class SqlJetFile implements ISqlJetFile {
              */
 
             releaseLockInfo();
+            unmap();
 
             try {
                 file.close();
@@ -277,9 +328,13 @@ public class SqlJetFile implements ISqlJetFile {
     /*
      * (non-Javadoc)
      *
+     * Reads aren't synchronized: buffers use positional reads of the channel,
+     * which don't move a shared file pointer, so several threads may read
+     * pages of the same file in parallel.
+     *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#read(byte[], int, long)
      */
-    public synchronized int read(ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetIOException {
+    public int read(final ISqlJetMemoryPointer buffer, final int amount, final long offset) throws SqlJetIOException {
         assert (amount > 0);
         assert (offset >= 0);
         assert (buffer != null);
@@ -287,22 +342,160 @@ public class SqlJetFile implements ISqlJetFile {
         assert (file != null);
         assert (channel != null);
         try {
-            TIMER_START();
-            final int read = buffer.readFromFile(file, channel, offset, amount);
-            TIMER_END();
-            OSTRACE("READ %s %5d %7d %d\n", this.filePath, read, offset, TIMER_ELAPSED());
+            final long start = SQLJET_LOG_FILES_PERFORMANCE ? System.nanoTime() : 0;
+            int read = readMapped(buffer, amount, offset);
+            if (read < 0) {
+                read = (int) io(new IChannelIO() {
+                    public long run(RandomAccessFile file, FileChannel channel) throws IOException {
+                        return buffer.readFromFile(file, channel, offset, amount);
+                    }
+                });
+            }
+            if (SQLJET_LOG_FILES) {
+                final long elapsed = SQLJET_LOG_FILES_PERFORMANCE ? System.nanoTime() - start : 0;
+                OSTRACE("READ %s %5d %7d %d\n", this.filePath, read, offset, elapsed);
+            }
             return read < 0 ? 0 : read;
         } catch (IOException e) {
             throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_READ, e);
         }
     }
 
+    /**
+     * I/O operation on channel of the file.
+     */
+    private interface IChannelIO {
+        long run(RandomAccessFile file, FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Run I/O operation on channel of the file. Interrupt of a thread which
+     * does I/O on the channel closes it for all threads, then the file is
+     * opened anew and operation is repeated once with interrupt status of
+     * thread cleared, which is restored after that.
+     */
+    private long io(IChannelIO operation) throws IOException {
+        final RandomAccessFile file = this.file;
+        final FileChannel channel = this.channel;
+        try {
+            return operation.run(file, channel);
+        } catch (IOException e) {
+            /* the file is closed with its channel, so its errors may differ */
+            if (!(e instanceof ClosedChannelException) && channel.isOpen() || !reopen(channel)) {
+                throw e;
+            }
+        }
+        final boolean interrupted = Thread.interrupted();
+        try {
+            return operation.run(this.file, this.channel);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Open the file anew after its channel has been closed by interrupt of
+     * some thread, and take OS-level locks which were held through it again.
+     *
+     * @param closed
+     *            channel which has been closed.
+     * @return false if the file has been closed by {@link #close()}.
+     */
+    private synchronized boolean reopen(FileChannel closed) throws IOException {
+        if (file == null || channel == null) {
+            return false;
+        }
+        if (channel != closed) {
+            /* other thread has reopened it already */
+            return true;
+        }
+        if (!filePath.isFile()) {
+            return false;
+        }
+        OSTRACE("REOPEN  %s\n", this.filePath);
+        final RandomAccessFile reopened = SqlJetFileUtil.openFile(filePath,
+                permissions.contains(SqlJetFileOpenPermission.READWRITE) ? "rw" : "r");
+        try {
+            fileLockManager.reopen(closed, reopened.getChannel());
+        } catch (IOException e) {
+            reopened.close();
+            throw e;
+        }
+        file = reopened;
+        channel = reopened.getChannel();
+        return true;
+    }
+
+    /**
+     * Read from memory-mapped region of the file. The region is mapped anew
+     * when the file has grown, up to {@link #SQLJET_MMAP_SIZE} bytes.
+     *
+     * @return number of bytes read, or -1 if requested bytes are not mapped
+     *         and should be read from the file.
+     */
+    private int readMapped(ISqlJetMemoryPointer buffer, int amount, long offset) {
+        if (!mappable) {
+            return -1;
+        }
+        final long end = offset + amount;
+        ISqlJetMemoryPointer region = mapped;
+        if (region == null || end > region.getBuffer().getSize()) {
+            region = map(end);
+            if (region == null) {
+                return -1;
+            }
+        }
+        buffer.copyFrom(0, region, (int) offset, amount);
+        return amount;
+    }
+
+    /**
+     * Map the file, if it is long enough to contain the given position.
+     *
+     * @return mapped region which contains the position, or null.
+     */
+    private synchronized ISqlJetMemoryPointer map(long end) {
+        if (!mappable || end > mmapSize || channel == null) {
+            return null;
+        }
+        final ISqlJetMemoryPointer region = mapped;
+        if (region != null && end <= region.getBuffer().getSize()) {
+            /* other thread has mapped it already */
+            return region;
+        }
+        try {
+            final long size = Math.min(channel.size(), mmapSize);
+            if (size < end) {
+                return null;
+            }
+            mapped = new SqlJetMemoryPointer(new SqlJetDirectByteBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    size)), 0);
+            return mapped;
+        } catch (IOException e) {
+            /* e.g. address space is exhausted: just read the file */
+            OSTRACE("MMAP %s failed: %s\n", this.filePath, e.getMessage());
+            mappable = false;
+            unmap();
+            return null;
+        }
+    }
+
+    /**
+     * Forget mapped region, it is released by garbage collector.
+     */
+    private void unmap() {
+        mapped = null;
+    }
+
     /*
      * (non-Javadoc)
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#write(byte[], int, long)
      */
-    public synchronized void write(ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetIOException {
+    public synchronized void write(final ISqlJetMemoryPointer buffer, final int amount, final long offset)
+            throws SqlJetIOException {
         assert (amount > 0);
         assert (offset >= 0);
         assert (buffer != null);
@@ -311,7 +504,11 @@ public class SqlJetFile implements ISqlJetFile {
         assert (channel != null);
         try {
             TIMER_START();
-            final int write = buffer.writeToFile(file, channel, offset, amount);
+            final long write = io(new IChannelIO() {
+                public long run(RandomAccessFile file, FileChannel channel) throws IOException {
+                    return buffer.writeToFile(file, channel, offset, amount);
+                }
+            });
             TIMER_END();
             OSTRACE("WRITE %s %5d %7d %d\n", this.filePath, write, offset, TIMER_ELAPSED());
         } catch (IOException e) {
@@ -319,16 +516,73 @@ public class SqlJetFile implements ISqlJetFile {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * Buffers are written with one gathering write of the channel. Since
+     * gathering writes use position of the channel, this method has to be
+     * synchronized as other writes, but reads don't depend on that position.
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFile#write(org.tmatesoft.sqljet
+     * .core.internal.ISqlJetMemoryPointer[], int[], int, long)
+     */
+    public synchronized void write(final ISqlJetMemoryPointer[] buffers, final int[] amounts, final int count,
+            final long offset) throws SqlJetIOException {
+        assert (count > 0);
+        assert (offset >= 0);
+        assert (buffers != null && buffers.length >= count);
+        assert (amounts != null && amounts.length >= count);
+        assert (file != null);
+        assert (channel != null);
+        try {
+            TIMER_START();
+            final long write = io(new IChannelIO() {
+                public long run(RandomAccessFile file, FileChannel channel) throws IOException {
+                    final ByteBuffer[] srcs = new ByteBuffer[count];
+                    for (int i = 0; i < count; i++) {
+                        assert (amounts[i] > 0);
+                        assert (buffers[i].remaining() >= amounts[i]);
+                        srcs[i] = buffers[i].getBuffer().asByteBuffer(buffers[i].getAbsolute(0), amounts[i]);
+                    }
+                    long write = 0;
+                    channel.position(offset);
+                    for (int i = 0; i < count;) {
+                        write += channel.write(srcs, i, count - i);
+                        while (i < count && !srcs[i].hasRemaining()) {
+                            i++;
+                        }
+                    }
+                    return write;
+                }
+            });
+            TIMER_END();
+            OSTRACE("WRITEV %s %5d %7d %d\n", this.filePath, write, offset, TIMER_ELAPSED());
+        } catch (IOException e) {
+            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_WRITE, e);
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#truncate(long)
      */
-    public synchronized void truncate(long size) throws SqlJetIOException {
+    public synchronized void truncate(final long size) throws SqlJetIOException {
         assert (size >= 0);
         assert (file != null);
+        final ISqlJetMemoryPointer region = mapped;
+        if (region != null && size < region.getBuffer().getSize()) {
+            /* pages beyond end of file must never be touched */
+            unmap();
+        }
         try {
-            file.setLength(size);
+            io(new IChannelIO() {
+                public long run(RandomAccessFile file, FileChannel channel) throws IOException {
+                    file.setLength(size);
+                    return size;
+                }
+            });
         } catch (IOException e) {
             throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_TRUNCATE, e);
         }
@@ -343,8 +597,13 @@ public class SqlJetFile implements ISqlJetFile {
         assert (file != null);
         try {
             OSTRACE("SYNC    %s\n", this.filePath);
-            boolean syncMetaData = syncFlags != null && syncFlags.contains(SqlJetSyncFlags.NORMAL);
-            channel.force(syncMetaData);
+            final boolean syncMetaData = syncFlags != null && syncFlags.contains(SqlJetSyncFlags.NORMAL);
+            io(new IChannelIO() {
+                public long run(RandomAccessFile file, FileChannel channel) throws IOException {
+                    channel.force(syncMetaData);
+                    return 0;
+                }
+            });
         } catch (IOException e) {
             throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_FSYNC, e);
         }
@@ -355,10 +614,14 @@ public class SqlJetFile implements ISqlJetFile {
      *
      * @see org.tmatesoft.sqljet.core.ISqlJetFile#fileSize()
      */
-    public synchronized long fileSize() throws SqlJetException {
+    public long fileSize() throws SqlJetException {
         assert (file != null);
         try {
-            return channel.size();
+            return io(new IChannelIO() {
+                public long run(RandomAccessFile file, FileChannel channel) throws IOException {
+                    return channel.size();
+                }
+            });
         } catch (IOException e) {
             throw new SqlJetException(SqlJetErrorCode.IOERR, e);
         }
@@ -373,6 +636,73 @@ public class SqlJetFile implements ISqlJetFile {
         return lockType;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetFile#lockRegion(long,
+     * long, boolean)
+     */
+    public synchronized boolean lockRegion(final long position, final long size, final boolean shared)
+            throws SqlJetIOException {
+        if (noLock)
+            return false;
+
+        synchronized (openCount) {
+            try {
+                final FileLock regionLock = fileLockManager.tryLock(position, size, shared);
+                OSTRACE("LOCK    %s region %d-%d %s\n", this.filePath, position, position + size - 1,
+                        null != regionLock ? "ok" : "failed");
+                if (null == regionLock)
+                    return false;
+                regionLocks.add(regionLock);
+                openCount.numRegionLock++;
+                return true;
+            } catch (IOException e) {
+                throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_LOCK, e);
+            }
+        }
+    }
+
+    /**
+     * Release region locks of this file when it is closed.
+     *
+     * @throws SqlJetIOException
+     */
+    private void releaseRegionLocks() throws SqlJetIOException {
+        if (regionLocks.isEmpty())
+            return;
+
+        synchronized (openCount) {
+            try {
+                for (final FileLock regionLock : regionLocks) {
+                    regionLock.release();
+                    openCount.numRegionLock--;
+                }
+                regionLocks.clear();
+                closePending();
+            } catch (IOException e) {
+                throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_UNLOCK, e);
+            }
+        }
+    }
+
+    /**
+     * Close descriptors whose close was deferred because of outstanding
+     * locks, when the last of them is released. Caller holds monitor of
+     * {@link #openCount}.
+     *
+     * @throws IOException
+     */
+    private void closePending() throws IOException {
+        if (openCount.numLock == 0 && openCount.numRegionLock == 0 && null != openCount.pending
+                && openCount.pending.size() > 0) {
+            for (final RandomAccessFile f : openCount.pending) {
+                f.close();
+            }
+            openCount.pending.clear();
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -448,7 +778,7 @@ public class SqlJetFile implements ISqlJetFile {
 
         assert (lockInfo != null);
         try {
-            synchronized (openFiles) {
+            synchronized (openCount) {
 
                 /*
                  * If some thread using this PID has a lock via a different
@@ -475,6 +805,24 @@ public class SqlJetFile implements ISqlJetFile {
                     return true;
                 }
 
+                /*
+                 * If other thread of this JVM already holds a SHARED lock and
+                 * nobody in this JVM holds PENDING lock then share the read-lock
+                 * without OS calls, as threads of the same PID do above.
+                 */
+                if (lockType == SqlJetLockType.SHARED && lockInfo.sharedLockCount == 0) {
+                    final FileLock sharedLock = fileLockManager.tryShare(SHARED_FIRST, SHARED_SIZE, PENDING_BYTE, 1);
+                    if (null != sharedLock) {
+                        locks.put(SqlJetLockType.SHARED, sharedLock);
+                        this.lockType = SqlJetLockType.SHARED;
+                        lockInfo.lockType = SqlJetLockType.SHARED;
+                        openCount.numLock++;
+                        lockInfo.sharedLockCount = 1;
+                        lockInfo.sharedLock = sharedLock;
+                        return true;
+                    }
+                }
+
                 /*
                  * A PENDING lock is needed before acquiring a SHARED lock and
                  * before acquiring an EXCLUSIVE lock. For the SHARED lock, the
@@ -610,7 +958,7 @@ public class SqlJetFile implements ISqlJetFile {
         if (this.lockType.compareTo(lockType) <= 0)
             return true;
 
-        synchronized (openFiles) {
+        synchronized (openCount) {
 
             assert (lockInfo != null);
             assert (lockInfo.sharedLockCount > 0);
@@ -676,12 +1024,7 @@ public class SqlJetFile implements ISqlJetFile {
                      */
                     openCount.numLock--;
                     assert (openCount.numLock >= 0);
-                    if (openCount.numLock == 0 && null != openCount.pending && openCount.pending.size() > 0) {
-                        for (final RandomAccessFile f : openCount.pending) {
-                            f.close();
-                        }
-                        openCount.pending.clear();
-                    }
+                    closePending();
 
                 }
                 this.lockType = lockType;
@@ -691,6 +1034,12 @@ public class SqlJetFile implements ISqlJetFile {
             }
         }
 
+        /* wake up threads of this JVM which wait for locks of file */
+        final SqlJetLockWaitQueue waitQueue = fileLockManager.getLockWaitQueue();
+        if (waitQueue != null) {
+            waitQueue.released();
+        }
+
         return true;
     }
 
@@ -712,7 +1061,7 @@ public class SqlJetFile implements ISqlJetFile {
             if (null == lockInfo)
                 return false;
 
-            synchronized (openFiles) {
+            synchronized (openCount) {
 
                 /* Check if a thread in this process holds such a lock */
                 if (SqlJetLockType.SHARED.compareTo(lockInfo.lockType) < 0)
@@ -760,7 +1109,7 @@ public class SqlJetFile implements ISqlJetFile {
     final static Set<SqlJetDeviceCharacteristics> noDeviceCharacteristircs = SqlJetUtility
             .noneOf(SqlJetDeviceCharacteristics.class);
 
-	private FileChannel channel;
+	private volatile FileChannel channel;
 
     public Set<SqlJetDeviceCharacteristics> deviceCharacteristics() {
         return noDeviceCharacteristircs;
@@ -798,7 +1147,8 @@ public class SqlJetFile implements ISqlJetFile {
                 lockInfo.numRef--;
                 if (0 == lockInfo.numRef) {
                     if (null != openCount) {
-                        openCount.lockInfoMap.remove(Thread.currentThread());
+                        /* file may be closed by other thread than opened it */
+                        openCount.lockInfoMap.values().remove(lockInfo);
                     }
                     this.lockInfo = null;
                 }
@@ -822,4 +1172,13 @@ public class SqlJetFile implements ISqlJetFile {
         return false;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.ISqlJetFile#getLockWaitQueue()
+     */
+    public SqlJetLockWaitQueue getLockWaitQueue() {
+        return noLock ? null : fileLockManager.getLockWaitQueue();
+    }
+
 }
@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal.fs;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 
 /**
@@ -28,7 +29,7 @@ import java.nio.channels.FileLock;
 public class SqlJetFileLock extends FileLock {
 
     final private SqlJetFileLockManager manager;
-    final private FileLock fileLock;
+    private FileLock fileLock;
 
     private long locksCount;
 
@@ -62,16 +63,63 @@ public class SqlJetFileLock extends FileLock {
      */
     @Override
     public void release() throws IOException {
+        manager.releaseLock(this);
+    }
+
+    /**
+     * Adds reference to lock, caller holds state of manager.
+     */
+    void addLock() {
+        locksCount++;
+    }
+
+    /**
+     * Removes reference to lock and releases OS-level lock with the last one,
+     * caller holds state of manager.
+     *
+     * @return true if lock isn't used anymore.
+     * @throws IOException
+     */
+    boolean removeLock() throws IOException {
+        if (locksCount == 0) {
+            return false;
+        }
         locksCount--;
         if (locksCount == 0) {
             if (fileLock.isValid()) {
                 fileLock.release();
             }
-            manager.deleteLock(this);
+            return true;
         }
+        return false;
     }
 
-    public void addLock() {
-        locksCount++;
+    /**
+     * Takes OS-level lock anew if it was held through the given channel, which
+     * has been closed, caller holds state of manager.
+     *
+     * @param closed
+     *            channel which has been closed.
+     * @param channel
+     *            channel of the same file which replaces it.
+     * @throws IOException
+     *             if other process has locked region meanwhile.
+     */
+    void reacquire(FileChannel closed, FileChannel channel) throws IOException {
+        if (locksCount == 0 || fileLock.channel() != closed) {
+            return;
+        }
+        final FileLock lock = channel.tryLock(position(), size(), isShared());
+        if (lock == null) {
+            throw new IOException("Lock of file has been lost when its channel was closed");
+        }
+        fileLock = lock;
+    }
+
+    /**
+     * @return true if lock covers whole region.
+     */
+    boolean covers(long position, long size) {
+        return position() <= position && position + size <= position() + size();
     }
 }
@@ -21,27 +21,61 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Locks of file which are held by this JVM. Java doesn't allow to lock
+ * overlapping regions of the same file twice in one JVM, so OS-level locks
+ * are shared by all channels of the file and are counted.
+ *
+ * State of locks is kept per file and is synchronized per file, so locking of
+ * one file doesn't wait for locking of others. Requests which conflict with
+ * locks held by this JVM fail without OS calls, and shared requests which are
+ * covered by shared lock held by this JVM just add reference to it.
+ *
  * @author TMate Software Ltd.
  * @author Sergey Scherbina (sergey.scherbina@gmail.com)
  * 
  */
 public class SqlJetFileLockManager {
 
-    private String filePath;
-    private FileChannel fileChannel;
+    /**
+     * Locks of one file held by this JVM and threads waiting for them.
+     */
+    private static class LockState {
+        private final List<SqlJetFileLock> locks = new ArrayList<SqlJetFileLock>();
+        private final SqlJetLockWaitQueue waitQueue;
+        /** Number of managers which use this state */
+        private int nRef;
+
+        LockState(String filePath) {
+            waitQueue = new SqlJetLockWaitQueue(filePath);
+        }
+    }
+
+    private static final Map<String, LockState> states = new HashMap<String, LockState>();
+
+    private final String filePath;
+    private volatile FileChannel fileChannel;
+    private final LockState state;
+    private boolean closed;
 
     public SqlJetFileLockManager(String filePath, FileChannel fileChannel) {
         this.filePath = filePath;
         this.fileChannel = fileChannel;
+        synchronized (states) {
+            LockState state = states.get(filePath);
+            if (state == null) {
+                state = new LockState(filePath);
+                states.put(filePath, state);
+            }
+            state.nRef++;
+            this.state = state;
+        }
     }
 
-    private static final Map<String, List<SqlJetFileLock>> locks = new ConcurrentHashMap<String, List<SqlJetFileLock>>();
-
     private interface ILockCreator {
         FileLock createLock(long position, long size, boolean shared) throws IOException;
     }
@@ -60,19 +94,19 @@ public class SqlJetFileLockManager {
 
     private FileLock createLock(long position, long size, boolean shared, ILockCreator lockCreator)
             throws IOException {
-		synchronized (locks) {
-			final SqlJetFileLock lock = getLock(position, size);
-			if (lock != null) {
-				if (shared) {
-					lock.addLock();
-					return lock;
-				} else {
-					return null;
-				}
-			} else {
-				return addLock(lockCreator.createLock(position, size, shared));
-			}
-		}
+        synchronized (state) {
+            final SqlJetFileLock lock = getLock(position, size);
+            if (lock != null) {
+                if (shared && lock.isShared()) {
+                    lock.addLock();
+                    return lock;
+                } else {
+                    return null;
+                }
+            } else {
+                return addLock(lockCreator.createLock(position, size, shared));
+            }
+        }
     }
 
     /**
@@ -84,19 +118,41 @@ public class SqlJetFileLockManager {
      * @throws IOException
      */
     public FileLock tryLock(long position, long size, boolean shared) throws IOException {
-		return createLock(position, size, shared, tryLockCreator);
+        return createLock(position, size, shared, tryLockCreator);
     }
 
     public FileLock lock(long position, long size, boolean shared) throws IOException {
-		return createLock(position, size, shared, lockCreator);
+        return createLock(position, size, shared, lockCreator);
+    }
+
+    /**
+     * Adds reference to shared lock of region which this JVM already holds,
+     * without OS calls. It succeeds only if no lock of this JVM overlaps
+     * guard region.
+     *
+     * @param position
+     * @param size
+     * @param guardPosition
+     * @param guardSize
+     * @return shared lock or null if this JVM doesn't hold it or guard region
+     *         is locked.
+     */
+    public FileLock tryShare(long position, long size, long guardPosition, long guardSize) {
+        synchronized (state) {
+            final SqlJetFileLock lock = getLock(position, size);
+            if (lock != null && lock.isShared() && lock.covers(position, size)
+                    && getLock(guardPosition, guardSize) == null) {
+                lock.addLock();
+                return lock;
+            }
+            return null;
+        }
     }
 
     private SqlJetFileLock getLock(long position, long size) {
-        if (locks.containsKey(filePath)) {
-            for (SqlJetFileLock fl : locks.get(filePath)) {
-                if (fl.overlaps(position, size)) {
-                    return fl;
-                }
+        for (SqlJetFileLock fl : state.locks) {
+            if (fl.overlaps(position, size)) {
+                return fl;
             }
         }
         return null;
@@ -109,25 +165,102 @@ public class SqlJetFileLockManager {
     private SqlJetFileLock addLock(FileLock lock) {
         if (lock != null) {
             final SqlJetFileLock l = new SqlJetFileLock(this, lock);
-            if (!locks.containsKey(filePath)) {
-                locks.put(filePath, new ArrayList<SqlJetFileLock>());
-            }
-            locks.get(filePath).add(l);
+            state.locks.add(l);
             return l;
         } else {
             return null;
         }
     }
 
-    public void deleteLock(SqlJetFileLock lock) {
-		synchronized (locks) {
-			if (locks.containsKey(filePath)) {
-				final List<SqlJetFileLock> list = locks.get(filePath);
-				list.remove(lock);
-				if (list.size() == 0) {
-					locks.remove(filePath);
-				}
-			}
-		}
+    /**
+     * Releases reference to lock, OS-level lock is released with the last
+     * reference.
+     *
+     * @param lock
+     * @throws IOException
+     */
+    void releaseLock(SqlJetFileLock lock) throws IOException {
+        final boolean unused;
+        synchronized (state) {
+            if (!lock.removeLock()) {
+                return;
+            }
+            state.locks.remove(lock);
+            unused = state.locks.isEmpty() && state.nRef == 0;
+        }
+        if (unused) {
+            removeState();
+        }
+    }
+
+    private void removeState() {
+        synchronized (states) {
+            synchronized (state) {
+                if (state.nRef == 0 && state.locks.isEmpty() && states.get(filePath) == state) {
+                    states.remove(filePath);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces channel of file which has been closed by interrupt of thread
+     * doing I/O on it. Closing of channel releases OS-level locks which were
+     * held through it, so they are taken anew on the new channel.
+     *
+     * @param closed
+     *            channel which has been closed.
+     * @param channel
+     *            new channel of the same file.
+     * @throws IOException
+     *             if some lock has been taken by other process meanwhile.
+     */
+    void reopen(FileChannel closed, FileChannel channel) throws IOException {
+        synchronized (state) {
+            for (SqlJetFileLock lock : state.locks) {
+                lock.reacquire(closed, channel);
+            }
+            fileChannel = channel;
+        }
+    }
+
+    /**
+     * @return queue of threads which wait for locks of file.
+     */
+    public SqlJetLockWaitQueue getLockWaitQueue() {
+        return state.waitQueue;
+    }
+
+    /**
+     * Releases state of locks when file is closed. State is kept while this
+     * JVM holds some locks of file.
+     */
+    public void close() {
+        synchronized (states) {
+            synchronized (state) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                state.nRef--;
+            }
+        }
+        removeState();
+    }
+
+    /**
+     * Returns statistics of waits for locks of file which is open in this
+     * JVM.
+     *
+     * @param filePath
+     *            absolute path of file.
+     * @return statistics or null if file isn't open.
+     */
+    public static SqlJetLockWaitStatistics getLockWaitStatistics(String filePath) {
+        final LockState state;
+        synchronized (states) {
+            state = states.get(filePath);
+        }
+        return state != null ? state.waitQueue.getStatistics() : null;
     }
 }
@@ -0,0 +1,258 @@
+/**
+ * SqlJetLockWaitQueue.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.fs;
+
+import java.util.LinkedList;
+
+/**
+ * Threads of this JVM which wait for locks of one file. Connections in the
+ * same JVM release locks through {@link SqlJetFile#unlock}, which wakes up
+ * waiters at once, so they don't have to sleep for whole interval of busy
+ * handler. Locks released by other processes aren't noticed, waiters retry
+ * when interval of busy handler expires as before.
+ *
+ * Waiters which don't hold any lock of file are served in FIFO order: such
+ * waiter retries only when it is the first one of them, and newcomers don't
+ * try ahead of them. Waiters which already hold a lock (e.g. SHARED lock
+ * which they want to upgrade) retry on every release, since waiters ahead
+ * of them may wait just for their lock.
+ *
+ * Busy handlers wait by {@link #await(long)}, it waits for release of lock
+ * if thread is registered in a queue by pager and sleeps otherwise.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetLockWaitQueue {
+
+    /**
+     * Thread which waits for lock.
+     */
+    public static class Waiter {
+        private final SqlJetLockWaitQueue queue;
+        private final boolean holding;
+        private final Thread thread = Thread.currentThread();
+        private final Waiter outer = current.get();
+        private final long started = System.nanoTime();
+        private long releases;
+        private long deadline;
+        private boolean elapsed = true;
+        private int intervals;
+
+        private Waiter(SqlJetLockWaitQueue queue, boolean holding, long releases) {
+            this.queue = queue;
+            this.holding = holding;
+            this.releases = releases;
+        }
+
+        /**
+         * Whether the last wait lasted for whole interval of busy handler, it
+         * is true also if busy handler doesn't wait by {@link #await(long)}.
+         * If waiter was woken up earlier then the next wait only lasts for the
+         * rest of interval.
+         */
+        public boolean isIntervalElapsed() {
+            synchronized (queue) {
+                return elapsed;
+            }
+        }
+    }
+
+    private static final ThreadLocal<Waiter> current = new ThreadLocal<Waiter>();
+
+    private final String filePath;
+    private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+
+    /**
+     * Number of releases of locks and of turns passed to next waiter, waiters
+     * compare it to notice new ones.
+     */
+    private long releases;
+
+    private long waits;
+    private long failures;
+    private long waitTime;
+    private long maxWaitTime;
+
+    SqlJetLockWaitQueue(String filePath) {
+        this.filePath = filePath;
+    }
+
+    /**
+     * @return path of file.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Whether thread which isn't waiting yet may try to lock file now.
+     *
+     * @param holding
+     *            true if thread already holds some lock of file.
+     */
+    public synchronized boolean mayTry(boolean holding) {
+        final Waiter first = firstWaiter();
+        return holding || first == null || first.thread == Thread.currentThread();
+    }
+
+    /**
+     * Whether waiter may try to lock file now.
+     */
+    public synchronized boolean mayTry(Waiter waiter) {
+        return waiter.holding || firstWaiter().thread == waiter.thread;
+    }
+
+    private Waiter firstWaiter() {
+        for (final Waiter waiter : waiters) {
+            if (!waiter.holding) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers current thread as waiter, {@link #await(long)} waits for
+     * release of lock since then. Thread may be registered again while it
+     * waits, e.g. when lock is requested while busy handler retries the whole
+     * transaction, such waiters keep place of the first one.
+     *
+     * @param holding
+     *            true if thread already holds some lock of file.
+     * @return waiter.
+     */
+    public synchronized Waiter enter(boolean holding) {
+        final Waiter waiter = new Waiter(this, holding, releases);
+        waiters.addLast(waiter);
+        current.set(waiter);
+        return waiter;
+    }
+
+    /**
+     * Unregisters waiter and accounts its wait.
+     *
+     * @param waiter
+     *            waiter.
+     * @param acquired
+     *            true if lock was acquired, false if waiting was given up.
+     */
+    public synchronized void leave(Waiter waiter, boolean acquired) {
+        final boolean first = firstWaiter() == waiter;
+        waiters.remove(waiter);
+        if (current.get() == waiter) {
+            if (waiter.outer != null) {
+                current.set(waiter.outer);
+            } else {
+                current.remove();
+            }
+        }
+        final long time = System.nanoTime() - waiter.started;
+        waits++;
+        waitTime += time;
+        if (time > maxWaitTime) {
+            maxWaitTime = time;
+        }
+        if (!acquired) {
+            failures++;
+        }
+        if (first) {
+            /* next waiter gets its turn */
+            releases++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Notifies waiters that some lock of file was released.
+     */
+    public synchronized void released() {
+        releases++;
+        if (!waiters.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until lock which current thread waits for might be acquired, that
+     * is some lock was released and it is turn of waiter, or until timeout.
+     * If current thread doesn't wait for lock of file then simply sleeps.
+     *
+     * @param timeout
+     *            time to wait in milliseconds.
+     * @throws InterruptedException
+     */
+    public static void await(long timeout) throws InterruptedException {
+        final Waiter waiter = current.get();
+        if (waiter == null) {
+            Thread.sleep(timeout);
+        } else if (timeout > 0) {
+            waiter.queue.await(waiter, timeout);
+        }
+    }
+
+    /**
+     * Returns number of whole intervals which busy handler waited for lock by
+     * {@link #await(long)}. Busy handler may be called several times within
+     * one interval when it's woken up early, so handlers which limit number of
+     * retries should count intervals to keep their budget of time.
+     *
+     * @param calls
+     *            number of previous calls of busy handler.
+     * @return number of elapsed intervals, or calls if current thread doesn't
+     *         wait in queue.
+     */
+    public static int getElapsedIntervals(int calls) {
+        final Waiter waiter = current.get();
+        if (waiter == null) {
+            return calls;
+        }
+        synchronized (waiter.queue) {
+            return waiter.intervals;
+        }
+    }
+
+    private synchronized void await(Waiter waiter, long timeout) throws InterruptedException {
+        if (waiter.deadline == 0) {
+            waiter.deadline = System.currentTimeMillis() + timeout;
+        }
+        waiter.elapsed = true;
+        for (long delay = waiter.deadline - System.currentTimeMillis(); delay > 0; delay = waiter.deadline
+                - System.currentTimeMillis()) {
+            if (waiter.releases != releases && mayTry(waiter)) {
+                waiter.elapsed = false;
+                break;
+            }
+            wait(delay);
+        }
+        if (waiter.elapsed) {
+            waiter.deadline = 0;
+            waiter.intervals++;
+        }
+        waiter.releases = releases;
+    }
+
+    /**
+     * @return snapshot of statistics of waits for locks of file.
+     */
+    public synchronized SqlJetLockWaitStatistics getStatistics() {
+        return new SqlJetLockWaitStatistics(filePath, waiters.size(), waits, failures, waitTime, maxWaitTime);
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * SqlJetLockWaitStatistics.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.fs;
+
+/**
+ * Snapshot of statistics of waits for locks of one file in this JVM. Wait
+ * time is counted from the first failed attempt to lock file until lock is
+ * acquired or waiting is given up. All times are in nanoseconds.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetLockWaitStatistics {
+
+    private final String filePath;
+    private final int waiters;
+    private final long waits;
+    private final long failures;
+    private final long waitTime;
+    private final long maxWaitTime;
+
+    SqlJetLockWaitStatistics(String filePath, int waiters, long waits, long failures, long waitTime,
+            long maxWaitTime) {
+        this.filePath = filePath;
+        this.waiters = waiters;
+        this.waits = waits;
+        this.failures = failures;
+        this.waitTime = waitTime;
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    /**
+     * @return path of file.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return number of threads which are waiting for locks now.
+     */
+    public int getWaiters() {
+        return waiters;
+    }
+
+    /**
+     * @return number of completed waits.
+     */
+    public long getWaits() {
+        return waits;
+    }
+
+    /**
+     * @return number of waits which were given up by busy handler.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return total time of completed waits.
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return longest wait.
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * @return average wait.
+     */
+    public long getAverageWaitTime() {
+        return waits == 0 ? 0 : waitTime / waits;
+    }
+
+    @Override
+    public String toString() {
+        return filePath + ": waiters=" + waiters + ", waits=" + waits + ", failures=" + failures + ", waitTime="
+                + waitTime + ", maxWaitTime=" + maxWaitTime;
+    }
+
+}
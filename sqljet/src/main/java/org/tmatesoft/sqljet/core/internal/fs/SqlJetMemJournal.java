@@ -47,6 +47,15 @@ public class SqlJetMemJournal implements ISqlJetFile {
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetFile#getLockWaitQueue()
+     */
+    public SqlJetLockWaitQueue getLockWaitQueue() {
+        return null;
+    }
+
     /*
      * Space to hold the rollback journal is allocated in increments of* this
      * many bytes.
@@ -177,6 +186,20 @@ public class SqlJetMemJournal implements ISqlJetFile {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetFile#write(org.tmatesoft.sqljet
+     * .core.internal.ISqlJetMemoryPointer[], int[], int, long)
+     */
+    public void write(ISqlJetMemoryPointer[] buffers, int[] amounts, int count, long offset) {
+        for (int i = 0; i < count; i++) {
+            write(buffers[i], amounts[i], offset);
+            offset += amounts[i];
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -302,4 +325,13 @@ public class SqlJetMemJournal implements ISqlJetFile {
         return false;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetFile#lockRegion(long, long, boolean)
+     */
+    public boolean lockRegion(long position, long size, boolean shared) {
+        return false;
+    }
+
 }
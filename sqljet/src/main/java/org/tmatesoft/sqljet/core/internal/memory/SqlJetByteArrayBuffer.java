@@ -19,6 +19,7 @@ package org.tmatesoft.sqljet.core.internal.memory;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
@@ -34,7 +35,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
  */
 public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
 
-    private byte[] buffer;
+    protected byte[] buffer;
 
     /*
      * (non-Javadoc)
@@ -314,6 +315,9 @@ public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
     /*
      * (non-Javadoc)
      *
+     * Arrays are read by positional reads of the channel, which don't move
+     * the file pointer, so several threads may read the same file at once.
+     *
      * @see
      * org.tmatesoft.sqljet.core.sandbox.internal.memory.ISqlJetMemoryBuffer
      * #read(int, java.io.RandomAccessFile, long, int)
@@ -327,8 +331,7 @@ public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
         assert (position >= 0);
         assert (count > 0);
 
-        file.seek(position);
-        return file.read(buffer, pointer, count);
+        return SqlJetByteBuffer.readFully(channel, ByteBuffer.wrap(buffer, pointer, count), position);
     }
 
     /*
@@ -347,9 +350,7 @@ public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
         assert (position >= 0);
         assert (count > 0);
 
-        file.seek(position);
-        file.write(buffer, pointer, count);
-        return count;
+        return SqlJetByteBuffer.writeFully(channel, ByteBuffer.wrap(buffer, pointer, count), position);
     }
 
     /*
@@ -361,6 +362,17 @@ public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
         return buffer;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer#asByteBuffer(int,
+     * int)
+     */
+    public ByteBuffer asByteBuffer(int pointer, int count) {
+        return ByteBuffer.wrap(buffer, pointer, count);
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -372,9 +384,7 @@ public class SqlJetByteArrayBuffer implements ISqlJetMemoryBuffer {
             final SqlJetByteArrayBuffer srcBuf = (SqlJetByteArrayBuffer) src;
             System.arraycopy(srcBuf.buffer, srcPos, buffer, dstPos, count);
         } else {
-            final byte[] b = new byte[count];
-            src.getBytes(srcPos, b, 0, count);
-            putBytes(dstPos, b, 0, count);
+            src.getBytes(srcPos, buffer, dstPos, count);
         }
     }
 
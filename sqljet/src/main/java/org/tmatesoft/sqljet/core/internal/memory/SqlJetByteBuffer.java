@@ -333,12 +333,9 @@ public class SqlJetByteBuffer implements ISqlJetMemoryBuffer {
         assert (position >= 0);
         assert (count > 0);
 
-        buffer.limit(pointer + count).position(pointer);
-        try {
-            return channel.read(buffer, position);
-        } finally {
-            buffer.clear();
-        }
+        final ByteBuffer b = buffer.duplicate();
+        b.limit(pointer + count).position(pointer);
+        return readFully(channel, b, position);
     }
 
     /*
@@ -357,12 +354,44 @@ public class SqlJetByteBuffer implements ISqlJetMemoryBuffer {
         assert (position >= 0);
         assert (count > 0);
 
-        buffer.limit(pointer + count).position(pointer);
-        try {
-            return channel.write(buffer, position);
-        } finally {
-            buffer.clear();
+        final ByteBuffer b = buffer.duplicate();
+        b.limit(pointer + count).position(pointer);
+        return writeFully(channel, b, position);
+    }
+
+    /**
+     * Read remaining bytes of the buffer from the channel at given position.
+     * Positional reads don't use the file pointer of the channel, so they may
+     * be issued by several threads at once.
+     *
+     * @return number of bytes read, which is less than requested only at end
+     *         of file, or -1 if position is at end of file.
+     * @throws IOException
+     */
+    static int readFully(FileChannel channel, ByteBuffer b, long position) throws IOException {
+        int read = 0;
+        while (b.hasRemaining()) {
+            final int n = channel.read(b, position + read);
+            if (n < 0) {
+                return read > 0 ? read : -1;
+            }
+            read += n;
         }
+        return read;
+    }
+
+    /**
+     * Write remaining bytes of the buffer to the channel at given position.
+     *
+     * @return number of bytes written.
+     * @throws IOException
+     */
+    static int writeFully(FileChannel channel, ByteBuffer b, long position) throws IOException {
+        int written = 0;
+        while (b.hasRemaining()) {
+            written += channel.write(b, position + written);
+        }
+        return written;
     }
 
     /*
@@ -374,6 +403,19 @@ public class SqlJetByteBuffer implements ISqlJetMemoryBuffer {
         return buffer.array();
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer#asByteBuffer(int,
+     * int)
+     */
+    public ByteBuffer asByteBuffer(int pointer, int count) {
+        final ByteBuffer b = buffer.duplicate();
+        b.limit(pointer + count).position(pointer);
+        return b;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -381,9 +423,11 @@ public class SqlJetByteBuffer implements ISqlJetMemoryBuffer {
      * org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer, int, int)
      */
     public void copyFrom(int dstPos, ISqlJetMemoryBuffer src, int srcPos, int count) {
-        if (src instanceof SqlJetByteBuffer&& !(src instanceof SqlJetDirectByteBuffer)) {
+        if (src instanceof SqlJetByteBuffer && !(src instanceof SqlJetDirectByteBuffer) && buffer.hasArray()) {
             final SqlJetByteBuffer srcBuf = (SqlJetByteBuffer) src;
             System.arraycopy(srcBuf.buffer.array(), srcPos, buffer.array(), dstPos, count);
+        } else if (buffer.hasArray()) {
+            src.getBytes(srcPos, buffer.array(), dstPos, count);
         } else {
             final byte[] b = new byte[count];
             src.getBytes(srcPos, b, 0, count);
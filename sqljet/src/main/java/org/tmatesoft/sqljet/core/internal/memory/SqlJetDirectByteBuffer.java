@@ -76,11 +76,10 @@ public class SqlJetDirectByteBuffer extends SqlJetByteBuffer {
      */
     @Override
     public void getBytes(int pointer, byte[] bytes, int to, int count) {
-        final int position = buffer.position();
-        try{
-            buffer.position(pointer);
-            buffer.get(bytes, to, count);
-        } finally {buffer.position(position);}
+        /* duplicate doesn't disturb other readers of shared (mapped) buffer */
+        final ByteBuffer b = buffer.duplicate();
+        b.position(pointer);
+        b.get(bytes, to, count);
     }
     
     /* (non-Javadoc)
@@ -17,6 +17,8 @@
  */
 package org.tmatesoft.sqljet.core.internal.memory;
 
+import java.lang.reflect.Constructor;
+
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
@@ -33,6 +35,49 @@ public class SqlJetMemoryManager implements ISqlJetMemoryManager {
     private SqlJetMemoryBufferType defaultBufferType = SqlJetUtility.getEnumSysProp(
             "SqlJetMemoryManager.defaultBufferType", SqlJetMemoryBufferType.ARRAY);
 
+    /**
+     * Constructor of {@link SqlJetMemoryBufferType#UNSAFE} buffers. Their class
+     * is loaded by name, since it is built only on demand; null if it isn't
+     * built or Unsafe isn't available in this JVM.
+     */
+    private static final Constructor<? extends ISqlJetMemoryBuffer> UNSAFE_BUFFER = getUnsafeBufferConstructor();
+
+    private static Constructor<? extends ISqlJetMemoryBuffer> getUnsafeBufferConstructor() {
+        try {
+            final Class<? extends ISqlJetMemoryBuffer> c = Class.forName(
+                    "org.tmatesoft.sqljet.core.internal.memory.SqlJetUnsafeByteArrayBuffer").asSubclass(
+                    ISqlJetMemoryBuffer.class);
+            if (!Boolean.TRUE.equals(c.getMethod("isAvailable").invoke(null))) {
+                return null;
+            }
+            final Constructor<? extends ISqlJetMemoryBuffer> constructor = c.getConstructor();
+            constructor.newInstance();
+            return constructor;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if {@link SqlJetMemoryBufferType#UNSAFE} buffers are
+     *         available, otherwise {@link SqlJetMemoryBufferType#ARRAY}
+     *         buffers are allocated instead of them.
+     */
+    public static boolean isUnsafeAvailable() {
+        return UNSAFE_BUFFER != null;
+    }
+
+    private static ISqlJetMemoryBuffer newUnsafeBuffer() {
+        if (UNSAFE_BUFFER != null) {
+            try {
+                return UNSAFE_BUFFER.newInstance();
+            } catch (Exception e) {
+                // checked by first instance, fall back to array anyway
+            }
+        }
+        return new SqlJetByteArrayBuffer();
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -110,6 +155,9 @@ public class SqlJetMemoryManager implements ISqlJetMemoryManager {
             case DIRECT:
                 buffer = new SqlJetDirectByteBuffer();
                 break;
+            case UNSAFE:
+                buffer = newUnsafeBuffer();
+                break;
             default:
                 buffer = new SqlJetByteArrayBuffer();
             }
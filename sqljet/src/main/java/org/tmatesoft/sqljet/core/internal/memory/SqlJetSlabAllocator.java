@@ -0,0 +1,134 @@
+/**
+ * SqlJetSlabAllocator.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Allocator of fixed-size frames of direct (off-heap) memory.
+ *
+ * Frames are carved from large direct buffers (slabs) and are returned to
+ * the allocator by {@link #free(ISqlJetMemoryPointer)} to be used again, so
+ * that after warm-up frames are neither allocated nor collected by GC. Slabs
+ * are never released: memory of the allocator is bounded by the largest
+ * number of frames which were in use at once.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetSlabAllocator {
+
+    /**
+     * System property name for size of slab in bytes.
+     */
+    public static final String SQLJET_SLAB_SIZE = "SQLJET.SLAB_SIZE";
+    public static final int SLAB_SIZE_DEFAULT = 1024 * 1024;
+
+    private static final SqlJetSlabAllocator allocator = new SqlJetSlabAllocator(SqlJetUtility.getIntSysProp(
+            SQLJET_SLAB_SIZE, SLAB_SIZE_DEFAULT));
+
+    private final int slabSize;
+
+    /** Free frames by their size */
+    private final Map<Integer, List<ISqlJetMemoryBuffer>> frames = new HashMap<Integer, List<ISqlJetMemoryBuffer>>();
+
+    private int slabCount;
+
+    /**
+     * @param slabSize
+     *            size of slab in bytes, slab of smaller size has one frame.
+     */
+    public SqlJetSlabAllocator(int slabSize) {
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * @return allocator shared by all page caches.
+     */
+    public static SqlJetSlabAllocator getAllocator() {
+        return allocator;
+    }
+
+    /**
+     * Take a free frame, carving a new slab if there are no free frames of
+     * this size. Content of the frame is undefined.
+     *
+     * @param size
+     *            size of frame in bytes.
+     * @return pointer to start of frame.
+     */
+    public synchronized ISqlJetMemoryPointer allocate(int size) {
+        assert (size > 0);
+        List<ISqlJetMemoryBuffer> free = frames.get(size);
+        if (null == free) {
+            free = new ArrayList<ISqlJetMemoryBuffer>();
+            frames.put(size, free);
+        }
+        if (free.isEmpty()) {
+            final int count = Math.max(1, slabSize / size);
+            final ByteBuffer slab = ByteBuffer.allocateDirect(count * size);
+            for (int i = count - 1; i >= 0; i--) {
+                slab.limit((i + 1) * size);
+                slab.position(i * size);
+                free.add(new SqlJetDirectByteBuffer(slab.slice()));
+            }
+            slabCount++;
+        }
+        return new SqlJetMemoryPointer(free.remove(free.size() - 1), 0);
+    }
+
+    /**
+     * Return frame to the allocator. Frame must not be used after that.
+     *
+     * @param frame
+     *            pointer which has been returned by {@link #allocate(int)}.
+     */
+    public synchronized void free(ISqlJetMemoryPointer frame) {
+        final ISqlJetMemoryBuffer buffer = frame.getBuffer();
+        final List<ISqlJetMemoryBuffer> free = frames.get(buffer.getSize());
+        assert (null != free);
+        free.add(buffer);
+    }
+
+    /**
+     * @return number of slabs which have been allocated.
+     */
+    public synchronized int getSlabCount() {
+        return slabCount;
+    }
+
+    /**
+     * @param size
+     *            size of frame.
+     * @return number of free frames of given size.
+     */
+    public synchronized int getFreeCount(int size) {
+        final List<ISqlJetMemoryBuffer> free = frames.get(size);
+        return null != free ? free.size() : 0;
+    }
+
+}
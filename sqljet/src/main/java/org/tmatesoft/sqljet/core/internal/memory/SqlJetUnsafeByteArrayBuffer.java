@@ -0,0 +1,163 @@
+/**
+ * SqlJetUnsafeByteArrayBuffer.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.memory;
+
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+
+import sun.misc.Unsafe;
+
+/**
+ * Byte array buffer which reads and writes shorts, ints and longs by single
+ * memory access through {@link Unsafe} instead of assembling them from
+ * separate bytes. Values are stored big-endian, as by
+ * {@link SqlJetByteArrayBuffer}, so both buffers have the same content.
+ *
+ * Unsafe is used only on platforms which allow unaligned access; elsewhere
+ * {@link #isAvailable()} is false and {@link SqlJetMemoryManager} allocates
+ * plain {@link SqlJetByteArrayBuffer} instead. Since Unsafe is internal API,
+ * this class is compiled only when the build has property "unsafe", the
+ * memory manager loads it by name.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetUnsafeByteArrayBuffer extends SqlJetByteArrayBuffer {
+
+    private static final Unsafe UNSAFE = getUnsafe();
+
+    private static final long BASE = UNSAFE != null ? UNSAFE.arrayBaseOffset(byte[].class) : 0;
+
+    /** Unsafe reads values in native order which should be reversed */
+    private static final boolean SWAP = ByteOrder.nativeOrder() != ByteOrder.BIG_ENDIAN;
+
+    private static Unsafe getUnsafe() {
+        final String arch = System.getProperty("os.arch", "");
+        if (!arch.equals("x86") && !arch.equals("i386") && !arch.equals("amd64") && !arch.equals("x86_64")
+                && !arch.equals("aarch64")) {
+            return null;
+        }
+        try {
+            final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if buffers of this type could be used in this JVM.
+     */
+    public static boolean isAvailable() {
+        return UNSAFE != null;
+    }
+
+    /**
+     * Unsafe doesn't check bounds, so unlike array access the check could not
+     * be left to asserts.
+     */
+    private void check(int pointer, int size) {
+        if (pointer < 0 || pointer > buffer.length - size) {
+            throw new ArrayIndexOutOfBoundsException(pointer);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.memory.SqlJetByteArrayBuffer#getShort
+     * (int)
+     */
+    @Override
+    public short getShort(final int pointer) {
+        check(pointer, 2);
+        final short v = UNSAFE.getShort(buffer, BASE + pointer);
+        return SWAP ? Short.reverseBytes(v) : v;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.memory.SqlJetByteArrayBuffer#getInt
+     * (int)
+     */
+    @Override
+    public int getInt(final int pointer) {
+        check(pointer, 4);
+        final int v = UNSAFE.getInt(buffer, BASE + pointer);
+        return SWAP ? Integer.reverseBytes(v) : v;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.memory.SqlJetByteArrayBuffer#getLong
+     * (int)
+     */
+    @Override
+    public long getLong(final int pointer) {
+        check(pointer, 8);
+        final long v = UNSAFE.getLong(buffer, BASE + pointer);
+        return SWAP ? Long.reverseBytes(v) : v;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.memory.SqlJetByteArrayBuffer#putShort
+     * (int, short)
+     */
+    @Override
+    public void putShort(final int pointer, final short value) {
+        check(pointer, 2);
+        UNSAFE.putShort(buffer, BASE + pointer, SWAP ? Short.reverseBytes(value) : value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.memory.SqlJetByteArrayBuffer#putInt
+     * (int, int)
+     */
+    @Override
+    public void putInt(final int pointer, final int value) {
+        check(pointer, 4);
+        UNSAFE.putInt(buffer, BASE + pointer, SWAP ? Integer.reverseBytes(value) : value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.memory.SqlJetByteArrayBuffer#putLong
+     * (int, long)
+     */
+    @Override
+    public void putLong(final int pointer, final long value) {
+        check(pointer, 8);
+        UNSAFE.putLong(buffer, BASE + pointer, SWAP ? Long.reverseBytes(value) : value);
+    }
+
+}
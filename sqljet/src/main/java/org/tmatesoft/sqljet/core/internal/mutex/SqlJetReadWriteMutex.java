@@ -0,0 +1,140 @@
+/**
+ * SqlJetReadWriteMutex.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.mutex;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.tmatesoft.sqljet.core.ISqlJetMutex;
+
+/**
+ * Mutex which allows many readers or one writer.
+ * 
+ * {@link #enter()} locks mutex exclusively, but if current thread is a reader
+ * (it has entered by {@link #enterRead()}) then {@link #enter()} just enters
+ * shared mode again, so code which runs inside of read transaction works in
+ * parallel with other readers. Reader can't become writer while it holds
+ * shared lock, it should release shared locks by {@link #leaveReadAll()}
+ * before.
+ * 
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public class SqlJetReadWriteMutex implements ISqlJetMutex {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Locks mutex in shared mode.
+     */
+    public void enterRead() {
+        lock.readLock().lock();
+    }
+
+    /**
+     * Unlocks mutex locked by {@link #enterRead()}.
+     */
+    public void leaveRead() {
+        lock.readLock().unlock();
+    }
+
+    /**
+     * Releases all shared locks held by current thread, so it could wait for
+     * exclusive lock.
+     * 
+     * @return count of released locks.
+     */
+    public int leaveReadAll() {
+        final int count = lock.getReadHoldCount();
+        for (int i = 0; i < count; i++) {
+            lock.readLock().unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Locks mutex in shared mode given count of times.
+     */
+    public void enterRead(int count) {
+        for (int i = 0; i < count; i++) {
+            lock.readLock().lock();
+        }
+    }
+
+    /**
+     * @return true if current thread holds mutex in shared mode only.
+     */
+    public boolean isReader() {
+        return !lock.isWriteLockedByCurrentThread() && lock.getReadHoldCount() > 0;
+    }
+
+    /**
+     * @return true if current thread holds mutex exclusively.
+     */
+    public boolean isWriter() {
+        return lock.isWriteLockedByCurrentThread();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetMutex#attempt()
+     */
+    public boolean attempt() {
+        if (isReader()) {
+            return lock.readLock().tryLock();
+        }
+        return lock.writeLock().tryLock();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetMutex#enter()
+     */
+    public void enter() {
+        if (isReader()) {
+            lock.readLock().lock();
+        } else {
+            lock.writeLock().lock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetMutex#held()
+     */
+    public boolean held() {
+        return lock.isWriteLocked() || lock.getReadLockCount() > 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetMutex#leave()
+     */
+    public void leave() {
+        if (lock.isWriteLockedByCurrentThread()) {
+            lock.writeLock().unlock();
+        } else {
+            lock.readLock().unlock();
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * ISqlJetPageEvictionPolicy.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+/**
+ * Chooses which of unpinned pages is recycled when the page cache is full.
+ *
+ * Page cache calls policy only when pages are unpinned, removed or should be
+ * evicted, never on lookups of cached pages. Policy may keep pages which were
+ * pinned again: it has to skip them when it chooses a victim.
+ *
+ * Implementations don't need to be thread-safe, calls are serialized by the
+ * page cache.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+interface ISqlJetPageEvictionPolicy {
+
+    /**
+     * Page is not used anymore and may be evicted.
+     *
+     * @param page
+     */
+    void unpin(SqlJetPage page);
+
+    /**
+     * Page has been removed from the cache.
+     *
+     * @param page
+     */
+    void remove(SqlJetPage page);
+
+    /**
+     * Choose a page to evict and forget it. Only clean pages which are not
+     * referenced may be chosen.
+     *
+     * @return page to evict or null if there is no such page.
+     */
+    SqlJetPage evict();
+
+    /**
+     * Forget all pages.
+     */
+    void clear();
+
+}
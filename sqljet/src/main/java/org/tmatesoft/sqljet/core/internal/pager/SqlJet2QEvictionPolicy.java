@@ -0,0 +1,147 @@
+/**
+ * SqlJet2QEvictionPolicy.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 2Q policy. Pages enter a short FIFO queue (A1in) when they get into cache.
+ * Only pages which are used again after they have been recycled from it, and
+ * interior b-tree pages, are admitted into the main LRU queue (Am). Numbers
+ * of pages recycled from A1in are remembered in a ghost queue (A1out). So a
+ * scan only churns A1in and never pushes out the working set.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJet2QEvictionPolicy implements ISqlJetPageEvictionPolicy {
+
+    private final SqlJetPageCache cache;
+
+    /** Pages which have been used once, in order of arrival */
+    private final SqlJetPageList a1in = new SqlJetPageList();
+
+    /** Pages which have been used repeatedly, least recently used first */
+    private final SqlJetPageList am = new SqlJetPageList();
+
+    /** Numbers of pages recently recycled from A1in */
+    private final Set<Integer> a1out = new LinkedHashSet<Integer>();
+
+    /**
+     * @param cache
+     *            cache which size limits sizes of queues.
+     */
+    SqlJet2QEvictionPolicy(SqlJetPageCache cache) {
+        this.cache = cache;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#unpin
+     * (org.tmatesoft.sqljet.core.internal.pager.SqlJetPage)
+     */
+    public void unpin(SqlJetPage page) {
+        if (am.contains(page)) {
+            am.moveToLast(page);
+        } else if (a1in.contains(page)) {
+            /* repeated use while in A1in is correlated, it doesn't count */
+        } else if (page.priority || a1out.remove(page.pgno)) {
+            am.addLast(page);
+        } else {
+            a1in.addLast(page);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#remove
+     * (org.tmatesoft.sqljet.core.internal.pager.SqlJetPage)
+     */
+    public void remove(SqlJetPage page) {
+        if (a1in.contains(page)) {
+            a1in.remove(page);
+        } else if (am.contains(page)) {
+            am.remove(page);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#evict()
+     */
+    public SqlJetPage evict() {
+        SqlJetPage p = null;
+        if (a1in.size > Math.max(1, cache.nMax / 4)) {
+            p = evictFrom(a1in);
+        }
+        if (p == null) {
+            p = evictFrom(am);
+        }
+        if (p == null) {
+            p = evictFrom(a1in);
+        }
+        return p;
+    }
+
+    private SqlJetPage evictFrom(SqlJetPageList list) {
+        for (SqlJetPage p = list.pHead; p != null; p = p.pLruNext) {
+            if (p.isEvictable()) {
+                list.remove(p);
+                if (list == a1in) {
+                    remember(p.pgno);
+                }
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put page number into A1out, forgetting the oldest ones above its limit.
+     */
+    private void remember(int pgno) {
+        a1out.add(pgno);
+        final int limit = Math.max(1, cache.nMax / 2);
+        for (final Iterator<Integer> i = a1out.iterator(); a1out.size() > limit;) {
+            i.next();
+            i.remove();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#clear()
+     */
+    public void clear() {
+        a1in.clear();
+        am.clear();
+        a1out.clear();
+    }
+
+}
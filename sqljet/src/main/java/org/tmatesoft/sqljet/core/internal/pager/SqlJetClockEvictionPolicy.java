@@ -0,0 +1,97 @@
+/**
+ * SqlJetClockEvictionPolicy.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+/**
+ * CLOCK (second chance) policy. Pages form a ring which is swept by the clock
+ * hand; page is evicted when the hand finds it with zero usage count,
+ * otherwise its count is decremented. Pages get counts when they are used
+ * again while in cache, interior b-tree pages get more, so pages read once by
+ * a scan are recycled before them.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetClockEvictionPolicy implements ISqlJetPageEvictionPolicy {
+
+    /** Pages in order of the clock hand, the hand points at the head */
+    private final SqlJetPageList ring = new SqlJetPageList();
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#unpin
+     * (org.tmatesoft.sqljet.core.internal.pager.SqlJetPage)
+     */
+    public void unpin(SqlJetPage page) {
+        if (ring.contains(page)) {
+            page.nUsage = page.priority ? 2 : 1;
+        } else {
+            page.nUsage = page.priority ? 1 : 0;
+            ring.addLast(page);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#remove
+     * (org.tmatesoft.sqljet.core.internal.pager.SqlJetPage)
+     */
+    public void remove(SqlJetPage page) {
+        if (ring.contains(page)) {
+            ring.remove(page);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#evict()
+     */
+    public SqlJetPage evict() {
+        /* three rounds are enough to bring any count down to zero */
+        for (int i = 3 * ring.size; i > 0 && ring.pHead != null; i--) {
+            final SqlJetPage p = ring.pHead;
+            if (p.isEvictable()) {
+                if (p.nUsage == 0) {
+                    ring.remove(p);
+                    return p;
+                }
+                p.nUsage--;
+            }
+            ring.moveToLast(p);
+        }
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#clear()
+     */
+    public void clear() {
+        ring.clear();
+    }
+
+}
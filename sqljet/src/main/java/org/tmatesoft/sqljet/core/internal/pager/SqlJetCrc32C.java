@@ -0,0 +1,81 @@
+/**
+ * SqlJetCrc32C.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+
+/**
+ * CRC-32C (Castagnoli) checksum which is used to verify content of pages.
+ *
+ * Data are processed four bytes at once with four lookup tables ("slicing by
+ * 4"), which reads page through memory pointer by ints rather than by bytes.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+final class SqlJetCrc32C {
+
+    /** Reversed Castagnoli polynomial */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    private static final int[] T0 = new int[256];
+    private static final int[] T1 = new int[256];
+    private static final int[] T2 = new int[256];
+    private static final int[] T3 = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? (c >>> 1) ^ POLYNOMIAL : c >>> 1;
+            }
+            T0[i] = c;
+        }
+        for (int i = 0; i < 256; i++) {
+            T1[i] = (T0[i] >>> 8) ^ T0[T0[i] & 0xFF];
+            T2[i] = (T1[i] >>> 8) ^ T0[T1[i] & 0xFF];
+            T3[i] = (T2[i] >>> 8) ^ T0[T2[i] & 0xFF];
+        }
+    }
+
+    private SqlJetCrc32C() {
+    }
+
+    /**
+     * @param data
+     *            data to checksum.
+     * @param length
+     *            number of bytes from start of data.
+     * @return CRC-32C of the data.
+     */
+    static int checksum(ISqlJetMemoryPointer data, int length) {
+        int crc = 0xFFFFFFFF;
+        int i = 0;
+        for (final int n = length & ~3; i < n; i += 4) {
+            /* ints are big-endian, CRC consumes the first byte first */
+            crc ^= Integer.reverseBytes(data.getInt(i));
+            crc = T3[crc & 0xFF] ^ T2[(crc >>> 8) & 0xFF] ^ T1[(crc >>> 16) & 0xFF] ^ T0[crc >>> 24];
+        }
+        for (; i < length; i++) {
+            crc = (crc >>> 8) ^ T0[(crc ^ data.getByteUnsigned(i)) & 0xFF];
+        }
+        return ~crc;
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * SqlJetLruEvictionPolicy.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+/**
+ * Evicts the page which was unpinned least recently.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetLruEvictionPolicy implements ISqlJetPageEvictionPolicy {
+
+    /** Unpinned pages, least recently unpinned first */
+    private final SqlJetPageList lru = new SqlJetPageList();
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#unpin
+     * (org.tmatesoft.sqljet.core.internal.pager.SqlJetPage)
+     */
+    public void unpin(SqlJetPage page) {
+        if (lru.contains(page)) {
+            lru.moveToLast(page);
+        } else {
+            lru.addLast(page);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#remove
+     * (org.tmatesoft.sqljet.core.internal.pager.SqlJetPage)
+     */
+    public void remove(SqlJetPage page) {
+        if (lru.contains(page)) {
+            lru.remove(page);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#evict()
+     */
+    public SqlJetPage evict() {
+        SqlJetPage next;
+        for (SqlJetPage p = lru.pHead; p != null; p = next) {
+            next = p.pLruNext;
+            if (p.nRef > 0) {
+                /* pinned again, it will be linked back when unpinned */
+                lru.remove(p);
+            } else if (p.isEvictable()) {
+                lru.remove(p);
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.pager.ISqlJetPageEvictionPolicy#clear()
+     */
+    public void clear() {
+        lru.clear();
+    }
+
+}
@@ -29,6 +29,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetMemoryBufferType;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetSlabAllocator;
 
 /**
  * @author TMate Software Ltd.
@@ -38,7 +39,9 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 public class SqlJetPage implements ISqlJetPage {
 
     /**
-     * 
+     * Type of page buffers. Buffers of {@link SqlJetMemoryBufferType#DIRECT}
+     * type are frames of {@link SqlJetSlabAllocator}, which are recycled when
+     * pages are evicted from cache.
      */
     public static final SqlJetMemoryBufferType BUFFER_TYPE = SqlJetUtility.getEnumSysProp(
             "SqlJetPage.BUFFER_TYPE", SqlJetMemoryBufferType.ARRAY);
@@ -68,8 +71,8 @@ public class SqlJetPage implements ISqlJetPage {
      * should not be accessed by other modules.
      */
 
-    /** Number of users of this page */
-    int nRef;
+    /** Number of users of this page, changed under lock of page table */
+    volatile int nRef;
 
     /** Cache that owns this page */
     SqlJetPageCache pCache;
@@ -80,6 +83,21 @@ public class SqlJetPage implements ISqlJetPage {
     /** Previous element in list of dirty pages */
     SqlJetPage pDirtyPrev;
 
+    /** Next element in list of page eviction policy */
+    SqlJetPage pLruNext;
+
+    /** Previous element in list of page eviction policy */
+    SqlJetPage pLruPrev;
+
+    /** List of page eviction policy which contains this page */
+    SqlJetPageList pLruList;
+
+    /** Number of sweeps this page survives in CLOCK policy */
+    int nUsage;
+
+    /** True if page should be kept in cache longer than others */
+    boolean priority;
+
     /**
      * 
      */
@@ -90,7 +108,35 @@ public class SqlJetPage implements ISqlJetPage {
      * 
      */
     SqlJetPage(int szPage) {
-        pData = SqlJetUtility.allocatePtr(szPage, BUFFER_TYPE);
+        pData = allocateData(szPage);
+    }
+
+    /**
+     * Allocate buffer for content of page.
+     */
+    static ISqlJetMemoryPointer allocateData(int szPage) {
+        if (BUFFER_TYPE == SqlJetMemoryBufferType.DIRECT) {
+            return SqlJetSlabAllocator.getAllocator().allocate(szPage);
+        }
+        return SqlJetUtility.allocatePtr(szPage, BUFFER_TYPE);
+    }
+
+    /**
+     * Give buffer of page which has been removed from cache back to
+     * allocator. Only slab frames are returned, then the page forgets its
+     * buffer: the frame may be handed to other page at once. Heap buffers are
+     * left to GC and stay readable. Called under monitor of cache's eviction
+     * policy, so a frame is freed once even if both removal of page and its
+     * last release try to free it.
+     */
+    void freeData() {
+        if (BUFFER_TYPE == SqlJetMemoryBufferType.DIRECT) {
+            final ISqlJetMemoryPointer data = pData;
+            if (data != null) {
+                pData = null;
+                SqlJetSlabAllocator.getAllocator().free(data);
+            }
+        }
     }
 
     /*
@@ -191,6 +237,7 @@ public class SqlJetPage implements ISqlJetPage {
      */
     public ISqlJetMemoryPointer getData() {
         // assertion( nRef>0 || pPager.memDb );
+        assert (pData != null) : "Buffer of page " + pgno + " has been recycled";
         return pData;
     }
 
@@ -330,7 +377,7 @@ public class SqlJetPage implements ISqlJetPage {
      */
     public void ref() {
         assert (nRef > 0);
-        nRef++;
+        pCache.ref(this);
     }
 
     /*
@@ -339,10 +386,11 @@ public class SqlJetPage implements ISqlJetPage {
      * @see org.tmatesoft.sqljet.core.ISqlJetPage#unref()
      */
     public void unref() throws SqlJetException {
+        final SqlJetPager pager = pPager;
         try {
-            pPager.pageCache.release(this);
+            pager.pageCache.release(this);
         } finally {
-            pPager.unlockIfUnused();
+            pager.unlockIfUnused();
         }
     }
 
@@ -501,7 +549,8 @@ public class SqlJetPage implements ISqlJetPage {
             assert (pPager.state != SqlJetPagerState.UNLOCK);
             pPager.begin(false);
             assert (pPager.state.compareTo(SqlJetPagerState.RESERVED) >= 0);
-            if (!pPager.journalOpen && pPager.useJournal && pPager.journalMode != SqlJetPagerJournalMode.OFF) {
+            if (!pPager.journalOpen && pPager.useJournal && pPager.journalMode != SqlJetPagerJournalMode.OFF
+                    && null == pPager.wal) {
                 pPager.openJournal();
             }
             pPager.dirtyCache = true;
@@ -523,16 +572,13 @@ public class SqlJetPage implements ISqlJetPage {
 
                     try {
                         long cksum = pPager.cksum(pData);
-                        SqlJetPager.write32bits(pPager.jfd, pPager.journalOff, pgno);
+                        /* page number, content and checksum by one write */
                         try {
-                            pPager.jfd.write(pData, pPager.pageSize, pPager.journalOff + 4);
+                            pPager.jfd.write(new ISqlJetMemoryPointer[] { SqlJetUtility.put4byte(pgno), pData,
+                                    SqlJetUtility.put4byteUnsigned(cksum) }, new int[] { 4, pPager.pageSize, 4 }, 3,
+                                    pPager.journalOff);
                         } finally {
-                            pPager.journalOff += pPager.pageSize + 4;
-                        }
-                        try {
-                            SqlJetPager.write32bitsUnsigned( pPager.jfd, pPager.journalOff, cksum );
-                        } finally {
-                            pPager.journalOff += 4;
+                            pPager.journalOff += pPager.pageSize + 8;
                         }
 
                     } finally {
@@ -715,4 +761,18 @@ public class SqlJetPage implements ISqlJetPage {
     public ISqlJetPage getDirty() {
         return pDirty;
     }
+
+    /* (non-Javadoc)
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPage#setPriority(boolean)
+     */
+    public void setPriority(boolean priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return true if page isn't used and may be recycled without writing.
+     */
+    boolean isEvictable() {
+        return nRef == 0 && !flags.contains(SqlJetPageFlags.DIRTY) && !flags.contains(SqlJetPageFlags.NEED_SYNC);
+    }
 }
@@ -17,18 +17,15 @@
  */
 package org.tmatesoft.sqljet.core.internal.pager;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPageCache;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPageCallback;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 
@@ -48,14 +45,19 @@ public class SqlJetPageCache implements ISqlJetPageCache {
     public static final int PAGE_CACHE_SIZE_DEFAULT = 2000;
     public static final int PAGE_CACHE_SIZE_MINIMUM = 10;
 
+    /**
+     * System property name for page cache eviction policy, one of
+     * {@link SqlJetPageCachePolicy} names.
+     */
+    public static final String SQLJET_PAGE_CACHE_POLICY = "SQLJET.PAGE_CACHE_POLICY";
+    public static final SqlJetPageCachePolicy PAGE_CACHE_POLICY_DEFAULT = SqlJetPageCachePolicy.LRU;
+
     private static final int N_SORT_BUCKET = 25;
 
     /** List of dirty pages in LRU order */
     SqlJetPage pDirty, pDirtyTail;
     /** Last synced page in dirty page list */
     SqlJetPage pSynced;
-    /** Number of pinned pages */
-    int nRef;
     /** Configured cache size */
     int nMax = PAGE_CACHE_SIZE_DEFAULT;
     /** Configured minimum cache size */
@@ -66,8 +68,16 @@ public class SqlJetPageCache implements ISqlJetPageCache {
     boolean bPurgeable;
     /** Call to try make a page clean */
     ISqlJetPageCallback xStress;
+    /** Eviction policy of pages */
+    SqlJetPageCachePolicy policy = SqlJetUtility.getEnumSysProp(SQLJET_PAGE_CACHE_POLICY, PAGE_CACHE_POLICY_DEFAULT);
     PCache pCache = new PCache();
     ISqlJetPage pPage1;
+    /** Pool which limits memory of this cache, null if cache has own limit */
+    SqlJetPageCachePool pool;
+    /** Name of database file, for statistics */
+    String name;
+    /** Statistics of page lookups, counted by concurrent readers */
+    final AtomicLong nHit = new AtomicLong(), nMiss = new AtomicLong(), nEvict = new AtomicLong();
 
     SqlJetPageCache() {
         final int cacheSize = SqlJetUtility.getIntSysProp(SQLJET_PAGE_CACHE_SIZE, nMax);
@@ -142,13 +152,12 @@ public class SqlJetPageCache implements ISqlJetPageCache {
      */
     static void unpin(SqlJetPage p) {
         SqlJetPageCache pCache = p.pCache;
-        if (pCache.bPurgeable) {
-            if (p.pgno == 1) {
-                pCache.pPage1 = null;
-            }
-            if (pCache.pCache != null) {
-                pCache.pCache.unpin(p, false);
-            }
+        if (pCache.bPurgeable && p.pgno == 1) {
+            pCache.pPage1 = null;
+        }
+        /* unpinned pages of in-memory cache are only freed if removed */
+        if (pCache.pCache != null) {
+            pCache.pCache.unpin(p, false);
         }
     }
 
@@ -164,6 +173,10 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         this.xStress = stress;
         // this.nMax = 100;
         // this.nMin = 10;
+        if (purgeable && SqlJetPageCachePool.getPool().isEnabled()) {
+            pool = SqlJetPageCachePool.getPool();
+            pool.register(this);
+        }
     }
 
     /*
@@ -172,7 +185,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
      * @see org.tmatesoft.sqljet.core.ISqlJetPageCache#setPageSize(int)
      */
     public void setPageSize(int pageSize) {
-        assert (this.nRef == 0 && this.pDirty == null);
+        assert (getRefCount() == 0 && this.pDirty == null);
         if (pCache != null) {
             pCache.destroy();
             pCache = null;
@@ -200,7 +213,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         }
 
         if (pCache != null) {
-            pPage = pCache.fetch(pgno, createFlag);
+            pPage = pCache.fetch(pgno, createFlag, false);
         }
 
         if (pPage == null && createFlag) {
@@ -223,25 +236,61 @@ public class SqlJetPageCache implements ISqlJetPageCache {
             }
             pCache.cleanUnpinned();
 
-            pPage = pCache.fetch(pgno, true);
+            pPage = pCache.fetch(pgno, true, true);
         }
 
         if (pPage != null) {
-            if (0 == pPage.nRef) {
-                nRef++;
-            }
-            pPage.nRef++;
-            if (null == pPage.pData)
-                pPage.pData = SqlJetUtility.allocatePtr(szPage, SqlJetPage.BUFFER_TYPE);
-            pPage.pCache = this;
-            pPage.pgno = pgno;
-            if (pgno == 1) {
-                pPage1 = pPage;
-            }
+            fetched(pPage, pgno);
+        }
+        return pPage;
+    }
+
+    /**
+     * Create page which is going to be read ahead of time. Unlike
+     * {@link #fetch(int, boolean)} this never writes dirty pages out to make
+     * room: if cache is full, then only unpinned clean page may be recycled.
+     * 
+     * @param pgno
+     *            page number.
+     * @return new pinned page without content, or null if page is in cache
+     *         already or there is no room for it.
+     */
+    SqlJetPage fetchNew(int pgno) {
+        assert (pgno > 0);
+        if (pCache == null) {
+            pCache = new PCache();
+        } else if (pCache.apHash.get(pgno) != null) {
+            return null;
+        }
+        SqlJetPage pPage = pCache.fetch(pgno, true, false);
+        if (pPage == null && pCache.cleanUnpinned()) {
+            pPage = pCache.fetch(pgno, true, false);
+        }
+        if (pPage == null) {
+            return null;
+        }
+        fetched(pPage, pgno);
+        if (pPage.getPager() != null) {
+            /* other thread has created it meanwhile */
+            release(pPage);
+            return null;
         }
         return pPage;
     }
 
+    /**
+     * Initialize page which was pinned by PCache.
+     */
+    private void fetched(SqlJetPage pPage, int pgno) {
+        if (null == pPage.pData)
+            pPage.pData = SqlJetPage.allocateData(szPage);
+        pPage.pCache = this;
+        pPage.pgno = pgno;
+        if (pgno == 1) {
+            pPage1 = pPage;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -252,10 +301,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
     public void release(ISqlJetPage page) {
         SqlJetPage p = (SqlJetPage) page;
         assert (p.nRef > 0);
-        p.nRef--;
-        if (p.nRef == 0) {
-            SqlJetPageCache pCache = p.pCache;
-            pCache.nRef--;
+        if (pCache.apHash.unref(p) == 0) {
             if (!p.flags.contains(SqlJetPageFlags.DIRTY)) {
                 unpin(p);
             } else {
@@ -279,13 +325,19 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         if (p.flags.contains(SqlJetPageFlags.DIRTY)) {
             removeFromDirtyList(p);
         }
-        nRef--;
         if (p.pgno == 1) {
             pPage1 = null;
         }
         pCache.unpin(p, true);
     }
 
+    /**
+     * Add reference to the page which is referenced already.
+     */
+    void ref(SqlJetPage p) {
+        pCache.apHash.ref(p);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -399,6 +451,36 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         if (pCache != null) {
             pCache.destroy();
         }
+        if (pool != null) {
+            pool.unregister(this);
+            pool = null;
+        }
+    }
+
+    /**
+     * @return memory used by pages of this cache, in bytes.
+     */
+    long getBytes() {
+        final PCache cache = pCache;
+        return cache != null ? (long) cache.getPageCount() * szPage : 0;
+    }
+
+    /**
+     * Recycle one unused page, when the pool needs memory.
+     * 
+     * @return true if a page has been recycled.
+     */
+    boolean recycle() {
+        final PCache cache = pCache;
+        return cache != null && cache.cleanUnpinned();
+    }
+
+    /**
+     * @return snapshot of statistics of this cache.
+     */
+    public SqlJetPageCacheStatistics getStatistics() {
+        return new SqlJetPageCacheStatistics(name, getPageCount(), getBytes(), nHit.get(), nMiss.get(),
+                nEvict.get());
     }
 
     /*
@@ -495,7 +577,8 @@ public class SqlJetPageCache implements ISqlJetPageCache {
      * @see org.tmatesoft.sqljet.core.ISqlJetPageCache#getRefCount()
      */
     public int getRefCount() {
-        return nRef;
+        final PCache cache = pCache;
+        return cache != null ? cache.apHash.getRefCount() : 0;
     }
 
     /*
@@ -543,17 +626,32 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         }
     }
 
+    /**
+     * Create implementation of configured eviction policy.
+     */
+    private ISqlJetPageEvictionPolicy createEvictionPolicy() {
+        switch (policy) {
+        case CLOCK:
+            return new SqlJetClockEvictionPolicy();
+        case TWO_Q:
+            return new SqlJet2QEvictionPolicy(this);
+        default:
+            return new SqlJetLruEvictionPolicy();
+        }
+    }
+
     class PCache {
 
         /** Hash table for fast lookup by key */
-        private Map<Integer, SqlJetPage> apHash = new LinkedHashMap<Integer, SqlJetPage>();
+        private final SqlJetPageTable apHash = new SqlJetPageTable();
 
-        private Set<Integer> unpinned = new LinkedHashSet<Integer>();
+        /** Chooses unpinned pages to recycle */
+        private final ISqlJetPageEvictionPolicy policy = createEvictionPolicy();
 
         /** Largest key seen since xTruncate() */
-        private int iMaxKey;
+        private volatile int iMaxKey;
 
-        public synchronized int getPageCount() {
+        public int getPageCount() {
             return apHash.size();
         }
 
@@ -597,50 +695,72 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * 
          * 5. Otherwise, allocate and return a new page buffer.
          */
-        public synchronized SqlJetPage fetch(final int key, final boolean createFlag) {
-
-            class FetchOut {
-                SqlJetPage go_to(SqlJetPage pPage) {
-                    if (pPage != null && key > iMaxKey) {
-                        iMaxKey = key;
-                    }
-                    return pPage;
-                }
-            }
+        public SqlJetPage fetch(final int key, final boolean createFlag, final boolean force) {
 
-            FetchOut fetch_out = new FetchOut();
+            /* Search the hash table for an existing entry. */
+            SqlJetPage pPage = apHash.pin(key);
 
-            SqlJetPage pPage = null;
+            if (pPage != null) {
+                nHit.incrementAndGet();
+            } else if (createFlag) {
 
-            /* Search the hash table for an existing entry. */
-            if (apHash.size() > 0) {
-                pPage = apHash.get(key);
-            }
+                /*
+                 * Step 3 of header comment. If the cache draws from the pool,
+                 * then the pool limits memory instead of nMax. Forced page is
+                 * allocated even beyond the budget: concurrent reader could
+                 * take the room which has been made for it.
+                 */
+                if (pool != null) {
+                    if (!pool.allocate(SqlJetPageCache.this, szPage)) {
+                        if (!force) {
+                            return null;
+                        }
+                        pool.allocateForce(szPage);
+                    }
+                } else if (bPurgeable && getPageCount() >= nMax && !force) {
+                    return null;
+                }
 
-            if (pPage != null || !createFlag) {
-                return fetch_out.go_to(pPage);
+                /*
+                 * If a usable page buffer has still not been found, allocate a
+                 * new one. Other thread could put the same page meanwhile.
+                 */
+                pPage = new SqlJetPage(szPage);
+                pPage.pgno = key;
+                pPage.pCache = SqlJetPageCache.this;
+                final SqlJetPage pOther = apHash.putOrPin(key, pPage);
+                if (pOther != null) {
+                    freed(1);
+                    pPage.freeData();
+                    pPage = pOther;
+                }
+                nMiss.incrementAndGet();
             }
 
-            /* Step 3 of header comment. */
-            if (bPurgeable && getPageCount() == nMax) {
-                return null;
+            if (pPage != null && key > iMaxKey) {
+                iMaxKey = key;
             }
+            return pPage;
+        }
 
-            /*
-             * If a usable page buffer has still not been found, attempt to
-             * allocate a new one.
-             */
-            if (pPage == null) {
-                pPage = new SqlJetPage(szPage);
+        /**
+         * Return memory of removed pages to the pool.
+         */
+        private void freed(int nPage) {
+            if (pool != null && nPage > 0) {
+                pool.free((long) nPage * szPage);
             }
+        }
 
-            if (pPage != null) {
-                pPage.pgno = key;
-                pPage.pCache = SqlJetPageCache.this;
-                apHash.put(key, pPage);
+        /**
+         * Recycle buffer of page which has been removed from the table,
+         * unless the page is still pinned: then it's recycled when the page
+         * is unpinned.
+         */
+        private void recycled(SqlJetPage pPage, int nRefMax) {
+            if (pPage.nRef <= nRefMax) {
+                pPage.freeData();
             }
-
-            return fetch_out.go_to(pPage);
         }
 
         /**
@@ -662,12 +782,31 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * calls to xFetch().
          * 
          */
-        public synchronized void unpin(ISqlJetPage page, boolean discard) {
-            final int pageNumber = page.getPageNumber();
-            if (discard || (bPurgeable && getPageCount() == nMax)) {
-                apHash.remove(pageNumber);
-            } else if (!unpinned.contains(pageNumber)) {
-                unpinned.add(pageNumber);
+        public void unpin(ISqlJetPage page, boolean discard) {
+            final SqlJetPage pPage = (SqlJetPage) page;
+            synchronized (policy) {
+                if (discard) {
+                    apHash.unref(pPage);
+                    if (apHash.remove(pPage.pgno, pPage)) {
+                        freed(1);
+                        /* other reader may still wait for the dropped page */
+                        recycled(pPage, 0);
+                    }
+                    policy.remove(pPage);
+                } else if (apHash.get(pPage.pgno) != pPage) {
+                    /* page was removed from cache while it was pinned */
+                    recycled(pPage, 0);
+                } else if (bPurgeable) {
+                    policy.unpin(pPage);
+                    /*
+                     * If the cache doesn't draw from the pool and is full, then
+                     * the page chosen by eviction policy makes room.
+                     */
+                    if (pool == null) {
+                        while (getPageCount() >= nMax && evictUnpinned()) {
+                        }
+                    }
+                }
             }
         }
 
@@ -679,15 +818,22 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * guaranteed not to be pinned.
          * 
          */
-        public synchronized void rekey(ISqlJetPage page, int oldKey, int newKey) {
+        public void rekey(ISqlJetPage page, int oldKey, int newKey) {
 
             SqlJetPage pPage = (SqlJetPage) page;
 
             assert (pPage.pgno == oldKey);
 
-            apHash.remove(oldKey);
-            apHash.put(newKey, pPage);
-            pPage.pgno = newKey;
+            synchronized (policy) {
+                apHash.remove(oldKey, pPage);
+                final SqlJetPage pOld = apHash.put(newKey, pPage);
+                if (pOld != null && pOld != pPage) {
+                    policy.remove(pOld);
+                    freed(1);
+                    recycled(pOld, 0);
+                }
+                pPage.pgno = newKey;
+            }
 
             if (newKey > iMaxKey) {
                 iMaxKey = newKey;
@@ -703,16 +849,18 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * they can be safely discarded.
          * 
          */
-        public synchronized void truncate(int iLimit) {
+        public void truncate(int iLimit) {
             if (iLimit <= iMaxKey) {
-                List<Integer> l = new LinkedList<Integer>();
-                for (Integer i : apHash.keySet()) {
-                    if (i >= iLimit) {
-                        l.add(i);
+                final List<SqlJetPage> removed = new ArrayList<SqlJetPage>();
+                synchronized (policy) {
+                    apHash.truncate(iLimit, removed);
+                    for (final SqlJetPage p : removed) {
+                        policy.remove(p);
+                        /* callers may still hold pinned pages */
+                        recycled(p, 0);
                     }
+                    freed(removed.size());
                 }
-                for (Integer i : l)
-                    apHash.remove(i);
                 iMaxKey = iLimit - 1;
             }
         }
@@ -724,39 +872,43 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * [sqlite3_pcache*] handle invalid, and will not use it with any other
          * sqlite3_pcache_methods functions.
          */
-        public synchronized void destroy() {
-            apHash.clear();
-            unpinned.clear();
+        public void destroy() {
+            final List<SqlJetPage> removed = new ArrayList<SqlJetPage>();
+            synchronized (policy) {
+                apHash.truncate(0, removed);
+                policy.clear();
+                for (final SqlJetPage p : removed) {
+                    recycled(p, 0);
+                }
+                freed(removed.size());
+            }
         }
 
         /**
+         * Recycle one unpinned page which is chosen by eviction policy.
          * 
+         * @return true if a page has been recycled.
          */
-        public void cleanUnpinned() {
-            final Iterator<Integer> i = unpinned.iterator();
-            while (i.hasNext()) {
-                final Integer next = i.next();
-                if (next == null) {
-                    i.remove();
-                    continue;
-                }
-                final SqlJetPage p = apHash.get(next);
-                if (p == null) {
-                    i.remove();
-                    continue;
-                }
-                if(p.getRefCount()>0){
-                    i.remove();
-                    continue;                    
-                }
-                final Set<SqlJetPageFlags> flags = p.getFlags();
-                if (flags.contains(SqlJetPageFlags.DIRTY) || flags.contains(SqlJetPageFlags.NEED_SYNC)) {
-                    continue;
+        public boolean cleanUnpinned() {
+            synchronized (policy) {
+                return evictUnpinned();
+            }
+        }
+
+        /**
+         * Recycle page chosen by eviction policy, caller holds the policy.
+         */
+        private boolean evictUnpinned() {
+            for (SqlJetPage p = policy.evict(); p != null; p = policy.evict()) {
+                /* reader could pin the page after policy has chosen it */
+                if (apHash.removeUnpinned(p.pgno, p)) {
+                    freed(1);
+                    nEvict.incrementAndGet();
+                    recycled(p, 0);
+                    return true;
                 }
-                apHash.remove(next);
-                i.remove();
-                return;
             }
+            return false;
         }
 
     }
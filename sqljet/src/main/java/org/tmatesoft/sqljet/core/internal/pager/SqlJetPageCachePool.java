@@ -0,0 +1,195 @@
+/**
+ * SqlJetPageCachePool.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Memory budget shared by page caches of all databases opened in this JVM.
+ *
+ * When the pool is enabled, page caches are limited by total size of pages in
+ * bytes rather than each by its own number of pages. When the budget is
+ * exhausted, a page is recycled from the cache which holds most memory, so
+ * that busy databases get equal shares and idle ones give memory back.
+ *
+ * The pool is disabled by default, its size is set by
+ * {@link #SQLJET_PAGE_CACHE_POOL_SIZE} system property or by
+ * {@link #setSize(long)}. Caches which are opened while the pool is disabled
+ * keep their own limits.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetPageCachePool {
+
+    /**
+     * System property name for size of page cache pool in bytes. Zero
+     * disables the pool.
+     */
+    public static final String SQLJET_PAGE_CACHE_POOL_SIZE = "SQLJET.PAGE_CACHE_POOL_SIZE";
+    public static final long PAGE_CACHE_POOL_SIZE_DEFAULT = 0;
+
+    private static final SqlJetPageCachePool pool = new SqlJetPageCachePool(SqlJetUtility.getLongSysProp(
+            SQLJET_PAGE_CACHE_POOL_SIZE, PAGE_CACHE_POOL_SIZE_DEFAULT));
+
+    /** Memory budget in bytes */
+    private volatile long size;
+
+    /** Memory used by pages of all caches */
+    private final AtomicLong used = new AtomicLong();
+
+    /** Caches which draw from this pool */
+    private final List<SqlJetPageCache> caches = new ArrayList<SqlJetPageCache>();
+
+    SqlJetPageCachePool(long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return the pool shared by all page caches.
+     */
+    public static SqlJetPageCachePool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return memory budget in bytes, zero if the pool is disabled.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Set memory budget. If it is smaller than memory used, unused pages will
+     * be recycled when caches need new pages.
+     *
+     * @param size
+     *            budget in bytes, zero disables the pool for caches which
+     *            will be opened.
+     * @throws IllegalStateException
+     *             if the pool is disabled while some caches draw from it:
+     *             they would have no memory at all.
+     */
+    public synchronized void setSize(long size) {
+        if (size <= 0 && !caches.isEmpty()) {
+            throw new IllegalStateException("Page cache pool can't be disabled while " + caches.size()
+                    + " caches are open");
+        }
+        this.size = size;
+    }
+
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * @return memory used by pages of caches in the pool, in bytes.
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * @return statistics of every cache in the pool.
+     */
+    public synchronized List<SqlJetPageCacheStatistics> getStatistics() {
+        final List<SqlJetPageCacheStatistics> statistics = new ArrayList<SqlJetPageCacheStatistics>(caches.size());
+        for (final SqlJetPageCache cache : caches) {
+            statistics.add(cache.getStatistics());
+        }
+        return statistics;
+    }
+
+    synchronized void register(SqlJetPageCache cache) {
+        caches.add(cache);
+    }
+
+    synchronized void unregister(SqlJetPageCache cache) {
+        caches.remove(cache);
+    }
+
+    /**
+     * Reserve memory for a new page, recycling unused pages of caches in the
+     * pool if budget is exhausted.
+     *
+     * @param requester
+     *            cache which needs the page.
+     * @param bytes
+     *            size of page.
+     * @return true if memory is reserved, false if no page could be recycled.
+     */
+    boolean allocate(SqlJetPageCache requester, int bytes) {
+        for (;;) {
+            final long current = used.get();
+            if (current + bytes > size) {
+                break;
+            }
+            if (used.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+        synchronized (this) {
+            List<SqlJetPageCache> candidates = null;
+            while (used.get() + bytes > size) {
+                if (candidates == null) {
+                    candidates = new ArrayList<SqlJetPageCache>(caches);
+                    if (!candidates.contains(requester)) {
+                        candidates.add(requester);
+                    }
+                }
+                SqlJetPageCache victim = null;
+                long max = 0;
+                for (final SqlJetPageCache cache : candidates) {
+                    final long cacheBytes = cache.getBytes();
+                    if (cacheBytes > max) {
+                        victim = cache;
+                        max = cacheBytes;
+                    }
+                }
+                if (victim == null) {
+                    return false;
+                }
+                if (!victim.recycle()) {
+                    candidates.remove(victim);
+                }
+            }
+            used.addAndGet(bytes);
+            return true;
+        }
+    }
+
+    /**
+     * Reserve memory for a page beyond the budget.
+     */
+    void allocateForce(int bytes) {
+        used.addAndGet(bytes);
+    }
+
+    /**
+     * Return memory of recycled pages.
+     */
+    void free(long bytes) {
+        used.addAndGet(-bytes);
+    }
+
+}
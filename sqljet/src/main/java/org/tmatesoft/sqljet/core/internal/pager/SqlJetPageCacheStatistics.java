@@ -0,0 +1,93 @@
+/**
+ * SqlJetPageCacheStatistics.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+/**
+ * Snapshot of statistics of one page cache.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetPageCacheStatistics {
+
+    private final String name;
+    private final int pageCount;
+    private final long bytes;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    SqlJetPageCacheStatistics(String name, int pageCount, long bytes, long hits, long misses, long evictions) {
+        this.name = name;
+        this.pageCount = pageCount;
+        this.bytes = bytes;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * @return name of database file which pages are cached.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of pages in cache.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return memory used by pages in cache, in bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of lookups which found page in cache.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups which had to add page to cache.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of pages recycled to free memory.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": pages=" + pageCount + ", bytes=" + bytes + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions;
+    }
+
+}
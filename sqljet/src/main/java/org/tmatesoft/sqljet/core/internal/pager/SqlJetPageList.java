@@ -0,0 +1,99 @@
+/**
+ * SqlJetPageList.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+/**
+ * List of pages used by eviction policies. Pages are linked through
+ * {@link SqlJetPage#pLruNext} and {@link SqlJetPage#pLruPrev}, so that no
+ * memory is allocated to track them. Page may be in one list at a time.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetPageList {
+
+    /** The oldest page */
+    SqlJetPage pHead;
+
+    /** The newest page */
+    SqlJetPage pTail;
+
+    /** Number of pages in list */
+    int size;
+
+    boolean contains(SqlJetPage page) {
+        return page.pLruList == this;
+    }
+
+    void addLast(SqlJetPage page) {
+        assert (page.pLruList == null);
+        page.pLruPrev = pTail;
+        page.pLruNext = null;
+        if (pTail != null) {
+            pTail.pLruNext = page;
+        } else {
+            pHead = page;
+        }
+        pTail = page;
+        page.pLruList = this;
+        size++;
+    }
+
+    void remove(SqlJetPage page) {
+        assert (page.pLruList == this);
+        if (page.pLruPrev != null) {
+            page.pLruPrev.pLruNext = page.pLruNext;
+        } else {
+            pHead = page.pLruNext;
+        }
+        if (page.pLruNext != null) {
+            page.pLruNext.pLruPrev = page.pLruPrev;
+        } else {
+            pTail = page.pLruPrev;
+        }
+        page.pLruNext = null;
+        page.pLruPrev = null;
+        page.pLruList = null;
+        size--;
+    }
+
+    /**
+     * Move page to the end of list.
+     */
+    void moveToLast(SqlJetPage page) {
+        if (page != pTail) {
+            remove(page);
+            addLast(page);
+        }
+    }
+
+    void clear() {
+        SqlJetPage next;
+        for (SqlJetPage p = pHead; p != null; p = next) {
+            next = p.pLruNext;
+            p.pLruNext = null;
+            p.pLruPrev = null;
+            p.pLruList = null;
+        }
+        pHead = null;
+        pTail = null;
+        size = 0;
+    }
+
+}
@@ -0,0 +1,366 @@
+/**
+ * SqlJetPageTable.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hash table which maps page numbers to pages.
+ *
+ * Keys are plain ints kept in open-addressing tables with linear probing, so
+ * that lookups don't allocate. The table is split into segments which are
+ * locked independently: threads which access different pages seldom wait for
+ * each other.
+ *
+ * References to pages are counted under lock of the segment which the page
+ * number belongs to, so that page can't be pinned by one thread while other
+ * thread removes it to recycle.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetPageTable {
+
+    /** Number of segments, must be power of two */
+    private static final int SEGMENTS = 16;
+
+    /** Initial capacity of every segment, must be power of two */
+    private static final int SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /** Number of pages in all segments */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** Number of pages which are referenced */
+    private final AtomicInteger pinned = new AtomicInteger();
+
+    SqlJetPageTable() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Spread bits of page number, so that consecutive pages are distributed
+     * over segments and slots evenly.
+     */
+    private static int hash(int pgno) {
+        final int h = pgno * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    /**
+     * @return number of pages in the table.
+     */
+    int size() {
+        return count.get();
+    }
+
+    /**
+     * @return number of pages which are referenced, including pages which
+     *         have been removed from the table while they were referenced.
+     */
+    int getRefCount() {
+        return pinned.get();
+    }
+
+    /**
+     * @return page with given number or null if there is no such page.
+     */
+    SqlJetPage get(int pgno) {
+        final int h = hash(pgno);
+        return segmentFor(h).get(pgno, h);
+    }
+
+    /**
+     * Reference page with given number.
+     *
+     * @return referenced page or null if there is no such page.
+     */
+    SqlJetPage pin(int pgno) {
+        final int h = hash(pgno);
+        return segmentFor(h).pin(pgno, h);
+    }
+
+    /**
+     * Put new page into the table and reference it, unless there is a page
+     * with given number already: then that page is referenced instead.
+     *
+     * @return the page which was in the table already and has been
+     *         referenced, or null if new page has been put.
+     */
+    SqlJetPage putOrPin(int pgno, SqlJetPage page) {
+        final int h = hash(pgno);
+        final Segment segment = segmentFor(h);
+        synchronized (segment) {
+            final SqlJetPage other = segment.pin(pgno, h);
+            if (other == null) {
+                segment.put(pgno, h, page, true);
+                segment.ref(page);
+            }
+            return other;
+        }
+    }
+
+    /**
+     * Add reference to the page, which is referenced already.
+     */
+    void ref(SqlJetPage page) {
+        segmentFor(hash(page.pgno)).ref(page);
+    }
+
+    /**
+     * Remove reference to the page.
+     *
+     * @return number of references which are left.
+     */
+    int unref(SqlJetPage page) {
+        return segmentFor(hash(page.pgno)).unref(page);
+    }
+
+    /**
+     * Put page into the table unless there is a page with given number
+     * already.
+     *
+     * @return the page which was in the table already, or null if page has
+     *         been put.
+     */
+    SqlJetPage putIfAbsent(int pgno, SqlJetPage page) {
+        final int h = hash(pgno);
+        return segmentFor(h).put(pgno, h, page, true);
+    }
+
+    /**
+     * Put page into the table, replacing a page with the same number.
+     *
+     * @return replaced page or null.
+     */
+    SqlJetPage put(int pgno, SqlJetPage page) {
+        final int h = hash(pgno);
+        return segmentFor(h).put(pgno, h, page, false);
+    }
+
+    /**
+     * Remove page with given number if it is the given page.
+     *
+     * @return true if page has been removed.
+     */
+    boolean remove(int pgno, SqlJetPage page) {
+        final int h = hash(pgno);
+        return segmentFor(h).remove(pgno, h, page);
+    }
+
+    /**
+     * Remove page with given number if it is the given page and nobody
+     * references it.
+     *
+     * @return true if page has been removed.
+     */
+    boolean removeUnpinned(int pgno, SqlJetPage page) {
+        final int h = hash(pgno);
+        final Segment segment = segmentFor(h);
+        synchronized (segment) {
+            return page.nRef == 0 && segment.remove(pgno, h, page);
+        }
+    }
+
+    /**
+     * Remove all pages with numbers greater than or equal to the limit.
+     *
+     * @param limit
+     *            the smallest page number to remove.
+     * @param removed
+     *            receives removed pages, may be null.
+     */
+    void truncate(int limit, List<SqlJetPage> removed) {
+        for (final Segment segment : segments) {
+            segment.truncate(limit, removed);
+        }
+    }
+
+    /**
+     * Remove all pages.
+     */
+    void clear() {
+        for (final Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Part of the table with its own lock.
+     */
+    private final class Segment {
+
+        private int[] keys = new int[SEGMENT_CAPACITY];
+        private SqlJetPage[] values = new SqlJetPage[SEGMENT_CAPACITY];
+        private int size;
+
+        /**
+         * Slots are chosen by bits of hash which are not used to choose the
+         * segment.
+         */
+        private int slot(int hash, int mask) {
+            return (hash >>> 4) & mask;
+        }
+
+        synchronized SqlJetPage get(int key, int hash) {
+            final int mask = keys.length - 1;
+            for (int i = slot(hash, mask);; i = (i + 1) & mask) {
+                final SqlJetPage value = values[i];
+                if (value == null) {
+                    return null;
+                } else if (keys[i] == key) {
+                    return value;
+                }
+            }
+        }
+
+        synchronized SqlJetPage pin(int key, int hash) {
+            final SqlJetPage value = get(key, hash);
+            if (value != null) {
+                ref(value);
+            }
+            return value;
+        }
+
+        synchronized void ref(SqlJetPage page) {
+            if (page.nRef++ == 0) {
+                pinned.incrementAndGet();
+            }
+        }
+
+        synchronized int unref(SqlJetPage page) {
+            assert (page.nRef > 0);
+            if (--page.nRef == 0) {
+                pinned.decrementAndGet();
+            }
+            return page.nRef;
+        }
+
+        synchronized SqlJetPage put(int key, int hash, SqlJetPage page, boolean onlyIfAbsent) {
+            final int mask = keys.length - 1;
+            int i = slot(hash, mask);
+            for (;; i = (i + 1) & mask) {
+                final SqlJetPage value = values[i];
+                if (value == null) {
+                    break;
+                } else if (keys[i] == key) {
+                    if (!onlyIfAbsent) {
+                        values[i] = page;
+                    }
+                    return value;
+                }
+            }
+            keys[i] = key;
+            values[i] = page;
+            size++;
+            count.incrementAndGet();
+            if (size * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            return null;
+        }
+
+        synchronized boolean remove(int key, int hash, SqlJetPage page) {
+            final int mask = keys.length - 1;
+            for (int i = slot(hash, mask);; i = (i + 1) & mask) {
+                final SqlJetPage value = values[i];
+                if (value == null) {
+                    return false;
+                } else if (keys[i] == key) {
+                    if (page != null && value != page) {
+                        return false;
+                    }
+                    delete(i);
+                    return true;
+                }
+            }
+        }
+
+        synchronized void truncate(int limit, List<SqlJetPage> removed) {
+            for (int i = 0; i < keys.length;) {
+                final SqlJetPage value = values[i];
+                if (value != null && keys[i] >= limit) {
+                    if (removed != null) {
+                        removed.add(value);
+                    }
+                    /* deletion may shift other entry into this slot */
+                    delete(i);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        synchronized void clear() {
+            count.addAndGet(-size);
+            keys = new int[SEGMENT_CAPACITY];
+            values = new SqlJetPage[SEGMENT_CAPACITY];
+            size = 0;
+        }
+
+        /**
+         * Empty the slot and move following entries of the probe sequence
+         * back, so that lookups never need tombstones.
+         */
+        private void delete(int i) {
+            final int mask = keys.length - 1;
+            values[i] = null;
+            size--;
+            count.decrementAndGet();
+            for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                final int home = slot(hash(keys[j]), mask);
+                /* entry at j may move to i if i is between its home and j */
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            final int[] oldKeys = keys;
+            final SqlJetPage[] oldValues = values;
+            final int mask = capacity - 1;
+            keys = new int[capacity];
+            values = new SqlJetPage[capacity];
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = slot(hash(oldKeys[j]), mask);
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+    }
+
+}
@@ -22,6 +22,7 @@ import java.util.BitSet;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
@@ -51,6 +52,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetSavepointOperation;
 import org.tmatesoft.sqljet.core.internal.SqlJetSyncFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFile;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetLockWaitQueue;
 import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
 
 /**
@@ -75,6 +77,14 @@ import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
  * opened. The contents of all three of these variables is only guaranteed to be
  * correct if the boolean Pager.dbSizeValid is true.
  *
+ * Concurrent readers of one connection fetch pages without lock of pager: the
+ * page cache looks pages up and references them under locks of its page
+ * table, and a page which is missed is read from the file under lock of that
+ * page only. So readers which miss different pages read them at once, while
+ * readers of the same page wait until one of them has read it. Pager state
+ * doesn't change while readers share the connection, the first of them has
+ * locked the database already and keeps its first page referenced.
+ *
  * @author TMate Software Ltd.
  * @author Sergey Scherbina (sergey.scherbina@gmail.com)
  *
@@ -116,6 +126,29 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      */
     private static final int MAX_SECTOR_SIZE = 0x0100000;
 
+    /**
+     * Maximal number of pages with adjacent numbers which are written to the
+     * database file by one gathering write.
+     */
+    static final int MAX_WRITE_RUN = 128;
+
+    /**
+     * System property name for maximal number of pages which are read ahead
+     * when pages are read sequentially. Zero disables read-ahead.
+     */
+    public static final String SQLJET_READ_AHEAD = "SQLJET.READ_AHEAD";
+    public static final int READ_AHEAD_DEFAULT = 32;
+
+    /** Number of pages read ahead when sequential reading is detected */
+    private static final int READ_AHEAD_MIN = 4;
+
+    /**
+     * System property name which enables checksums of pages: new databases
+     * reserve space for them and pages are verified when they are read. Pages
+     * of such databases modified later by SQLite fail verification.
+     */
+    public static final String SQLJET_PAGE_CHECKSUMS = "SQLJET.PAGE_CHECKSUMS";
+
     /**
      * An instance of the following structure is allocated for each active
      * savepoint and statement transaction in the system. All such structures
@@ -199,8 +232,8 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
     /** Set after incrementing the change-counter */
     boolean changeCountDone;
 
-    /** Set when dbSize is correct */
-    boolean dbSizeValid;
+    /** Set when dbSize is correct, after dbSize has been set */
+    volatile boolean dbSizeValid;
 
     /** Number of pages in the file */
     int dbSize;
@@ -244,6 +277,12 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
     /** Name of the journal file */
     File journal;
 
+    /** Name of the write-ahead log file */
+    File walName;
+
+    /** Write-ahead log, if it is used */
+    SqlJetWal wal;
+
     /** Directory hold database and journal files */
     File directory;
 
@@ -274,6 +313,24 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
     /** Pointer to page cache object */
     SqlJetPageCache pageCache;
 
+    /** Maximal number of pages read ahead */
+    private final int readAheadMax = SqlJetUtility.getIntSysProp(SQLJET_READ_AHEAD, READ_AHEAD_DEFAULT);
+
+    /** Page which is read next if pages are read sequentially */
+    private volatile int readAheadNext;
+
+    /** Number of pages to read ahead, grows while reading is sequential */
+    private volatile int readAheadWindow;
+
+    /** Buffer for pages read ahead, taken by reader which reads ahead */
+    private final AtomicReference<ISqlJetMemoryPointer> readAheadBuffer = new AtomicReference<ISqlJetMemoryPointer>();
+
+    /** Whether pages are verified when they are read */
+    private final boolean checksumsEnabled = SqlJetUtility.getBoolSysProp(SQLJET_PAGE_CHECKSUMS, false);
+
+    /** Whether pages keep checksums in their reserved space */
+    private boolean checksums;
+
     SqlJetSafetyLevel safetyLevel;
 
     /**
@@ -391,6 +448,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
             this.directory = this.fileName.getParentFile();
             this.journal = new File(this.directory, this.fileName.getName() + JOURNAL);
+            this.walName = new File(this.directory, this.fileName.getName() + WAL);
 
             this.fd = this.fileSystem.open(this.fileName, this.type, this.permissions);
             this.readOnly = this.fd.getPermissions().contains(SqlJetFileOpenPermission.READONLY);
@@ -438,6 +496,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         this.tmpSpace = SqlJetUtility.allocatePtr(szPageDflt);
 
         pageCache = new SqlJetPageCache();
+        pageCache.name = null != this.fileName ? this.fileName.getPath() : null;
         pageCache.open(szPageDflt, !memDb, !memDb ? this : null);
 
         PAGERTRACE("OPEN %s %s\n", FILEHANDLEID(), fileName);
@@ -585,6 +644,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      * .core.SqlJetPagerJournalMode)
      */
     public void setJournalMode(final SqlJetPagerJournalMode journalMode) {
+        if (journalMode == SqlJetPagerJournalMode.WAL && (memDb || tempFile)) {
+            return;
+        }
         this.journalMode = journalMode;
     }
 
@@ -684,6 +746,60 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         return this.pageSize;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#setChecksums(boolean)
+     */
+    public void setChecksums(final boolean checksums) {
+        this.checksums = checksums;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#isChecksumsEnabled()
+     */
+    public boolean isChecksumsEnabled() {
+        return checksumsEnabled;
+    }
+
+    /**
+     * Store checksum of page content into the end of page, if pages keep
+     * checksums. Called for every page before it is written to the database
+     * file or to the log.
+     *
+     * @param data
+     *            content of page.
+     */
+    private void putChecksum(ISqlJetMemoryPointer data) {
+        if (checksums) {
+            data.putInt(pageSize - CHECKSUM_SIZE, SqlJetCrc32C.checksum(data, pageSize - CHECKSUM_SIZE));
+        }
+    }
+
+    /**
+     * Verify checksum of page which has been read, if pages keep checksums
+     * and verification is enabled. Pages of zeros are never written by pager
+     * and have no checksum.
+     *
+     * @param data
+     *            content of page.
+     * @return false if page is corrupted.
+     */
+    private boolean isChecksumValid(ISqlJetMemoryPointer data) {
+        if (!checksums || !checksumsEnabled
+                || data.getInt(pageSize - CHECKSUM_SIZE) == SqlJetCrc32C.checksum(data, pageSize - CHECKSUM_SIZE)) {
+            return true;
+        }
+        for (int i = 0; i < pageSize; i++) {
+            if (data.getByte(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @throws SqlJetExceptionRemove
      */
@@ -790,10 +906,36 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
     public int getPageCount() throws SqlJetException {
         checkErrorCode();
 
+        /* concurrent readers find size valid, it is counted under lock once */
+        int n = dbSizeValid ? dbSize : countPages();
+
+        if (n == (ISqlJetFile.PENDING_BYTE / pageSize)) {
+            n++;
+        }
+        if (n > mxPgno) {
+            mxPgno = n;
+        }
+        return n;
+    }
+
+    /**
+     * Count pages of database by its log or by size of its file.
+     *
+     * @return number of pages in database.
+     * @throws SqlJetException
+     */
+    private synchronized int countPages() throws SqlJetException {
         int n = 0;
 
         if (dbSizeValid) {
             n = dbSize;
+        } else if (null != wal && wal.getDbSize() >= 0) {
+            /* Size of database is stored in the last commit frame of log. */
+            n = wal.getDbSize();
+            if (SqlJetPagerState.UNLOCK != state) {
+                dbSize = n;
+                dbSizeValid = true;
+            }
         } else {
             assert (null != fd || tempFile);
             long l = 0;
@@ -817,12 +959,6 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
                 dbSizeValid = true;
             }
         }
-        if (n == (ISqlJetFile.PENDING_BYTE / pageSize)) {
-            n++;
-        }
-        if (n > mxPgno) {
-            mxPgno = n;
-        }
         return n;
     }
 
@@ -926,6 +1062,10 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
                 pagesAlwaysRollback = null;
             }
 
+            if (null != wal) {
+                wal.endReadTransaction();
+            }
+
             try {
                 if (null != fd)
                     fd.unlock(SqlJetLockType.NONE);
@@ -984,6 +1124,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         pagesInJournal = null;
         pagesAlwaysRollback = null;
         releaseAllSavepoint();
+        if (null != wal) {
+            closeWal();
+        }
         if (null != fd)
             fd.close();
 
@@ -1026,64 +1169,91 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             throw new SqlJetException(SqlJetErrorCode.INTERNAL, "Page cache is overflow");
         }
 
-        if (null == page.getPager()) {
-            /*
-             * The pager cache has created a new page. Its content needs to be
-             * initialized.
-             */
-            page.setPager(this);
-
-            int nMax;
-            try {
-                nMax = getPageCount();
-            } catch (SqlJetException e) {
-                page.unref();
-                throw e;
-            }
-
-            if (nMax < pageNumber || memDb || !read) {
-
-                if (pageNumber > mxPgno) {
-                    page.unref();
-                    throw new SqlJetException(SqlJetErrorCode.FULL);
-                }
-
-                SqlJetUtility.memset(page.getData(), (byte) 0, pageSize);
-                if (!read) {
-                    if (null == page.getFlags())
-                        page.setFlags(SqlJetUtility.noneOf(SqlJetPageFlags.class));
-                    page.getFlags().add(SqlJetPageFlags.NEED_READ);
+        /*
+         * Concurrent readers may fetch the same page at once, then one of them
+         * initializes the page while others wait on that page.
+         */
+        int nMax = 0;
+        synchronized (page) {
+            if (null == page.getPager()) {
+                /*
+                 * The pager cache has created a new page. Its content needs to
+                 * be initialized.
+                 */
+                try {
+                    nMax = initPage(page, pageNumber, read);
+                } catch (SqlJetException e) {
+                    dropPage(page);
+                    throw e;
                 }
-                PAGERTRACE("ZERO %s %d\n", PAGERID(), pageNumber);
-
+                page.setHash(pageHash(page));
+                page.setPager(this);
             } else {
-                try {
-                    readDbPage(page, pageNumber);
-                } catch (SqlJetIOException e) {
-                    if (SqlJetIOErrorCode.IOERR_SHORT_READ != e.getIoErrorCode()) {
-                        dropPage(page);
+                /* The requested page is in the page cache. */
+                assert (pageCache.getRefCount() > 0 || 1 == pageNumber);
+                if (read) {
+                    try {
+                        getContent(page);
+                    } catch (SqlJetException e) {
+                        page.unref();
                         throw e;
                     }
                 }
             }
-            page.setHash(pageHash(page));
-        } else {
-            /* The requested page is in the page cache. */
-            assert (pageCache.getRefCount() > 0 || 1 == pageNumber);
-            if (read) {
-                try {
-                    getContent(page);
-                } catch (SqlJetException e) {
-                    page.unref();
-                    throw e;
-                }
-            }
+        }
+
+        if (nMax > 0) {
+            readAhead(pageNumber, nMax);
         }
 
         return page;
 
     }
 
+    /**
+     * Initialize content of page which has been created by page cache: read
+     * it from the file, or fill it with zeros if page is beyond the end of
+     * file or its content isn't needed.
+     *
+     * @param page
+     *            new page, it is locked by caller.
+     * @param pageNumber
+     * @param read
+     *            if false then the page content isn't read.
+     * @return number of pages in database if the page has been read from the
+     *         file, 0 otherwise.
+     * @throws SqlJetException
+     */
+    private int initPage(final ISqlJetPage page, final int pageNumber, final boolean read) throws SqlJetException {
+        final int nMax = getPageCount();
+
+        if (nMax < pageNumber || memDb || !read) {
+
+            if (pageNumber > mxPgno) {
+                throw new SqlJetException(SqlJetErrorCode.FULL);
+            }
+
+            SqlJetUtility.memset(page.getData(), (byte) 0, pageSize);
+            if (!read) {
+                if (null == page.getFlags())
+                    page.setFlags(SqlJetUtility.noneOf(SqlJetPageFlags.class));
+                page.getFlags().add(SqlJetPageFlags.NEED_READ);
+            }
+            PAGERTRACE("ZERO %s %d\n", PAGERID(), pageNumber);
+            return 0;
+
+        }
+
+        try {
+            readDbPage(page, pageNumber);
+        } catch (SqlJetIOException e) {
+            if (SqlJetIOErrorCode.IOERR_SHORT_READ != e.getIoErrorCode()) {
+                throw e;
+            }
+        }
+        return nMax;
+    }
+
     /**
      * Make sure we have the content for a page. If the page was previously
      * acquired with noContent==1, then the content was just initialized to
@@ -1092,9 +1262,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      * already.
      *
      * @param page
-     * @throws SqlJetIOException
+     * @throws SqlJetException
      */
-    void getContent(final ISqlJetPage page) throws SqlJetIOException {
+    void getContent(final ISqlJetPage page) throws SqlJetException {
         final Set<SqlJetPageFlags> flags = page.getFlags();
         if (null != flags && flags.contains(SqlJetPageFlags.NEED_READ)) {
             readDbPage(page, page.getPageNumber());
@@ -1161,22 +1331,114 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         unlock();
     }
 
+    /**
+     * Detect sequential reading of database pages and put pages which follow
+     * the requested one into the cache ahead of time, reading them from the
+     * file at once. Every next sequential miss doubles number of pages which
+     * are read ahead, up to {@link #SQLJET_READ_AHEAD}; other miss stops
+     * reading ahead. Failures are ignored: pages will be read on demand.
+     * Concurrent readers may read ahead at once, every page is filled under
+     * its own lock unless other reader has read it meanwhile.
+     *
+     * @param pageNumber
+     *            page which has been read from the file, it is still pinned.
+     * @param nMax
+     *            number of pages in database.
+     */
+    private void readAhead(int pageNumber, int nMax) {
+        if (readAheadMax <= 0 || tempFile || null == fd) {
+            return;
+        }
+        int window = readAheadWindow;
+        if (pageNumber != readAheadNext) {
+            window = 0;
+        } else if (window < readAheadMax) {
+            window = Math.min(window > 0 ? window * 2 : READ_AHEAD_MIN, readAheadMax);
+        }
+        readAheadWindow = window;
+        readAheadNext = pageNumber + 1;
+        if (window == 0) {
+            return;
+        }
+
+        final int pendingPage = (int) (ISqlJetFile.PENDING_BYTE / pageSize) + 1;
+        final SqlJetPage[] pages = new SqlJetPage[window];
+        int count = 0;
+        for (int pgno = pageNumber + 1; count < window && pgno <= nMax && pgno != pendingPage; pgno++) {
+            if (null != wal && wal.findFrame(pgno) > 0) {
+                break;
+            }
+            final SqlJetPage page = pageCache.fetchNew(pgno);
+            if (null == page) {
+                break;
+            }
+            pages[count++] = page;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        int read = 0;
+        ISqlJetMemoryPointer buffer = readAheadBuffer.getAndSet(null);
+        try {
+            if (null == buffer || buffer.remaining() < readAheadMax * pageSize) {
+                buffer = SqlJetUtility.allocatePtr(readAheadMax * pageSize);
+            }
+            read = fd.read(buffer, count * pageSize, ((long) pageNumber) * pageSize) / pageSize;
+        } catch (SqlJetIOException e) {
+            PAGERTRACE("READAHEAD %s page %d failed: %s\n", PAGERID(), pageNumber + 1, e.getMessage());
+        }
+        for (int i = 0; i < count; i++) {
+            final SqlJetPage page = pages[i];
+            boolean loaded;
+            synchronized (page) {
+                loaded = null != page.pPager;
+                if (!loaded && i < read) {
+                    page.getData().copyFrom(buffer, i * pageSize, pageSize);
+                    if (isChecksumValid(page.getData())) {
+                        page.setHash(pageHash(page));
+                        page.pPager = this;
+                        loaded = true;
+                    }
+                }
+            }
+            if (loaded) {
+                pageCache.release(page);
+            } else {
+                pageCache.drop(page);
+            }
+        }
+        readAheadBuffer.set(buffer);
+        readAheadNext = pageNumber + read + 1;
+        PAGERTRACE("READAHEAD %s pages %d-%d\n", PAGERID(), pageNumber + 1, pageNumber + read);
+    }
+
     /**
      * Read the content of page pPg out of the database file.
      *
      * @param page
      * @param pageNumber
-     * @throws SqlJetIOException
+     * @throws SqlJetException
+     *             if page can't be read or its checksum doesn't match.
      */
-    private void readDbPage(final ISqlJetPage page, int pageNumber) throws SqlJetIOException {
+    private void readDbPage(final ISqlJetPage page, int pageNumber) throws SqlJetException {
         assert (!memDb);
         assert (null != fd || tempFile);
         if (null == fd) {
             throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_SHORT_READ);
         }
-        final long offset = ((long) (pageNumber - 1)) * pageSize;
         final ISqlJetMemoryPointer data = page.getData();
-        fd.read(data, pageSize, offset);
+        final int frame = null != wal ? wal.findFrame(pageNumber) : 0;
+        if (frame > 0) {
+            wal.readFrame(frame, data, pageSize);
+        } else {
+            final long offset = ((long) (pageNumber - 1)) * pageSize;
+            fd.read(data, pageSize, offset);
+        }
+        if (!isChecksumValid(data)) {
+            PAGERTRACE("CHECKSUM %s page %d mismatch\n", PAGERID(), pageNumber);
+            throw new SqlJetException(SqlJetErrorCode.CORRUPT, "Checksum mismatch of page " + pageNumber);
+        }
         if (1 == pageNumber) {
             SqlJetUtility.memcpy(dbFileVers, 0, data, 24, dbFileVers.remaining());
         }
@@ -1345,7 +1607,25 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
                 }
 
-                if (pageCache.getPageCount() > 0) {
+                if (null == wal) {
+                    openWalIfPresent();
+                }
+
+                if (null != wal) {
+                    /*
+                     * Take a snapshot of the write-ahead log. Cached pages
+                     * which were changed by other connections are discarded,
+                     * the rest of cache stays valid.
+                     */
+                    final Set<Integer> changed = wal.beginReadTransaction();
+                    if (pageCache.getPageCount() > 0) {
+                        if (null == changed) {
+                            reset();
+                        } else if (!changed.isEmpty()) {
+                            dropPages(changed);
+                        }
+                    }
+                } else if (pageCache.getPageCount() > 0) {
                     /*
                      * The shared-lock has just been acquired on the database
                      * file and there are already pages in the cache (from a
@@ -1390,6 +1670,203 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             }
     }
 
+    /**
+     * Discard pages from cache, and pages beyond the end of database as well.
+     * No page may be referenced.
+     *
+     * @param pages
+     *            numbers of pages.
+     */
+    private void dropPages(Set<Integer> pages) throws SqlJetException {
+        assert (pageCache.getRefCount() == 0);
+        for (final Integer pgno : pages) {
+            final ISqlJetPage page = pageCache.fetch(pgno, false);
+            if (null != page) {
+                pageCache.drop(page);
+            }
+        }
+        dbSizeValid = false;
+        pageCache.truncate(getPageCount());
+    }
+
+    /**
+     * Open the write-ahead log if its file exists. The pager is switched into
+     * {@link SqlJetPagerJournalMode#WAL} mode in this case.
+     *
+     * @throws SqlJetException
+     */
+    private void openWalIfPresent() throws SqlJetException {
+        if (memDb || tempFile || null == walName) {
+            return;
+        }
+        if (fileSystem.access(walName, SqlJetFileAccesPermission.EXISTS)) {
+            wal = new SqlJetWal(fileSystem, fileName, walName, readOnly);
+            journalMode = SqlJetPagerJournalMode.WAL;
+        }
+    }
+
+    /**
+     * Start a write transaction in WAL mode. The log is created if the pager
+     * has just been switched into WAL mode, or it is checkpointed and deleted
+     * if the pager has been switched out of it. Both require an EXCLUSIVE lock
+     * so that no other connection reads the database while its journal mode
+     * changes.
+     *
+     * @throws SqlJetException
+     */
+    private void beginWal() throws SqlJetException {
+        assert (state == SqlJetPagerState.RESERVED);
+        try {
+            if (null == wal) {
+                if (getPageCount() == 0) {
+                    /*
+                     * The log is never created for an empty database: the
+                     * first transaction writes the header of the database
+                     * which marks it as a WAL database, using rollback journal.
+                     */
+                    return;
+                }
+                waitOnLock(SqlJetLockType.EXCLUSIVE);
+                wal = new SqlJetWal(fileSystem, fileName, walName, false);
+                if (wal.getDbSize() >= 0) {
+                    /* Log was written by someone else, our snapshot is stale. */
+                    throw new SqlJetException(SqlJetErrorCode.BUSY);
+                }
+                wal.beginReadTransaction();
+            } else if (journalMode != SqlJetPagerJournalMode.WAL) {
+                if (wal.isShared()) {
+                    journalMode = SqlJetPagerJournalMode.WAL;
+                } else {
+                    waitOnLock(SqlJetLockType.EXCLUSIVE);
+                    if (wal.close(fd, true, noSync ? null : syncFlags)) {
+                        wal = null;
+                        return;
+                    }
+                    wal = new SqlJetWal(fileSystem, fileName, walName, false);
+                    wal.beginReadTransaction();
+                    journalMode = SqlJetPagerJournalMode.WAL;
+                }
+            }
+            wal.beginWriteTransaction();
+            getPageCount();
+            dbOrigSize = dbSize;
+        } catch (SqlJetException e) {
+            fd.unlock(SqlJetLockType.SHARED);
+            state = SqlJetPagerState.SHARED;
+            throw e;
+        }
+    }
+
+    /**
+     * Append pages to the write-ahead log. Pages beyond the end of database
+     * are skipped. If nothing is left to commit then page 1 is written so that
+     * the log always gets a commit frame.
+     *
+     * @param pList
+     *            list of pages connected with pDirty.
+     * @param isCommit
+     *            true if frames commit the transaction.
+     * @param sync
+     *            true if log should be synced after commit.
+     * @throws SqlJetException
+     */
+    private void writeWalFrames(ISqlJetPage pList, boolean isCommit, boolean sync) throws SqlJetException {
+        SqlJetPage head = null;
+        SqlJetPage tail = null;
+        for (SqlJetPage p = (SqlJetPage) pList; p != null; p = p.pDirty) {
+            if (p.pgno <= dbSize) {
+                if (null == head) {
+                    head = p;
+                } else {
+                    tail.pDirty = p;
+                }
+                tail = p;
+            }
+        }
+        if (null != tail) {
+            tail.pDirty = null;
+        }
+        SqlJetPage page1 = null;
+        if (null == head) {
+            if (!isCommit) {
+                return;
+            }
+            page1 = (SqlJetPage) getPage(1);
+            page1.pDirty = null;
+            head = page1;
+        }
+        try {
+            for (SqlJetPage p = head; p != null; p = p.pDirty) {
+                putChecksum(p.getData());
+            }
+            wal.writeFrames(head, pageSize, dbSize, isCommit, sync ? syncFlags : null);
+            for (SqlJetPage p = head; p != null; p = p.pDirty) {
+                if (p.pgno == 1) {
+                    SqlJetUtility.memcpy(dbFileVers, 0, p.getData(), 24, dbFileVers.remaining());
+                }
+                p.setHash(pageHash(p));
+            }
+        } finally {
+            if (null != page1) {
+                page1.unref();
+            }
+        }
+    }
+
+    /**
+     * Rollback a transaction in WAL mode: drop uncommitted frames and restore
+     * content of pages which were changed from the log or the database.
+     *
+     * @throws SqlJetException
+     */
+    private void rollbackWal() throws SqlJetException {
+        final Set<Integer> pages = wal.undo();
+        for (ISqlJetPage p = pageCache.getDirtyList(); p != null; p = p.getDirty()) {
+            pages.add(p.getPageNumber());
+        }
+        dbSize = dbOrigSize;
+        for (final Integer pgno : pages) {
+            final ISqlJetPage page = pageCache.fetch(pgno, false);
+            if (null == page) {
+                continue;
+            }
+            try {
+                pageCache.makeClean(page);
+                if (pgno <= dbSize) {
+                    SqlJetUtility.memset(page.getData(), (byte) 0, pageSize);
+                    readDbPage(page, pgno);
+                    if (null != reiniter) {
+                        reiniter.pageCallback(page);
+                    }
+                }
+            } finally {
+                pageCache.release(page);
+            }
+        }
+    }
+
+    /**
+     * Close the write-ahead log. The last connection which uses the log
+     * checkpoints and deletes it, if it is able to lock the database
+     * exclusively.
+     *
+     * @throws SqlJetException
+     */
+    private void closeWal() throws SqlJetException {
+        boolean exclusive = false;
+        try {
+            exclusive = !readOnly && fd.lock(SqlJetLockType.SHARED) && fd.lock(SqlJetLockType.EXCLUSIVE);
+        } catch (SqlJetIOException e) {
+            exclusive = false;
+        }
+        try {
+            wal.close(fd, exclusive, noSync ? null : syncFlags);
+        } finally {
+            wal = null;
+            fd.unlock(SqlJetLockType.NONE);
+        }
+    }
+
     /**
      *
      * Playback the journal and thus restore the database file to the state it
@@ -1864,6 +2341,9 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             return;
         }
         releaseAllSavepoint();
+        if (null != wal) {
+            wal.endWriteTransaction();
+        }
         if (journalOpen) {
             if (journalMode == SqlJetPagerJournalMode.MEMORY) {
                 boolean isMemoryJournal = jfd.isMemJournal();
@@ -1903,7 +2383,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
                 journalOff = 0;
                 journalStarted = false;
             } else {
-                assert (journalMode == SqlJetPagerJournalMode.DELETE);
+                assert (journalMode == SqlJetPagerJournalMode.DELETE || journalMode == SqlJetPagerJournalMode.WAL);
                 try {
                     jfd.truncate(0);
                 } catch (SqlJetIOException e) {}
@@ -2148,7 +2628,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         PAGERTRACE("PLAYBACK %s page %d hash(%08x) %s\n", PAGERID(), pgno, dataHash(pageSize, aData),
                 (isMainJrnl ? "main-journal" : "sub-journal"));
         if (state.compareTo(SqlJetPagerState.EXCLUSIVE) >= 0
-                && (pPg == null || !pPg.getFlags().contains(SqlJetPageFlags.NEED_SYNC)) && null != fd) {
+                && (pPg == null || !pPg.getFlags().contains(SqlJetPageFlags.NEED_SYNC)) && null != fd && null == wal) {
             final long ofst = (pgno - 1) * ((long)pageSize);
             fd.write(aData, pageSize, ofst);
             if (pgno > dbFileSize) {
@@ -2508,6 +2988,12 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      * Return SQLITE_OK on success and an error code if we cannot obtain the
      * lock.
      *
+     * While busy callback waits the thread is registered in queue of waiters
+     * for locks of the file, so it is woken up as soon as other connection in
+     * this JVM releases its lock. Waiters which don't hold any lock yet try in
+     * FIFO order, a waiter which was woken up before its turn tries only when
+     * interval of busy callback elapsed.
+     *
      * @param lockType
      * @throws SqlJetIOException
      */
@@ -2516,17 +3002,32 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         /* If the file is currently unlocked then the size must be unknown */
         assert (SqlJetPagerState.SHARED.compareTo(state) <= 0 || !dbSizeValid);
         if (state.getLockType().compareTo(lockType) < 0) {
+            final SqlJetLockWaitQueue queue = null != busyHandler ? fd.getLockWaitQueue() : null;
+            final boolean holding = SqlJetPagerState.SHARED.compareTo(state) <= 0;
+            SqlJetLockWaitQueue.Waiter waiter = null;
             boolean lock = false;
             int n = 0;
-            do {
-                lock = fd.lock(lockType);
-                if (!lock && null != busyHandler) {
-                    boolean wait = busyHandler.call(n++);
-                    if (!wait) {
-                        break;
+            try {
+                do {
+                    if (null == queue || (null == waiter ? queue.mayTry(holding)
+                            : queue.mayTry(waiter) || waiter.isIntervalElapsed())) {
+                        lock = fd.lock(lockType);
+                    }
+                    if (!lock && null != busyHandler) {
+                        if (null != queue && null == waiter) {
+                            waiter = queue.enter(holding);
+                        }
+                        boolean wait = busyHandler.call(n++);
+                        if (!wait) {
+                            break;
+                        }
                     }
+                } while (lock != true);
+            } finally {
+                if (null != waiter) {
+                    queue.leave(waiter, lock);
                 }
-            } while (lock != true);
+            }
             if (lock) {
                 state = SqlJetPagerState.getPagerState(lockType);
             } else {
@@ -2552,7 +3053,16 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
     public ISqlJetPage lookupPage(int pageNumber) throws SqlJetException {
         assert (pageNumber != 0);
         if ((state != SqlJetPagerState.UNLOCK) && (errCode == null || errCode == SqlJetErrorCode.FULL)) {
-            return pageCache.fetch(pageNumber, false);
+            final ISqlJetPage page = pageCache.fetch(pageNumber, false);
+            if (null != page) {
+                /* other reader may still initialize the page */
+                synchronized (page) {
+                    if (null != page.getPager()) {
+                        return page;
+                    }
+                }
+                pageCache.release(page);
+            }
         }
         return null;
     }
@@ -2594,7 +3104,7 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      * @throws SqlJetException
      */
     private void doTruncate(int pageNumber) throws SqlJetException {
-        if (state.compareTo(SqlJetPagerState.EXCLUSIVE) >= 0 && null != fd) {
+        if (state.compareTo(SqlJetPagerState.EXCLUSIVE) >= 0 && null != fd && null == wal) {
             final long currentSize, newSize;
             currentSize = fd.fileSize();
             newSize = ((long)pageSize) * pageNumber;
@@ -2738,8 +3248,8 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         PAGERTRACE("STMT-JOURNAL %s page %d\n", PAGERID(), pPg.pgno);
 
         assert (pageInJournal(pPg) || pPg.pgno > dbOrigSize);
-        write32bits(sjfd, offset, pPg.pgno);
-        sjfd.write(pData, pageSize, offset + 4);
+        sjfd.write(new ISqlJetMemoryPointer[] { SqlJetUtility.put4byte(pPg.pgno), pData }, new int[] { 4, pageSize },
+                2, offset);
         stmtNRec++;
         assert (nSavepoint > 0);
         addToSavepointBitSets(pPg.pgno);
@@ -2773,12 +3283,18 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
             assert (!memDb);
             if (fd.lock(SqlJetLockType.RESERVED)) {
                 state = SqlJetPagerState.RESERVED;
-                if (exclusive) {
+                if (useJournal && !tempFile && (null != wal || journalMode == SqlJetPagerJournalMode.WAL)) {
+                    /*
+                     * Writer in WAL mode doesn't need an EXCLUSIVE lock, it
+                     * only appends to the log while readers keep reading.
+                     */
+                    beginWal();
+                } else if (exclusive) {
                     waitOnLock(SqlJetLockType.EXCLUSIVE);
                 }
                 dirtyCache = false;
                 PAGERTRACE("TRANSACTION %s\n", PAGERID());
-                if (useJournal && !tempFile && journalMode != SqlJetPagerJournalMode.OFF) {
+                if (null == wal && useJournal && !tempFile && journalMode != SqlJetPagerJournalMode.OFF) {
                     openJournal();
                 }
             } else {
@@ -3091,7 +3607,14 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
          * function has already been called, it is a no-op.
          */
         try {
-            if (state != SqlJetPagerState.SYNCED && !memDb && dirtyCache) {
+            if (state != SqlJetPagerState.SYNCED && !memDb && dirtyCache && null != wal) {
+
+                /* Commit by appending dirty pages to the log. */
+                writeWalFrames(pageCache.getDirtyList(), true, fullSync && !this.noSync && !noSync);
+                pageCache.cleanAll();
+                state = SqlJetPagerState.SYNCED;
+
+            } else if (state != SqlJetPagerState.SYNCED && !memDb && dirtyCache) {
 
                 /*
                  * If a master journal file name has already been written to the
@@ -3187,6 +3710,12 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         if (pList == null)
             return;
 
+        if (null != wal) {
+            /* Pages spilled to the log stay uncommitted until commit. */
+            writeWalFrames(pList, false, false);
+            return;
+        }
+
         /*
          * At this point there may be either a RESERVED or EXCLUSIVE lock on the
          * database file. If there is already an EXCLUSIVE lock, the following
@@ -3206,6 +3735,15 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
          */
         waitOnLock(SqlJetLockType.EXCLUSIVE);
 
+        /*
+         * Pages with adjacent numbers are collected into runs, every run is
+         * stored by one gathering write.
+         */
+        final ISqlJetMemoryPointer[] run = new ISqlJetMemoryPointer[MAX_WRITE_RUN];
+        final int[] amounts = new int[MAX_WRITE_RUN];
+        int runFirst = 0;
+        int runSize = 0;
+
         for (ISqlJetPage page = pList; page != null; page = page.getDirty()) {
 
             /* If the file has not yet been opened, open it now. */
@@ -3220,27 +3758,61 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
              * called to make the file smaller (presumably by auto-vacuum code).
              * Do not write any such pages to the file.
              */
-            if (page.getPageNumber() <= dbSize && !page.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
-
-                final long offset = ((long) (page.getPageNumber() - 1)) * pageSize;
-                PAGERTRACE("STORE %s page %d hash(%08x)\n", PAGERID(), pList.getPageNumber(), pageHash(pList));
+            final int pgno = page.getPageNumber();
+            if (pgno <= dbSize && !page.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
 
-                ISqlJetMemoryPointer pData = page.getData();
+                PAGERTRACE("STORE %s page %d hash(%08x)\n", PAGERID(), pgno, pageHash(page));
 
-                fd.write(pData, pageSize, offset);
-                if (page.getPageNumber() == 1) {
-                    SqlJetUtility.memcpy(dbFileVers, 0, pData, 24, dbFileVers.remaining());
+                if (runSize > 0 && (pgno != runFirst + runSize || runSize == MAX_WRITE_RUN)) {
+                    writeRun(run, amounts, runFirst, runSize);
+                    runSize = 0;
                 }
-                if (page.getPageNumber() > dbFileSize) {
-                    dbFileSize = page.getPageNumber();
+                if (runSize == 0) {
+                    runFirst = pgno;
                 }
+                putChecksum(page.getData());
+                run[runSize] = page.getData();
+                amounts[runSize] = pageSize;
+                runSize++;
             } else {
-                PAGERTRACE("NOSTORE %s page %d\n", PAGERID(), pList.getPageNumber());
+                PAGERTRACE("NOSTORE %s page %d\n", PAGERID(), pgno);
             }
 
             page.setHash(pageHash(page));
         }
 
+        if (runSize > 0) {
+            writeRun(run, amounts, runFirst, runSize);
+        }
+
+    }
+
+    /**
+     * Write content of pages with adjacent numbers to the database file.
+     *
+     * @param run
+     *            content of pages.
+     * @param amounts
+     *            page size for every page.
+     * @param first
+     *            number of the first page.
+     * @param count
+     *            number of pages.
+     * @throws SqlJetException
+     */
+    private void writeRun(ISqlJetMemoryPointer[] run, int[] amounts, int first, int count) throws SqlJetException {
+        final long offset = ((long) (first - 1)) * pageSize;
+        if (count == 1) {
+            fd.write(run[0], pageSize, offset);
+        } else {
+            fd.write(run, amounts, count, offset);
+        }
+        if (first == 1) {
+            SqlJetUtility.memcpy(dbFileVers, 0, run[0], 24, dbFileVers.remaining());
+        }
+        if (first + count - 1 > dbFileSize) {
+            dbFileSize = first + count - 1;
+        }
     }
 
     /**
@@ -3417,6 +3989,17 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
         PAGERTRACE("COMMIT %s\n", PAGERID());
 
         assert (state == SqlJetPagerState.SYNCED || memDb || !dirtyCache);
+        if (null != wal && wal.isCheckpointNeeded()) {
+            /*
+             * Transaction is already committed to the log, so a failure of
+             * automatic checkpoint is not an error: it will be retried later.
+             */
+            try {
+                wal.checkpoint(fd, noSync ? null : syncFlags);
+            } catch (SqlJetException e) {
+                PAGERTRACE("CHECKPOINT %s failed: %s\n", PAGERID(), e.getMessage());
+            }
+        }
         try {
             endTransaction(setMaster);
         } catch (SqlJetException e) {
@@ -3425,6 +4008,18 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
 
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.internal.ISqlJetPager#syncCommit()
+     */
+    public void syncCommit() throws SqlJetException {
+        final SqlJetWal wal = this.wal;
+        if (null != wal) {
+            wal.syncCommit();
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -3432,7 +4027,18 @@ public class SqlJetPager implements ISqlJetPager, ISqlJetLimits, ISqlJetPageCall
      */
     public void rollback() throws SqlJetException {
         PAGERTRACE("ROLLBACK %s\n", PAGERID());
-        if (!dirtyCache || !journalOpen) {
+        if (null != wal) {
+            try {
+                if (wal.isWriter()) {
+                    rollbackWal();
+                }
+            } catch (SqlJetException e) {
+                error(e);
+                throw e;
+            } finally {
+                endTransaction(false);
+            }
+        } else if (!dirtyCache || !journalOpen) {
             endTransaction(setMaster);
         } else if (null != errCode && errCode != SqlJetErrorCode.FULL) {
             if (state.compareTo(SqlJetPagerState.EXCLUSIVE) >= 0) {
@@ -0,0 +1,717 @@
+/**
+ * SqlJetWal.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetIOException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetSyncFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Write-ahead log.
+ *
+ * The log file has the same layout as in SQLite 3.7: a 32-byte header
+ * followed by frames, each of them is a 24-byte frame header and a page
+ * image. A transaction commits when a frame which stores the size of
+ * database is appended to the log, so committing is a single sequential
+ * write. Readers look for pages in the log first and then in the database
+ * file. Checkpoints copy pages from the log back into the database.
+ *
+ * Instead of "-shm" file the wal-index is kept in memory and is shared by
+ * all connections of the same JVM (see {@link SqlJetWalIndex}). Therefore
+ * database in WAL mode may be used by one process only: while the log is
+ * open this JVM locks {@link #WAL_LOCK_BYTE} of database file and other
+ * processes which try to open the log fail with
+ * {@link SqlJetErrorCode#BUSY}. Programs which don't know about this lock
+ * (e.g. sqlite3) must not open the database while SqlJet uses it in WAL
+ * mode.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetWal {
+
+    /**
+     * System property name for number of frames in log which triggers
+     * automatic checkpoint.
+     */
+    public static final String SQLJET_WAL_AUTOCHECKPOINT = "SQLJET.WAL_AUTOCHECKPOINT";
+    public static final int WAL_AUTOCHECKPOINT_DEFAULT = 1000;
+
+    private static final int WAL_AUTOCHECKPOINT = SqlJetUtility.getIntSysProp(SQLJET_WAL_AUTOCHECKPOINT,
+            WAL_AUTOCHECKPOINT_DEFAULT);
+
+    /**
+     * System property name for maximal delay in milliseconds which committer
+     * waits for other transactions to share sync of the log with them. Negative
+     * value disables group commit: every commit syncs the log by itself.
+     */
+    public static final String SQLJET_WAL_GROUP_COMMIT_DELAY = "SQLJET.WAL_GROUP_COMMIT_DELAY";
+    public static final int WAL_GROUP_COMMIT_DELAY_DEFAULT = -1;
+
+    static final int WAL_MAGIC = 0x377f0682;
+    static final int WAL_VERSION = 3007000;
+    static final int WAL_HDRSIZE = 32;
+    static final int WAL_FRAME_HDRSIZE = 24;
+
+    /**
+     * Byte of database file which is locked while the log is open. It is in
+     * the lock page right after the shared lock range, so it doesn't overlap
+     * with locks of {@link ISqlJetFile#lock(org.tmatesoft.sqljet.core.internal.SqlJetLockType)}.
+     */
+    static final long WAL_LOCK_BYTE = ISqlJetFile.SHARED_FIRST + ISqlJetFile.SHARED_SIZE;
+
+    /** Maximal number of frames appended by one gathering write */
+    private static final int WAL_WRITE_FRAMES = 64;
+
+    /** Wal-indexes of open logs by full path of log file */
+    private static final Map<String, SqlJetWalIndex> indexes = new HashMap<String, SqlJetWalIndex>();
+
+    private final ISqlJetFileSystem fileSystem;
+    private final File walName;
+    private final String key;
+    private final SqlJetWalIndex index;
+    private final boolean readOnly;
+    private final int groupCommitDelay;
+    private ISqlJetFile file;
+
+    /** Last frame visible to read transaction, -1 if there is none */
+    private int readMark = -1;
+
+    /** Version of wal-index seen by last read transaction */
+    private long readVersion = -1;
+
+    /** Last frame of the log seen by this connection, -1 if none */
+    private int seenFrame = -1;
+
+    /** Generation of the log seen by this connection */
+    private long seenGeneration = -1;
+
+    /** True if this connection is the writer */
+    private boolean writeLock;
+
+    /** Last frame written by the writer, including uncommitted ones */
+    private int writeFrame;
+
+    /** Checksum of the last frame written by the writer */
+    private final int[] writeCksum = new int[2];
+
+    /** Uncommitted frames of the writer by page number */
+    private final Map<Integer, Integer> pending = new HashMap<Integer, Integer>();
+
+    /** Page numbers of uncommitted frames in the order of writing */
+    private int[] pendingPgno = new int[64];
+
+    /** Number of uncommitted frames */
+    private int nPending;
+
+    /**
+     * Last commit of this connection which isn't synced yet, zero if none.
+     * It's changed only under monitor of index.
+     */
+    private volatile long unsynced;
+
+    /** Sync flags for the unsynced commit, guarded by monitor of index */
+    private Set<SqlJetSyncFlags> unsyncedFlags;
+
+    /**
+     * Open the write-ahead log.
+     *
+     * @param fileSystem
+     *            file system.
+     * @param dbName
+     *            name of database file.
+     * @param walName
+     *            name of log file.
+     * @param readOnly
+     *            true if log should not be created or written.
+     * @throws SqlJetException
+     *             {@link SqlJetErrorCode#BUSY} if other process uses the log.
+     */
+    public SqlJetWal(final ISqlJetFileSystem fileSystem, final File dbName, final File walName,
+            final boolean readOnly) throws SqlJetException {
+        this.fileSystem = fileSystem;
+        this.walName = walName;
+        this.readOnly = readOnly;
+        this.groupCommitDelay = SqlJetUtility.getIntSysProp(SQLJET_WAL_GROUP_COMMIT_DELAY,
+                WAL_GROUP_COMMIT_DELAY_DEFAULT);
+        this.key = fileSystem.getFullPath(walName);
+        synchronized (indexes) {
+            SqlJetWalIndex index = indexes.get(key);
+            if (index == null) {
+                index = new SqlJetWalIndex();
+                index.lock(fileSystem, dbName);
+                indexes.put(key, index);
+            }
+            index.nRef++;
+            this.index = index;
+        }
+        try {
+            file = fileSystem.open(walName, SqlJetFileType.WAL, readOnly ? SqlJetUtility
+                    .of(SqlJetFileOpenPermission.READONLY) : SqlJetUtility.of(SqlJetFileOpenPermission.READWRITE,
+                    SqlJetFileOpenPermission.CREATE));
+            synchronized (index) {
+                index.recover(file);
+            }
+        } catch (SqlJetException e) {
+            synchronized (indexes) {
+                if (--index.nRef == 0) {
+                    indexes.remove(key);
+                    index.unlock();
+                }
+            }
+            if (file != null) {
+                file.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return name of log file.
+     */
+    public File getFileName() {
+        return walName;
+    }
+
+    /**
+     * @return true if other connections in this JVM have the log opened.
+     */
+    public boolean isShared() {
+        synchronized (indexes) {
+            return index.nRef > 1;
+        }
+    }
+
+    /**
+     * Start a read transaction: take snapshot of the log.
+     *
+     * Versions of pages which weren't changed since the previous snapshot of
+     * this connection stay valid, so only pages of frames which were
+     * committed after it have to be discarded from cache.
+     *
+     * @return numbers of pages which were changed in the log since the
+     *         previous read transaction, or null if the log was restarted
+     *         and all cached pages have to be discarded.
+     */
+    public Set<Integer> beginReadTransaction() {
+        synchronized (index) {
+            final Set<Integer> changed;
+            if (readVersion == index.version) {
+                changed = new HashSet<Integer>();
+            } else if (seenGeneration == index.generation && seenFrame >= 0 && seenFrame <= index.mxFrame) {
+                changed = index.getPageNumbers(seenFrame, index.mxFrame);
+            } else {
+                changed = null;
+            }
+            readMark = index.getSnapshot();
+            seen();
+            index.addReader(this, readMark);
+            return changed;
+        }
+    }
+
+    /**
+     * Remember current state of the log as seen by this connection.
+     */
+    private void seen() {
+        readVersion = index.version;
+        seenFrame = index.mxFrame;
+        seenGeneration = index.generation;
+    }
+
+    /**
+     * Finish a read transaction.
+     */
+    public void endReadTransaction() {
+        synchronized (index) {
+            readMark = -1;
+            index.removeReader(this);
+        }
+    }
+
+    /**
+     * @return size of database in pages which is stored in the log, or -1 if
+     *         the size of database file should be used.
+     */
+    public int getDbSize() {
+        synchronized (index) {
+            final int mark = readMark >= 0 ? readMark : index.getSnapshot();
+            return mark > 0 ? index.getDbSize(mark) : -1;
+        }
+    }
+
+    /**
+     * Find the frame holding the version of page visible to this connection.
+     *
+     * @param pgno
+     *            page number.
+     * @return frame number, or zero if page should be read from the database.
+     */
+    public int findFrame(int pgno) {
+        if (writeLock && nPending > 0) {
+            final Integer frame = pending.get(pgno);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        synchronized (index) {
+            return index.findFrame(pgno, readMark >= 0 ? readMark : index.getSnapshot());
+        }
+    }
+
+    /**
+     * Read page image from the frame.
+     *
+     * @param iFrame
+     *            frame number.
+     * @param data
+     *            buffer for page content.
+     * @param amount
+     *            number of bytes to read.
+     * @throws SqlJetIOException
+     */
+    public void readFrame(int iFrame, ISqlJetMemoryPointer data, int amount) throws SqlJetIOException {
+        assert (iFrame > 0);
+        final int pageSize;
+        synchronized (index) {
+            pageSize = index.pageSize;
+        }
+        if (amount > pageSize) {
+            SqlJetUtility.memset(data, (byte) 0, amount);
+            amount = pageSize;
+        }
+        file.read(data, amount, frameOffset(iFrame, pageSize) + WAL_FRAME_HDRSIZE);
+    }
+
+    private static long frameOffset(int iFrame, int pageSize) {
+        return WAL_HDRSIZE + ((long) (iFrame - 1)) * (WAL_FRAME_HDRSIZE + pageSize);
+    }
+
+    /**
+     * Start a write transaction. The caller must already hold a lock which
+     * excludes other writers.
+     *
+     * If the whole log has been copied into the database and nobody reads
+     * from it then the log is restarted from the beginning.
+     *
+     * @throws SqlJetException
+     *             BUSY if snapshot of this connection is not the latest one.
+     */
+    public void beginWriteTransaction() throws SqlJetException {
+        assert (!readOnly);
+        synchronized (index) {
+            if (readMark < 0 || readVersion != index.version) {
+                throw new SqlJetException(SqlJetErrorCode.BUSY);
+            }
+            if (index.mxFrame > 0 && index.mxFrame == index.nBackfill && !index.hasLogReaders(this)) {
+                index.restart((int) SqlJetUtility.get4byteUnsigned(fileSystem.randomness(4)));
+                readMark = 0;
+                seen();
+                index.addReader(this, readMark);
+            }
+            writeLock = true;
+            writeFrame = index.mxFrame;
+            writeCksum[0] = index.cksum1;
+            writeCksum[1] = index.cksum2;
+        }
+        nPending = 0;
+        pending.clear();
+    }
+
+    /**
+     * Finish a write transaction. Uncommitted frames are dropped.
+     */
+    public void endWriteTransaction() {
+        if (writeLock) {
+            undo();
+            writeLock = false;
+        }
+    }
+
+    /**
+     * @return true if this connection is the writer.
+     */
+    public boolean isWriter() {
+        return writeLock;
+    }
+
+    /**
+     * Drop uncommitted frames of the writer.
+     *
+     * @return numbers of pages which had uncommitted frames.
+     */
+    public Set<Integer> undo() {
+        final Set<Integer> pages = new HashSet<Integer>(pending.keySet());
+        synchronized (index) {
+            writeFrame = index.mxFrame;
+            writeCksum[0] = index.cksum1;
+            writeCksum[1] = index.cksum2;
+        }
+        nPending = 0;
+        pending.clear();
+        return pages;
+    }
+
+    /**
+     * Append pages to the log.
+     *
+     * @param list
+     *            pages connected with {@link ISqlJetPage#getDirty()}.
+     * @param pageSize
+     *            size of page.
+     * @param dbSize
+     *            size of database in pages, used for commit.
+     * @param isCommit
+     *            if true then frames commit the transaction.
+     * @param syncFlags
+     *            if not null then log is synced after commit. In group commit
+     *            mode the sync is postponed till {@link #syncCommit()}.
+     * @throws SqlJetException
+     */
+    public void writeFrames(ISqlJetPage list, int pageSize, int dbSize, boolean isCommit,
+            Set<SqlJetSyncFlags> syncFlags) throws SqlJetException {
+        assert (writeLock);
+        assert (list != null);
+
+        if (writeFrame == 0) {
+            writeHeader(pageSize);
+        } else if (pageSize != index.pageSize) {
+            throw new SqlJetException(SqlJetErrorCode.CORRUPT);
+        }
+
+        /*
+         * Frames are consecutive in the log, so a batch of them is stored by
+         * one gathering write of headers interleaved with page images.
+         */
+        final ISqlJetMemoryPointer hdrs = SqlJetUtility.allocatePtr(WAL_FRAME_HDRSIZE * WAL_WRITE_FRAMES);
+        final ISqlJetMemoryPointer[] buffers = new ISqlJetMemoryPointer[WAL_WRITE_FRAMES * 2];
+        final int[] amounts = new int[WAL_WRITE_FRAMES * 2];
+        final int[] pgnos = new int[WAL_WRITE_FRAMES];
+        int nBatch = 0;
+        for (ISqlJetPage page = list; page != null; page = page.getDirty()) {
+            final int pgno = page.getPageNumber();
+            final boolean last = isCommit && page.getDirty() == null;
+            final ISqlJetMemoryPointer data = page.getData();
+            final ISqlJetMemoryPointer hdr = hdrs.getMoved(nBatch * WAL_FRAME_HDRSIZE);
+            SqlJetUtility.put4byte(hdr, 0, pgno);
+            SqlJetUtility.put4byte(hdr, 4, last ? dbSize : 0);
+            SqlJetUtility.put4byte(hdr, 8, index.salt1);
+            SqlJetUtility.put4byte(hdr, 12, index.salt2);
+            SqlJetWalIndex.checksum(index.bigEndCksum, hdr, 0, 8, writeCksum);
+            SqlJetWalIndex.checksum(index.bigEndCksum, data, 0, pageSize, writeCksum);
+            SqlJetUtility.put4byte(hdr, 16, writeCksum[0]);
+            SqlJetUtility.put4byte(hdr, 20, writeCksum[1]);
+
+            buffers[nBatch * 2] = hdr;
+            amounts[nBatch * 2] = WAL_FRAME_HDRSIZE;
+            buffers[nBatch * 2 + 1] = data;
+            amounts[nBatch * 2 + 1] = pageSize;
+            pgnos[nBatch++] = pgno;
+            if (nBatch == WAL_WRITE_FRAMES || page.getDirty() == null) {
+                writeBatch(buffers, amounts, pgnos, nBatch, pageSize);
+                nBatch = 0;
+            }
+        }
+
+        if (isCommit) {
+            final boolean group = syncFlags != null && groupCommitDelay >= 0;
+            if (syncFlags != null && !group) {
+                file.sync(syncFlags);
+            }
+            synchronized (index) {
+                index.commit(pendingPgno, nPending, dbSize, writeCksum);
+                readMark = index.mxFrame;
+                seen();
+                index.addReader(this, readMark);
+                if (group) {
+                    unsyncedFlags = syncFlags;
+                    unsynced = index.nCommit;
+                } else if (syncFlags != null) {
+                    index.nSynced = index.nCommit;
+                }
+            }
+            nPending = 0;
+            pending.clear();
+        }
+    }
+
+    /**
+     * Append frames to the log after the last written one.
+     *
+     * @param buffers
+     *            headers and page images of frames.
+     * @param amounts
+     *            sizes of headers and page images.
+     * @param pgnos
+     *            page numbers of frames.
+     * @param count
+     *            number of frames.
+     * @param pageSize
+     *            size of page.
+     * @throws SqlJetException
+     */
+    private void writeBatch(ISqlJetMemoryPointer[] buffers, int[] amounts, int[] pgnos, int count, int pageSize)
+            throws SqlJetException {
+        file.write(buffers, amounts, count * 2, frameOffset(writeFrame + 1, pageSize));
+        for (int i = 0; i < count; i++) {
+            final int iFrame = ++writeFrame;
+            if (nPending >= pendingPgno.length) {
+                final int[] a = new int[pendingPgno.length * 2];
+                System.arraycopy(pendingPgno, 0, a, 0, nPending);
+                pendingPgno = a;
+            }
+            pendingPgno[nPending++] = pgnos[i];
+            pending.put(pgnos[i], iFrame);
+        }
+    }
+
+    /**
+     * Wait until the last transaction committed by this connection in group
+     * commit mode is synced to disk. The first committer which comes here
+     * becomes the leader: it waits up to the group commit delay for other
+     * transactions to commit, and then syncs the log once for all of them.
+     * Others wait for the leader, so the caller shouldn't hold any locks.
+     *
+     * @throws SqlJetException
+     */
+    public void syncCommit() throws SqlJetException {
+        if (unsynced == 0) {
+            return;
+        }
+        final long commit;
+        final Set<SqlJetSyncFlags> syncFlags;
+        final long group;
+        try {
+            synchronized (index) {
+                commit = unsynced;
+                syncFlags = unsyncedFlags;
+                if (commit == 0) {
+                    return;
+                }
+                while (index.nSynced < commit && index.syncing) {
+                    index.wait();
+                }
+                if (index.nSynced >= commit) {
+                    synced(commit);
+                    return;
+                }
+                index.syncing = true;
+                final long deadline = System.currentTimeMillis() + groupCommitDelay;
+                for (long delay = groupCommitDelay; delay > 0; delay = deadline - System.currentTimeMillis()) {
+                    index.wait(delay);
+                }
+                group = index.nCommit;
+            }
+        } catch (InterruptedException e) {
+            throw new SqlJetException(SqlJetErrorCode.INTERRUPT, e);
+        }
+        boolean synced = false;
+        try {
+            file.sync(syncFlags);
+            synced = true;
+        } finally {
+            synchronized (index) {
+                if (synced && group > index.nSynced) {
+                    index.nSynced = group;
+                }
+                if (synced) {
+                    synced(commit);
+                }
+                index.syncing = false;
+                index.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forgets the unsynced commit unless this connection has committed again
+     * since then: later commit isn't covered by the sync and should be synced
+     * by its own {@link #syncCommit()}. Caller holds monitor of index.
+     */
+    private void synced(long commit) {
+        if (unsynced == commit) {
+            unsynced = 0;
+            unsyncedFlags = null;
+        }
+    }
+
+    /**
+     * Write a header of new log.
+     */
+    private void writeHeader(int pageSize) throws SqlJetException {
+        final ISqlJetMemoryPointer hdr = SqlJetUtility.allocatePtr(WAL_HDRSIZE);
+        synchronized (index) {
+            assert (index.mxFrame == 0);
+            index.restart((int) SqlJetUtility.get4byteUnsigned(fileSystem.randomness(4)));
+            index.pageSize = pageSize;
+            index.bigEndCksum = true;
+            SqlJetUtility.put4byte(hdr, 0, WAL_MAGIC | 1);
+            SqlJetUtility.put4byte(hdr, 4, WAL_VERSION);
+            SqlJetUtility.put4byte(hdr, 8, pageSize);
+            SqlJetUtility.put4byte(hdr, 12, index.ckptSeq);
+            SqlJetUtility.put4byte(hdr, 16, index.salt1);
+            SqlJetUtility.put4byte(hdr, 20, index.salt2);
+            writeCksum[0] = 0;
+            writeCksum[1] = 0;
+            SqlJetWalIndex.checksum(true, hdr, 0, 24, writeCksum);
+            SqlJetUtility.put4byte(hdr, 24, writeCksum[0]);
+            SqlJetUtility.put4byte(hdr, 28, writeCksum[1]);
+            index.cksum1 = writeCksum[0];
+            index.cksum2 = writeCksum[1];
+            seen();
+        }
+        file.write(hdr, WAL_HDRSIZE, 0);
+    }
+
+    /**
+     * @return true if so many frames were not copied into database that
+     *         automatic checkpoint should be run.
+     */
+    public boolean isCheckpointNeeded() {
+        synchronized (index) {
+            return WAL_AUTOCHECKPOINT > 0 && index.mxFrame - index.nBackfill >= WAL_AUTOCHECKPOINT;
+        }
+    }
+
+    /**
+     * Copy pages from the log into the database. Only frames which are not
+     * needed by active readers are copied. The caller must hold a lock which
+     * excludes other writers.
+     *
+     * @param db
+     *            database file.
+     * @param syncFlags
+     *            if not null then files are synced.
+     * @return true if all frames of the log were copied.
+     * @throws SqlJetException
+     */
+    public boolean checkpoint(ISqlJetFile db, Set<SqlJetSyncFlags> syncFlags) throws SqlJetException {
+        final TreeMap<Integer, Integer> pages = new TreeMap<Integer, Integer>();
+        final int mxSafe, mxFrame, dbSize, pageSize;
+        synchronized (index) {
+            mxSafe = index.getSafeFrame(this);
+            mxFrame = index.mxFrame;
+            pageSize = index.pageSize;
+            if (mxSafe <= index.nBackfill) {
+                return index.nBackfill == mxFrame;
+            }
+            dbSize = index.getDbSize(mxSafe);
+            for (int iFrame = index.nBackfill + 1; iFrame <= mxSafe; iFrame++) {
+                final int pgno = index.getPageNumber(iFrame);
+                if (pgno <= dbSize) {
+                    pages.put(pgno, index.findFrame(pgno, mxSafe));
+                }
+            }
+        }
+
+        if (syncFlags != null) {
+            file.sync(syncFlags);
+        }
+        /* pages with adjacent numbers are copied into database by one write */
+        final ISqlJetMemoryPointer data = SqlJetUtility.allocatePtr(pageSize * SqlJetPager.MAX_WRITE_RUN);
+        int runFirst = 0;
+        int runSize = 0;
+        for (final Map.Entry<Integer, Integer> page : pages.entrySet()) {
+            final int pgno = page.getKey();
+            if (runSize > 0 && (pgno != runFirst + runSize || runSize == SqlJetPager.MAX_WRITE_RUN)) {
+                db.write(data, pageSize * runSize, ((long) (runFirst - 1)) * pageSize);
+                runSize = 0;
+            }
+            if (runSize == 0) {
+                runFirst = pgno;
+            }
+            readFrame(page.getValue(), data.getMoved(runSize * pageSize), pageSize);
+            runSize++;
+        }
+        if (runSize > 0) {
+            db.write(data, pageSize * runSize, ((long) (runFirst - 1)) * pageSize);
+        }
+        if (mxSafe == mxFrame && db.fileSize() > ((long) dbSize) * pageSize) {
+            db.truncate(((long) dbSize) * pageSize);
+        }
+        if (syncFlags != null) {
+            db.sync(syncFlags);
+        }
+
+        synchronized (index) {
+            index.nBackfill = mxSafe;
+            return mxSafe == index.mxFrame;
+        }
+    }
+
+    /**
+     * Close the log. If this is the last connection in JVM which uses the log
+     * and caller holds exclusive lock on database then the log is
+     * checkpointed and deleted. The last connection also releases lock of
+     * database which keeps other processes out of the log.
+     *
+     * @param db
+     *            database file.
+     * @param exclusive
+     *            true if caller holds exclusive lock on database.
+     * @param syncFlags
+     *            if not null then files are synced.
+     * @return true if log file was deleted.
+     * @throws SqlJetException
+     */
+    public boolean close(ISqlJetFile db, boolean exclusive, Set<SqlJetSyncFlags> syncFlags) throws SqlJetException {
+        syncCommit();
+        endWriteTransaction();
+        endReadTransaction();
+        boolean deleted = false;
+        try {
+            synchronized (indexes) {
+                if (--index.nRef == 0) {
+                    indexes.remove(key);
+                    try {
+                        if (exclusive && !readOnly && checkpoint(db, syncFlags)) {
+                            file.close();
+                            file = null;
+                            deleted = fileSystem.delete(walName, false);
+                        }
+                    } finally {
+                        index.unlock();
+                    }
+                }
+            }
+        } finally {
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+        }
+        return deleted;
+    }
+
+}
@@ -0,0 +1,436 @@
+/**
+ * SqlJetWalIndex.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * The wal-index. It is the in-memory counterpart of SQLite's "-shm" file: it
+ * maps page numbers to the frames of the write-ahead log which hold their
+ * latest committed versions, and tracks the snapshots used by readers.
+ *
+ * One wal-index is shared by all connections of this JVM which have the same
+ * database open. It is rebuilt from the log file when the first of them opens
+ * the log. Other processes can't see it, so while it exists this JVM holds
+ * lock of database file which refuses the log to other processes.
+ *
+ * All methods except {@link #lock(ISqlJetFileSystem, File)} and
+ * {@link #unlock()} have to be called with the monitor of this object held.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetWalIndex {
+
+    /** Number of connections which have this log opened */
+    int nRef;
+
+    /** Database file which holds lock of the log for this JVM */
+    private ISqlJetFile lockFile;
+
+    /** True if the content was read from the log file */
+    boolean recovered;
+
+    /** Database page size */
+    int pageSize;
+
+    /** Index of the last valid committed frame */
+    int mxFrame;
+
+    /** Number of frames already copied back into the database */
+    int nBackfill;
+
+    /** Checkpoint sequence counter of the log header */
+    int ckptSeq;
+
+    /** Salt values of the log header */
+    int salt1, salt2;
+
+    /** True if checksums are computed over big-endian words */
+    boolean bigEndCksum = true;
+
+    /** Checksum of the last committed frame (or of the log header) */
+    int cksum1, cksum2;
+
+    /** Changes whenever content of the log changes */
+    long version;
+
+    /** Changes when the log is started anew, so frame numbers are reused */
+    long generation;
+
+    /** Number of transactions committed to the log since it was opened */
+    long nCommit;
+
+    /** Number of committed transactions which are known to be synced */
+    long nSynced;
+
+    /** True while some writer syncs the log for a group of commits */
+    boolean syncing;
+
+    /** Page number of every frame, indexed by frame number */
+    private int[] aPgno = new int[64];
+
+    /** Previous frame of the same page, indexed by frame number */
+    private int[] aPrev = new int[64];
+
+    /** Size of the database in pages for commit frames, zero otherwise */
+    private int[] aCommit = new int[64];
+
+    /** The latest frame of every page */
+    private final Map<Integer, Integer> lastFrame = new HashMap<Integer, Integer>();
+
+    /** Snapshots of active readers */
+    private final Map<SqlJetWal, Integer> readers = new IdentityHashMap<SqlJetWal, Integer>();
+
+    /**
+     * Compute the log checksum of a region, continuing from given values.
+     *
+     * @param bigEndian
+     *            true if words are big-endian.
+     * @param data
+     *            data to checksum.
+     * @param offset
+     *            offset of region in data, must be 8-bytes aligned.
+     * @param length
+     *            length of region, must be multiple of 8.
+     * @param cksum
+     *            two checksum words which are updated in place.
+     */
+    static void checksum(boolean bigEndian, ISqlJetMemoryPointer data, int offset, int length, int[] cksum) {
+        assert (length % 8 == 0);
+        int s1 = cksum[0];
+        int s2 = cksum[1];
+        for (int i = offset; i < offset + length; i += 8) {
+            int x1 = SqlJetUtility.get4byte(data, i);
+            int x2 = SqlJetUtility.get4byte(data, i + 4);
+            if (!bigEndian) {
+                x1 = Integer.reverseBytes(x1);
+                x2 = Integer.reverseBytes(x2);
+            }
+            s1 += x1 + s2;
+            s2 += x2 + s1;
+        }
+        cksum[0] = s1;
+        cksum[1] = s2;
+    }
+
+    /**
+     * Lock database file for this JVM while it uses the log. The lock is
+     * exclusive, or shared if database is read-only, as then nobody can
+     * write the log. Called with monitor of wal-indexes map held.
+     *
+     * @param fileSystem
+     *            file system.
+     * @param dbName
+     *            name of database file.
+     * @throws SqlJetException
+     *             {@link SqlJetErrorCode#BUSY} if other process uses the log.
+     */
+    void lock(ISqlJetFileSystem fileSystem, File dbName) throws SqlJetException {
+        final boolean shared = !fileSystem.access(dbName, SqlJetFileAccesPermission.READWRITE);
+        final ISqlJetFile db = fileSystem.open(dbName, SqlJetFileType.MAIN_DB,
+                SqlJetUtility.of(shared ? SqlJetFileOpenPermission.READONLY : SqlJetFileOpenPermission.READWRITE));
+        boolean locked = false;
+        try {
+            locked = db.lockRegion(SqlJetWal.WAL_LOCK_BYTE, 1, shared);
+        } finally {
+            if (!locked) {
+                db.close();
+            }
+        }
+        if (!locked) {
+            throw new SqlJetException(SqlJetErrorCode.BUSY, "Database " + dbName.getPath()
+                    + " is used in WAL mode by other process");
+        }
+        lockFile = db;
+    }
+
+    /**
+     * Release lock of database taken by {@link #lock(ISqlJetFileSystem, File)}.
+     * Called with monitor of wal-indexes map held.
+     *
+     * @throws SqlJetException
+     */
+    void unlock() throws SqlJetException {
+        if (lockFile != null) {
+            try {
+                lockFile.close();
+            } finally {
+                lockFile = null;
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index from the content of log file. Frames after the last
+     * valid commit frame are ignored.
+     *
+     * @param file
+     *            log file.
+     * @throws SqlJetException
+     */
+    void recover(ISqlJetFile file) throws SqlJetException {
+        if (recovered) {
+            return;
+        }
+        clear();
+        final long size = file.fileSize();
+        if (size >= SqlJetWal.WAL_HDRSIZE) {
+            final ISqlJetMemoryPointer hdr = SqlJetUtility.allocatePtr(SqlJetWal.WAL_HDRSIZE);
+            file.read(hdr, SqlJetWal.WAL_HDRSIZE, 0);
+            final int magic = SqlJetUtility.get4byte(hdr, 0);
+            final int szPage = SqlJetUtility.get4byte(hdr, 8);
+            if ((magic & 0xFFFFFFFE) == SqlJetWal.WAL_MAGIC && SqlJetUtility.get4byte(hdr, 4) == SqlJetWal.WAL_VERSION
+                    && szPage >= 512 && szPage <= 65536 && ((szPage - 1) & szPage) == 0) {
+                final boolean bigEndian = (magic & 1) != 0;
+                final int[] cksum = new int[2];
+                checksum(bigEndian, hdr, 0, 24, cksum);
+                if (cksum[0] == SqlJetUtility.get4byte(hdr, 24) && cksum[1] == SqlJetUtility.get4byte(hdr, 28)) {
+                    pageSize = szPage;
+                    bigEndCksum = bigEndian;
+                    ckptSeq = SqlJetUtility.get4byte(hdr, 12);
+                    salt1 = SqlJetUtility.get4byte(hdr, 16);
+                    salt2 = SqlJetUtility.get4byte(hdr, 20);
+                    cksum1 = cksum[0];
+                    cksum2 = cksum[1];
+                    readFrames(file, size, cksum);
+                }
+            }
+        }
+        recovered = true;
+        version++;
+        generation++;
+    }
+
+    private void readFrames(ISqlJetFile file, long size, int[] cksum) throws SqlJetException {
+        final int szFrame = SqlJetWal.WAL_FRAME_HDRSIZE + pageSize;
+        final ISqlJetMemoryPointer frame = SqlJetUtility.allocatePtr(szFrame);
+        int iFrame = 0;
+        int nPgno = 0;
+        int[] pgnos = new int[64];
+        int[] commits = new int[64];
+        for (long offset = SqlJetWal.WAL_HDRSIZE; offset + szFrame <= size; offset += szFrame) {
+            file.read(frame, szFrame, offset);
+            final int pgno = SqlJetUtility.get4byte(frame, 0);
+            if (pgno <= 0 || SqlJetUtility.get4byte(frame, 8) != salt1 || SqlJetUtility.get4byte(frame, 12) != salt2) {
+                break;
+            }
+            checksum(bigEndCksum, frame, 0, 8, cksum);
+            checksum(bigEndCksum, frame, SqlJetWal.WAL_FRAME_HDRSIZE, pageSize, cksum);
+            if (cksum[0] != SqlJetUtility.get4byte(frame, 16) || cksum[1] != SqlJetUtility.get4byte(frame, 20)) {
+                break;
+            }
+            iFrame++;
+            if (iFrame >= pgnos.length) {
+                pgnos = grow(pgnos);
+                commits = grow(commits);
+            }
+            pgnos[iFrame] = pgno;
+            commits[iFrame] = SqlJetUtility.get4byte(frame, 4);
+            if (commits[iFrame] != 0) {
+                for (int i = nPgno + 1; i <= iFrame; i++) {
+                    append(i, pgnos[i], commits[i]);
+                }
+                nPgno = iFrame;
+                mxFrame = iFrame;
+                cksum1 = cksum[0];
+                cksum2 = cksum[1];
+            }
+        }
+    }
+
+    private static int[] grow(int[] a) {
+        final int[] b = new int[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    private void append(int iFrame, int pgno, int commit) {
+        if (iFrame >= aPgno.length) {
+            aPgno = grow(aPgno);
+            aPrev = grow(aPrev);
+            aCommit = grow(aCommit);
+        }
+        aPgno[iFrame] = pgno;
+        aCommit[iFrame] = commit;
+        final Integer prev = lastFrame.put(pgno, iFrame);
+        aPrev[iFrame] = prev != null ? prev : 0;
+    }
+
+    /**
+     * Drop all frames.
+     */
+    private void clear() {
+        mxFrame = 0;
+        nBackfill = 0;
+        lastFrame.clear();
+    }
+
+    /**
+     * Start a new log: drop all frames and change salts so that content of
+     * previous log is never treated as valid.
+     *
+     * @param random
+     *            new random salt value.
+     */
+    void restart(int random) {
+        clear();
+        ckptSeq++;
+        salt1++;
+        salt2 = random;
+        version++;
+        generation++;
+    }
+
+    /**
+     * Publish frames of a committed transaction.
+     *
+     * @param pgnos
+     *            page numbers of new frames.
+     * @param count
+     *            number of new frames.
+     * @param dbSize
+     *            size of database in pages after this commit.
+     * @param cksum
+     *            checksum of the last frame.
+     */
+    void commit(int[] pgnos, int count, int dbSize, int[] cksum) {
+        for (int i = 0; i < count; i++) {
+            append(mxFrame + i + 1, pgnos[i], i == count - 1 ? dbSize : 0);
+        }
+        mxFrame += count;
+        nCommit++;
+        cksum1 = cksum[0];
+        cksum2 = cksum[1];
+        version++;
+    }
+
+    /**
+     * Find the latest frame of the page which is not after the given frame.
+     *
+     * @param pgno
+     *            page number.
+     * @param mark
+     *            last frame visible in the snapshot.
+     * @return frame number, or zero if page has no such frame.
+     */
+    int findFrame(int pgno, int mark) {
+        if (mark <= 0) {
+            return 0;
+        }
+        final Integer last = lastFrame.get(pgno);
+        int iFrame = last != null ? last : 0;
+        while (iFrame > mark) {
+            iFrame = aPrev[iFrame];
+        }
+        return iFrame;
+    }
+
+    /**
+     * @return numbers of pages which have frames after the first given frame
+     *         up to the second one.
+     */
+    Set<Integer> getPageNumbers(int from, int to) {
+        assert (from >= 0 && to <= mxFrame);
+        final Set<Integer> pages = new HashSet<Integer>();
+        for (int iFrame = from + 1; iFrame <= to; iFrame++) {
+            pages.add(aPgno[iFrame]);
+        }
+        return pages;
+    }
+
+    int getPageNumber(int iFrame) {
+        assert (iFrame > 0 && iFrame <= mxFrame);
+        return aPgno[iFrame];
+    }
+
+    /**
+     * @return size of database in pages as it was written by the commit
+     *         ending at given frame.
+     */
+    int getDbSize(int iFrame) {
+        assert (iFrame > 0 && iFrame <= mxFrame);
+        return aCommit[iFrame];
+    }
+
+    /**
+     * Snapshot which new read transactions get: zero means all content is in
+     * the database file.
+     */
+    int getSnapshot() {
+        return mxFrame == nBackfill ? 0 : mxFrame;
+    }
+
+    void addReader(SqlJetWal wal, int mark) {
+        readers.put(wal, mark);
+    }
+
+    void removeReader(SqlJetWal wal) {
+        readers.remove(wal);
+    }
+
+    /**
+     * @return true if some reader except given one uses frames of the log.
+     */
+    boolean hasLogReaders(SqlJetWal except) {
+        for (final Map.Entry<SqlJetWal, Integer> reader : readers.entrySet()) {
+            if (reader.getKey() != except && reader.getValue() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compute the last frame which may be copied into the database without
+     * disturbing any reader except given one.
+     */
+    int getSafeFrame(SqlJetWal except) {
+        int mxSafe = mxFrame;
+        for (final Map.Entry<SqlJetWal, Integer> reader : readers.entrySet()) {
+            if (reader.getKey() == except) {
+                continue;
+            }
+            final int mark = reader.getValue();
+            if (mark == 0) {
+                /* reader sees database file only, it must not change */
+                return nBackfill;
+            } else if (mark < mxSafe) {
+                mxSafe = mark;
+            }
+        }
+        return mxSafe;
+    }
+
+}
@@ -17,6 +17,7 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
+import java.util.Iterator;
 import java.util.Map;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -77,6 +78,21 @@ public interface ISqlJetBtreeDataTable extends ISqlJetBtreeTable {
      */
     long insert(SqlJetConflictAction onConflict, Object... values) throws SqlJetException;
 
+    /**
+     * Writes many new entries into the table. If table is empty then table
+     * and indexes b-trees are built bottom-up: rows are appended to full leaf
+     * pages while their rowids ascend, index keys are sorted externally and
+     * appended after all rows. Rows which break order of rowids are inserted
+     * one by one afterwards. If table isn't empty all rows are inserted one by
+     * one.
+     *
+     * @param rows
+     *            values of rows.
+     * @return count of inserted rows.
+     * @throws SqlJetException
+     */
+    long bulkInsert(Iterator<Object[]> rows) throws SqlJetException;
+
     /**
      * Update an entry in the table by rowId.
      * 
@@ -43,13 +43,38 @@ public interface ISqlJetBtreeRecord extends ISqlJetReleasable {
 
     /**
      * @return
+     * @throws SqlJetException
+     */
+    List<ISqlJetVdbeMem> getFields() throws SqlJetException;
+
+    /**
+     * Returns value of field. Values of record which is read from cursor are
+     * decoded at first access, so fields which aren't accessed aren't read at
+     * all.
+     * 
+     * @param field
+     * @return
+     * @throws SqlJetException
      */
-    List<ISqlJetVdbeMem> getFields();
+    ISqlJetVdbeMem getField(int field) throws SqlJetException;
 
     /**
      * @return
+     * @throws SqlJetException
      */
-    ISqlJetMemoryPointer getRawRecord();
+    ISqlJetMemoryPointer getRawRecord() throws SqlJetException;
+
+    /**
+     * Returns record without zero bytes of zero-filled blobs which are at end
+     * of record, count of these bytes is returned in nZero[0]. It is used to
+     * insert large zero-filled blobs without having them in memory.
+     * 
+     * @param nZero
+     *            receives count of zero bytes which aren't included.
+     * @return
+     * @throws SqlJetException
+     */
+    ISqlJetMemoryPointer getRawRecord(int[] nZero) throws SqlJetException;
 
     /**
      * @param field
@@ -61,12 +86,14 @@ public interface ISqlJetBtreeRecord extends ISqlJetReleasable {
     /**
      * @param field
      * @return
+     * @throws SqlJetException
      */
-    long getIntField(int field);
+    long getIntField(int field) throws SqlJetException;
 
     /**
      * @param field
      * @return
+     * @throws SqlJetException
      */
-    double getRealField(int field);
+    double getRealField(int field) throws SqlJetException;
 }
\ No newline at end of file
@@ -0,0 +1,289 @@
+/**
+ * SqlJetBlob.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.table;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.schema.SqlJetTableDef;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetVdbeSerialType;
+import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
+import org.tmatesoft.sqljet.core.schema.ISqlJetIndexedColumn;
+import org.tmatesoft.sqljet.core.table.ISqlJetBlob;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+
+/**
+ * Implementation of {@link ISqlJetBlob}. Holds btree cursor which is
+ * positioned at row and reads or writes parts of payload directly on pages,
+ * overflow pages are cached by cursor so random access doesn't walk whole
+ * overflow chain.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetBlob implements ISqlJetBlob {
+
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    private final SqlJetDb db;
+    private final boolean write;
+    private final ISqlJetBtreeCursor cursor;
+
+    private int offset;
+    private int size;
+    private boolean closed;
+
+    public SqlJetBlob(final SqlJetDb db, final ISqlJetBtree btree, final SqlJetTableDef tableDef,
+            final Set<ISqlJetIndexDef> indexes, final long rowId, final String fieldName, final boolean write)
+            throws SqlJetException {
+        if (!db.isInTransaction()) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Blob requires active transaction");
+        }
+        this.db = db;
+        this.write = write;
+
+        final int field = tableDef.getColumnNumber(fieldName);
+        if (field < 0) {
+            throw new SqlJetException(SqlJetErrorCode.ERROR, "No such column: " + fieldName);
+        }
+        if (tableDef.isRowIdPrimaryKey() && field == tableDef.getRowIdPrimaryKeyColumnIndex()) {
+            throw new SqlJetException(SqlJetErrorCode.ERROR, "Cannot open value of type integer: " + fieldName);
+        }
+        if (write && indexes != null) {
+            for (final ISqlJetIndexDef index : indexes) {
+                for (final ISqlJetIndexedColumn column : index.getColumns()) {
+                    if (fieldName.equalsIgnoreCase(column.getName())) {
+                        throw new SqlJetException(SqlJetErrorCode.ERROR, "Cannot open indexed column for writing: "
+                                + fieldName);
+                    }
+                }
+            }
+        }
+
+        cursor = btree.getCursor(tableDef.getPage(), write, null);
+        cursor.enterCursor();
+        try {
+            cursor.cacheOverflow();
+            if (cursor.moveTo(null, rowId, false) != 0) {
+                throw new SqlJetException(SqlJetErrorCode.ERROR, "No such rowid: " + rowId);
+            }
+            final SqlJetBtreeRecord record = new SqlJetBtreeRecord(cursor, false, btree.getDb().getOptions()
+                    .getFileFormat());
+            try {
+                if (field >= record.getFieldsCount()) {
+                    throw new SqlJetException(SqlJetErrorCode.ERROR, "Cannot open value of type null: " + fieldName);
+                }
+                final int type = record.getFieldSerialType(field);
+                if (type < 12) {
+                    throw new SqlJetException(SqlJetErrorCode.ERROR, "Cannot open value which isn't blob or text: "
+                            + fieldName);
+                }
+                offset = record.getFieldOffset(field);
+                size = SqlJetVdbeSerialType.serialTypeLen(type);
+            } finally {
+                record.release();
+            }
+        } catch (SqlJetException e) {
+            cursor.leaveCursor();
+            cursor.closeCursor();
+            throw e;
+        }
+        cursor.leaveCursor();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetBlob#getSize()
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetBlob#read(int,
+     * java.nio.ByteBuffer)
+     */
+    public void read(final int offset, final ByteBuffer buffer) throws SqlJetException {
+        access(offset, buffer, false);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetBlob#write(int,
+     * java.nio.ByteBuffer)
+     */
+    public void write(final int offset, final ByteBuffer buffer) throws SqlJetException {
+        if (!write) {
+            throw new SqlJetException(SqlJetErrorCode.READONLY, "Blob is opened for read only");
+        }
+        access(offset, buffer, true);
+    }
+
+    private void access(final int offset, final ByteBuffer buffer, final boolean write) throws SqlJetException {
+        final int amt = buffer.remaining();
+        if (offset < 0 || amt > size - offset) {
+            throw new SqlJetException(SqlJetErrorCode.ERROR, "Out of range: offset " + offset + ", length " + amt
+                    + ", size " + size);
+        }
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                if (closed) {
+                    throw new SqlJetException(SqlJetErrorCode.MISUSE, "Blob is closed");
+                }
+                cursor.enterCursor();
+                try {
+                    if (buffer.hasArray()) {
+                        /* Pages are copied directly from or into buffer's array. */
+                        final ISqlJetMemoryPointer ptr = SqlJetUtility.fromByteBuffer(
+                                ByteBuffer.wrap(buffer.array())).getMoved(buffer.arrayOffset() + buffer.position());
+                        accessCursor(SqlJetBlob.this.offset + offset, amt, ptr, write);
+                        buffer.position(buffer.position() + amt);
+                    } else {
+                        final byte[] chunk = new byte[Math.min(amt, COPY_CHUNK_SIZE)];
+                        final ISqlJetMemoryPointer ptr = SqlJetUtility.fromByteBuffer(ByteBuffer.wrap(chunk));
+                        for (int done = 0; done < amt;) {
+                            final int n = Math.min(chunk.length, amt - done);
+                            if (write) {
+                                buffer.get(chunk, 0, n);
+                                accessCursor(SqlJetBlob.this.offset + offset + done, n, ptr, true);
+                            } else {
+                                accessCursor(SqlJetBlob.this.offset + offset + done, n, ptr, false);
+                                buffer.put(chunk, 0, n);
+                            }
+                            done += n;
+                        }
+                    }
+                } finally {
+                    cursor.leaveCursor();
+                }
+                return null;
+            }
+        });
+    }
+
+    private void accessCursor(int offset, int amt, ISqlJetMemoryPointer ptr, boolean write) throws SqlJetException {
+        if (amt == 0) {
+            return;
+        }
+        if (write) {
+            cursor.putData(offset, amt, ptr);
+        } else {
+            cursor.data(offset, amt, ptr);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetBlob#getInputStream()
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                final int n = Math.min(len, size - position);
+                if (n <= 0) {
+                    return -1;
+                }
+                try {
+                    SqlJetBlob.this.read(position, ByteBuffer.wrap(b, off, n));
+                } catch (SqlJetException e) {
+                    throw new IOException(e.getMessage());
+                }
+                position += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return size - position;
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetBlob#getOutputStream()
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            private int position;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    SqlJetBlob.this.write(position, ByteBuffer.wrap(b, off, len));
+                } catch (SqlJetException e) {
+                    throw new IOException(e.getMessage());
+                }
+                position += len;
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetBlob#close()
+     */
+    public void close() throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                if (!closed) {
+                    closed = true;
+                    cursor.closeCursor();
+                }
+                return null;
+            }
+        });
+    }
+
+}
@@ -17,9 +17,12 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -28,6 +31,7 @@ import org.tmatesoft.sqljet.core.SqlJetEncoding;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeBuilder;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
@@ -208,6 +212,144 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeDataTable#bulkInsert
+     * (java.util.Iterator)
+     */
+    public long bulkInsert(Iterator<Object[]> rows) throws SqlJetException {
+        lock();
+        try {
+            if (first()) {
+                long count = 0;
+                while (rows.hasNext()) {
+                    insert(null, rows.next());
+                    count++;
+                }
+                return count;
+            }
+            final List<Object[]> late = new ArrayList<Object[]>();
+            final long count = buildTrees(rows, late);
+            for (final Object[] values : late) {
+                insert(null, values);
+            }
+            clearRecordCache();
+            first();
+            return count + late.size();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Appends rows to table b-tree while their rowids ascend, rows which break
+     * order are collected to late list. Keys of indexes are sorted and then
+     * index b-trees are built from them.
+     */
+    private long buildTrees(Iterator<Object[]> rows, List<Object[]> late) throws SqlJetException {
+        final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
+        final int primaryKeyColumnNumber = tableDef.isRowIdPrimaryKey() ? tableDef.getColumnNumber(tableDef
+                .getRowIdPrimaryKeyColumnName()) : -1;
+        final Map<ISqlJetIndexDef, SqlJetKeySorter> sorters = new LinkedHashMap<ISqlJetIndexDef, SqlJetKeySorter>();
+        ISqlJetBtreeBuilder builder = btree.getBuilder(rootPage);
+        try {
+            for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+                final SqlJetBtreeIndexTable indexTable = (SqlJetBtreeIndexTable) indexesTables.get(indexDef.getName());
+                sorters.put(indexDef, new SqlJetKeySorter(indexTable.getKeyInfo(), btree.getDb().getFileSystem()));
+            }
+
+            long lastRowId = 0;
+            boolean autoRowId = false;
+            final int[] nZero = { 0 };
+            while (rows.hasNext()) {
+                final Object[] values = rows.next();
+                final Object[] row = getValuesRowForInsert(values);
+                adjustRowIdPosition(values, row);
+                long rowId = getRowIdForRow(row, false);
+                if (primaryKeyColumnNumber < 0 || row[primaryKeyColumnNumber] == null) {
+                    if (!autoRowId && tableDef.isAutoincremented()) {
+                        rowId = Math.max(newRowId(), lastRowId + 1);
+                    } else {
+                        rowId = lastRowId + 1;
+                    }
+                    autoRowId = true;
+                } else if (builder.getCount() > 0 && rowId <= lastRowId) {
+                    late.add(values);
+                    continue;
+                }
+                checkNotNull(SqlJetConflictAction.ABORT, row);
+
+                if (primaryKeyColumnNumber >= 0 && primaryKeyColumnNumber < row.length) {
+                    row[primaryKeyColumnNumber] = null;
+                }
+                final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, row);
+                try {
+                    final ISqlJetMemoryPointer pData = rec.getRawRecord(nZero);
+                    builder.append(null, rowId, pData, pData.remaining(), nZero[0]);
+                } finally {
+                    rec.release();
+                }
+                if (primaryKeyColumnNumber >= 0 && primaryKeyColumnNumber < row.length) {
+                    row[primaryKeyColumnNumber] = rowId;
+                }
+                lastRowId = rowId;
+
+                for (final Map.Entry<ISqlJetIndexDef, SqlJetKeySorter> sorter : sorters.entrySet()) {
+                    final ISqlJetBtreeRecord key = SqlJetBtreeRecord.getRecord(encoding, SqlJetUtility.addArrays(
+                            getKeyForIndex(row, sorter.getKey()), new Object[] { rowId }));
+                    try {
+                        sorter.getValue().add(key.getRawRecord());
+                    } finally {
+                        key.release();
+                    }
+                }
+            }
+            if (autoRowId && tableDef.isAutoincremented() && sequenceTable != null) {
+                sequenceTable.updateCurrent(null, tableDef.getName(), lastRowId);
+            }
+            builder.finish();
+            final long count = builder.getCount();
+            builder.close();
+            builder = null;
+
+            for (final Map.Entry<ISqlJetIndexDef, SqlJetKeySorter> sorter : sorters.entrySet()) {
+                buildIndex(sorter.getKey(), sorter.getValue());
+            }
+            return count;
+        } finally {
+            if (builder != null) {
+                builder.close();
+            }
+            for (final SqlJetKeySorter sorter : sorters.values()) {
+                sorter.close();
+            }
+        }
+    }
+
+    private void buildIndex(ISqlJetIndexDef indexDef, SqlJetKeySorter sorter) throws SqlJetException {
+        final boolean unique = indexDef.isUnique() || tableDef.getColumnIndexConstraint(indexDef.getName()) != null
+                || tableDef.getTableIndexConstraint(indexDef.getName()) != null;
+        final ISqlJetBtreeBuilder builder = btree.getBuilder(indexDef.getPage());
+        try {
+            byte[] previous = null;
+            while (sorter.next()) {
+                final byte[] key = sorter.getKey();
+                if (unique && previous != null && !sorter.hasNull(key) && sorter.isSameKey(previous, key)) {
+                    throw new SqlJetException(SqlJetErrorCode.CONSTRAINT, "Insert fails: unique index "
+                            + indexDef.getName());
+                }
+                final ISqlJetMemoryPointer pKey = SqlJetUtility.fromByteBuffer(ByteBuffer.wrap(key));
+                builder.append(pKey, key.length, null, 0, 0);
+                previous = key;
+            }
+            builder.finish();
+        } finally {
+            builder.close();
+        }
+    }
+
     private void adjustRowIdPosition(Object[] values, final Object[] row) {
         if (row != null && row.length > 1 && tableDef.isRowIdPrimaryKey()) {
             if (values == null || (values.length < row.length && row[values.length] == null)) {
@@ -399,9 +541,10 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
     private void doInsert(SqlJetConflictAction onConflict, final long rowId, final Object[] row) throws SqlJetException {
         final ISqlJetMemoryPointer pData;
         final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
+        final int[] nZero = { 0 };
         if (!tableDef.isRowIdPrimaryKey()) {
             ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, row); 
-            pData = rec.getRawRecord();
+            pData = rec.getRawRecord(nZero);
             rec.release();
         } else {
             final int primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
@@ -409,12 +552,12 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
                 throw new SqlJetException(SqlJetErrorCode.ERROR);
             row[primaryKeyColumnNumber] = null;
             ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, row); 
-            pData = rec.getRawRecord();
+            pData = rec.getRawRecord(nZero);
             rec.release();
             row[primaryKeyColumnNumber] = rowId;
         }
         if (doActionWithIndexes(Action.INSERT, onConflict, rowId, row)) {
-            getCursor().insert(null, rowId, pData, pData.remaining(), 0, true);
+            getCursor().insert(null, rowId, pData, pData.remaining(), nZero[0], true);
             goToRow(rowId);
         }
     }
@@ -527,9 +670,10 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
         final ISqlJetMemoryPointer pData;
         final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
+        final int[] nZero = { 0 };
         if (!tableDef.isRowIdPrimaryKey()) {
             final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, rowCompleted);
-            pData = rec.getRawRecord();
+            pData = rec.getRawRecord(nZero);
             rec.release();
         } else {
             final int primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
@@ -537,7 +681,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
                 throw new SqlJetException(SqlJetErrorCode.ERROR);
             rowCompleted[primaryKeyColumnNumber] = null;
             final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, rowCompleted); 
-            pData = rec.getRawRecord();
+            pData = rec.getRawRecord(nZero);
             rec.release();
             rowCompleted[primaryKeyColumnNumber] = newRowId;
         }
@@ -546,7 +690,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             if (changeRowId) {
                 getCursor().delete();
             }
-            getCursor().insert(null, newRowId, pData, pData.remaining(), 0, changeRowId);
+            getCursor().insert(null, newRowId, pData, pData.remaining(), nZero[0], changeRowId);
             goToRow(newRowId);
         }
 
@@ -685,19 +829,8 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             }
         }
 
-        if (Action.DELETE != action && hasNull(row)) {
-            final List<ISqlJetColumnDef> columns = tableDef.getNotNullColumns();
-            if (columns != null && columns.size() != 0) {
-                for (ISqlJetColumnDef column : columns) {
-                    final String name = column.getName();
-                    final int index = column.getIndex();
-                    if (row.length < index || null == row[index]) {
-                        if (SqlJetConflictAction.IGNORE != onConflict) {
-                            throw new SqlJetException(String.format("Field '%s' must be not NULL", name));
-                        }
-                    }
-                }
-            }
+        if (Action.DELETE != action) {
+            checkNotNull(onConflict, row);
         }
 
         class IndexKeys {
@@ -779,6 +912,23 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
     }
 
+    private void checkNotNull(SqlJetConflictAction onConflict, Object... row) throws SqlJetException {
+        if (hasNull(row)) {
+            final List<ISqlJetColumnDef> columns = tableDef.getNotNullColumns();
+            if (columns != null && columns.size() != 0) {
+                for (ISqlJetColumnDef column : columns) {
+                    final String name = column.getName();
+                    final int index = column.getIndex();
+                    if (row.length < index || null == row[index]) {
+                        if (SqlJetConflictAction.IGNORE != onConflict) {
+                            throw new SqlJetException(String.format("Field '%s' must be not NULL", name));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * @param row
      * @return
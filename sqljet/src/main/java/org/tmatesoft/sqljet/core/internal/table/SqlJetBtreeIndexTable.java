@@ -25,7 +25,6 @@ import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
-import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
 import org.tmatesoft.sqljet.core.internal.SqlJetUnpackedRecordFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetBaseIndexDef;
@@ -296,13 +295,13 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
         }
     }
 
-    private long getKeyRowId(ISqlJetBtreeRecord record) {
+    private long getKeyRowId(ISqlJetBtreeRecord record) throws SqlJetException {
         if (null == record)
             return 0;
-        final List<ISqlJetVdbeMem> fields = record.getFields();
-        if (null == fields || 0 == fields.size())
+        final int fieldsCount = record.getFieldsCount();
+        if (0 == fieldsCount)
             return 0;
-        return fields.get(fields.size() - 1).intValue();
+        return record.getField(fieldsCount - 1).intValue();
     }
 
     public long getKeyRowId() throws SqlJetException {
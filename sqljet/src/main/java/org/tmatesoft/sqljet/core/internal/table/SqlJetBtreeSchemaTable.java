@@ -142,6 +142,7 @@ public class SqlJetBtreeSchemaTable extends SqlJetBtreeTable implements ISqlJetB
     public boolean goToRow(long rowId) throws SqlJetException {
         if (getRowId() == rowId)
             return true;
+        clearRecordCache();
         final int moveTo = getCursor().moveTo(null, rowId, false);
         if (moveTo < 0) {
             next();
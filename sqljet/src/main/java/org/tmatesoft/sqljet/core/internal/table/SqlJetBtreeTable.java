@@ -13,7 +13,6 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
-import java.util.List;
 import java.util.Random;
 import java.util.Stack;
 
@@ -312,10 +311,7 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
             return null;
         if (!checkField(r, field))
             return null;
-        final List<ISqlJetVdbeMem> fields = r.getFields();
-        if (null == fields)
-            return null;
-        return fields.get(field);
+        return r.getField(field);
     }
 
     public Object getValue(int field) throws SqlJetException {
@@ -524,6 +520,7 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
 
             long MAX_ROWID = 0x7fffffff;
 
+            clearRecordCache();
             final boolean last = getCursor().last();
 
             if (last) {
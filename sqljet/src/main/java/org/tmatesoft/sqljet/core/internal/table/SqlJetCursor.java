@@ -41,6 +41,8 @@ public abstract class SqlJetCursor implements ISqlJetCursor {
     protected final ISqlJetBtreeTable btreeTable;
     protected final SqlJetDb db;
 
+    protected int[] projection;
+
     SqlJetCursor(ISqlJetBtreeTable table, SqlJetDb db) throws SqlJetException {
         if (db.isInTransaction()) {
             this.btreeTable = table;
@@ -194,4 +196,26 @@ public abstract class SqlJetCursor implements ISqlJetCursor {
         return new SqlJetReverseOrderCursor(this);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#setProjection(int[])
+     */
+    public void setProjection(int... fields) throws SqlJetException {
+        if (fields == null || fields.length == 0) {
+            projection = null;
+        } else {
+            projection = fields.clone();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#getProjection()
+     */
+    public int[] getProjection() {
+        return projection;
+    }
+
 }
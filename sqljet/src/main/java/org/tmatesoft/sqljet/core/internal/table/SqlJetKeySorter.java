@@ -0,0 +1,299 @@
+/**
+ * SqlJetKeySorter.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUnpackedRecordFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetKeyInfo;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetUnpackedRecord;
+
+/**
+ * External merge sort of index keys. Keys are collected in memory until their
+ * size exceeds buffer, then they are sorted and spilled to temporary file as a
+ * run. When all keys are added runs are merged.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetKeySorter {
+
+    public static final String SQLJET_BULK_SORT_BUFFER = "SQLJET.BULK_SORT_BUFFER";
+
+    public static final int BULK_SORT_BUFFER_DEFAULT = 16 * 1024 * 1024;
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Wraps exception thrown by comparison inside of sort.
+     */
+    private static class CompareException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CompareException(SqlJetException cause) {
+            super(cause);
+        }
+    }
+
+    private class Run {
+        private final DataInputStream in;
+        private int left;
+        byte[] head;
+
+        Run(File file, int count) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE));
+            this.left = count;
+        }
+
+        boolean next() throws IOException {
+            if (left == 0) {
+                head = null;
+                return false;
+            }
+            left--;
+            head = new byte[in.readInt()];
+            in.readFully(head);
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private final SqlJetKeyInfo keyInfo;
+    private final ISqlJetFileSystem fileSystem;
+    private final int bufferSize;
+
+    private final Comparator<byte[]> comparator = new Comparator<byte[]>() {
+        public int compare(byte[] a, byte[] b) {
+            try {
+                return SqlJetKeySorter.this.compare(a, b);
+            } catch (SqlJetException e) {
+                throw new CompareException(e);
+            }
+        }
+    };
+
+    private final List<byte[]> keys = new ArrayList<byte[]>();
+    private final List<File> files = new ArrayList<File>();
+    private final List<Integer> counts = new ArrayList<Integer>();
+    private final List<Run> runs = new ArrayList<Run>();
+    private PriorityQueue<Run> queue;
+    private int keysSize;
+    private int position = -1;
+    private byte[] key;
+
+    public SqlJetKeySorter(SqlJetKeyInfo keyInfo, ISqlJetFileSystem fileSystem) {
+        this.keyInfo = keyInfo;
+        this.fileSystem = fileSystem;
+        this.bufferSize = SqlJetUtility.getIntSysProp(SQLJET_BULK_SORT_BUFFER, BULK_SORT_BUFFER_DEFAULT);
+    }
+
+    /**
+     * Compares keys by collation of index, including rowid.
+     */
+    public int compare(byte[] a, byte[] b) throws SqlJetException {
+        final SqlJetUnpackedRecord unpacked = keyInfo.recordUnpack(b.length, wrap(b));
+        try {
+            return unpacked.recordCompare(a.length, wrap(a));
+        } finally {
+            unpacked.release();
+        }
+    }
+
+    /**
+     * Whether keys are equal if rowid isn't compared.
+     */
+    public boolean isSameKey(byte[] a, byte[] b) throws SqlJetException {
+        final SqlJetUnpackedRecord unpacked = keyInfo.recordUnpack(b.length, wrap(b));
+        unpacked.getFlags().add(SqlJetUnpackedRecordFlags.IGNORE_ROWID);
+        unpacked.getFlags().add(SqlJetUnpackedRecordFlags.PREFIX_MATCH);
+        try {
+            return unpacked.recordCompare(a.length, wrap(a)) == 0;
+        } finally {
+            unpacked.release();
+        }
+    }
+
+    /**
+     * Whether any of key's fields except rowid is NULL, such keys never
+     * violate uniqueness.
+     */
+    public boolean hasNull(byte[] k) {
+        final ISqlJetMemoryPointer p = wrap(k);
+        final int[] v = { 0 };
+        int offset = SqlJetUtility.getVarint32(p, 0, v);
+        final int headerSize = v[0];
+        for (int i = 0; i < keyInfo.getNField() && offset < headerSize; i++) {
+            offset += SqlJetUtility.getVarint32(p, offset, v);
+            if (v[0] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ISqlJetMemoryPointer wrap(byte[] b) {
+        return SqlJetUtility.fromByteBuffer(ByteBuffer.wrap(b));
+    }
+
+    /**
+     * Adds a key.
+     */
+    public void add(ISqlJetMemoryPointer key) throws SqlJetException {
+        assert (queue == null && position < 0);
+        final byte[] k = new byte[key.remaining()];
+        key.getBytes(k);
+        keys.add(k);
+        keysSize += k.length;
+        if (keysSize >= bufferSize) {
+            spill();
+        }
+    }
+
+    private void sort() throws SqlJetException {
+        try {
+            Collections.sort(keys, comparator);
+        } catch (CompareException e) {
+            throw (SqlJetException) e.getCause();
+        }
+    }
+
+    private void spill() throws SqlJetException {
+        sort();
+        try {
+            final File file = fileSystem.getTempFile();
+            files.add(file);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                    STREAM_BUFFER_SIZE));
+            try {
+                for (final byte[] k : keys) {
+                    out.writeInt(k.length);
+                    out.write(k);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new SqlJetException(SqlJetErrorCode.IOERR, e);
+        }
+        counts.add(keys.size());
+        keys.clear();
+        keysSize = 0;
+    }
+
+    /**
+     * Moves to next key in sorted order, at first call sorts keys.
+     *
+     * @return false if there are no more keys.
+     */
+    public boolean next() throws SqlJetException {
+        if (files.isEmpty()) {
+            if (position < 0) {
+                sort();
+            }
+            if (++position < keys.size()) {
+                key = keys.get(position);
+                keys.set(position, null);
+                return true;
+            }
+            key = null;
+            return false;
+        }
+        try {
+            if (queue == null) {
+                if (!keys.isEmpty()) {
+                    spill();
+                }
+                queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+                    public int compare(Run a, Run b) {
+                        return comparator.compare(a.head, b.head);
+                    }
+                });
+                for (int i = 0; i < files.size(); i++) {
+                    final Run run = new Run(files.get(i), counts.get(i));
+                    runs.add(run);
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+            } else if (key != null) {
+                final Run run = queue.poll();
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            final Run run = queue.peek();
+            key = run != null ? run.head : null;
+            return key != null;
+        } catch (CompareException e) {
+            throw (SqlJetException) e.getCause();
+        } catch (IOException e) {
+            throw new SqlJetException(SqlJetErrorCode.IOERR, e);
+        }
+    }
+
+    /**
+     * @return current key.
+     */
+    public byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * Deletes temporary files.
+     */
+    public void close() {
+        for (final Run run : runs) {
+            try {
+                run.close();
+            } catch (IOException e) {
+            }
+        }
+        runs.clear();
+        for (final File file : files) {
+            try {
+                fileSystem.delete(file, false);
+            } catch (SqlJetException e) {
+            }
+        }
+        files.clear();
+        keys.clear();
+    }
+
+}
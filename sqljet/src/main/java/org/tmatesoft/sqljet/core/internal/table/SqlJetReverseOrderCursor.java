@@ -434,4 +434,22 @@ public class SqlJetReverseOrderCursor implements ISqlJetCursor {
     public Object[] getRowValues() throws SqlJetException {
         return cursor.getRowValues();
     }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#setProjection(int[])
+     */
+    public void setProjection(int... fields) throws SqlJetException {
+        cursor.setProjection(fields);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetCursor#getProjection()
+     */
+    public int[] getProjection() {
+        return cursor.getProjection();
+    }
 }
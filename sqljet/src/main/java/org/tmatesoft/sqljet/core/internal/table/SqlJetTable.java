@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal.table;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -26,9 +27,11 @@ import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.schema.SqlJetTableDef;
 import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
 import org.tmatesoft.sqljet.core.schema.ISqlJetTableDef;
 import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+import org.tmatesoft.sqljet.core.table.ISqlJetBlob;
 import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
 import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
 import org.tmatesoft.sqljet.core.table.ISqlJetTable;
@@ -169,6 +172,14 @@ public class SqlJetTable implements ISqlJetTable {
         return insertOr(null, values);
     }
 
+    public long bulkInsert(final Iterator<Object[]> rows) throws SqlJetException {
+        return (Long) runWriteTransaction(new ISqlJetTableRun() {
+            public Object run(ISqlJetBtreeDataTable table) throws SqlJetException {
+                return table.bulkInsert(rows);
+            }
+        });
+    }
+
     public long insertByFieldNames(final Map<String, Object> values) throws SqlJetException {
         return insertByFieldNamesOr(null, values);
     }
@@ -252,6 +263,22 @@ public class SqlJetTable implements ISqlJetTable {
         });
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.table.ISqlJetTable#openBlob(long,
+     * java.lang.String, boolean)
+     */
+    public ISqlJetBlob openBlob(final long rowId, final String fieldName, final boolean write)
+            throws SqlJetException {
+        return (ISqlJetBlob) db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                return new SqlJetBlob(db, btree, (SqlJetTableDef) getDefinition(), getIndexesDefs(), rowId,
+                        fieldName, write);
+            }
+        });
+    }
+
     /**
      * @param indexName
      * @param scope
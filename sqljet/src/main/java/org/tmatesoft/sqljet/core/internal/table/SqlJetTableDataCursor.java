@@ -244,8 +244,18 @@ public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
     public Object[] getRowValues() throws SqlJetException {
         return (Object[]) db.runReadTransaction(new ISqlJetTransaction() {
             public Object run(SqlJetDb db) throws SqlJetException {
-                Object[] values = getBtreeDataTable().getValues();
-                return values.clone();
+                final ISqlJetBtreeDataTable table = getBtreeDataTable();
+                if (projection == null) {
+                    Object[] values = table.getValues();
+                    return values.clone();
+                }
+                final Object[] values = new Object[table.getFieldsCount()];
+                for (final int field : projection) {
+                    if (field >= 0 && field < values.length) {
+                        values[field] = table.getValue(field);
+                    }
+                }
+                return values;
             }
         });
     }
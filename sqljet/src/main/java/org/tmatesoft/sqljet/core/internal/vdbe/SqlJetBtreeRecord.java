@@ -35,6 +35,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord;
 import org.tmatesoft.sqljet.core.table.ISqlJetOptions;
+import org.tmatesoft.sqljet.core.table.SqlJetZeroBlob;
 
 /**
  * Implements {@link ISqlJetBtreeRecord}.
@@ -49,19 +50,47 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
     private boolean isIndex;
 
     private int fieldsCount = 0;
-    private List<Integer> aType = new ArrayList<Integer>();
-    private List<Integer> aOffset = new ArrayList<Integer>();
+    private int[] aType;
+    private int[] aOffset;
     private List<ISqlJetVdbeMem> fields = new ArrayList<ISqlJetVdbeMem>();
 
+    /**
+     * Count of fields which still are not decoded from cursor.
+     */
+    private int undecodedCount = 0;
+
     private int file_format = ISqlJetOptions.SQLJET_DEFAULT_FILE_FORMAT;
 
     /**
      * @return the fields
      */
-    public List<ISqlJetVdbeMem> getFields() {
+    public List<ISqlJetVdbeMem> getFields() throws SqlJetException {
+        decodeFields();
         return Collections.unmodifiableList(fields);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord#getField(int)
+     */
+    public ISqlJetVdbeMem getField(int field) throws SqlJetException {
+        ISqlJetVdbeMem mem = fields.get(field);
+        if (mem == null && undecodedCount > 0) {
+            mem = getField(field, cursor.getCursorDb().getOptions().getEncoding());
+            fields.set(field, mem);
+            undecodedCount--;
+        }
+        return mem;
+    }
+
+    private void decodeFields() throws SqlJetException {
+        for (int i = 0; undecodedCount > 0 && i < fieldsCount; i++) {
+            getField(i);
+        }
+    }
+
     public SqlJetBtreeRecord(ISqlJetBtreeCursor cursor, boolean isIndex, int fileFormat) throws SqlJetException {
         this.cursor = cursor;
         this.isIndex = isIndex;
@@ -118,6 +147,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
             } else if (value instanceof SqlJetMemoryPointer) {
                 mem.setStr((SqlJetMemoryPointer) value, encoding);
                 mem.setTypeFlag(SqlJetVdbeMemFlags.Blob);
+            } else if (value instanceof SqlJetZeroBlob) {
+                mem.setZeroBlob(((SqlJetZeroBlob) value).getSize());
             } else {
                 throw new SqlJetException(SqlJetErrorCode.MISUSE, "Bad value #" + i + " " + value.toString());
             }
@@ -136,6 +167,23 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
         return fieldsCount;
     }
 
+    /**
+     * @param field
+     * @return serial type of field which is read from cursor.
+     */
+    public int getFieldSerialType(int field) {
+        return aType[field];
+    }
+
+    /**
+     * @param field
+     * @return offset of field's data from beginning of record which is read
+     *         from cursor.
+     */
+    public int getFieldOffset(int field) {
+        return aOffset[field];
+    }
+
     /**
      * Read and parse the table header. Store the results of the parse into the
      * record header cache fields of the cursor.
@@ -176,9 +224,6 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
             int szHdrSz; /* Size of the header size field at start of record */
             int[] avail = { 0 }; /* Number of bytes of available data */
 
-            assert (aType != null);
-            assert (aOffset != null);
-
             /* Figure out how many bytes are in the header */
             if (isIndex) {
                 zData = cursor.keyFetch(avail);
@@ -213,17 +258,18 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
              * of the record to the start of the data for the i-th column
              */
             fieldsCount = 0;
-            for (i = 0; i < ISqlJetLimits.SQLJET_MAX_COLUMN && zIdx.getPointer() < zEndHdr.getPointer()
+            aType = new int[Math.min(offset[0], ISqlJetLimits.SQLJET_MAX_COLUMN)];
+            aOffset = new int[aType.length];
+            for (i = 0; i < aType.length && zIdx.getPointer() < zEndHdr.getPointer()
                     && offset[0] <= payloadSize; i++, fieldsCount++) {
-                aOffset.add(i, offset[0]);
-                int[] a = { 0 };
-                SqlJetUtility.movePtr(zIdx, SqlJetUtility.getVarint32(zIdx, a));
-                aType.add(i, a[0]);
-                offset[0] += SqlJetVdbeSerialType.serialTypeLen(a[0]);
-
-                fields.add(i, getField(i));
-
+                aOffset[i] = offset[0];
+                final int a = SqlJetUtility.getVarint32Value(zIdx, 0);
+                SqlJetUtility.movePtr(zIdx, SqlJetUtility.getVarintLength(zIdx, 0));
+                aType[i] = a;
+                offset[0] += SqlJetVdbeSerialType.serialTypeLen(a);
+                fields.add(null);
             }
+            undecodedCount = fieldsCount;
             sMem.release();
 
             /*
@@ -271,7 +317,7 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * @param pDest
      * @throws SqlJetException
      */
-    private ISqlJetVdbeMem getField(int column) throws SqlJetException {
+    private ISqlJetVdbeMem getField(int column, SqlJetEncoding enc) throws SqlJetException {
 
         long payloadSize; /* Number of bytes in the record */
         int len; /* The length of the serialized data for the column */
@@ -306,14 +352,14 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
              * request. In this case, set the value NULL or to P4 if P4 is* a
              * pointer to a Mem object.
              */
-            final Integer aOffsetColumn = aOffset.get(column);
-            final Integer aTypeColumn = aType.get(column);
-            if (aOffsetColumn != null && aTypeColumn != null && aOffsetColumn != 0) {
+            final int aOffsetColumn = aOffset[column];
+            final int aTypeColumn = aType[column];
+            if (aOffsetColumn != 0) {
                 len = SqlJetVdbeSerialType.serialTypeLen(aTypeColumn);
-                sMem.fromBtree(cursor, aOffset.get(column), len, isIndex);
+                sMem.fromBtree(cursor, aOffsetColumn, len, isIndex);
                 zData = sMem.z;
                 SqlJetVdbeSerialType.serialGet(zData, aTypeColumn, pDest);
-                pDest.enc = cursor.getCursorDb().getOptions().getEncoding();
+                pDest.enc = enc;
             }
 
         } finally {
@@ -350,7 +396,7 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * @see org.tmatesoft.sqljet.core.ISqlJetRecord#getStringField(int)
      */
     public String getStringField(int field, SqlJetEncoding enc) throws SqlJetException {
-        final ISqlJetVdbeMem f = fields.get(field);
+        final ISqlJetVdbeMem f = getField(field);
         if (null == f)
             return null;
         final ISqlJetMemoryPointer v = f.valueText(enc);
@@ -364,8 +410,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * 
      * @see org.tmatesoft.sqljet.core.ISqlJetRecord#getIntField(int)
      */
-    public long getIntField(int field) {
-        final ISqlJetVdbeMem f = fields.get(field);
+    public long getIntField(int field) throws SqlJetException {
+        final ISqlJetVdbeMem f = getField(field);
         if (null == f)
             return 0;
         return f.intValue();
@@ -378,8 +424,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord#getRealField
      * (int)
      */
-    public double getRealField(int field) {
-        final ISqlJetVdbeMem f = fields.get(field);
+    public double getRealField(int field) throws SqlJetException {
+        final ISqlJetVdbeMem f = getField(field);
         if (null == f)
             return 0;
         return f.realValue();
@@ -406,7 +452,18 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * field is also a varint which is the offset from the beginning of the
      * record to data0.
      */
-    public ISqlJetMemoryPointer getRawRecord() {
+    public ISqlJetMemoryPointer getRawRecord() throws SqlJetException {
+        return getRawRecord(null);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeRecord#getRawRecord
+     * (int[])
+     */
+    public ISqlJetMemoryPointer getRawRecord(int[] pZero) throws SqlJetException {
         /* A buffer to hold the data for the new record */
         ISqlJetMemoryPointer zNewRecord;
         int nData = 0; /* Number of bytes of data space */
@@ -417,6 +474,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
         int serial_type; /* Type field */
         int i; /* Space used in zNewRecord[] */
 
+        decodeFields();
+
         /*
          * Loop through the elements that will make up the record to figure* out
          * how much space is required for the new record.
@@ -448,6 +507,11 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
         if (nVarint < SqlJetUtility.varintLen(nHdr)) {
             nHdr++;
         }
+        if (pZero != null) {
+            pZero[0] = nZero;
+        } else {
+            nZero = 0;
+        }
         nByte = nHdr + nData - nZero;
 
         /*
@@ -479,7 +543,9 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
 
     public void release() {
         for (ISqlJetVdbeMem field : fields) {
-            field.release();
+            if (field != null) {
+                field.release();
+            }
         }
     }
 }
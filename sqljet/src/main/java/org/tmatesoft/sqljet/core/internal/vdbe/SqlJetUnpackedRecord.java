@@ -20,6 +20,7 @@ package org.tmatesoft.sqljet.core.internal.vdbe;
 import java.util.Set;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetCollSeq;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetUnpackedRecord;
 import org.tmatesoft.sqljet.core.internal.SqlJetUnpackedRecordFlags;
@@ -81,48 +82,64 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
 
         int d1; /* Offset into aKey[] of next data element */
         int idx1; /* Offset into aKey[] of next header element */
-        int[] szHdr1 = new int[1]; /* Number of bytes in header */
+        int szHdr1; /* Number of bytes in header */
         int i = 0;
         int nField;
         int rc = 0;
         SqlJetKeyInfo pKeyInfo;
-        SqlJetVdbeMem mem1 = SqlJetVdbeMem.obtainInstance();
+        SqlJetVdbeMem mem1 = null;
 
         pKeyInfo = pPKey2.pKeyInfo;
-        mem1.enc = pKeyInfo.enc;
-        mem1.db = pKeyInfo.db;
-        mem1.flags = SqlJetUtility.noneOf(SqlJetVdbeMemFlags.class);
-        mem1.zMalloc = null;
 
-        idx1 = SqlJetUtility.getVarint32(pKey1, szHdr1);
-        d1 = szHdr1[0];
+        szHdr1 = SqlJetUtility.getVarint32Value(pKey1, 0);
+        idx1 = SqlJetUtility.getVarintLength(pKey1, 0);
+        d1 = szHdr1;
         if (pPKey2.flags.contains(SqlJetUnpackedRecordFlags.IGNORE_ROWID)) {
-            szHdr1[0]--;
+            szHdr1--;
         }
         nField = pKeyInfo.nField;
-        while (idx1 < szHdr1[0] && i < pPKey2.nField) {
-            int[] serial_type1 = new int[1];
+        try {
+            while (idx1 < szHdr1 && i < pPKey2.nField) {
+
+                /* Read the serial types for the next element in each key. */
+                final int serial_type1 = SqlJetUtility.getVarint32Value(pKey1, idx1);
+                idx1 += SqlJetUtility.getVarintLength(pKey1, idx1);
+                final int len1 = SqlJetVdbeSerialType.serialTypeLen(serial_type1);
+                if (d1 >= nKey1 && len1 > 0)
+                    break;
+
+                final ISqlJetCollSeq pColl = i < nField ? pKeyInfo.aColl[i] : null;
+                rc = compareSerial(pKey1, d1, serial_type1, len1, pPKey2.aMem[i], pColl);
+                if (rc == NOT_COMPARED) {
+                    if (mem1 == null) {
+                        mem1 = SqlJetVdbeMem.obtainInstance();
+                        mem1.enc = pKeyInfo.enc;
+                        mem1.db = pKeyInfo.db;
+                        mem1.zMalloc = null;
+                    }
+                    mem1.flags = SqlJetUtility.noneOf(SqlJetVdbeMemFlags.class);
 
-            /* Read the serial types for the next element in each key. */
-            idx1 += SqlJetUtility.getVarint32(pKey1, idx1, serial_type1);
-            if (d1 >= nKey1 && SqlJetVdbeSerialType.serialTypeLen(serial_type1[0]) > 0)
-                break;
+                    /*
+                     * Extract the values to be compared.
+                     */
+                    SqlJetVdbeSerialType.serialGet(pKey1, d1, serial_type1, mem1);
 
-            /*
-             * Extract the values to be compared.
-             */
-            d1 += SqlJetVdbeSerialType.serialGet(pKey1, d1, serial_type1[0], mem1);
-
-            /*
-             * Do the comparison
-             */
-            rc = SqlJetVdbeMem.compare(mem1, pPKey2.aMem[i], i < nField ? pKeyInfo.aColl[i] : null);
-            if (rc != 0) {
-                break;
+                    /*
+                     * Do the comparison
+                     */
+                    rc = SqlJetVdbeMem.compare(mem1, pPKey2.aMem[i], pColl);
+                }
+                d1 += len1;
+                if (rc != 0) {
+                    break;
+                }
+                i++;
+            }
+        } finally {
+            if (mem1 != null) {
+                mem1.release();
             }
-            i++;
         }
-        mem1.release();
 
         if (rc == 0) {
             /*
@@ -138,7 +155,7 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
                 rc = -1;
             } else if (pPKey2.flags.contains(SqlJetUnpackedRecordFlags.PREFIX_MATCH)) {
                 /* Leave rc==0 */
-            } else if (idx1 < szHdr1[0]) {
+            } else if (idx1 < szHdr1) {
                 rc = 1;
             }
         } else if (pKeyInfo.aSortOrder != null && i < pKeyInfo.nField && pKeyInfo.aSortOrder[i]) {
@@ -148,6 +165,44 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
         return rc;
     }
 
+    /** Result of {@link #compareSerial} when value should be deserialized */
+    private static final int NOT_COMPARED = Integer.MIN_VALUE;
+
+    /**
+     * Compare field of serialized record with unpacked value in place, without
+     * deserializing the field into memory cell. Only integers, and strings or
+     * blobs which are compared by memcmp(), are compared this way, which gives
+     * the same result as {@link SqlJetVdbeMem#compare}.
+     *
+     * @return result of comparison or {@link #NOT_COMPARED} if the field
+     *         should be compared by generic path.
+     */
+    private static int compareSerial(ISqlJetMemoryPointer pKey1, int d1, int serialType, int len1,
+            SqlJetVdbeMem pMem2, ISqlJetCollSeq pColl) {
+        final Set<SqlJetVdbeMemFlags> f2 = pMem2.flags;
+        if (f2.contains(SqlJetVdbeMemFlags.Null) || f2.contains(SqlJetVdbeMemFlags.Real)) {
+            return NOT_COMPARED;
+        }
+        if (SqlJetVdbeSerialType.isIntegerType(serialType)) {
+            if (!f2.contains(SqlJetVdbeMemFlags.Int)) {
+                return NOT_COMPARED;
+            }
+            final long i1 = SqlJetVdbeSerialType.serialGetInteger(pKey1, d1, serialType);
+            return i1 < pMem2.i ? -1 : (i1 > pMem2.i ? 1 : 0);
+        }
+        if (serialType < 12 || f2.contains(SqlJetVdbeMemFlags.Int) || pColl != null) {
+            return NOT_COMPARED;
+        }
+        final boolean str1 = (serialType & 0x01) != 0;
+        if (str1 ? !f2.contains(SqlJetVdbeMemFlags.Str)
+                : (!f2.contains(SqlJetVdbeMemFlags.Blob) || f2.contains(SqlJetVdbeMemFlags.Str))) {
+            return NOT_COMPARED;
+        }
+        final int n2 = pMem2.n;
+        final int rc = SqlJetUtility.memcmp(pKey1, d1, pMem2.z, 0, len1 > n2 ? n2 : len1);
+        return rc != 0 ? rc : len1 - n2;
+    }
+
     /**
      * @return the flags
      */
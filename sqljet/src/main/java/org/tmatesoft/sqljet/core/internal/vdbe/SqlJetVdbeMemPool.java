@@ -1,38 +1,59 @@
 package org.tmatesoft.sqljet.core.internal.vdbe;
 
-import java.util.LinkedList;
-import java.util.Queue;
-
+/**
+ * Pool of {@link SqlJetVdbeMem} instances. Every thread has its own bounded
+ * stack of free instances so obtaining and releasing don't take locks and
+ * don't allocate. Instance released by other thread than it was obtained
+ * simply goes to pool of releasing thread.
+ */
 public class SqlJetVdbeMemPool {
-    
-    private static final int MAX_POOL_SIZE = 1024;
-    
-    private Queue<SqlJetVdbeMem> queue = new LinkedList<SqlJetVdbeMem>();
-    public static int obtained = 0;
-    public static int released = 0;
-    public static int created = 0;
-    
-    public synchronized SqlJetVdbeMem obtain() {
-        obtained++;
-        if (!queue.isEmpty()) {
-            return queue.remove();
+
+    private static final int MAX_POOL_SIZE = 256;
+
+    private static class Stack {
+        final SqlJetVdbeMem[] mems = new SqlJetVdbeMem[MAX_POOL_SIZE];
+        int size;
+        long obtained;
+        long released;
+        long created;
+    }
+
+    private final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+        @Override
+        protected Stack initialValue() {
+            return new Stack();
+        }
+    };
+
+    public SqlJetVdbeMem obtain() {
+        final Stack stack = stacks.get();
+        stack.obtained++;
+        if (stack.size > 0) {
+            final SqlJetVdbeMem mem = stack.mems[--stack.size];
+            stack.mems[stack.size] = null;
+            return mem;
         } else {
-            created++;
+            stack.created++;
             return new SqlJetVdbeMem(this);
         }
     }
-    
-    public synchronized void release(SqlJetVdbeMem mem) {
-        released++;
-        if (queue.size() < MAX_POOL_SIZE) {
-            queue.add(mem);
+
+    public void release(SqlJetVdbeMem mem) {
+        final Stack stack = stacks.get();
+        stack.released++;
+        if (stack.size < MAX_POOL_SIZE) {
+            stack.mems[stack.size++] = mem;
         }
     }
-    
+
+    /**
+     * Statistics of the pool of current thread.
+     */
     public String toString() {
-        return "\ncreated: " + created + 
-                "\n" + "obtained: " + obtained + 
-                "\n" + "released: " + released +
-                "\n" + "in pool:  " + queue.size();
+        final Stack stack = stacks.get();
+        return "\ncreated: " + stack.created +
+                "\n" + "obtained: " + stack.obtained +
+                "\n" + "released: " + stack.released +
+                "\n" + "in pool:  " + stack.size;
     }
 }
@@ -162,6 +162,39 @@ public class SqlJetVdbeSerialType {
         return 0;
     }
 
+    /**
+     * @return true if serial type is an integer type, value of which could be
+     *         read by {@link #serialGetInteger(ISqlJetMemoryPointer, int, int)}.
+     */
+    public static boolean isIntegerType(int serial_type) {
+        return (serial_type > 0 && serial_type < 7) || serial_type == 8 || serial_type == 9;
+    }
+
+    /**
+     * Read value of integer serial type without deserializing it into
+     * memory cell.
+     *
+     * @param buf
+     *            Buffer to read from
+     * @param offset
+     *            Offset of value in buffer
+     * @param serial_type
+     *            Integer serial type, see {@link #isIntegerType(int)}
+     * @return value
+     */
+    public static long serialGetInteger(ISqlJetMemoryPointer buf, int offset, int serial_type) {
+        assert (isIntegerType(serial_type));
+        if (serial_type >= 8) {
+            return serial_type - 8;
+        }
+        final int len = aSize[serial_type];
+        long x = buf.getByte(offset);
+        for (int i = 1; i < len; i++) {
+            x = (x << 8) | buf.getByteUnsigned(offset + i);
+        }
+        return x;
+    }
+
     /*
      * * Return the serial-type for the value stored in pMem.
      */
@@ -248,7 +281,9 @@ public class SqlJetVdbeSerialType {
             assert (pMem.n + (pMem.flags.contains(SqlJetVdbeMemFlags.Zero) ? pMem.nZero : 0) == serialTypeLen(serial_type));
             assert (pMem.n <= nBuf);
             len = pMem.n;
-            SqlJetUtility.memcpy(buf, pMem.z, len);
+            if (len > 0) {
+                SqlJetUtility.memcpy(buf, pMem.z, len);
+            }
             if (pMem.flags.contains(SqlJetVdbeMemFlags.Zero)) {
                 len += pMem.nZero;
                 if (len > nBuf) {
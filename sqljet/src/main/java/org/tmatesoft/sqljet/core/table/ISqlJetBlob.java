@@ -0,0 +1,107 @@
+/**
+ * ISqlJetBlob.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * <p>
+ * Handle for incremental I/O of BLOB or TEXT value of some field in some row,
+ * which is opened by {@link ISqlJetTable#openBlob(long, String, boolean)}.
+ * Parts of value are read and written directly in pages of database, so large
+ * values could be accessed with constant memory.
+ * </p>
+ *
+ * <p>
+ * Size of value can't be changed by handle. To write large value insert
+ * {@link SqlJetZeroBlob} of required size and then fill it using handle.
+ * </p>
+ *
+ * <p>
+ * Handle could be used only inside of transaction in which it was opened and
+ * should be closed before end of transaction. If row is modified or deleted
+ * by other ways then handle becomes invalid and its methods throw
+ * {@link SqlJetException} with ABORT error code.
+ * </p>
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public interface ISqlJetBlob {
+
+    /**
+     * Returns size of value in bytes.
+     *
+     * @return size of value.
+     */
+    int getSize();
+
+    /**
+     * Reads bytes of value starting from offset into buffer. Reads as many
+     * bytes as buffer has remaining, position of buffer is moved by count of
+     * bytes read.
+     *
+     * @param offset
+     *            offset in value.
+     * @param buffer
+     *            buffer to read into.
+     * @throws SqlJetException
+     */
+    void read(int offset, ByteBuffer buffer) throws SqlJetException;
+
+    /**
+     * Writes remaining bytes of buffer into value starting from offset.
+     * Position of buffer is moved by count of bytes written.
+     *
+     * @param offset
+     *            offset in value.
+     * @param buffer
+     *            buffer to write from.
+     * @throws SqlJetException
+     *             if handle has been opened read only or bytes don't fit in
+     *             the value.
+     */
+    void write(int offset, ByteBuffer buffer) throws SqlJetException;
+
+    /**
+     * Returns stream which reads value from beginning.
+     *
+     * @return stream to read value.
+     */
+    InputStream getInputStream();
+
+    /**
+     * Returns stream which writes value from beginning.
+     *
+     * @return stream to write value.
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * Closes handle.
+     *
+     * @throws SqlJetException
+     */
+    void close() throws SqlJetException;
+
+}
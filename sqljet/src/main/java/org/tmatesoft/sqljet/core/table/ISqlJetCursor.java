@@ -420,4 +420,22 @@ public interface ISqlJetCursor {
      */
     long getLimit();
 
+    /**
+     * Sets fields which will be read by {@link #getRowValues()}. Other fields
+     * aren't decoded at all and are returned as nulls, which saves work on
+     * tables with wide rows. Call without fields resets projection.
+     *
+     * @param fields
+     *            numbers of fields to read or nothing to read all fields.
+     * @throws SqlJetException
+     */
+    void setProjection(int... fields) throws SqlJetException;
+
+    /**
+     * Returns fields which are read by {@link #getRowValues()}.
+     *
+     * @return numbers of fields or null if projection has not been set.
+     */
+    int[] getProjection();
+
 }
@@ -17,6 +17,7 @@
  */
 package org.tmatesoft.sqljet.core.table;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -239,6 +240,35 @@ public interface ISqlJetTable {
      */
     long insert(Object... values) throws SqlJetException;
 
+    /**
+     * <p>
+     * Inserts many records. Each element of iterator is values of record as
+     * for {@link #insert(Object...)}.
+     * </p>
+     * 
+     * <p>
+     * If table is empty then table and its indexes are built bottom-up from
+     * full pages, which is much faster than inserting of records one by one.
+     * Records are expected in ascending order of ROWID, records which break
+     * this order are inserted in usual way after all others. Keys of indexes
+     * are sorted in memory or in temporary files, size of memory buffer is
+     * defined by system property "SQLJET.BULK_SORT_BUFFER". If table isn't
+     * empty then all records are inserted in usual way.
+     * </p>
+     * 
+     * <p>
+     * Can be used without of active transaction, in this case method begins and
+     * ends own internal transaction. If method fails then transaction should
+     * be rolled back.
+     * </p>
+     * 
+     * @param rows
+     *            values of records.
+     * @return count of inserted records.
+     * @throws SqlJetException
+     */
+    long bulkInsert(Iterator<Object[]> rows) throws SqlJetException;
+
     /**
      * <p>
      * Insert record by values by names of fields.
@@ -462,4 +492,29 @@ public interface ISqlJetTable {
      * @throws SqlJetException
      */
     void clear() throws SqlJetException;
+
+    /**
+     * <p>
+     * Opens handle for incremental I/O of BLOB or TEXT value of field in row
+     * with given ROWID. Value is read and written by parts directly in pages
+     * of database, so it is not loaded into memory as whole.
+     * </p>
+     * 
+     * <p>
+     * Handle can be opened only within active transaction, for writing it
+     * requires write transaction. Size of value can't be changed by handle,
+     * to write large value insert {@link SqlJetZeroBlob} of required size and
+     * then fill it by handle. Indexed fields can't be opened for writing.
+     * </p>
+     * 
+     * @param rowId
+     *            ROWID of record.
+     * @param fieldName
+     *            name of field.
+     * @param write
+     *            true if value will be written.
+     * @return handle of value.
+     * @throws SqlJetException
+     */
+    ISqlJetBlob openBlob(long rowId, String fieldName, boolean write) throws SqlJetException;
 }
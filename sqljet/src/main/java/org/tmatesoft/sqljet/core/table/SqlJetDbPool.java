@@ -0,0 +1,344 @@
+/**
+ * SqlJetDbPool.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+
+/**
+ * Pool of database connections for multi-threaded access to one file. Pool
+ * admits up to given number of concurrent read transactions and a single
+ * write transaction, waiters are served in FIFO order.
+ *
+ * By default all transactions run on one {@link SqlJetDb}, so they share
+ * its parsed schema and its page cache. Read transactions of one connection
+ * run concurrently (see
+ * {@link org.tmatesoft.sqljet.core.internal.ISqlJetConfig#isConcurrentReaders()}),
+ * while write transaction runs exclusively. Connections which are opened on
+ * the same file separately couldn't share pages safely: in rollback journal
+ * modes they would hold file locks against each other and get
+ * {@link SqlJetErrorCode#BUSY}.
+ *
+ * If database is in {@link SqlJetPagerJournalMode#WAL} mode when pool is
+ * created then read transactions run on separate read-only connections
+ * instead, each of them reads a snapshot of the write-ahead log. Such readers
+ * don't block the writer and aren't blocked by it: long scans see consistent
+ * version of database while writer commits. Cached pages of readers which
+ * weren't changed by commits stay valid for their next snapshots.
+ *
+ * Transactions which are nested into transaction of the same pool in the same
+ * thread don't wait for pool, nested read transactions run on the same
+ * connection as outer one.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetDbPool {
+
+    public static final int DEFAULT_MAX_READERS = 8;
+
+    private final SqlJetDb db;
+    private final int maxReaders;
+    private final Semaphore readers;
+    private final Semaphore writer = new Semaphore(1, true);
+    private final long started = System.nanoTime();
+    private final boolean snapshots;
+
+    /** Snapshot readers which are not used now */
+    private final LinkedList<SqlJetDb> idleReaders = new LinkedList<SqlJetDb>();
+
+    /** All snapshot readers */
+    private final List<SqlJetDb> snapshotReaders = new ArrayList<SqlJetDb>();
+
+    private boolean closed;
+
+    /**
+     * Transaction of pool which is running in the current thread.
+     */
+    private static class Lease {
+        int depth;
+        SqlJetDb reader;
+    }
+
+    private final ThreadLocal<Lease> lease = new ThreadLocal<Lease>() {
+        @Override
+        protected Lease initialValue() {
+            return new Lease();
+        }
+    };
+
+    private final Object statisticsLock = new Object();
+    private int activeReaders;
+    private boolean activeWriter;
+    private long readCount;
+    private long readWait;
+    private long maxReadWait;
+    private long readBusy;
+    private long writeCount;
+    private long writeWait;
+    private long maxWriteWait;
+    private long writeBusy;
+
+    /**
+     * Opens pool of connections to database file.
+     *
+     * @param file
+     *            database file.
+     * @param maxReaders
+     *            maximal number of concurrent read transactions.
+     * @return pool of connections.
+     * @throws SqlJetException
+     */
+    public static SqlJetDbPool open(File file, int maxReaders) throws SqlJetException {
+        return new SqlJetDbPool(SqlJetDb.open(file, true), maxReaders);
+    }
+
+    /**
+     * Opens pool of connections to database file with
+     * {@link #DEFAULT_MAX_READERS} concurrent read transactions.
+     *
+     * @param file
+     *            database file.
+     * @return pool of connections.
+     * @throws SqlJetException
+     */
+    public static SqlJetDbPool open(File file) throws SqlJetException {
+        return open(file, DEFAULT_MAX_READERS);
+    }
+
+    /**
+     * Creates pool over database which is already open, pool owns it since
+     * then and closes it in {@link #close()}.
+     *
+     * @param db
+     *            database.
+     * @param maxReaders
+     *            maximal number of concurrent read transactions.
+     * @throws SqlJetException
+     */
+    public SqlJetDbPool(SqlJetDb db, int maxReaders) throws SqlJetException {
+        if (maxReaders < 1) {
+            throw new IllegalArgumentException("maxReaders should be positive: " + maxReaders);
+        }
+        this.db = db;
+        this.maxReaders = maxReaders;
+        this.readers = new Semaphore(maxReaders, true);
+        this.snapshots = db.getJournalMode() == SqlJetPagerJournalMode.WAL;
+    }
+
+    /**
+     * @return database on which transactions of pool run.
+     */
+    public SqlJetDb getDb() {
+        return db;
+    }
+
+    /**
+     * @return maximal number of concurrent read transactions.
+     */
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * @return true if read transactions run on snapshots of write-ahead log.
+     */
+    public boolean isSnapshotReads() {
+        return snapshots;
+    }
+
+    /**
+     * Runs read-only transaction when reader is available.
+     *
+     * @param op
+     *            transaction to run.
+     * @return result of the {@link ISqlJetTransaction#run(SqlJetDb)} call.
+     * @throws SqlJetException
+     */
+    public Object runReadTransaction(ISqlJetTransaction op) throws SqlJetException {
+        return run(op, false);
+    }
+
+    /**
+     * Runs write transaction when writer is available.
+     *
+     * @param op
+     *            transaction to run.
+     * @return result of the {@link ISqlJetTransaction#run(SqlJetDb)} call.
+     * @throws SqlJetException
+     */
+    public Object runWriteTransaction(ISqlJetTransaction op) throws SqlJetException {
+        return run(op, true);
+    }
+
+    private Object run(final ISqlJetTransaction op, final boolean write) throws SqlJetException {
+        final Lease l = lease.get();
+        if (l.depth > 0) {
+            l.depth++;
+            try {
+                if (write) {
+                    return db.runWriteTransaction(op);
+                }
+                return (l.reader != null ? l.reader : db).runReadTransaction(op);
+            } finally {
+                l.depth--;
+            }
+        }
+
+        final long requested = System.nanoTime();
+        final Semaphore semaphore = write ? writer : readers;
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SqlJetException(SqlJetErrorCode.INTERRUPT, e);
+        }
+        l.depth++;
+        final long[] begun = { 0 };
+        try {
+            if (!write && snapshots) {
+                l.reader = takeReader();
+            }
+            final ISqlJetTransaction measured = new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    if (begun[0] == 0) {
+                        begun[0] = System.nanoTime();
+                        begin(write, begun[0] - requested);
+                    }
+                    return op.run(db);
+                }
+            };
+            if (write) {
+                return db.runWriteTransaction(measured);
+            }
+            return (l.reader != null ? l.reader : db).runReadTransaction(measured);
+        } finally {
+            l.depth--;
+            if (l.reader != null) {
+                returnReader(l.reader);
+                l.reader = null;
+            }
+            if (begun[0] != 0) {
+                end(write, System.nanoTime() - begun[0]);
+            }
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Takes idle snapshot reader or opens new one. Number of readers is
+     * limited by semaphore which caller holds.
+     */
+    private SqlJetDb takeReader() throws SqlJetException {
+        synchronized (idleReaders) {
+            if (closed) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE, "Pool is closed");
+            }
+            if (!idleReaders.isEmpty()) {
+                return idleReaders.removeFirst();
+            }
+        }
+        final SqlJetDb reader = SqlJetDb.open(db.getFile(), false, db.getFileSystem());
+        synchronized (idleReaders) {
+            snapshotReaders.add(reader);
+        }
+        return reader;
+    }
+
+    private void returnReader(SqlJetDb reader) {
+        synchronized (idleReaders) {
+            if (!closed) {
+                idleReaders.addFirst(reader);
+            }
+        }
+    }
+
+    private void begin(boolean write, long wait) {
+        synchronized (statisticsLock) {
+            if (write) {
+                activeWriter = true;
+                writeWait += wait;
+                maxWriteWait = Math.max(maxWriteWait, wait);
+            } else {
+                activeReaders++;
+                readWait += wait;
+                maxReadWait = Math.max(maxReadWait, wait);
+            }
+        }
+    }
+
+    private void end(boolean write, long busy) {
+        synchronized (statisticsLock) {
+            if (write) {
+                activeWriter = false;
+                writeCount++;
+                writeBusy += busy;
+            } else {
+                activeReaders--;
+                readCount++;
+                readBusy += busy;
+            }
+        }
+    }
+
+    /**
+     * @return snapshot of pool's statistics.
+     */
+    public SqlJetDbPoolStatistics getStatistics() {
+        synchronized (statisticsLock) {
+            final int connections;
+            synchronized (idleReaders) {
+                connections = snapshotReaders.size();
+            }
+            return new SqlJetDbPoolStatistics(maxReaders, connections, System.nanoTime() - started, activeReaders,
+                    activeWriter, readCount, readWait, maxReadWait, readBusy, writeCount, writeWait, maxWriteWait, writeBusy);
+        }
+    }
+
+    /**
+     * Closes database of pool and snapshot readers. Transactions which are
+     * running should be finished before.
+     *
+     * @throws SqlJetException
+     */
+    public void close() throws SqlJetException {
+        final List<SqlJetDb> connections;
+        synchronized (idleReaders) {
+            closed = true;
+            connections = new ArrayList<SqlJetDb>(snapshotReaders);
+            snapshotReaders.clear();
+            idleReaders.clear();
+        }
+        try {
+            for (final SqlJetDb reader : connections) {
+                reader.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * SqlJetDbPoolStatistics.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+/**
+ * Snapshot of statistics of {@link SqlJetDbPool}. Wait time is counted from
+ * request of transaction until its body starts to run, busy time is time
+ * spent in bodies of transactions. All times are in nanoseconds.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetDbPoolStatistics {
+
+    private final int maxReaders;
+    private final int snapshotReaders;
+    private final long elapsed;
+    private final int activeReaders;
+    private final boolean activeWriter;
+    private final long readCount;
+    private final long readWait;
+    private final long maxReadWait;
+    private final long readBusy;
+    private final long writeCount;
+    private final long writeWait;
+    private final long maxWriteWait;
+    private final long writeBusy;
+
+    SqlJetDbPoolStatistics(int maxReaders, int snapshotReaders, long elapsed, int activeReaders,
+            boolean activeWriter, long readCount, long readWait, long maxReadWait, long readBusy, long writeCount,
+            long writeWait, long maxWriteWait, long writeBusy) {
+        this.maxReaders = maxReaders;
+        this.snapshotReaders = snapshotReaders;
+        this.elapsed = elapsed;
+        this.activeReaders = activeReaders;
+        this.activeWriter = activeWriter;
+        this.readCount = readCount;
+        this.readWait = readWait;
+        this.maxReadWait = maxReadWait;
+        this.readBusy = readBusy;
+        this.writeCount = writeCount;
+        this.writeWait = writeWait;
+        this.maxWriteWait = maxWriteWait;
+        this.writeBusy = writeBusy;
+    }
+
+    /**
+     * @return maximal number of concurrent readers.
+     */
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * @return number of connections which were opened for snapshot reads.
+     */
+    public int getSnapshotReaders() {
+        return snapshotReaders;
+    }
+
+    /**
+     * @return time since pool was opened.
+     */
+    public long getElapsedTime() {
+        return elapsed;
+    }
+
+    /**
+     * @return number of read transactions which are running now.
+     */
+    public int getActiveReaders() {
+        return activeReaders;
+    }
+
+    /**
+     * @return true if write transaction is running now.
+     */
+    public boolean isActiveWriter() {
+        return activeWriter;
+    }
+
+    /**
+     * @return number of completed read transactions.
+     */
+    public long getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * @return total wait time of read transactions.
+     */
+    public long getReadWaitTime() {
+        return readWait;
+    }
+
+    /**
+     * @return longest wait of read transaction.
+     */
+    public long getMaxReadWaitTime() {
+        return maxReadWait;
+    }
+
+    /**
+     * @return total time spent in read transactions.
+     */
+    public long getReadBusyTime() {
+        return readBusy;
+    }
+
+    /**
+     * @return number of completed write transactions.
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return total wait time of write transactions.
+     */
+    public long getWriteWaitTime() {
+        return writeWait;
+    }
+
+    /**
+     * @return longest wait of write transaction.
+     */
+    public long getMaxWriteWaitTime() {
+        return maxWriteWait;
+    }
+
+    /**
+     * @return total time spent in write transactions.
+     */
+    public long getWriteBusyTime() {
+        return writeBusy;
+    }
+
+    /**
+     * @return average wait of read transaction.
+     */
+    public long getAverageReadWaitTime() {
+        return readCount == 0 ? 0 : readWait / readCount;
+    }
+
+    /**
+     * @return average wait of write transaction.
+     */
+    public long getAverageWriteWaitTime() {
+        return writeCount == 0 ? 0 : writeWait / writeCount;
+    }
+
+    /**
+     * @return part of reader slots' time which was used by read transactions,
+     *         from 0 to 1.
+     */
+    public double getReadersUtilisation() {
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double) readBusy / ((double) elapsed * maxReaders));
+    }
+
+    /**
+     * @return part of time which was used by write transactions, from 0 to 1.
+     */
+    public double getWriterUtilisation() {
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double) writeBusy / elapsed);
+    }
+
+    @Override
+    public String toString() {
+        return "readers=" + activeReaders + "/" + maxReaders + ", snapshotReaders=" + snapshotReaders + ", writer="
+                + (activeWriter ? 1 : 0) + ", reads=" + readCount + ", readWait=" + readWait + ", maxReadWait="
+                + maxReadWait + ", writes=" + writeCount + ", writeWait=" + writeWait + ", maxWriteWait="
+                + maxWriteWait + ", readersUtilisation=" + getReadersUtilisation() + ", writerUtilisation="
+                + getWriterUtilisation();
+    }
+
+}
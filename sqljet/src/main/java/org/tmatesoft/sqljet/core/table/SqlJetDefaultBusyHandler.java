@@ -1,6 +1,7 @@
 package org.tmatesoft.sqljet.core.table;
 
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetLockWaitQueue;
 
 /**
  * <p>
@@ -13,6 +14,12 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
  * SQLJET_BUSY_SLEEP system property value in milliseconds).
  * </p>
  * 
+ * <p>
+ * While database waits for lock it is woken up before end of interval when
+ * other connection in this JVM releases its lock. Retries are counted by
+ * whole intervals, so early wake-ups don't shorten time of waiting.
+ * </p>
+ * 
  * @author TMate Software Ltd.
  * @author Sergey Scherbina (sergey.scherbina@gmail.com)
  * 
@@ -128,11 +135,11 @@ public class SqlJetDefaultBusyHandler implements ISqlJetBusyHandler {
         if (cancel) {
             cancel = false;
             return false;
-        } else if (number > retries) {
+        } else if (SqlJetLockWaitQueue.getElapsedIntervals(number) > retries) {
             return false;
         } else {
             try {
-                Thread.sleep(sleep);
+                SqlJetLockWaitQueue.await(sleep);
             } catch (InterruptedException e) {
                 return false;
             }
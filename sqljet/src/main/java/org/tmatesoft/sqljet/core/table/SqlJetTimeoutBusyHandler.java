@@ -1,5 +1,7 @@
 package org.tmatesoft.sqljet.core.table;
 
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetLockWaitQueue;
+
 public class SqlJetTimeoutBusyHandler implements ISqlJetBusyHandler {
     
     private static final int[] delays = { 1, 2, 5, 10, 15, 20, 25, 25,  25,  50,  50, 100 };
@@ -11,7 +13,8 @@ public class SqlJetTimeoutBusyHandler implements ISqlJetBusyHandler {
         this.timeout = timeout;
     }
 
-    public boolean call(int number) {
+    public boolean call(int calls) {
+        final int number = SqlJetLockWaitQueue.getElapsedIntervals(calls);
         int delay;
         int prior;
         if (number < delays.length) {
@@ -28,7 +31,7 @@ public class SqlJetTimeoutBusyHandler implements ISqlJetBusyHandler {
             }
         }
         try {
-            Thread.sleep(delay);
+            SqlJetLockWaitQueue.await(delay);
         } catch (InterruptedException e) {
             //
         }
@@ -0,0 +1,56 @@
+/**
+ * SqlJetZeroBlob.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+/**
+ * Value for insert and update which stores BLOB of given size filled with
+ * zeroes, same as zeroblob() function of SQLite. Zeroes aren't held in memory
+ * when they are at end of record, so this is the way to reserve space for
+ * large value which then is written by {@link ISqlJetBlob}.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetZeroBlob {
+
+    private final int size;
+
+    /**
+     * @param size
+     *            size of BLOB in bytes.
+     */
+    public SqlJetZeroBlob(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size of zero blob: " + size);
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return size of BLOB in bytes.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public String toString() {
+        return "zeroblob(" + size + ")";
+    }
+
+}
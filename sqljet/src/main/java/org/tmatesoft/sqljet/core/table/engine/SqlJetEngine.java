@@ -40,6 +40,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
 import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
+import org.tmatesoft.sqljet.core.internal.mutex.SqlJetReadWriteMutex;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetSchema;
 import org.tmatesoft.sqljet.core.internal.table.SqlJetOptions;
 import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
@@ -81,6 +82,10 @@ public class SqlJetEngine {
 	private boolean transaction;
 	private SqlJetTransactionMode transactionMode;
 
+	private final Object readersLock = new Object();
+	private int readers;
+	private boolean sharedTransaction;
+
 	/**
      *
      */
@@ -472,6 +477,7 @@ public class SqlJetEngine {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
 				if (!isTransactionStarted(mode)) {
+					checkNotSharedReader();
 					doBeginTransaction(mode);
 				}
 				return null;
@@ -489,11 +495,13 @@ public class SqlJetEngine {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
 				if (isInTransaction()) {
+					checkNotSharedReader();
 					doCommitTransaction();
 				}
 				return null;
 			}
 		});
+		syncCommit();
 	}
 
 	/**
@@ -505,6 +513,7 @@ public class SqlJetEngine {
 		runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
+				checkNotSharedReader();
 				doRollbackTransaction();
 				return null;
 			}
@@ -526,12 +535,31 @@ public class SqlJetEngine {
 	protected Object runEngineTransaction(final ISqlJetEngineTransaction op,
 			final SqlJetTransactionMode mode) throws SqlJetException {
 		checkOpen();
-		return runSynchronized(new ISqlJetEngineSynchronized() {
+		final SqlJetReadWriteMutex mutex = getReadWriteMutex();
+		if (mutex != null && mode == SqlJetTransactionMode.READ_ONLY) {
+			if (!mutex.isReader() && !mutex.isWriter()) {
+				return runSharedReadTransaction(op, mutex);
+			}
+		} else if (mutex != null && mutex.isReader()) {
+			/*
+			 * Reader waits until other readers have finished and runs write
+			 * transaction exclusively, then it continues as reader.
+			 */
+			final int count = mutex.leaveReadAll();
+			try {
+				return runEngineTransaction(op, mode);
+			} finally {
+				mutex.enterRead(count);
+				resumeSharedReadTransaction();
+			}
+		}
+		final Object result = runSynchronized(new ISqlJetEngineSynchronized() {
 			public Object runSynchronized(SqlJetEngine engine)
 					throws SqlJetException {
 				if (isTransactionStarted(mode)) {
 					return op.run(SqlJetEngine.this);
 				} else {
+					checkNotSharedReader();
 					doBeginTransaction(mode);
 					boolean success = false;
 					try {
@@ -549,6 +577,90 @@ public class SqlJetEngine {
 				}
 			}
 		});
+		syncCommit();
+		return result;
+	}
+
+	/**
+	 * Runs read transaction which is shared with other threads. The first
+	 * reader begins transaction and the last one ends it, operations of
+	 * readers lock mutex in shared mode and run in parallel. Writers wait
+	 * until all readers have finished.
+	 */
+	private Object runSharedReadTransaction(final ISqlJetEngineTransaction op,
+			final SqlJetReadWriteMutex mutex) throws SqlJetException {
+		mutex.enterRead();
+		try {
+			checkOpen();
+			synchronized (readersLock) {
+				if (!transaction) {
+					doBeginTransaction(SqlJetTransactionMode.READ_ONLY);
+					sharedTransaction = true;
+				}
+				readers++;
+			}
+			try {
+				return op.run(this);
+			} finally {
+				synchronized (readersLock) {
+					if (--readers == 0 && sharedTransaction) {
+						boolean success = false;
+						try {
+							doCommitTransaction();
+							success = true;
+						} finally {
+							if (!success) {
+								doRollbackTransaction();
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			mutex.leaveRead();
+		}
+	}
+
+	/**
+	 * Write transaction of reader has ended transaction which was shared, so
+	 * it is begun again for the rest of reader's operations.
+	 */
+	private void resumeSharedReadTransaction() throws SqlJetException {
+		synchronized (readersLock) {
+			if (!transaction && readers > 0) {
+				doBeginTransaction(SqlJetTransactionMode.READ_ONLY);
+				sharedTransaction = true;
+			}
+		}
+	}
+
+	private SqlJetReadWriteMutex getReadWriteMutex() {
+		final ISqlJetMutex mutex = dbHandle.getMutex();
+		return mutex instanceof SqlJetReadWriteMutex ? (SqlJetReadWriteMutex) mutex
+				: null;
+	}
+
+	/**
+	 * Transaction which is shared by readers can't be changed by one of them.
+	 */
+	private void checkNotSharedReader() throws SqlJetException {
+		final SqlJetReadWriteMutex mutex = getReadWriteMutex();
+		if (mutex != null && mutex.isReader()) {
+			throw new SqlJetException(SqlJetErrorCode.MISUSE,
+					"Transaction is shared by concurrent readers");
+		}
+	}
+
+	/**
+	 * Waits until committed transaction is synced to disk. In group commit
+	 * mode this is done outside of the lock, so that other threads could
+	 * commit their transactions meanwhile.
+	 */
+	private void syncCommit() throws SqlJetException {
+		final ISqlJetBtree btree = this.btree;
+		if (btree != null) {
+			btree.getPager().syncCommit();
+		}
 	}
 
 	private boolean isTransactionStarted(final SqlJetTransactionMode mode) {
@@ -569,6 +681,7 @@ public class SqlJetEngine {
 		btree.commit();
 		transaction = false;
 		transactionMode = null;
+		sharedTransaction = false;
 	}
 
 	private void doRollbackTransaction() throws SqlJetException {
@@ -576,6 +689,7 @@ public class SqlJetEngine {
 		btree.rollback();
 		transaction = false;
 		transactionMode = null;
+		sharedTransaction = false;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+/**
+ * BtreeSeekBenchmarks.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.sandbox.btree;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetAbstractLoggedTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
+import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.SqlJetBtreeFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.internal.schema.SqlJetTableDef;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+
+/**
+ * Seeks of btree cursor by rowid. Counts bytes allocated by the seeking thread
+ * (HotSpot only) to check that cell parsing on the seek path doesn't allocate.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class BtreeSeekBenchmarks extends SqlJetAbstractLoggedTest {
+
+    public static final int ROWS = 100000;
+    public static final int SEEKS = 1000000;
+
+    private File file;
+    private int rootPage;
+    private ISqlJetDbHandle handle;
+    private ISqlJetBtree btree;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("seek", null);
+        file.deleteOnExit();
+        final SqlJetDb db = SqlJetDb.open(file, true);
+        try {
+            db.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    db.createTable("create table t(a integer primary key, b text)");
+                    final ISqlJetTable table = db.getTable("t");
+                    for (int i = 1; i <= ROWS; i++) {
+                        table.insert(i, "row " + i);
+                    }
+                    rootPage = ((SqlJetTableDef) db.getSchema().getTable("t")).getPage();
+                    return null;
+                }
+            });
+        } finally {
+            db.close();
+        }
+        handle = new SqlJetDbHandle();
+        handle.getMutex().enter();
+        btree = new SqlJetBtree();
+        btree.open(file, handle, SqlJetUtility.of(SqlJetBtreeFlags.READONLY), SqlJetFileType.MAIN_DB,
+                SqlJetUtility.of(SqlJetFileOpenPermission.READONLY));
+        btree.beginTrans(SqlJetTransactionMode.READ_ONLY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (btree != null) {
+                btree.close();
+            }
+        } finally {
+            handle.getMutex().leave();
+            SqlJetFileUtil.deleteFile(file);
+        }
+    }
+
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private long seek(final ISqlJetBtreeCursor c, final int seeks) throws SqlJetException {
+        final Random random = new Random(1);
+        long found = 0;
+        for (int i = 0; i < seeks; i++) {
+            if (c.moveTo(null, 1 + random.nextInt(ROWS), false) == 0) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void seekRowid() throws Exception {
+        final ISqlJetBtreeCursor c = btree.getCursor(rootPage, false, null);
+        c.enterCursor();
+        try {
+            seek(c, SEEKS); // warm up
+            final long bytes = allocatedBytes();
+            final long time = System.currentTimeMillis();
+            final long found = seek(c, SEEKS);
+            final long elapsed = System.currentTimeMillis() - time;
+            final long allocated = allocatedBytes() - bytes;
+            Assert.assertEquals(SEEKS, found);
+            logger.info(String.format("%d seeks: %d ms, %d bytes allocated, %.2f bytes per seek", SEEKS, elapsed,
+                    allocated, (double) allocated / SEEKS));
+        } finally {
+            c.leaveCursor();
+            c.closeCursor();
+        }
+    }
+
+}
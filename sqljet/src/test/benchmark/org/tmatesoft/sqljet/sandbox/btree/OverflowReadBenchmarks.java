@@ -0,0 +1,135 @@
+/**
+ * OverflowReadBenchmarks.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.sandbox.btree;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetAbstractLoggedTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
+import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetBtreeFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.internal.schema.SqlJetTableDef;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+
+/**
+ * Random reads of small ranges of one large record, which is spilled to long
+ * chain of overflow pages. Overflow page-list cache of cursor allows to skip
+ * directly to pages which hold requested range.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class OverflowReadBenchmarks extends SqlJetAbstractLoggedTest {
+
+    public static final int BLOB_SIZE = 10 * 1024 * 1024;
+    public static final int READS = 100000;
+    public static final int READ_SIZE = 100;
+
+    private File file;
+    private int rootPage;
+    private ISqlJetDbHandle handle;
+    private ISqlJetBtree btree;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("overflow", null);
+        file.deleteOnExit();
+        final SqlJetDb db = SqlJetDb.open(file, true);
+        try {
+            db.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    db.createTable("create table t(a integer primary key, b blob)");
+                    final ISqlJetTable table = db.getTable("t");
+                    table.insert(1, new byte[BLOB_SIZE]);
+                    rootPage = ((SqlJetTableDef) db.getSchema().getTable("t")).getPage();
+                    return null;
+                }
+            });
+        } finally {
+            db.close();
+        }
+        handle = new SqlJetDbHandle();
+        handle.getMutex().enter();
+        btree = new SqlJetBtree();
+        btree.open(file, handle, SqlJetUtility.of(SqlJetBtreeFlags.READONLY), SqlJetFileType.MAIN_DB,
+                SqlJetUtility.of(SqlJetFileOpenPermission.READONLY));
+        btree.beginTrans(SqlJetTransactionMode.READ_ONLY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (btree != null) {
+                btree.close();
+            }
+        } finally {
+            handle.getMutex().leave();
+            SqlJetFileUtil.deleteFile(file);
+        }
+    }
+
+    private long read(final ISqlJetBtreeCursor c, final int reads) throws SqlJetException {
+        final Random random = new Random(1);
+        final ISqlJetMemoryPointer buf = SqlJetUtility.allocatePtr(READ_SIZE);
+        final int size = c.getDataSize();
+        long read = 0;
+        for (int i = 0; i < reads; i++) {
+            c.data(random.nextInt(size - READ_SIZE), READ_SIZE, buf);
+            read += READ_SIZE;
+        }
+        return read;
+    }
+
+    @Test
+    public void readRandomRanges() throws Exception {
+        final ISqlJetBtreeCursor c = btree.getCursor(rootPage, false, null);
+        c.enterCursor();
+        try {
+            Assert.assertEquals(0, c.moveTo(null, 1, false));
+            read(c, READS / 10); // warm up
+            final long time = System.currentTimeMillis();
+            final long read = read(c, READS);
+            final long elapsed = System.currentTimeMillis() - time;
+            Assert.assertEquals((long) READS * READ_SIZE, read);
+            logger.info(String.format("%d reads of %d bytes from %d bytes record: %d ms", READS, READ_SIZE,
+                    BLOB_SIZE, elapsed));
+        } finally {
+            c.leaveCursor();
+            c.closeCursor();
+        }
+    }
+
+}
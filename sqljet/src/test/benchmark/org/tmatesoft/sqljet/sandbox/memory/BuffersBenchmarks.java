@@ -24,6 +24,7 @@ import org.tmatesoft.sqljet.core.SqlJetAbstractLoggedTest;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetMemoryBufferType;
 import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryManager;
 
 /**
@@ -315,4 +316,94 @@ public class BuffersBenchmarks extends SqlJetAbstractLoggedTest {
         memoryManager.free(b);
     }
 
+    @Test
+    public void sqlJetPointerUnsafeInt() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % (CAPACITY - ISqlJetMemoryManager.INT_SIZE));
+            int v = p.getInt();
+            v += more(i);
+            p.putInt(v);
+        }
+        logger.info(String.format("%d\n", p.getInt()));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void sqlJetPointerUnsafeLong() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % (CAPACITY - ISqlJetMemoryManager.LONG_SIZE));
+            long v = p.getLong();
+            v += more(i);
+            p.putLong(v);
+        }
+        logger.info(String.format("%d\n", p.getInt()));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void sqlJetPointerUnsafeIntUnsigned() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % (CAPACITY - ISqlJetMemoryManager.INT_SIZE));
+            long v = p.getIntUnsigned();
+            v += more(i);
+            p.putIntUnsigned(v);
+        }
+        logger.info(String.format("%d\n", p.getInt()));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void sqlJetArrayIntRead() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.ARRAY);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        long sum = 0;
+        for (int i = 0; i < MUCH; i++) {
+            sum += p.getInt(i % (CAPACITY - ISqlJetMemoryManager.INT_SIZE));
+        }
+        logger.info(String.format("%d\n", sum));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void sqlJetUnsafeIntRead() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        long sum = 0;
+        for (int i = 0; i < MUCH; i++) {
+            sum += p.getInt(i % (CAPACITY - ISqlJetMemoryManager.INT_SIZE));
+        }
+        logger.info(String.format("%d\n", sum));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void sqlJetArrayLongRead() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.ARRAY);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        long sum = 0;
+        for (int i = 0; i < MUCH; i++) {
+            sum += p.getLong(i % (CAPACITY - ISqlJetMemoryManager.LONG_SIZE));
+        }
+        logger.info(String.format("%d\n", sum));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void sqlJetUnsafeLongRead() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        long sum = 0;
+        for (int i = 0; i < MUCH; i++) {
+            sum += p.getLong(i % (CAPACITY - ISqlJetMemoryManager.LONG_SIZE));
+        }
+        logger.info(String.format("%d\n", sum));
+        memoryManager.free(b);
+    }
+
 }
@@ -255,4 +255,74 @@ public class MemoryBuffersBenchmarks extends SqlJetAbstractLoggedTest {
         memoryManager.free(b);
     }
 
+    @Test
+    public void unsafeByte() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % CAPACITY);
+            byte v = p.getByte();
+            v += more(i);
+            p.putByte(v);
+        }
+        logger.info(String.format("%d\n", p.getByte()));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void unsafeInt() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % (CAPACITY - ISqlJetMemoryManager.INT_SIZE));
+            int v = p.getInt();
+            v += more(i);
+            p.putInt(v);
+        }
+        logger.info(String.format("%d\n", p.getInt()));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void unsafeLong() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % (CAPACITY - ISqlJetMemoryManager.LONG_SIZE));
+            long v = p.getLong();
+            v += more(i);
+            p.putLong(v);
+        }
+        logger.info(String.format("%d\n", p.getInt()));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void unsafeByteUnsigned() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % CAPACITY);
+            int v = p.getByteUnsigned();
+            v += more(i);
+            p.putByteUnsigned(v);
+        }
+        logger.info(String.format("%d\n", p.getByte()));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void unsafeIntUnsigned() {
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(CAPACITY, SqlJetMemoryBufferType.UNSAFE);
+        final ISqlJetMemoryPointer p = b.getPointer(0);
+        for (int i = 0; i < MUCH; i++) {
+            p.setPointer(MUCH % (CAPACITY - ISqlJetMemoryManager.INT_SIZE));
+            long v = p.getIntUnsigned();
+            v += more(i);
+            p.putIntUnsigned(v);
+        }
+        logger.info(String.format("%d\n", p.getInt()));
+        memoryManager.free(b);
+    }
+
 }
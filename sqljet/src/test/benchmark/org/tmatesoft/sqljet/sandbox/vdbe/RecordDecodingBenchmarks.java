@@ -0,0 +1,130 @@
+/**
+ * RecordDecodingBenchmarks.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.sandbox.vdbe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetAbstractLoggedTest;
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetKeyInfo;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetUnpackedRecord;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetVdbeMem;
+
+/**
+ * Decoding of records on several threads, which obtain and release
+ * {@link SqlJetVdbeMem} instances from the shared pool.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class RecordDecodingBenchmarks extends SqlJetAbstractLoggedTest {
+
+    public static final int RECORDS = 1000;
+    public static final int FIELDS = 8;
+    public static final int DECODES = 2000000;
+
+    private static ISqlJetMemoryPointer[] records() throws SqlJetException {
+        final ISqlJetMemoryPointer[] records = new ISqlJetMemoryPointer[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            final Object[] values = new Object[FIELDS];
+            for (int j = 0; j < FIELDS; j++) {
+                values[j] = j % 2 == 0 ? (Object) Long.valueOf(i * j) : (Object) ("field " + i + " " + j);
+            }
+            records[i] = SqlJetBtreeRecord.getRecord(SqlJetEncoding.UTF8, values).getRawRecord();
+        }
+        return records;
+    }
+
+    private static long decode(final ISqlJetMemoryPointer[] records, final int decodes) throws SqlJetException {
+        final SqlJetKeyInfo keyInfo = new SqlJetKeyInfo();
+        keyInfo.setEnc(SqlJetEncoding.UTF8);
+        keyInfo.setNField(FIELDS);
+        long decoded = 0;
+        for (int i = 0; i < decodes; i++) {
+            final ISqlJetMemoryPointer record = records[i % RECORDS];
+            final SqlJetUnpackedRecord unpacked = keyInfo.recordUnpack(record.remaining(), record);
+            try {
+                if (unpacked.recordCompare(record.remaining(), record) == 0) {
+                    decoded++;
+                }
+            } finally {
+                unpacked.release();
+            }
+        }
+        return decoded;
+    }
+
+    private long decodeOnThreads(final int threads) throws Exception {
+        final ISqlJetMemoryPointer[] records = records();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+            for (int i = 0; i < threads; i++) {
+                tasks.add(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return decode(records, DECODES / threads);
+                    }
+                });
+            }
+            executor.invokeAll(tasks); // warm up
+            final long time = System.currentTimeMillis();
+            long decoded = 0;
+            for (final Future<Long> f : executor.invokeAll(tasks)) {
+                decoded += f.get();
+            }
+            final long elapsed = System.currentTimeMillis() - time;
+            Assert.assertEquals((long) (DECODES / threads) * threads, decoded);
+            logger.info(String.format("%d threads, %d decodes: %d ms", threads, DECODES, elapsed));
+            return elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void decode1() throws Exception {
+        decodeOnThreads(1);
+    }
+
+    @Test
+    public void decode2() throws Exception {
+        decodeOnThreads(2);
+    }
+
+    @Test
+    public void decode4() throws Exception {
+        decodeOnThreads(4);
+    }
+
+    @Test
+    public void decodeCores() throws Exception {
+        decodeOnThreads(Runtime.getRuntime().availableProcessors());
+    }
+
+}
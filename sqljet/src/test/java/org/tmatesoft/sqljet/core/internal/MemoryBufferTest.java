@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager;
@@ -201,4 +202,72 @@ public class MemoryBufferTest {
         memoryManager.free(b);
     }
 
+    /**
+     * Allocate UNSAFE buffer, tests of UNSAFE buffers are skipped if they are
+     * not built: they would test arrays allocated instead.
+     */
+    private static ISqlJetMemoryBuffer allocateUnsafe(int size) {
+        Assume.assumeTrue(SqlJetMemoryManager.isUnsafeAvailable());
+        final ISqlJetMemoryBuffer b = memoryManager.allocate(size, SqlJetMemoryBufferType.UNSAFE);
+        Assert.assertEquals("SqlJetUnsafeByteArrayBuffer", b.getClass().getSimpleName());
+        return b;
+    }
+
+    @Test
+    public void testShortUnsafe() {
+        ISqlJetMemoryBuffer b = allocateUnsafe(ISqlJetMemoryManager.SHORT_SIZE);
+        b.putShort(0, (short) 1);
+        Assert.assertEquals(1, b.getShort(0));
+        b.putShort(0, (short) -1);
+        Assert.assertEquals(-1, b.getShort(0));
+        b.putShort(0, Short.MAX_VALUE);
+        Assert.assertEquals(Short.MAX_VALUE, b.getShort(0));
+        b.putShort(0, Short.MIN_VALUE);
+        Assert.assertEquals(Short.MIN_VALUE, b.getShort(0));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void testUnsignedIntUnsafe() {
+        ISqlJetMemoryBuffer b = allocateUnsafe(ISqlJetMemoryManager.INT_SIZE);
+        b.putIntUnsigned(0, 0xFFFFFFFFL);
+        Assert.assertEquals(0xFFFFFFFFL, b.getIntUnsigned(0));
+        b.putIntUnsigned(0, 1);
+        Assert.assertEquals(1, b.getIntUnsigned(0));
+        Assert.assertEquals(1, b.getInt(0));
+        b.putInt(0, Integer.MIN_VALUE);
+        Assert.assertEquals(Integer.MIN_VALUE, b.getInt(0));
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void testUnsafeIsBigEndian() {
+        ISqlJetMemoryBuffer a = memoryManager.allocate(15, SqlJetMemoryBufferType.ARRAY);
+        ISqlJetMemoryBuffer b = allocateUnsafe(15);
+        a.putShort(1, (short) 0x0102);
+        a.putInt(3, 0x03040506);
+        a.putLong(7, 0x0708090A0B0C0D0EL);
+        b.copyFrom(0, a, 0, 15);
+        Assert.assertEquals(0x0102, b.getShort(1));
+        Assert.assertEquals(0x03040506, b.getInt(3));
+        Assert.assertEquals(0x0708090A0B0C0D0EL, b.getLong(7));
+        b.putLong(7, -2L);
+        Assert.assertEquals(-2L, b.getLong(7));
+        Assert.assertEquals(-2, b.getByte(14));
+        Assert.assertEquals(-1, b.getByte(7));
+        memoryManager.free(a);
+        memoryManager.free(b);
+    }
+
+    @Test
+    public void testUnsafeBounds() {
+        ISqlJetMemoryBuffer b = allocateUnsafe(ISqlJetMemoryManager.INT_SIZE);
+        try {
+            b.getInt(1);
+            Assert.fail("Unsafe buffer should check bounds");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
 }
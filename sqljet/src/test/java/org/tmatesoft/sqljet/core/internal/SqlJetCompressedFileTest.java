@@ -0,0 +1,71 @@
+/**
+ * SqlJetCompressedFileTest.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetCompressedFileSystem;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystem;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetCompressedFileTest extends SqlJetFileMockTest {
+
+    /* (non-Javadoc)
+     * @see org.tmatesoft.sqljet.core.SqlJetFileMockTest#setUpInstances()
+     */
+    @Override
+    protected void setUpInstances() throws Exception {
+        fileSystem = new SqlJetCompressedFileSystem(new SqlJetFileSystem());
+        super.setUpInstances();
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        final int pageSize = 1024;
+        final int pages = 64;
+        final ISqlJetMemoryPointer wb = SqlJetUtility.allocatePtr(pageSize);
+        for (int i = 0; i < pages; i++) {
+            wb.fill(pageSize, (byte) i);
+            file.write(wb, pageSize, (long) i * pageSize);
+        }
+        file.truncate(pages * pageSize - pageSize / 2);
+        file.sync(SqlJetUtility.of(SqlJetSyncFlags.NORMAL));
+        Assert.assertTrue("File should be compressed", path.length() < pages * pageSize / 4);
+
+        file.close();
+        file2.close();
+        file3.close();
+        file = fileSystem.open(path, SqlJetFileType.MAIN_DB, PERM_CREATE);
+        file2 = null;
+        file3 = null;
+        Assert.assertEquals(pages * pageSize - pageSize / 2, file.fileSize());
+        final ISqlJetMemoryPointer rb = SqlJetUtility.allocatePtr(pageSize);
+        for (int i = 0; i < pages; i++) {
+            final int read = file.read(rb, pageSize, (long) i * pageSize);
+            Assert.assertEquals(i < pages - 1 ? pageSize : pageSize / 2, read);
+            for (int j = 0; j < pageSize; j++) {
+                Assert.assertEquals(j < read ? i : 0, rb.getByteUnsigned(j));
+            }
+        }
+    }
+
+}
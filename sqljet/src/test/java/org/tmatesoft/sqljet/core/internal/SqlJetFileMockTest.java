@@ -17,8 +17,11 @@
  */
 package org.tmatesoft.sqljet.core.internal;
 
+import java.io.File;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.junit.Assert;
@@ -115,6 +118,18 @@ public class SqlJetFileMockTest extends SqlJetAbstractFileSystemMockTest {
                 .getBuffer().asArray());
     }
 
+    @Test
+    public void testWriteGatheredRead() throws Exception {
+        Assert.assertTrue(0 == path.length());
+        final ISqlJetMemoryPointer wb1 = SqlJetUtility.wrapPtr(new byte[] { 1, 2 });
+        final ISqlJetMemoryPointer wb2 = SqlJetUtility.wrapPtr(new byte[] { 3, 4, 5 });
+        file.write(new ISqlJetMemoryPointer[] { wb1, wb2.getMoved(1) }, new int[] { 2, 2 }, 2, 1);
+        final ISqlJetMemoryPointer rb = SqlJetUtility.allocatePtr(5);
+        Assert.assertEquals(5, file.read(rb, 5, 0));
+        Assert.assertArrayEquals("Buffers should be written one after another", new byte[] { 0, 1, 2, 4, 5 }, rb
+                .getBuffer().asArray());
+    }
+
     @Test
     public void testSize() throws Exception {
         final long fileSize = file.fileSize();
@@ -294,6 +309,94 @@ public class SqlJetFileMockTest extends SqlJetAbstractFileSystemMockTest {
         Assert.assertTrue(lock2.get());
     }
 
+    /**
+     * Locks are checked between threads of JVM only for files which were
+     * opened in different threads.
+     */
+    private static class Connection {
+        private final ExecutorService thread = Executors.newSingleThreadExecutor();
+        private final ISqlJetFile file;
+
+        Connection(final ISqlJetFileSystem fileSystem, final File path) throws Exception {
+            file = thread.submit(new Callable<ISqlJetFile>() {
+                public ISqlJetFile call() throws Exception {
+                    return fileSystem.open(path, SqlJetFileType.MAIN_DB, PERM_CREATE);
+                }
+            }).get();
+        }
+
+        boolean lock(final SqlJetLockType... lockTypes) throws Exception {
+            return thread.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    for (final SqlJetLockType lockType : lockTypes) {
+                        if (!file.lock(lockType)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }).get();
+        }
+
+        boolean unlock(final SqlJetLockType lockType) throws Exception {
+            return thread.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return file.unlock(lockType);
+                }
+            }).get();
+        }
+
+        void close() throws Exception {
+            try {
+                thread.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        file.close();
+                        return null;
+                    }
+                }).get();
+            } finally {
+                thread.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testLockSharedAfterExclusiveConnections() throws Exception {
+        final Connection c1 = new Connection(fileSystem, path);
+        final Connection c2 = new Connection(fileSystem, path);
+        try {
+            Assert.assertTrue(c1.lock(SqlJetLockType.SHARED, SqlJetLockType.RESERVED, SqlJetLockType.EXCLUSIVE));
+            Assert.assertFalse(c2.lock(SqlJetLockType.SHARED));
+            Assert.assertTrue(c1.unlock(SqlJetLockType.NONE));
+            Assert.assertTrue(c2.lock(SqlJetLockType.SHARED));
+        } finally {
+            c1.close();
+            c2.close();
+        }
+    }
+
+    @Test
+    public void testLockSharedConnections() throws Exception {
+        final Connection c1 = new Connection(fileSystem, path);
+        final Connection c2 = new Connection(fileSystem, path);
+        final Connection c3 = new Connection(fileSystem, path);
+        try {
+            Assert.assertTrue(c1.lock(SqlJetLockType.SHARED));
+            Assert.assertTrue(c2.lock(SqlJetLockType.SHARED));
+            Assert.assertTrue(c3.lock(SqlJetLockType.SHARED, SqlJetLockType.RESERVED));
+            Assert.assertFalse(c3.lock(SqlJetLockType.EXCLUSIVE));
+            Assert.assertTrue(c1.unlock(SqlJetLockType.NONE));
+            Assert.assertFalse(c3.lock(SqlJetLockType.EXCLUSIVE));
+            Assert.assertTrue(c2.unlock(SqlJetLockType.NONE));
+            Assert.assertTrue(c3.lock(SqlJetLockType.EXCLUSIVE));
+            Assert.assertFalse(c1.lock(SqlJetLockType.SHARED));
+        } finally {
+            c1.close();
+            c2.close();
+            c3.close();
+        }
+    }
+
     @Test
     public void testLockClose() throws Exception {
         Assert.assertTrue(file.lock(SqlJetLockType.SHARED));
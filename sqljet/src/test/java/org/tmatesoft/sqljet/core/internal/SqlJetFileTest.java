@@ -17,7 +17,21 @@
  */
 package org.tmatesoft.sqljet.core.internal;
 
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetByteArrayBuffer;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryPointer;
 
 /**
  * @author TMate Software Ltd.
@@ -34,5 +48,102 @@ public class SqlJetFileTest extends SqlJetFileMockTest {
         fileSystem = new SqlJetFileSystem();
         super.setUpInstances();
     }
-    
+
+    @Test
+    public void testReadParallel() throws Exception {
+        final int pageSize = 1024;
+        final int pages = 64;
+        final ISqlJetMemoryPointer wb = SqlJetUtility.allocatePtr(pageSize);
+        for (int i = 0; i < pages; i++) {
+            wb.fill(pageSize, (byte) i);
+            file.write(wb, pageSize, (long) i * pageSize);
+        }
+        final List<Future<Boolean>> readers = new ArrayList<Future<Boolean>>();
+        for (int t = 0; t < 8; t++) {
+            final int first = t;
+            readers.add(execThread(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    final ISqlJetMemoryPointer rb = SqlJetUtility.allocatePtr(pageSize);
+                    for (int n = 0; n < 1000; n++) {
+                        final int page = (first + n * 7) % pages;
+                        if (file.read(rb, pageSize, (long) page * pageSize) != pageSize) {
+                            return false;
+                        }
+                        for (int i = 0; i < pageSize; i++) {
+                            if (rb.getByteUnsigned(i) != page) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (final Future<Boolean> reader : readers) {
+            Assert.assertTrue("Parallel reads should get data of their own pages", reader.get());
+        }
+    }
+
+    @Test
+    public void testReadOverlapsOtherRead() throws Exception {
+        final int pageSize = 1024;
+        final ISqlJetMemoryPointer wb = SqlJetUtility.allocatePtr(pageSize);
+        wb.fill(pageSize, (byte) 1);
+        file.write(wb, pageSize, 0);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        /* first read stays inside I/O holding monitor of the file */
+        final SqlJetByteArrayBuffer slow = new SqlJetByteArrayBuffer() {
+            @Override
+            public int readFromFile(int pointer, RandomAccessFile file, FileChannel channel, long position, int count)
+                    throws IOException {
+                synchronized (file) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e.getMessage());
+                    }
+                }
+                return super.readFromFile(pointer, file, channel, position, count);
+            }
+        };
+        slow.allocate(pageSize);
+        final Future<Boolean> first = execThread(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return file.read(new SqlJetMemoryPointer(slow, 0), pageSize, 0) == pageSize;
+            }
+        });
+        try {
+            Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+            final Future<Boolean> second = execThread(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    final ISqlJetMemoryPointer rb = SqlJetUtility.allocatePtr(pageSize, SqlJetMemoryBufferType.ARRAY);
+                    return file.read(rb, pageSize, 0) == pageSize;
+                }
+            });
+            Assert.assertTrue("Read should not wait for other read", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        Assert.assertTrue(first.get());
+    }
+
+    @Test
+    public void testReadInterrupted() throws Exception {
+        final int pageSize = 1024;
+        final ISqlJetMemoryPointer wb = SqlJetUtility.allocatePtr(pageSize);
+        wb.fill(pageSize, (byte) 1);
+        file.write(wb, pageSize, 0);
+        final ISqlJetMemoryPointer rb = SqlJetUtility.allocatePtr(pageSize);
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertEquals(pageSize, file.read(rb, pageSize, 0));
+        } finally {
+            Thread.interrupted();
+        }
+        Assert.assertEquals(pageSize, file.read(rb, pageSize, 0));
+        file.write(wb, pageSize, pageSize);
+    }
+
 }
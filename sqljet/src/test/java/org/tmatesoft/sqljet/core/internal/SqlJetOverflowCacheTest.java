@@ -0,0 +1,144 @@
+/**
+ * SqlJetOverflowCacheTest.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.internal.schema.SqlJetTableDef;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+
+/**
+ * Reads of parts of records which are spilled to overflow pages.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetOverflowCacheTest {
+
+    private static final int BLOB_SIZE = 100000;
+
+    private File file;
+    private int rootPage;
+    private ISqlJetDbHandle handle;
+    private ISqlJetBtree btree;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("overflow", null);
+        file.deleteOnExit();
+        final SqlJetDb db = SqlJetDb.open(file, true);
+        try {
+            db.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    db.createTable("create table t(a integer primary key, b blob, c text)");
+                    final ISqlJetTable table = db.getTable("t");
+                    final Random random = new Random(1);
+                    for (int i = 1; i <= 2; i++) {
+                        final byte[] blob = new byte[BLOB_SIZE * i];
+                        random.nextBytes(blob);
+                        table.insert(i, blob, "tail " + i);
+                    }
+                    rootPage = ((SqlJetTableDef) db.getSchema().getTable("t")).getPage();
+                    return null;
+                }
+            });
+        } finally {
+            db.close();
+        }
+        handle = new SqlJetDbHandle();
+        handle.getMutex().enter();
+        btree = new SqlJetBtree();
+        btree.open(file, handle, SqlJetUtility.of(SqlJetBtreeFlags.READONLY), SqlJetFileType.MAIN_DB,
+                SqlJetUtility.of(SqlJetFileOpenPermission.READONLY));
+        btree.beginTrans(SqlJetTransactionMode.READ_ONLY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (btree != null) {
+                btree.close();
+            }
+        } finally {
+            handle.getMutex().leave();
+            SqlJetFileUtil.deleteFile(file);
+        }
+    }
+
+    private byte[] readAll(long rowId) throws SqlJetException {
+        final ISqlJetBtreeCursor c = btree.getCursor(rootPage, false, null);
+        try {
+            Assert.assertEquals(0, c.moveTo(null, rowId, false));
+            final int size = c.getDataSize();
+            final ISqlJetMemoryPointer buf = SqlJetUtility.allocatePtr(size);
+            c.data(0, size, buf);
+            return SqlJetUtility.readByteBuffer(buf);
+        } finally {
+            c.closeCursor();
+        }
+    }
+
+    private void assertRange(ISqlJetBtreeCursor c, byte[] expected, int offset, int amt) throws SqlJetException {
+        final ISqlJetMemoryPointer buf = SqlJetUtility.allocatePtr(amt);
+        c.data(offset, amt, buf);
+        for (int i = 0; i < amt; i++) {
+            Assert.assertEquals(expected[offset + i], buf.getByte(i));
+        }
+    }
+
+    @Test
+    public void randomRanges() throws SqlJetException {
+        final byte[][] rows = { readAll(1), readAll(2) };
+        final ISqlJetBtreeCursor c = btree.getCursor(rootPage, false, null);
+        try {
+            final Random random = new Random(2);
+            for (int i = 0; i < 200; i++) {
+                final int row = random.nextInt(2);
+                final byte[] expected = rows[row];
+                Assert.assertEquals(0, c.moveTo(null, row + 1, false));
+                final int tail = Math.min(expected.length, 1 + random.nextInt(100));
+                assertRange(c, expected, expected.length - tail, tail);
+                for (int j = 0; j < 5; j++) {
+                    final int offset = random.nextInt(expected.length);
+                    final int amt = 1 + random.nextInt(Math.min(5000, expected.length - offset));
+                    assertRange(c, expected, offset, amt);
+                }
+                if (!c.next()) {
+                    assertRange(c, rows[1], 0, 10);
+                    assertRange(c, rows[1], rows[1].length - 10, 10);
+                }
+            }
+        } finally {
+            c.closeCursor();
+        }
+    }
+
+}
@@ -18,6 +18,12 @@
 package org.tmatesoft.sqljet.core.internal;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.hamcrest.BaseMatcher;
@@ -27,6 +33,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.tmatesoft.sqljet.core.SqlJetAbstractLoggedTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
 import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
 import org.tmatesoft.sqljet.core.internal.pager.SqlJetPager;
@@ -233,4 +240,79 @@ public class SqlJetPagerTest extends SqlJetAbstractLoggedTest {
         page.unref();
     }
 
+    /**
+     * Readers of one pager which miss different pages read them from the file
+     * at once: every read waits until the other one has started.
+     */
+    @Test(timeout = 20000)
+    public final void testConcurrentReadsOverlap() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(2);
+        final boolean[] blocking = new boolean[1];
+        final boolean[] overlapped = new boolean[] { true };
+        final ISqlJetFileSystem slowFileSystem = (ISqlJetFileSystem) delegate(ISqlJetFileSystem.class,
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        final Object result = call(fileSystem, method, args);
+                        if (!"open".equals(method.getName())) {
+                            return result;
+                        }
+                        final ISqlJetFile file = (ISqlJetFile) result;
+                        return delegate(ISqlJetFile.class, new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                if ("read".equals(method.getName()) && blocking[0]) {
+                                    reading.countDown();
+                                    if (!reading.await(5, TimeUnit.SECONDS)) {
+                                        overlapped[0] = false;
+                                    }
+                                }
+                                return call(file, method, args);
+                            }
+                        });
+                    }
+                });
+
+        pager.open(slowFileSystem, testDataBase, null, SqlJetFileType.MAIN_DB, SqlJetUtility
+                .of(SqlJetFileOpenPermission.READONLY));
+        final ISqlJetPage page1 = pager.acquirePage(1, true);
+        blocking[0] = true;
+
+        final SqlJetException[] errors = new SqlJetException[2];
+        final Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            final int reader = i;
+            /* pages are not sequential, so that nothing is read ahead */
+            final int pageNumber = 3 + 2 * i;
+            readers[i] = new Thread() {
+                public void run() {
+                    try {
+                        pager.acquirePage(pageNumber, true).unref();
+                    } catch (SqlJetException e) {
+                        errors[reader] = e;
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+        page1.unref();
+
+        Assert.assertNull(errors[0]);
+        Assert.assertNull(errors[1]);
+        Assert.assertTrue(overlapped[0]);
+    }
+
+    private static Object delegate(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
 }
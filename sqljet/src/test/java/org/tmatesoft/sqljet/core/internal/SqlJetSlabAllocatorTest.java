@@ -0,0 +1,78 @@
+/**
+ * SqlJetSlabAllocatorTest.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetDirectByteBuffer;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetSlabAllocator;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetSlabAllocatorTest {
+
+    private static final int FRAME_SIZE = 1024;
+
+    @Test
+    public void framesAreCarvedFromSlab() {
+        final SqlJetSlabAllocator allocator = new SqlJetSlabAllocator(4 * FRAME_SIZE);
+        final ISqlJetMemoryPointer[] frames = new ISqlJetMemoryPointer[4];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = allocator.allocate(FRAME_SIZE);
+            Assert.assertEquals(FRAME_SIZE, frames[i].getBuffer().getSize());
+            Assert.assertTrue(frames[i].getBuffer() instanceof SqlJetDirectByteBuffer);
+            SqlJetUtility.memset(frames[i], (byte) i, FRAME_SIZE);
+        }
+        Assert.assertEquals(1, allocator.getSlabCount());
+        Assert.assertEquals(0, allocator.getFreeCount(FRAME_SIZE));
+        for (int i = 0; i < frames.length; i++) {
+            Assert.assertEquals(i, frames[i].getByte(0));
+            Assert.assertEquals(i, frames[i].getByte(FRAME_SIZE - 1));
+        }
+        allocator.allocate(FRAME_SIZE);
+        Assert.assertEquals(2, allocator.getSlabCount());
+    }
+
+    @Test
+    public void framesAreRecycled() {
+        final SqlJetSlabAllocator allocator = new SqlJetSlabAllocator(4 * FRAME_SIZE);
+        final ISqlJetMemoryPointer frame = allocator.allocate(FRAME_SIZE);
+        allocator.free(frame);
+        Assert.assertEquals(4, allocator.getFreeCount(FRAME_SIZE));
+        for (int i = 0; i < 100; i++) {
+            final ISqlJetMemoryPointer again = allocator.allocate(FRAME_SIZE);
+            Assert.assertSame(frame.getBuffer(), again.getBuffer());
+            allocator.free(again);
+        }
+        Assert.assertEquals(1, allocator.getSlabCount());
+    }
+
+    @Test
+    public void framesOfDifferentSizes() {
+        final SqlJetSlabAllocator allocator = new SqlJetSlabAllocator(FRAME_SIZE);
+        allocator.allocate(FRAME_SIZE);
+        allocator.allocate(2 * FRAME_SIZE);
+        Assert.assertEquals(2, allocator.getSlabCount());
+        Assert.assertEquals(0, allocator.getFreeCount(FRAME_SIZE));
+        Assert.assertEquals(0, allocator.getFreeCount(2 * FRAME_SIZE));
+    }
+
+}
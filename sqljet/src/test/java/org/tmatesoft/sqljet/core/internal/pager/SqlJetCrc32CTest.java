@@ -0,0 +1,65 @@
+/**
+ * SqlJetCrc32CTest.java
+ * Copyright (C) 2008 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public class SqlJetCrc32CTest {
+
+    /** Bitwise CRC-32C to check table-driven one */
+    private static int reference(byte[] bytes, int length) {
+        int crc = 0xFFFFFFFF;
+        for (int i = 0; i < length; i++) {
+            crc ^= bytes[i] & 0xFF;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+            }
+        }
+        return ~crc;
+    }
+
+    @Test
+    public void knownValues() {
+        Assert.assertEquals(0xE3069283, SqlJetCrc32C.checksum(SqlJetUtility.wrapPtr("123456789".getBytes()), 9));
+        Assert.assertEquals(0x8A9136AA, SqlJetCrc32C.checksum(SqlJetUtility.wrapPtr(new byte[32]), 32));
+        Assert.assertEquals(0, SqlJetCrc32C.checksum(SqlJetUtility.wrapPtr(new byte[4]), 0));
+    }
+
+    @Test
+    public void randomData() {
+        final Random random = new Random(1);
+        final byte[] bytes = new byte[4096];
+        random.nextBytes(bytes);
+        final ISqlJetMemoryPointer data = SqlJetUtility.wrapPtr(bytes);
+        for (int length = 0; length < 64; length++) {
+            Assert.assertEquals(reference(bytes, length), SqlJetCrc32C.checksum(data, length));
+        }
+        Assert.assertEquals(reference(bytes, 4092), SqlJetCrc32C.checksum(data, 4092));
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * SqlJetPageEvictionPolicyTest.java
+ * Copyright (C) 2008 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.SqlJetMemoryBufferType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public class SqlJetPageEvictionPolicyTest {
+
+    private static final int CACHE_SIZE = 10;
+
+    private final Map<Integer, SqlJetPage> resident = new HashMap<Integer, SqlJetPage>();
+
+    /**
+     * Simulate use of page: it is read into cache (recycling some other page
+     * when cache is full) and then unpinned.
+     */
+    private void use(ISqlJetPageEvictionPolicy policy, int pgno, boolean priority) {
+        SqlJetPage page = resident.get(pgno);
+        if (page == null) {
+            if (resident.size() >= CACHE_SIZE) {
+                final SqlJetPage victim = policy.evict();
+                Assert.assertNotNull(victim);
+                Assert.assertSame(victim, resident.remove(victim.pgno));
+            }
+            page = new SqlJetPage();
+            page.pgno = pgno;
+            page.priority = priority;
+            resident.put(pgno, page);
+        }
+        policy.unpin(page);
+    }
+
+    private void scan(ISqlJetPageEvictionPolicy policy, int from, int to, int hot, int touchHotEvery) {
+        for (int pgno = from; pgno < to; pgno++) {
+            use(policy, pgno, false);
+            if (touchHotEvery > 0 && pgno % touchHotEvery == 0) {
+                for (int i = 1; i <= hot; i++) {
+                    use(policy, i, true);
+                }
+            }
+        }
+    }
+
+    private static SqlJetPageCache cache() {
+        final SqlJetPageCache cache = new SqlJetPageCache();
+        cache.setCacheSize(CACHE_SIZE);
+        return cache;
+    }
+
+    @Test
+    public void lruEvictsLeastRecentlyUnpinned() {
+        final ISqlJetPageEvictionPolicy policy = new SqlJetLruEvictionPolicy();
+        for (int pgno = 1; pgno <= CACHE_SIZE; pgno++) {
+            use(policy, pgno, false);
+        }
+        use(policy, 1, false);
+        Assert.assertEquals(2, policy.evict().pgno);
+        Assert.assertEquals(3, policy.evict().pgno);
+    }
+
+    @Test
+    public void lruIsFlushedByScan() {
+        final ISqlJetPageEvictionPolicy policy = new SqlJetLruEvictionPolicy();
+        scan(policy, 1, 4, 0, 0);
+        scan(policy, 100, 200, 0, 0);
+        Assert.assertFalse(resident.containsKey(1));
+    }
+
+    @Test
+    public void dirtyAndPinnedPagesAreNotEvicted() {
+        final ISqlJetPageEvictionPolicy policy = new SqlJet2QEvictionPolicy(cache());
+        scan(policy, 1, 4, 0, 0);
+        resident.get(1).flags.add(SqlJetPageFlags.DIRTY);
+        resident.get(2).nRef = 1;
+        Assert.assertEquals(3, policy.evict().pgno);
+        Assert.assertNull(policy.evict());
+    }
+
+    @Test
+    public void twoQKeepsInteriorPagesDuringScan() {
+        final ISqlJetPageEvictionPolicy policy = new SqlJet2QEvictionPolicy(cache());
+        for (int i = 1; i <= 3; i++) {
+            use(policy, i, true);
+        }
+        scan(policy, 100, 1000, 0, 0);
+        for (int i = 1; i <= 3; i++) {
+            Assert.assertTrue(resident.containsKey(i));
+        }
+    }
+
+    @Test
+    public void twoQAdmitsPagesUsedAgain() {
+        final ISqlJetPageEvictionPolicy policy = new SqlJet2QEvictionPolicy(cache());
+        use(policy, 1, false);
+        scan(policy, 100, 110, 0, 0);
+        Assert.assertFalse(resident.containsKey(1));
+        use(policy, 1, false);
+        scan(policy, 200, 1000, 0, 0);
+        Assert.assertTrue(resident.containsKey(1));
+    }
+
+    @Test
+    public void clockKeepsUsedInteriorPagesDuringScan() {
+        final ISqlJetPageEvictionPolicy policy = new SqlJetClockEvictionPolicy();
+        scan(policy, 100, 1000, 3, 5);
+        for (int i = 1; i <= 3; i++) {
+            Assert.assertTrue(resident.containsKey(i));
+        }
+    }
+
+    /**
+     * Scan pages through cache of its own size, using few interior pages
+     * between, and return number of hits.
+     */
+    private static long scanCache(SqlJetPageCachePolicy policy) throws SqlJetException {
+        final SqlJetPageCache cache = cache();
+        cache.policy = policy;
+        cache.open(1024, true, null);
+        cache.setPageSize(1024);
+        for (int pgno = 100; pgno < 2000; pgno++) {
+            cache.release(cache.fetch(pgno, true));
+            if (pgno % (CACHE_SIZE * 2) == 0) {
+                for (int i = 1; i <= 3; i++) {
+                    final ISqlJetPage page = cache.fetch(i, true);
+                    page.setPriority(true);
+                    cache.release(page);
+                }
+            }
+            Assert.assertTrue(cache.getPageCount() <= CACHE_SIZE);
+        }
+        final long hits = cache.getStatistics().getHits();
+        cache.close();
+        return hits;
+    }
+
+    @Test
+    public void cacheEvictsPageChosenByPolicy() throws SqlJetException {
+        final long lru = scanCache(SqlJetPageCachePolicy.LRU);
+        final long twoQ = scanCache(SqlJetPageCachePolicy.TWO_Q);
+        Assert.assertEquals(0, lru);
+        Assert.assertTrue(twoQ > lru);
+    }
+
+    @Test
+    public void truncatedAndClosedPagesAreRecycled() throws SqlJetException {
+        final SqlJetPageCache cache = cache();
+        cache.open(1024, true, null);
+        cache.setPageSize(1024);
+        final SqlJetPage[] pages = new SqlJetPage[6];
+        for (int pgno = 1; pgno < pages.length; pgno++) {
+            pages[pgno] = (SqlJetPage) cache.fetch(pgno, true);
+        }
+        for (int pgno = 1; pgno < pages.length - 1; pgno++) {
+            cache.release(pages[pgno]);
+        }
+        /* only slab frames are taken from pages, heap buffers stay */
+        final boolean direct = SqlJetPage.BUFFER_TYPE == SqlJetMemoryBufferType.DIRECT;
+        cache.truncate(3);
+        Assert.assertNotNull(pages[3].pData);
+        Assert.assertEquals(direct, pages[4].pData == null);
+        /* pinned page keeps its buffer until it's released */
+        Assert.assertNotNull(pages[5].pData);
+        cache.release(pages[5]);
+        Assert.assertEquals(direct, pages[5].pData == null);
+        cache.close();
+        Assert.assertEquals(direct, pages[1].pData == null);
+        Assert.assertEquals(direct, pages[3].pData == null);
+    }
+
+}
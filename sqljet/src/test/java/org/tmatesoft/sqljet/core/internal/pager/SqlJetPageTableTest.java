@@ -0,0 +1,130 @@
+/**
+ * SqlJetPageTableTest.java
+ * Copyright (C) 2008 TMate Software Ltd
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public class SqlJetPageTableTest {
+
+    private static SqlJetPage page(int pgno) {
+        final SqlJetPage page = new SqlJetPage();
+        page.pgno = pgno;
+        return page;
+    }
+
+    private static void assertSame(Map<Integer, SqlJetPage> expected, SqlJetPageTable table, int maxKey) {
+        Assert.assertEquals(expected.size(), table.size());
+        for (int pgno = 1; pgno <= maxKey; pgno++) {
+            Assert.assertSame(expected.get(pgno), table.get(pgno));
+        }
+    }
+
+    @Test
+    public void randomOperations() {
+        final Random random = new Random(1);
+        final SqlJetPageTable table = new SqlJetPageTable();
+        final Map<Integer, SqlJetPage> expected = new HashMap<Integer, SqlJetPage>();
+        final int maxKey = 3000;
+        for (int i = 0; i < 100000; i++) {
+            final int pgno = 1 + random.nextInt(maxKey);
+            if (random.nextInt(3) > 0) {
+                final SqlJetPage page = page(pgno);
+                final SqlJetPage old = table.putIfAbsent(pgno, page);
+                Assert.assertSame(expected.get(pgno), old);
+                if (old == null) {
+                    expected.put(pgno, page);
+                }
+            } else {
+                Assert.assertEquals(expected.remove(pgno) != null, table.remove(pgno, null));
+            }
+        }
+        assertSame(expected, table, maxKey);
+    }
+
+    @Test
+    public void removeOnlyGivenPage() {
+        final SqlJetPageTable table = new SqlJetPageTable();
+        final SqlJetPage page = page(5);
+        table.put(5, page);
+        Assert.assertFalse(table.remove(5, page(5)));
+        Assert.assertSame(page, table.get(5));
+        Assert.assertTrue(table.remove(5, page));
+        Assert.assertNull(table.get(5));
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void referencedPageIsNotRemoved() {
+        final SqlJetPageTable table = new SqlJetPageTable();
+        final SqlJetPage page = page(7);
+        Assert.assertNull(table.putOrPin(7, page));
+        Assert.assertSame(page, table.putOrPin(7, page(7)));
+        Assert.assertEquals(2, page.nRef);
+        Assert.assertEquals(1, table.getRefCount());
+        Assert.assertFalse(table.removeUnpinned(7, page));
+
+        Assert.assertEquals(1, table.unref(page));
+        Assert.assertEquals(0, table.unref(page));
+        Assert.assertEquals(0, table.getRefCount());
+        Assert.assertSame(page, table.pin(7));
+        Assert.assertEquals(1, table.getRefCount());
+        Assert.assertFalse(table.removeUnpinned(7, page));
+
+        Assert.assertEquals(0, table.unref(page));
+        Assert.assertTrue(table.removeUnpinned(7, page));
+        Assert.assertNull(table.pin(7));
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void truncate() {
+        final SqlJetPageTable table = new SqlJetPageTable();
+        final Map<Integer, SqlJetPage> expected = new HashMap<Integer, SqlJetPage>();
+        for (int pgno = 1; pgno <= 1000; pgno++) {
+            final SqlJetPage page = page(pgno);
+            table.put(pgno, page);
+            if (pgno < 300) {
+                expected.put(pgno, page);
+            }
+        }
+        final List<SqlJetPage> removed = new ArrayList<SqlJetPage>();
+        table.truncate(300, removed);
+        Assert.assertEquals(701, removed.size());
+        for (final SqlJetPage page : removed) {
+            Assert.assertTrue(page.pgno >= 300);
+        }
+        assertSame(expected, table, 1000);
+
+        table.clear();
+        Assert.assertEquals(0, table.size());
+        Assert.assertNull(table.get(1));
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * SqlJetUnpackedRecordTest.java
+ * Copyright (C) 2008 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+
+/**
+ * Comparison of packed records with unpacked keys should give the same result
+ * as comparison of unpacked values.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetUnpackedRecordTest {
+
+    private static final Object[] VALUES = { null, 0L, 1L, -1L, 127L, -128L, 200L, 40000L, -40000L, 1L << 23,
+            -(1L << 23), 1L << 31, 1L << 40, -(1L << 47), Long.MAX_VALUE, Long.MIN_VALUE, 1.5, -2.0, 1e20, "", "a",
+            "ab", "b", "abc", "\u00e9" };
+
+    private SqlJetKeyInfo keyInfo(int nField) {
+        final SqlJetKeyInfo keyInfo = new SqlJetKeyInfo();
+        keyInfo.setEnc(SqlJetEncoding.UTF8);
+        keyInfo.setNField(nField);
+        return keyInfo;
+    }
+
+    private ISqlJetMemoryPointer record(Object... values) throws SqlJetException {
+        return SqlJetBtreeRecord.getRecord(SqlJetEncoding.UTF8, values).getRawRecord();
+    }
+
+    private SqlJetUnpackedRecord unpack(SqlJetKeyInfo keyInfo, Object... values) throws SqlJetException {
+        final ISqlJetMemoryPointer r = record(values);
+        return keyInfo.recordUnpack(r.remaining(), r);
+    }
+
+    private static int sign(int x) {
+        return x < 0 ? -1 : (x > 0 ? 1 : 0);
+    }
+
+    @Test
+    public void singleField() throws SqlJetException {
+        final SqlJetKeyInfo keyInfo = keyInfo(1);
+        for (final Object x : VALUES) {
+            final ISqlJetMemoryPointer packed = record(x);
+            final SqlJetUnpackedRecord ux = unpack(keyInfo, x);
+            for (final Object y : VALUES) {
+                final SqlJetUnpackedRecord uy = unpack(keyInfo, y);
+                final int expected = SqlJetVdbeMem.compare(ux.aMem[0], uy.aMem[0], null);
+                final int actual = uy.recordCompare(packed.remaining(), packed);
+                Assert.assertEquals(x + " vs " + y, sign(expected), sign(actual));
+            }
+        }
+    }
+
+    @Test
+    public void severalFields() throws SqlJetException {
+        final SqlJetKeyInfo keyInfo = keyInfo(2);
+        final ISqlJetMemoryPointer packed = record("abc", 10L);
+        Assert.assertEquals(0, unpack(keyInfo, "abc", 10L).recordCompare(packed.remaining(), packed));
+        Assert.assertTrue(unpack(keyInfo, "abc", 11L).recordCompare(packed.remaining(), packed) < 0);
+        Assert.assertTrue(unpack(keyInfo, "abc", 9L).recordCompare(packed.remaining(), packed) > 0);
+        Assert.assertTrue(unpack(keyInfo, "abd", 1L).recordCompare(packed.remaining(), packed) < 0);
+        Assert.assertTrue(unpack(keyInfo, "ab", 100L).recordCompare(packed.remaining(), packed) > 0);
+    }
+
+    @Test
+    public void descendingOrder() throws SqlJetException {
+        final SqlJetKeyInfo keyInfo = keyInfo(1);
+        keyInfo.setSortOrder(0, true);
+        final ISqlJetMemoryPointer packed = record(5L);
+        Assert.assertTrue(unpack(keyInfo, 6L).recordCompare(packed.remaining(), packed) > 0);
+        Assert.assertTrue(unpack(keyInfo, 4L).recordCompare(packed.remaining(), packed) < 0);
+    }
+
+}
@@ -1,5 +1,8 @@
 package org.tmatesoft.sqljet.core.table;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
@@ -205,4 +208,206 @@ public class BlobsTest extends AbstractNewDbTest {
 
     }
 
+    private static final String T_DDL_3 = "CREATE TABLE t (id integer primary key, name text, data blob, tail text)";
+
+    private static final int BLOB_SIZE = 300000;
+
+    private byte[] createBlobTable(final Object... values) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable(T_DDL_3);
+                db.createIndex("CREATE INDEX t_name ON t(name)");
+                db.getTable("t").insert(values);
+                return null;
+            }
+        });
+        final byte[] blob = new byte[BLOB_SIZE];
+        new SecureRandom().nextBytes(blob);
+        return blob;
+    }
+
+    private byte[] readDataField() throws SqlJetException {
+        return (byte[]) db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    Assert.assertFalse(c.eof());
+                    return c.getBlobAsArray("data");
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void zeroBlob() throws Exception {
+        createBlobTable(null, "a", new SqlJetZeroBlob(BLOB_SIZE));
+        Assert.assertArrayEquals(new byte[BLOB_SIZE], readDataField());
+    }
+
+    @Test
+    public void writeZeroBlobByStream() throws Exception {
+        final byte[] blob = createBlobTable(null, "a", new SqlJetZeroBlob(BLOB_SIZE));
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetBlob b = db.getTable("t").openBlob(1, "data", true);
+                try {
+                    Assert.assertEquals(BLOB_SIZE, b.getSize());
+                    final OutputStream out = b.getOutputStream();
+                    for (int i = 0; i < BLOB_SIZE; i += 1000) {
+                        out.write(blob, i, Math.min(1000, BLOB_SIZE - i));
+                    }
+                } catch (java.io.IOException e) {
+                    throw new SqlJetException(e);
+                } finally {
+                    b.close();
+                }
+                return null;
+            }
+        });
+        Assert.assertArrayEquals(blob, readDataField());
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetBlob b = db.getTable("t").openBlob(1, "data", false);
+                try {
+                    final InputStream in = b.getInputStream();
+                    final byte[] read = new byte[BLOB_SIZE];
+                    int n = 0;
+                    for (int r; (r = in.read(read, n, Math.min(777, BLOB_SIZE - n))) > 0;) {
+                        n += r;
+                    }
+                    Assert.assertEquals(BLOB_SIZE, n);
+                    Assert.assertEquals(-1, in.read());
+                    Assert.assertArrayEquals(blob, read);
+                } catch (java.io.IOException e) {
+                    throw new SqlJetException(e);
+                } finally {
+                    b.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void writeZeroBlobInMiddle() throws Exception {
+        final byte[] blob = createBlobTable(null, "a", new SqlJetZeroBlob(BLOB_SIZE), "tail");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetBlob b = db.getTable("t").openBlob(1, "data", true);
+                try {
+                    b.write(BLOB_SIZE / 2, ByteBuffer.wrap(blob, BLOB_SIZE / 2, BLOB_SIZE - BLOB_SIZE / 2));
+                    final ByteBuffer direct = ByteBuffer.allocateDirect(BLOB_SIZE / 2);
+                    direct.put(blob, 0, BLOB_SIZE / 2).flip();
+                    b.write(0, direct);
+                    Assert.assertEquals(0, direct.remaining());
+                } finally {
+                    b.close();
+                }
+                return null;
+            }
+        });
+        Assert.assertArrayEquals(blob, readDataField());
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    Assert.assertEquals("tail", c.getString("tail"));
+                    Assert.assertEquals("a", c.getString("name"));
+                } finally {
+                    c.close();
+                }
+                final ISqlJetBlob b = db.getTable("t").openBlob(1, "data", false);
+                try {
+                    final ByteBuffer part = ByteBuffer.allocate(100);
+                    part.position(10);
+                    b.read(1000, part);
+                    Assert.assertEquals(100, part.position());
+                    for (int i = 0; i < 90; i++) {
+                        Assert.assertEquals(blob[1000 + i], part.get(10 + i));
+                    }
+                    final ByteBuffer direct = ByteBuffer.allocateDirect(20000);
+                    b.read(BLOB_SIZE - 20000, direct);
+                    for (int i = 0; i < 20000; i++) {
+                        Assert.assertEquals(blob[BLOB_SIZE - 20000 + i], direct.get(i));
+                    }
+                } finally {
+                    b.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void blobErrors() throws Exception {
+        createBlobTable(null, "a", new byte[10], "tail");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                assertError(SqlJetErrorCode.ERROR, t, 1, "name", true);
+                assertError(SqlJetErrorCode.ERROR, t, 1, "id", false);
+                assertError(SqlJetErrorCode.ERROR, t, 1, "nothing", false);
+                assertError(SqlJetErrorCode.ERROR, t, 2, "data", false);
+                final ISqlJetBlob b = t.openBlob(1, "data", false);
+                try {
+                    Assert.assertEquals(10, b.getSize());
+                    try {
+                        b.write(0, ByteBuffer.allocate(1));
+                        Assert.fail();
+                    } catch (SqlJetException e) {
+                        Assert.assertEquals(SqlJetErrorCode.READONLY, e.getErrorCode());
+                    }
+                    try {
+                        b.read(5, ByteBuffer.allocate(6));
+                        Assert.fail();
+                    } catch (SqlJetException e) {
+                        Assert.assertEquals(SqlJetErrorCode.ERROR, e.getErrorCode());
+                    }
+                } finally {
+                    b.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void blobAbortedByUpdate() throws Exception {
+        createBlobTable(null, "a", new byte[10], "tail");
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                final ISqlJetBlob b = t.openBlob(1, "data", true);
+                try {
+                    final ISqlJetCursor c = t.open();
+                    try {
+                        c.update(1, "b", new byte[10], "tail");
+                    } finally {
+                        c.close();
+                    }
+                    try {
+                        b.write(0, ByteBuffer.allocate(1));
+                        Assert.fail();
+                    } catch (SqlJetException e) {
+                        Assert.assertEquals(SqlJetErrorCode.ABORT, e.getErrorCode());
+                    }
+                } finally {
+                    b.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    private void assertError(SqlJetErrorCode code, ISqlJetTable t, long rowId, String field, boolean write) {
+        try {
+            t.openBlob(rowId, field, write).close();
+            Assert.fail();
+        } catch (SqlJetException e) {
+            Assert.assertEquals(code, e.getErrorCode());
+        }
+    }
+
 }
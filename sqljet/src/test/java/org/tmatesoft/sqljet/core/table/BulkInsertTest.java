@@ -0,0 +1,247 @@
+/**
+ * BulkInsertTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.table.SqlJetKeySorter;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ * 
+ */
+public class BulkInsertTest extends AbstractNewDbTest {
+
+    private static final String[] DDL = { "create table %s (id integer primary key, a text, b integer, c blob)",
+            "create index %s_a on %s (a)", "create index %s_b on %s (b desc, a)", "create index %s_c on %s (c)" };
+
+    private static final int ROWS = 5000;
+
+    private void createTables(final String... names) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                for (final String name : names) {
+                    for (final String ddl : DDL) {
+                        final String sql = String.format(ddl, name, name);
+                        if (sql.startsWith("create table")) {
+                            db.createTable(sql);
+                        } else {
+                            db.createIndex(sql);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private List<Object[]> generateRows(int count, boolean rowIds) {
+        final Random rnd = new Random(count);
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 1; i <= count; i++) {
+            final byte[] c = new byte[i % 97 == 0 ? 3000 + rnd.nextInt(5000) : rnd.nextInt(40)];
+            rnd.nextBytes(c);
+            final String a = i % 13 == 0 ? null : "value" + rnd.nextInt(count);
+            rows.add(new Object[] { rowIds ? Long.valueOf(i * 3) : null, a, Long.valueOf(rnd.nextInt(100)), c });
+        }
+        return rows;
+    }
+
+    private void insert(final String table, final List<Object[]> rows) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable(table);
+                for (final Object[] row : rows) {
+                    t.insert(row);
+                }
+                return null;
+            }
+        });
+    }
+
+    private long bulkInsert(final String table, final List<Object[]> rows) throws SqlJetException {
+        return db.getTable(table).bulkInsert(rows.iterator());
+    }
+
+    private List<Object[]> read(final String table, final String index) throws SqlJetException {
+        final List<Object[]> result = new ArrayList<Object[]>();
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = index == null ? db.getTable(table).open() : db.getTable(table).order(
+                        table + "_" + index);
+                try {
+                    if (!c.eof()) {
+                        do {
+                            result.add(new Object[] { c.getRowId(), c.getValue(1), c.getValue(2),
+                                    c.getBlobAsArray(3) });
+                        } while (c.next());
+                    }
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+        return result;
+    }
+
+    private void assertSame(String expected, String actual) throws SqlJetException {
+        for (final String index : new String[] { null, "a", "b", "c" }) {
+            final List<Object[]> e = read(expected, index);
+            final List<Object[]> a = read(actual, index);
+            Assert.assertEquals(e.size(), a.size());
+            for (int i = 0; i < e.size(); i++) {
+                Assert.assertTrue("row " + i + " of " + index, Arrays.deepEquals(e.get(i), a.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void bulkInsert() throws Exception {
+        createTables("e", "t");
+        final List<Object[]> rows = generateRows(ROWS, false);
+        insert("e", rows);
+        Assert.assertEquals(ROWS, bulkInsert("t", rows));
+        assertSame("e", "t");
+        Assert.assertEquals(ROWS, read("t", null).size());
+    }
+
+    @Test
+    public void bulkInsertAutovacuum() throws Exception {
+        db.getOptions().setAutovacuum(true);
+        createTables("e", "t");
+        final List<Object[]> rows = generateRows(ROWS, true);
+        insert("e", rows);
+        bulkInsert("t", rows);
+        assertSame("e", "t");
+        insert("t", generateRows(10, false));
+        insert("e", generateRows(10, false));
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    while (!c.eof()) {
+                        c.delete();
+                    }
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+        Assert.assertEquals(0, read("t", "b").size());
+    }
+
+    @Test
+    public void bulkInsertUnsorted() throws Exception {
+        createTables("e", "t");
+        final List<Object[]> rows = generateRows(ROWS, true);
+        for (int i = 0; i < rows.size(); i += 10) {
+            rows.get(i)[0] = Long.valueOf(i * 3 + 1 - 30);
+        }
+        insert("e", rows);
+        Assert.assertEquals(ROWS, bulkInsert("t", rows));
+        assertSame("e", "t");
+    }
+
+    @Test
+    public void bulkInsertNotEmpty() throws Exception {
+        createTables("e", "t");
+        final List<Object[]> rows = generateRows(ROWS, false);
+        insert("e", rows);
+        insert("t", rows.subList(0, 100));
+        Assert.assertEquals(ROWS - 100, bulkInsert("t", rows.subList(100, ROWS)));
+        assertSame("e", "t");
+    }
+
+    @Test
+    public void bulkInsertSpill() throws Exception {
+        System.setProperty(SqlJetKeySorter.SQLJET_BULK_SORT_BUFFER, "4096");
+        try {
+            createTables("e", "t");
+            final List<Object[]> rows = generateRows(ROWS, false);
+            insert("e", rows);
+            bulkInsert("t", rows);
+            assertSame("e", "t");
+        } finally {
+            System.clearProperty(SqlJetKeySorter.SQLJET_BULK_SORT_BUFFER);
+        }
+    }
+
+    @Test
+    public void bulkInsertUnique() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (a integer, b text)");
+                db.createIndex("create unique index t_a on t (a)");
+                return null;
+            }
+        });
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[] { i % 100 == 0 ? null : Long.valueOf(ROWS - i), "b" });
+        }
+        Assert.assertEquals(ROWS, bulkInsert("t", rows));
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").lookup("t_a", Long.valueOf(1));
+                try {
+                    Assert.assertEquals(ROWS, c.getRowId());
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.getTable("t").clear();
+                return null;
+            }
+        });
+
+        rows.add(new Object[] { Long.valueOf(1), "c" });
+        try {
+            bulkInsert("t", rows);
+            Assert.fail();
+        } catch (SqlJetException e) {
+            Assert.assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    Assert.assertTrue(c.eof());
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * CompressedDbTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetCompressedFileSystem;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class CompressedDbTest extends AbstractNewDbTest {
+
+    private static final String TEXT = "compressed page of the database, ";
+
+    private final SqlJetCompressedFileSystem fileSystem = new SqlJetCompressedFileSystem();
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        SqlJetFileSystemsManager.getManager().register(fileSystem, false);
+        db.close();
+        db = SqlJetDb.open(file, true, SqlJetCompressedFileSystem.FS_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            SqlJetFileSystemsManager.getManager().unregister(fileSystem);
+        }
+    }
+
+    private void insert(final long from, final long to) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (long i = from; i < to; i++) {
+                    t.insert(i, TEXT + i);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void assertRows(SqlJetDb db, long count) throws SqlJetException {
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                long i = 1;
+                while (!c.eof()) {
+                    assertEquals(i, c.getInteger("a"));
+                    assertEquals(TEXT + i, c.getString("b"));
+                    i++;
+                    c.next();
+                }
+                assertEquals(count + 1, i);
+            } finally {
+                c.close();
+            }
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void writeAndReopen() throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (a integer primary key, b text)");
+                return null;
+            }
+        });
+        insert(1, 10000);
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        try {
+            db.getTable("t").insert(10000, TEXT);
+        } finally {
+            db.rollback();
+        }
+        assertRows(db, 9999);
+        db.close();
+        assertTrue("Database file should be compressed", file.length() * 2 < 10000L * TEXT.length());
+
+        db = SqlJetDb.open(file, true, SqlJetCompressedFileSystem.FS_NAME);
+        assertRows(db, 9999);
+        insert(10000, 10001);
+        assertRows(db, 10000);
+        db.close();
+
+        db = null;
+        final SqlJetDb plain = SqlJetDb.open(file, false);
+        try {
+            plain.getSchema();
+            fail("Compressed file should not be readable as plain database");
+        } catch (SqlJetException e) {
+            assertTrue(SqlJetErrorCode.NOTADB == e.getErrorCode() || SqlJetErrorCode.CORRUPT == e.getErrorCode());
+        } finally {
+            plain.close();
+        }
+    }
+
+}
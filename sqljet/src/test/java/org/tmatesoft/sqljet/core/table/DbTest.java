@@ -91,6 +91,24 @@ public class DbTest extends AbstractNewDbTest {
         Assert.assertEquals(l, v[0]);
     }
 
+    @Test
+    public void testVarintValue() throws SqlJetException {
+        final long[] values = { 0, 1, 0x7F, 0x80, 0x3FFF, 0x4000, Integer.MAX_VALUE, 0xFFFFFFFFL,
+                0x00FFFFFFFFFFFFFFL, Long.MAX_VALUE, -1 };
+        final ISqlJetMemoryPointer p = SqlJetUtility.wrapPtr(new byte[12]);
+        for (final long l : values) {
+            final int n = SqlJetUtility.putVarint(SqlJetUtility.pointer(p, 1), l);
+            final long[] v = new long[] { 0 };
+            Assert.assertEquals(n, SqlJetUtility.getVarint(p, 1, v));
+            Assert.assertEquals(n, SqlJetUtility.getVarintLength(p, 1));
+            Assert.assertEquals(v[0], SqlJetUtility.getVarintValue(p, 1));
+            Assert.assertEquals(l, SqlJetUtility.getVarintValue(p, 1));
+            final int[] v32 = new int[] { 0 };
+            SqlJetUtility.getVarint32(p, 1, v32);
+            Assert.assertEquals(v32[0], SqlJetUtility.getVarint32Value(p, 1));
+        }
+    }
+
     @Test
     public void testCacheSize() throws SqlJetException {
         db.setCacheSize(1000);
@@ -245,6 +263,81 @@ public class DbTest extends AbstractNewDbTest {
         });
     }
 
+    @Test
+    public void testRowValuesProjection() throws SqlJetException {
+        db.createTable("create table t(a integer primary key, b integer, c text, d text)");
+        final ISqlJetTable t = db.getTable("t");
+        t.insertWithRowId(1, 555, "a", "x");
+        t.insertWithRowId(2, 777, "b", "y");
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = t.open();
+                try {
+                    Assert.assertNull(c.getProjection());
+                    c.setProjection(0, 2);
+                    Assert.assertArrayEquals(new int[] { 0, 2 }, c.getProjection());
+                    Assert.assertArrayEquals(new Object[] { new Long(1), null, "a", null }, c.getRowValues());
+                    Assert.assertEquals(555, c.getInteger(1));
+                    c.next();
+                    Assert.assertArrayEquals(new Object[] { new Long(2), null, "b", null }, c.getRowValues());
+                    c.setProjection();
+                    Assert.assertNull(c.getProjection());
+                    Assert.assertArrayEquals(new Object[] { new Long(2), new Long(777), "b", "y" },
+                            c.getRowValues());
+                } finally {
+                    c.close();
+                }
+                final ISqlJetCursor r = t.open().reverse();
+                try {
+                    r.setProjection(3);
+                    Assert.assertArrayEquals(new Object[] { null, null, null, "y" }, r.getRowValues());
+                } finally {
+                    r.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testWideRowFields() throws SqlJetException {
+        final int columns = 50;
+        final StringBuilder sql = new StringBuilder("create table t(a integer primary key");
+        final Object[] row = new Object[columns];
+        final StringBuilder big = new StringBuilder();
+        while (big.length() < 10000) {
+            big.append("overflow ");
+        }
+        for (int i = 1; i < columns; i++) {
+            sql.append(", f").append(i);
+            row[i] = i % 7 == 0 ? big.toString() + i : (i % 2 == 0 ? (Object) Long.valueOf(i) : "v" + i);
+        }
+        db.createTable(sql.append(")").toString());
+        final ISqlJetTable t = db.getTable("t");
+        t.insert(row);
+        t.insert(row);
+        db.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = t.open();
+                try {
+                    do {
+                        Assert.assertEquals(columns, c.getFieldsCount());
+                        for (int i = columns - 1; i > 0; i -= 3) {
+                            Assert.assertEquals(row[i], c.getValue(i));
+                        }
+                        final Object[] values = c.getRowValues();
+                        for (int i = 1; i < columns; i++) {
+                            Assert.assertEquals(row[i], values[i]);
+                        }
+                    } while (c.next());
+                } finally {
+                    c.close();
+                }
+                return null;
+            }
+        });
+    }
+
     @Test
     public void testInsertRowIdLogic() throws SqlJetException {
         db.createTable("create table t(a integer primary key, b integer, c text)");
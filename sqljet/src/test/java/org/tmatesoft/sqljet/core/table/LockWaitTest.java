@@ -0,0 +1,212 @@
+/**
+ * LockWaitTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileLockManager;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetLockWaitStatistics;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class LockWaitTest extends AbstractNewDbTest {
+
+    /** Interval of busy handler, waiters should be woken up much earlier */
+    private static final int SLEEP = 5000;
+
+    private final List<Throwable> errors = new ArrayList<Throwable>();
+    private final List<SqlJetDb> connections = new ArrayList<SqlJetDb>();
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (id integer primary key, a text)");
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            for (final SqlJetDb connection : connections) {
+                connection.close();
+            }
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    private SqlJetDb openConnection(ISqlJetBusyHandler busyHandler) throws SqlJetException {
+        final SqlJetDb connection = SqlJetDb.open(file, true);
+        connections.add(connection);
+        connection.setBusyHandler(busyHandler);
+        return connection;
+    }
+
+    private SqlJetLockWaitStatistics getStatistics() {
+        return SqlJetFileLockManager.getLockWaitStatistics(file.getAbsolutePath());
+    }
+
+    private Thread insert(final SqlJetDb connection, final String value, final List<String> order) {
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    connection.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            synchronized (order) {
+                                order.add(value);
+                            }
+                            return db.getTable("t").insert(null, value);
+                        }
+                    });
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void awaitWaiters(int waiters) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + SLEEP;
+        while (getStatistics().getWaiters() < waiters && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(waiters, getStatistics().getWaiters());
+    }
+
+    @Test
+    public void waiterIsWokenUpOnRelease() throws Exception {
+        final SqlJetDb other = openConnection(new SqlJetDefaultBusyHandler(10, SLEEP));
+        final List<String> order = new ArrayList<String>();
+
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        db.getTable("t").insert(null, "first");
+        final Thread thread = insert(other, "second", order);
+        awaitWaiters(1);
+        Thread.sleep(100);
+        final long released = System.nanoTime();
+        db.commit();
+        thread.join();
+        final long woken = System.nanoTime() - released;
+        Assert.assertTrue(errors.isEmpty());
+
+        Assert.assertTrue(woken < TimeUnit.MILLISECONDS.toNanos(SLEEP / 2));
+        final SqlJetLockWaitStatistics stats = getStatistics();
+        Assert.assertEquals(0, stats.getWaiters());
+        Assert.assertTrue(stats.getWaits() >= 1);
+        Assert.assertEquals(0, stats.getFailures());
+        Assert.assertTrue(stats.getMaxWaitTime() >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals(2L, other.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor c = db.getTable("t").open();
+                try {
+                    return c.getRowCount();
+                } finally {
+                    c.close();
+                }
+            }
+        }));
+    }
+
+    @Test
+    public void waitersAreServedInOrder() throws Exception {
+        final List<String> order = new ArrayList<String>();
+        final Thread[] threads = new Thread[3];
+
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = insert(openConnection(new SqlJetDefaultBusyHandler(10, SLEEP)), "v" + i, order);
+            awaitWaiters(i + 1);
+        }
+        db.commit();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(errors.isEmpty());
+        Assert.assertEquals(3, order.size());
+        Assert.assertEquals("v0", order.get(0));
+    }
+
+    @Test
+    public void customHandlerGetsRetryNumbers() throws Exception {
+        final List<Integer> numbers = new ArrayList<Integer>();
+        final SqlJetDb other = openConnection(new ISqlJetBusyHandler() {
+            public boolean call(int number) {
+                numbers.add(number);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                return number < 3;
+            }
+        });
+        db.beginTransaction(SqlJetTransactionMode.EXCLUSIVE);
+        try {
+            other.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+            Assert.fail();
+        } catch (SqlJetException e) {
+            Assert.assertEquals(SqlJetErrorCode.BUSY, e.getErrorCode());
+        } finally {
+            db.commit();
+        }
+        Assert.assertEquals(20, numbers.size());
+        Assert.assertEquals(Integer.valueOf(3), numbers.get(3));
+        Assert.assertEquals(0, getStatistics().getWaiters());
+    }
+
+    @Test
+    public void waiterGivesUp() throws Exception {
+        final SqlJetDb other = openConnection(new SqlJetDefaultBusyHandler(2, 50));
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        try {
+            other.beginTransaction(SqlJetTransactionMode.WRITE);
+            Assert.fail();
+        } catch (SqlJetException e) {
+            Assert.assertEquals(SqlJetErrorCode.BUSY, e.getErrorCode());
+        } finally {
+            db.commit();
+        }
+        final SqlJetLockWaitStatistics stats = getStatistics();
+        Assert.assertEquals(0, stats.getWaiters());
+        Assert.assertEquals(1, stats.getFailures());
+        Assert.assertTrue(stats.getMaxWaitTime() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+}
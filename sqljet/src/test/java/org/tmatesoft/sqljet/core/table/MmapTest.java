@@ -0,0 +1,112 @@
+/**
+ * MmapTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFile;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class MmapTest extends AbstractNewDbTest {
+
+    private String mmapSize;
+
+    @Before
+    public void setUp() throws Exception {
+        mmapSize = System.getProperty(SqlJetFile.SQLJET_MMAP_SIZE);
+        /* small enough to let database grow past mapped region */
+        System.setProperty(SqlJetFile.SQLJET_MMAP_SIZE, Integer.toString(64 * 1024));
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            if (mmapSize == null) {
+                System.clearProperty(SqlJetFile.SQLJET_MMAP_SIZE);
+            } else {
+                System.setProperty(SqlJetFile.SQLJET_MMAP_SIZE, mmapSize);
+            }
+        }
+    }
+
+    private void insert(final long from, final long to) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (long i = from; i < to; i++) {
+                    t.insert(i, "row" + i);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void assertRows(SqlJetDb db, long count) throws SqlJetException {
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                long i = 1;
+                while (!c.eof()) {
+                    assertEquals(i, c.getInteger("a"));
+                    assertEquals("row" + i, c.getString("b"));
+                    i++;
+                    c.next();
+                }
+                assertEquals(count + 1, i);
+            } finally {
+                c.close();
+            }
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void readsFollowGrowingFile() throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (a integer primary key, b text)");
+                return null;
+            }
+        });
+        insert(1, 100);
+        assertRows(db, 99);
+        insert(100, 5000);
+        db.close();
+
+        db = SqlJetDb.open(file, true);
+        assertRows(db, 4999);
+        insert(5000, 5001);
+        assertRows(db, 5000);
+    }
+
+}
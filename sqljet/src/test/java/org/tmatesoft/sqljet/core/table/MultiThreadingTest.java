@@ -20,10 +20,12 @@ package org.tmatesoft.sqljet.core.table;
 import java.io.File;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -340,6 +342,106 @@ public class MultiThreadingTest extends AbstractNewDbTest {
         }
     }
 
+    public static class LookupSynchronizedThread extends TableThread {
+
+        protected Random random = new Random();
+
+        public LookupSynchronizedThread(final SqlJetDb db, final File file, final String threadName,
+                final String tableName) {
+            super(file, threadName, tableName);
+            this.db = db;
+        }
+
+        @Override
+        protected void work() throws Exception {
+            db.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    for (int i = 0; i < 100; i++) {
+                        final long a = 1 + random.nextInt(ROWS);
+                        final ISqlJetCursor cursor = table.open();
+                        try {
+                            Assert.assertTrue(cursor.goTo(a));
+                            Assert.assertEquals(a * 2 % (ROWS * 2), cursor.getInteger("b") % (ROWS * 2));
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    public static class UpdateSynchronizedThread extends TableThread {
+
+        protected Random random = new Random();
+
+        public UpdateSynchronizedThread(final SqlJetDb db, final File file, final String threadName,
+                final String tableName) {
+            super(file, threadName, tableName);
+            this.db = db;
+        }
+
+        @Override
+        protected void work() throws Exception {
+            final long a = 1 + random.nextInt(ROWS);
+            table.insertOr(SqlJetConflictAction.REPLACE, a, a * 2 + ROWS * 2 * random.nextInt(1000));
+        }
+    }
+
+    private static final int ROWS = 1000;
+
+    private void createLookupTable() throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table s(a integer primary key, b integer)");
+                final ISqlJetTable t = db.getTable("s");
+                for (long a = 1; a <= ROWS; a++) {
+                    t.insert(a, a * 2);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void concurrentReaders() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final ISqlJetTransaction reader = new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetCursor cursor = db.getTable(TABLE_NAME).open();
+                try {
+                    latch.countDown();
+                    /* both readers are inside of transaction at the same time */
+                    return latch.await(10, TimeUnit.SECONDS) && !cursor.eof();
+                } catch (InterruptedException e) {
+                    return false;
+                } finally {
+                    cursor.close();
+                }
+            }
+        };
+        final Future<Object> first = WorkThread.threadPool.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                return db.runReadTransaction(reader);
+            }
+        });
+        Assert.assertEquals(Boolean.TRUE, db.runReadTransaction(reader));
+        Assert.assertEquals(Boolean.TRUE, first.get());
+        Assert.assertFalse(db.isInTransaction());
+    }
+
+    @Test
+    public void concurrentLookupsUpdates() throws Exception {
+        createLookupTable();
+        WorkThread.exec(TIMEOUT, new WorkThread[] { new LookupSynchronizedThread(db, file, "reader1", "s"),
+                new LookupSynchronizedThread(db, file, "reader2", "s"),
+                new LookupSynchronizedThread(db, file, "reader3", "s"),
+                new LookupSynchronizedThread(db, file, "reader4", "s"),
+                new UpdateSynchronizedThread(db, file, "writer1", "s") });
+        Assert.assertFalse(db.isInTransaction());
+    }
+
     @Test
     public void writers() throws Exception {
         WorkThread.exec(TIMEOUT, new WorkThread[] { new WriteThread(file, "writer1", TABLE_NAME),
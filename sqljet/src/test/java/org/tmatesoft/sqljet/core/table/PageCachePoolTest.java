@@ -0,0 +1,149 @@
+/**
+ * PageCachePoolTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetPageCachePool;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetPageCacheStatistics;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class PageCachePoolTest {
+
+    private static final long POOL_SIZE = 64 * 1024;
+    private static final int ROWS = 2000;
+
+    private final SqlJetPageCachePool pool = SqlJetPageCachePool.getPool();
+    private long oldSize;
+    private File file1, file2;
+    private SqlJetDb db1, db2;
+
+    @Before
+    public void setUp() throws Exception {
+        oldSize = pool.getSize();
+        pool.setSize(POOL_SIZE);
+        file1 = File.createTempFile("pool1", null);
+        file2 = File.createTempFile("pool2", null);
+        db1 = SqlJetDb.open(file1, true);
+        db2 = SqlJetDb.open(file2, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            db1.close();
+            db2.close();
+        } finally {
+            pool.setSize(oldSize);
+            SqlJetFileUtil.deleteFile(file1);
+            SqlJetFileUtil.deleteFile(file2);
+        }
+    }
+
+    private static void fill(SqlJetDb db) throws SqlJetException {
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        try {
+            db.createTable("create table t (a integer primary key, b text)");
+            db.createIndex("create index tb on t (b)");
+            final ISqlJetTable t = db.getTable("t");
+            for (long i = 1; i <= ROWS; i++) {
+                t.insert(i, "some text to make rows longer " + i);
+            }
+        } finally {
+            db.commit();
+        }
+    }
+
+    private static long count(SqlJetDb db) throws SqlJetException {
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                return c.getRowCount();
+            } finally {
+                c.close();
+            }
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void databasesShareBudget() throws SqlJetException {
+        fill(db1);
+        fill(db2);
+        assertEquals(ROWS, count(db1));
+        assertEquals(ROWS, count(db2));
+        assertTrue(pool.getUsed() <= POOL_SIZE);
+
+        final List<SqlJetPageCacheStatistics> statistics = pool.getStatistics();
+        long bytes = 0;
+        int found = 0;
+        for (final SqlJetPageCacheStatistics s : statistics) {
+            bytes += s.getBytes();
+            if (file1.getPath().equals(s.getName()) || file2.getPath().equals(s.getName())) {
+                found++;
+                assertTrue(s.getEvictions() > 0);
+                assertTrue(s.getHits() > 0);
+            }
+        }
+        assertEquals(2, found);
+        assertEquals(pool.getUsed(), bytes);
+    }
+
+    @Test
+    public void memoryIsReturnedOnClose() throws SqlJetException {
+        fill(db1);
+        assertTrue(pool.getUsed() > 0);
+        db1.close();
+        db2.close();
+        assertEquals(0, pool.getUsed());
+    }
+
+    @Test
+    public void poolIsDisabledOnlyWithoutCaches() throws SqlJetException {
+        fill(db1);
+        try {
+            pool.setSize(0);
+            fail("Pool should not be disabled while caches are open");
+        } catch (IllegalStateException e) {
+            assertEquals(POOL_SIZE, pool.getSize());
+        }
+        db1.close();
+        db2.close();
+        pool.setSize(0);
+        assertFalse(pool.isEnabled());
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * PageChecksumTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPager;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetPager;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class PageChecksumTest extends AbstractNewDbTest {
+
+    private String checksums;
+
+    @Before
+    public void setUp() throws Exception {
+        checksums = System.getProperty(SqlJetPager.SQLJET_PAGE_CHECKSUMS);
+        System.setProperty(SqlJetPager.SQLJET_PAGE_CHECKSUMS, "true");
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            if (checksums == null) {
+                System.clearProperty(SqlJetPager.SQLJET_PAGE_CHECKSUMS);
+            } else {
+                System.setProperty(SqlJetPager.SQLJET_PAGE_CHECKSUMS, checksums);
+            }
+        }
+    }
+
+    private long count(SqlJetDb db) throws SqlJetException {
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                long count = 0;
+                while (!c.eof()) {
+                    c.getString("b");
+                    count++;
+                    c.next();
+                }
+                return count;
+            } finally {
+                c.close();
+            }
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void tornPageIsDetected() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (a integer primary key, b text)");
+                final ISqlJetTable t = db.getTable("t");
+                for (long i = 1; i <= 1000; i++) {
+                    t.insert(i, "row" + i);
+                }
+                return null;
+            }
+        });
+        db.close();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        final int pageSize;
+        try {
+            raf.seek(16);
+            pageSize = raf.readUnsignedShort();
+            raf.seek(20);
+            assertEquals(ISqlJetPager.CHECKSUM_RESERVE, raf.read());
+        } finally {
+            raf.close();
+        }
+
+        db = SqlJetDb.open(file, false);
+        assertEquals(1000, count(db));
+        db.close();
+
+        final RandomAccessFile torn = new RandomAccessFile(file, "rw");
+        try {
+            torn.seek(3L * pageSize - 100);
+            final int b = torn.read();
+            torn.seek(3L * pageSize - 100);
+            torn.write(b ^ 0x55);
+        } finally {
+            torn.close();
+        }
+
+        db = SqlJetDb.open(file, false);
+        try {
+            count(db);
+            fail("Corrupted page should be detected");
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CORRUPT, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void reservedBytesOfUnmarkedDatabaseAreKept() throws Exception {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (a integer primary key, b text)");
+                return null;
+            }
+        });
+        db.close();
+
+        /* database which reserves the same space for other purpose */
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        final int pageSize;
+        try {
+            raf.seek(16);
+            pageSize = raf.readUnsignedShort();
+            raf.seek(pageSize - ISqlJetPager.CHECKSUM_RESERVE);
+            assertEquals(ISqlJetPager.CHECKSUM_MARKER, raf.readInt());
+            for (long page = 1; page * pageSize <= raf.length(); page++) {
+                raf.seek(page * pageSize - ISqlJetPager.CHECKSUM_RESERVE);
+                raf.writeLong(0);
+            }
+        } finally {
+            raf.close();
+        }
+
+        db = SqlJetDb.open(file, true);
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (long i = 1; i <= 1000; i++) {
+                    t.insert(i, "row" + i);
+                }
+                return null;
+            }
+        });
+        assertEquals(1000, count(db));
+        db.close();
+
+        raf = new RandomAccessFile(file, "r");
+        try {
+            assertTrue(raf.length() > 2 * pageSize);
+            for (long page = 1; page * pageSize <= raf.length(); page++) {
+                raf.seek(page * pageSize - ISqlJetPager.CHECKSUM_SIZE);
+                assertEquals(0, raf.readInt());
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+}
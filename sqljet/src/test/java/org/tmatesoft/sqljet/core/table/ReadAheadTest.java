@@ -0,0 +1,125 @@
+/**
+ * ReadAheadTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetPager;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class ReadAheadTest extends AbstractNewDbTest {
+
+    private String readAhead;
+
+    @Before
+    public void setUp() throws Exception {
+        readAhead = System.getProperty(SqlJetPager.SQLJET_READ_AHEAD);
+        /* small window to read ahead many times */
+        System.setProperty(SqlJetPager.SQLJET_READ_AHEAD, "8");
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            if (readAhead == null) {
+                System.clearProperty(SqlJetPager.SQLJET_READ_AHEAD);
+            } else {
+                System.setProperty(SqlJetPager.SQLJET_READ_AHEAD, readAhead);
+            }
+        }
+    }
+
+    private void insert(final long from, final long to) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                final ISqlJetTable t = db.getTable("t");
+                for (long i = from; i < to; i++) {
+                    t.insert(i, "row" + i);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void assertRows(SqlJetDb db, long count) throws SqlJetException {
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                long i = 1;
+                while (!c.eof()) {
+                    assertEquals(i, c.getInteger("a"));
+                    assertEquals("row" + i, c.getString("b"));
+                    i++;
+                    c.next();
+                }
+                assertEquals(count + 1, i);
+            } finally {
+                c.close();
+            }
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void scanAfterBulkLoad() throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (a integer primary key, b text)");
+                return null;
+            }
+        });
+        insert(1, 20000);
+        db.close();
+
+        db = SqlJetDb.open(file, true);
+        assertRows(db, 19999);
+        /* random reads between sequential ones */
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            final ISqlJetTable t = db.getTable("t");
+            for (long i = 1; i < 20000; i += 997) {
+                final ISqlJetCursor c = t.lookup(t.getPrimaryKeyIndexName(), i);
+                try {
+                    assertEquals("row" + i, c.getString("b"));
+                } finally {
+                    c.close();
+                }
+            }
+        } finally {
+            db.commit();
+        }
+        insert(20000, 20001);
+        assertRows(db, 20000);
+    }
+
+}
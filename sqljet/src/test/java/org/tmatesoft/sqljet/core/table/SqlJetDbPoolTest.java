@@ -0,0 +1,334 @@
+/**
+ * SqlJetDbPoolTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+import org.tmatesoft.sqljet.core.internal.db.SqlJetConfig;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetDbPoolTest extends AbstractNewDbTest {
+
+    private static final int THREADS = 4;
+    private static final int ITERATIONS = 50;
+
+    private final List<Throwable> errors = new ArrayList<Throwable>();
+    private SqlJetDbPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (id integer primary key, a text)");
+                db.createIndex("create index t_a on t (a)");
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (pool != null) {
+                pool.close();
+            }
+            super.tearDown();
+        } finally {
+            SqlJetFileUtil.deleteFile(new File(file.getPath() + "-wal"));
+        }
+    }
+
+    private abstract class PoolThread extends Thread {
+        @Override
+        public void run() {
+            try {
+                work();
+            } catch (Throwable e) {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            }
+        }
+
+        protected abstract void work() throws Exception;
+    }
+
+    private void runThreads(Thread... threads) throws InterruptedException {
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        checkErrors();
+    }
+
+    private void checkErrors() {
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.get(0));
+        }
+    }
+
+    private long count(SqlJetDb db) throws SqlJetException {
+        final ISqlJetCursor c = db.getTable("t").open();
+        try {
+            return c.getRowCount();
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    public void readersRunConcurrently() throws Exception {
+        pool = new SqlJetDbPool(db, THREADS);
+        final CountDownLatch latch = new CountDownLatch(THREADS);
+        final Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new PoolThread() {
+                @Override
+                protected void work() throws Exception {
+                    pool.runReadTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            latch.countDown();
+                            try {
+                                Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+                            } catch (InterruptedException e) {
+                                throw new SqlJetException(e);
+                            }
+                            return count(db);
+                        }
+                    });
+                }
+            };
+        }
+        runThreads(threads);
+        final SqlJetDbPoolStatistics stats = pool.getStatistics();
+        Assert.assertEquals(THREADS, stats.getReadCount());
+        Assert.assertEquals(0, stats.getActiveReaders());
+        Assert.assertEquals(0, stats.getWriteCount());
+    }
+
+    @Test
+    public void readersAreLimited() throws Exception {
+        pool = new SqlJetDbPool(db, 1);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final Thread first = new PoolThread() {
+            @Override
+            protected void work() throws Exception {
+                pool.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new SqlJetException(e);
+                        }
+                        return null;
+                    }
+                });
+            }
+        };
+        final Thread second = new PoolThread() {
+            @Override
+            protected void work() throws Exception {
+                entered.await();
+                waiting.countDown();
+                pool.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        Assert.assertEquals(0, release.getCount());
+                        return null;
+                    }
+                });
+            }
+        };
+        first.start();
+        second.start();
+        waiting.await();
+        Thread.sleep(100);
+        Assert.assertEquals(1, pool.getStatistics().getActiveReaders());
+        release.countDown();
+        first.join();
+        second.join();
+        checkErrors();
+
+        final SqlJetDbPoolStatistics stats = pool.getStatistics();
+        Assert.assertEquals(2, stats.getReadCount());
+        /* wait starts when second thread gets into pool, which may be later than its signal */
+        Assert.assertTrue(stats.getMaxReadWaitTime() > 0);
+        Assert.assertTrue(stats.getReadersUtilisation() > 0);
+    }
+
+    @Test
+    public void readersAndWriter() throws Exception {
+        pool = new SqlJetDbPool(db, THREADS);
+        final Thread[] threads = new Thread[THREADS + 1];
+        threads[0] = new PoolThread() {
+            @Override
+            protected void work() throws Exception {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    final int n = i;
+                    pool.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            return db.getTable("t").insert(null, "v" + n);
+                        }
+                    });
+                }
+            }
+        };
+        for (int i = 1; i <= THREADS; i++) {
+            threads[i] = new PoolThread() {
+                @Override
+                protected void work() throws Exception {
+                    long last = 0;
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        final long count = (Long) pool.runReadTransaction(new ISqlJetTransaction() {
+                            public Object run(SqlJetDb db) throws SqlJetException {
+                                return count(db);
+                            }
+                        });
+                        Assert.assertTrue(count >= last);
+                        last = count;
+                    }
+                }
+            };
+        }
+        runThreads(threads);
+
+        Assert.assertEquals(Long.valueOf(ITERATIONS), pool.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return count(db);
+            }
+        }));
+        final SqlJetDbPoolStatistics stats = pool.getStatistics();
+        Assert.assertEquals(ITERATIONS * THREADS + 1, stats.getReadCount());
+        Assert.assertEquals(ITERATIONS, stats.getWriteCount());
+        Assert.assertFalse(stats.isActiveWriter());
+    }
+
+    @Test
+    public void nestedTransactionsDontWait() throws Exception {
+        pool = new SqlJetDbPool(db, 1);
+        final Object count = pool.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                pool.runWriteTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        return db.getTable("t").insert(null, "nested");
+                    }
+                });
+                return pool.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        return count(db);
+                    }
+                });
+            }
+        });
+        final SqlJetDbPoolStatistics stats = pool.getStatistics();
+        Assert.assertEquals(1, stats.getReadCount());
+        Assert.assertEquals(0, stats.getWriteCount());
+        Assert.assertEquals(Long.valueOf(1), count);
+    }
+
+    @Test
+    public void concurrentReadersAreOffWithSharedCache() throws Exception {
+        final String property = "SQLJET_SHARED_CACHE";
+        final String value = System.getProperty(property);
+        System.setProperty(property, "true");
+        try {
+            Assert.assertFalse(new SqlJetConfig().isConcurrentReaders());
+        } finally {
+            if (value != null) {
+                System.setProperty(property, value);
+            } else {
+                System.clearProperty(property);
+            }
+        }
+    }
+
+    @Test
+    public void snapshotReadersDontBlockWriter() throws Exception {
+        db.setJournalMode(SqlJetPagerJournalMode.WAL);
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return db.getTable("t").insert(null, "first");
+            }
+        });
+        pool = new SqlJetDbPool(db, 2);
+        Assert.assertTrue(pool.isSnapshotReads());
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch written = new CountDownLatch(1);
+        final Thread reader = new PoolThread() {
+            @Override
+            protected void work() throws Exception {
+                pool.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        Assert.assertEquals(1, count(db));
+                        entered.countDown();
+                        try {
+                            Assert.assertTrue(written.await(10, TimeUnit.SECONDS));
+                        } catch (InterruptedException e) {
+                            throw new SqlJetException(e);
+                        }
+                        Assert.assertEquals(1, count(db));
+                        return null;
+                    }
+                });
+            }
+        };
+        reader.start();
+        entered.await();
+        pool.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return db.getTable("t").insert(null, "second");
+            }
+        });
+        written.countDown();
+        reader.join();
+        checkErrors();
+
+        Assert.assertEquals(Long.valueOf(2), pool.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return count(db);
+            }
+        }));
+        final SqlJetDbPoolStatistics stats = pool.getStatistics();
+        Assert.assertEquals(1, stats.getSnapshotReaders());
+        Assert.assertEquals(2, stats.getReadCount());
+        Assert.assertEquals(1, stats.getWriteCount());
+    }
+
+}
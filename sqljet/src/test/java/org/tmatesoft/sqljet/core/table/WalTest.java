@@ -0,0 +1,356 @@
+/**
+ * WalTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetWal;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class WalTest extends AbstractNewDbTest {
+
+    private File walFile;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        walFile = new File(file.getPath() + "-wal");
+        db.setJournalMode(SqlJetPagerJournalMode.WAL);
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.createTable("create table t (a integer primary key, b text)");
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            SqlJetFileUtil.deleteFile(walFile);
+        }
+    }
+
+    private static void insert(SqlJetDb db, final long a) throws SqlJetException {
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                db.getTable("t").insert(a, "row" + a);
+                return null;
+            }
+        });
+    }
+
+    private static long count(SqlJetDb db) throws SqlJetException {
+        final ISqlJetCursor c = db.getTable("t").open();
+        try {
+            return c.getRowCount();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Reads database in other process. Exit code is 0 if read succeeded, 2 if
+     * database was busy.
+     */
+    public static class OtherProcess {
+        public static void main(String[] args) {
+            try {
+                final SqlJetDb db = SqlJetDb.open(new File(args[0]), false);
+                try {
+                    db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+                    try {
+                        count(db);
+                    } finally {
+                        db.commit();
+                    }
+                } finally {
+                    db.close();
+                }
+            } catch (SqlJetException e) {
+                if (e.getErrorCode() == SqlJetErrorCode.BUSY) {
+                    System.exit(2);
+                }
+                e.printStackTrace();
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+    }
+
+    private int readInOtherProcess() throws Exception {
+        final Process process = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                "-D" + SqlJetDefaultBusyHandler.SQLJET_BUSY_RETRIES_PROPERTY + "=1",
+                "-D" + SqlJetDefaultBusyHandler.SQLJET_BUSY_SLEEP_PROPERTY + "=1", OtherProcess.class.getName(),
+                file.getPath()).redirectErrorStream(true).start();
+        final InputStream out = process.getInputStream();
+        try {
+            while (out.read() >= 0) {
+                // the output is only drained so that child doesn't block
+            }
+        } finally {
+            out.close();
+        }
+        return process.waitFor();
+    }
+
+    @Test
+    public void otherProcessIsRefusedWhileLogIsOpen() throws Exception {
+        insert(db, 1);
+        assertTrue(walFile.isFile());
+        assertEquals(2, readInOtherProcess());
+
+        db.close();
+        assertFalse(walFile.exists());
+        assertEquals(0, readInOtherProcess());
+    }
+
+    @Test
+    public void walIsCreatedAndCheckpointedOnClose() throws SqlJetException {
+        insert(db, 1);
+        insert(db, 2);
+        assertTrue(walFile.isFile());
+        assertEquals(SqlJetPagerJournalMode.WAL, db.getJournalMode());
+
+        db.close();
+        assertFalse(walFile.exists());
+
+        db = SqlJetDb.open(file, true);
+        assertEquals(SqlJetPagerJournalMode.WAL, db.getJournalMode());
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            assertEquals(2, count(db));
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void readerKeepsSnapshotWhileWriterCommits() throws SqlJetException {
+        insert(db, 1);
+        final SqlJetDb reader = SqlJetDb.open(file, false);
+        try {
+            reader.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+            try {
+                assertEquals(1, count(reader));
+                insert(db, 2);
+                assertEquals(1, count(reader));
+            } finally {
+                reader.commit();
+            }
+            reader.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+            try {
+                assertEquals(2, count(reader));
+            } finally {
+                reader.commit();
+            }
+        } finally {
+            reader.close();
+        }
+        assertTrue(walFile.isFile());
+    }
+
+    @Test
+    public void groupCommitOfConcurrentTransactions() throws Exception {
+        System.setProperty(SqlJetWal.SQLJET_WAL_GROUP_COMMIT_DELAY, "5");
+        try {
+            db.close();
+            db = SqlJetDb.open(file, true);
+            final List<Thread> threads = new ArrayList<Thread>();
+            final List<Throwable> errors = new ArrayList<Throwable>();
+            for (int t = 0; t < 4; t++) {
+                final long first = t * 100 + 1;
+                threads.add(new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (long a = first; a < first + 25; a++) {
+                                insert(db, a);
+                            }
+                        } catch (Throwable e) {
+                            synchronized (errors) {
+                                errors.add(e);
+                            }
+                        }
+                    }
+                });
+            }
+            for (final Thread thread : threads) {
+                thread.start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(errors.toString(), errors.isEmpty());
+        } finally {
+            System.clearProperty(SqlJetWal.SQLJET_WAL_GROUP_COMMIT_DELAY);
+        }
+        db.close();
+
+        db = SqlJetDb.open(file, false);
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            assertEquals(100, count(db));
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void rollbackDropsUncommittedFrames() throws SqlJetException {
+        insert(db, 1);
+        db.beginTransaction(SqlJetTransactionMode.WRITE);
+        try {
+            for (long i = 2; i < 1000; i++) {
+                db.getTable("t").insert(i, "row" + i);
+            }
+        } finally {
+            db.rollback();
+        }
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            assertEquals(1, count(db));
+        } finally {
+            db.commit();
+        }
+        insert(db, 2);
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            assertEquals(2, count(db));
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void switchOutOfWalMode() throws SqlJetException {
+        insert(db, 1);
+        db.setJournalMode(SqlJetPagerJournalMode.DELETE);
+        insert(db, 2);
+        assertFalse(walFile.exists());
+        db.close();
+
+        db = SqlJetDb.open(file, true);
+        assertEquals(SqlJetPagerJournalMode.DELETE, db.getJournalMode());
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            assertEquals(2, count(db));
+        } finally {
+            db.commit();
+        }
+    }
+
+    private static void assertRows(SqlJetDb db, Map<Long, String> expected) throws SqlJetException {
+        db.beginTransaction(SqlJetTransactionMode.READ_ONLY);
+        try {
+            final Map<Long, String> actual = new TreeMap<Long, String>();
+            final ISqlJetCursor c = db.getTable("t").open();
+            try {
+                if (!c.eof()) {
+                    do {
+                        actual.put(c.getInteger("a"), c.getString("b"));
+                    } while (c.next());
+                }
+            } finally {
+                c.close();
+            }
+            assertEquals(expected, actual);
+        } finally {
+            db.commit();
+        }
+    }
+
+    @Test
+    public void readerCacheFollowsCommits() throws SqlJetException {
+        final Map<Long, String> expected = new TreeMap<Long, String>();
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                for (long a = 1; a <= 2000; a++) {
+                    db.getTable("t").insert(a, "row" + a);
+                    expected.put(a, "row" + a);
+                }
+                return null;
+            }
+        });
+        final SqlJetDb reader = SqlJetDb.open(file, false);
+        try {
+            assertRows(reader, expected);
+            for (int round = 0; round < 5; round++) {
+                final int r = round;
+                db.runWriteTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        final ISqlJetTable t = db.getTable("t");
+                        for (long a = 1 + r * 300; a <= 100 + r * 300; a++) {
+                            final ISqlJetCursor c = t.lookup(null, a);
+                            try {
+                                c.delete();
+                            } finally {
+                                c.close();
+                            }
+                            expected.remove(a);
+                        }
+                        for (long a = 1000 + r; a <= 2000; a += 50) {
+                            final ISqlJetCursor c = t.lookup(null, a);
+                            try {
+                                if (!c.eof()) {
+                                    c.update(a, "round" + r);
+                                    expected.put(a, "round" + r);
+                                }
+                            } finally {
+                                c.close();
+                            }
+                        }
+                        final long a = 3000 + r;
+                        t.insert(a, "new" + a);
+                        expected.put(a, "new" + a);
+                        return null;
+                    }
+                });
+                assertRows(reader, expected);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+}